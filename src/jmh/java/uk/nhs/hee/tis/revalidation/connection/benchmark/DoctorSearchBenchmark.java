@@ -0,0 +1,201 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils;
+
+/**
+ * Measures the latency of the doctor name search against a fixture of 100k doctors, comparing the
+ * wildcard query with the match query on the edge-ngram autocomplete sub-fields. Sample time mode
+ * is used so that the p50 and p99 latencies are reported.
+ *
+ * <p>Requires a running Elasticsearch at {@code ES_URLS} (default {@code http://localhost:9200}).
+ * The fixture index is created on setup and deleted on tear down.
+ *
+ * <p>Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoctorSearchBenchmark {
+
+  private static final String INDEX = "benchmark_doctor_search";
+  private static final String SETTINGS = "/elasticsearch/doctor-index-settings.json";
+  private static final String[] FIELDS = {"doctorFirstName", "doctorLastName",
+      "gmcReferenceNumber"};
+  private static final String[] SYLLABLES = {"an", "ber", "cal", "dor", "el", "fitz", "gar",
+      "han", "is", "jon", "kel", "lor", "mac", "nor", "os", "pat", "ros", "smi", "th", "wil"};
+  private static final int DOCTOR_COUNT = 100_000;
+  private static final int BULK_SIZE = 5_000;
+  private static final int PREFIX_COUNT = 1_024;
+
+  private final Random random = new Random(42);
+  private RestHighLevelClient client;
+  private String[] prefixes;
+  private int next;
+
+  /**
+   * Create and populate the fixture index, so that indexing is not measured.
+   *
+   * @throws IOException when the fixture cannot be created
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    String url = System.getenv().getOrDefault("ES_URLS", "http://localhost:9200").split(",")[0];
+    client = new RestHighLevelClient(RestClient.builder(HttpHost.create(url)));
+
+    if (client.indices().exists(new GetIndexRequest(INDEX), RequestOptions.DEFAULT)) {
+      client.indices().delete(new DeleteIndexRequest(INDEX), RequestOptions.DEFAULT);
+    }
+    client.indices().create(new CreateIndexRequest(INDEX)
+        .settings(readSettings(), XContentType.JSON)
+        .mapping(buildMapping()), RequestOptions.DEFAULT);
+
+    for (int from = 0; from < DOCTOR_COUNT; from += BULK_SIZE) {
+      BulkRequest bulk = new BulkRequest();
+      for (int i = from; i < Math.min(from + BULK_SIZE, DOCTOR_COUNT); i++) {
+        bulk.add(new IndexRequest(INDEX).id(Integer.toString(i)).source(Map.of(
+            "doctorFirstName", randomName(),
+            "doctorLastName", randomName(),
+            "gmcReferenceNumber", String.format("%07d", 1_000_000 + i))));
+      }
+      BulkResponse response = client.bulk(bulk, RequestOptions.DEFAULT);
+      if (response.hasFailures()) {
+        throw new IllegalStateException(response.buildFailureMessage());
+      }
+    }
+    client.indices().refresh(new RefreshRequest(INDEX), RequestOptions.DEFAULT);
+
+    prefixes = new String[PREFIX_COUNT];
+    for (int i = 0; i < PREFIX_COUNT; i++) {
+      String name = randomName();
+      prefixes[i] = i % 4 == 0 ? Integer.toString(1_000 + random.nextInt(100))
+          : name.substring(0, Math.min(name.length(), 2 + random.nextInt(3)));
+    }
+  }
+
+  /**
+   * Remove the fixture index and close the client.
+   *
+   * @throws IOException when the index cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    client.indices().delete(new DeleteIndexRequest(INDEX), RequestOptions.DEFAULT);
+    client.close();
+  }
+
+  @Benchmark
+  public SearchResponse wildcardSearch() throws IOException {
+    return search(EsQueryUtils.buildDoctorSearchQuery(nextPrefix(), false, FIELDS));
+  }
+
+  @Benchmark
+  public SearchResponse autocompleteSearch() throws IOException {
+    return search(EsQueryUtils.buildDoctorSearchQuery(nextPrefix(), true, FIELDS));
+  }
+
+  private SearchResponse search(QueryBuilder query) throws IOException {
+    SearchRequest request = new SearchRequest(INDEX)
+        .source(new SearchSourceBuilder().query(query).size(20));
+    return client.search(request, RequestOptions.DEFAULT);
+  }
+
+  private String nextPrefix() {
+    next = (next + 1) % PREFIX_COUNT;
+    return prefixes[next];
+  }
+
+  private String randomName() {
+    StringBuilder name = new StringBuilder();
+    int syllables = 2 + random.nextInt(2);
+    for (int i = 0; i < syllables; i++) {
+      name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+    }
+    name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+    return name.toString();
+  }
+
+  private String readSettings() throws IOException {
+    try (InputStream settings = getClass().getResourceAsStream(SETTINGS)) {
+      return new String(settings.readAllBytes(), UTF_8);
+    }
+  }
+
+  private XContentBuilder buildMapping() throws IOException {
+    XContentBuilder mapping = jsonBuilder().startObject().startObject("properties");
+    for (String field : FIELDS) {
+      mapping.startObject(field)
+          .field("type", "text")
+          .startObject("fields")
+          .startObject("keyword").field("type", "keyword").endObject()
+          .startObject("autocomplete")
+          .field("type", "text")
+          .field("analyzer", "autocomplete")
+          .field("search_analyzer", "autocomplete_search")
+          .endObject()
+          .endObject()
+          .endObject();
+    }
+    return mapping.endObject().endObject();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.xml.transform.StringResult;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctor;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctorRequest;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctorResponse;
+import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctor;
+import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctorResponse;
+import uk.nhs.hee.tis.revalidation.connection.config.CachingJaxb2Marshaller;
+
+/**
+ * Measures the cost of marshalling a single TryAddDoctor request, comparing the package-scanning
+ * marshaller which creates a JAXB marshaller per message with the marshaller bound to the GMC
+ * message types which reuses a JAXB marshaller per thread.
+ *
+ * <p>Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GmcMarshallingBenchmark {
+
+  private Jaxb2Marshaller scanningMarshaller;
+  private Jaxb2Marshaller cachingMarshaller;
+
+  /**
+   * Initialise both marshallers, so that building the JAXB contexts is not measured.
+   *
+   * @throws Exception when a JAXB context cannot be created
+   */
+  @Setup
+  public void setUp() throws Exception {
+    scanningMarshaller = new Jaxb2Marshaller();
+    scanningMarshaller
+        .setPackagesToScan("uk.nhs.hee.tis.gmc.client", "uk.nhs.hee.tis.gmc.client.generated");
+    scanningMarshaller.afterPropertiesSet();
+
+    cachingMarshaller = new CachingJaxb2Marshaller();
+    cachingMarshaller.setClassesToBeBound(TryAddDoctor.class, TryAddDoctorResponse.class,
+        TryRemoveDoctor.class, TryRemoveDoctorResponse.class);
+    cachingMarshaller.afterPropertiesSet();
+  }
+
+  @Benchmark
+  public String scanningMarshaller() {
+    return marshal(scanningMarshaller);
+  }
+
+  @Benchmark
+  public String cachingMarshaller() {
+    return marshal(cachingMarshaller);
+  }
+
+  private static String marshal(Jaxb2Marshaller marshaller) {
+    final var request = new TryAddDoctorRequest();
+    request.setDoctorUID("1234567");
+    request.setChangeReason("1");
+    request.setDesignatedBodyCode("1-AIIDR8");
+    request.setClientRequestID("1234567");
+    request.setInternalUser("Admin");
+    final var tryAddDoctor = new TryAddDoctor();
+    tryAddDoctor.setRecReq(request);
+    tryAddDoctor.setUsername("username");
+    tryAddDoctor.setPassword("password");
+
+    final var result = new StringResult();
+    marshaller.marshal(tryAddDoctor, result);
+    return result.toString();
+  }
+}
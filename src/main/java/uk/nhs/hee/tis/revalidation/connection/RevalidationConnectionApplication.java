@@ -27,6 +27,12 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.ws.transport.http.HttpComponentsMessageSender;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctor;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctorResponse;
+import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctor;
+import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctorResponse;
+import uk.nhs.hee.tis.revalidation.connection.config.CachingJaxb2Marshaller;
 
 @SpringBootApplication
 public class RevalidationConnectionApplication {
@@ -36,18 +42,25 @@ public class RevalidationConnectionApplication {
   }
 
   @Bean
-  public WebServiceTemplate webServiceTemplate() {
+  public WebServiceTemplate webServiceTemplate(HttpComponentsMessageSender gmcMessageSender) {
     var webServiceTemplate = new WebServiceTemplate();
     webServiceTemplate.setMarshaller(marshaller());
     webServiceTemplate.setUnmarshaller(marshaller());
+    webServiceTemplate.setMessageSender(gmcMessageSender);
     return webServiceTemplate;
   }
 
+  /**
+   * Provides the marshaller for GMC messages. Binding only the request and response types avoids
+   * scanning the client packages, and marshallers are reused by each thread.
+   *
+   * @return the marshaller for GMC messages
+   */
   @Bean
   public Jaxb2Marshaller marshaller() {
-    var marshaller = new Jaxb2Marshaller();
-    marshaller
-        .setPackagesToScan("uk.nhs.hee.tis.gmc.client", "uk.nhs.hee.tis.gmc.client.generated");
+    var marshaller = new CachingJaxb2Marshaller();
+    marshaller.setClassesToBeBound(TryAddDoctor.class, TryAddDoctorResponse.class,
+        TryRemoveDoctor.class, TryRemoveDoctorResponse.class);
     return marshaller;
   }
 
@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.config;
+
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+
+/**
+ * A {@link Jaxb2Marshaller} which keeps one JAXB marshaller and unmarshaller per thread, rather
+ * than creating and initialising new ones for every message. JAXB marshallers are not
+ * thread-safe, but can be reused by the thread which created them.
+ *
+ * <p>MTOM must stay disabled, as it would set per-message attachment handlers on the reused
+ * instances.
+ */
+public class CachingJaxb2Marshaller extends Jaxb2Marshaller {
+
+  private final ThreadLocal<Marshaller> marshallers =
+      ThreadLocal.withInitial(super::createMarshaller);
+
+  private final ThreadLocal<Unmarshaller> unmarshallers =
+      ThreadLocal.withInitial(super::createUnmarshaller);
+
+  @Override
+  public Marshaller createMarshaller() {
+    return marshallers.get();
+  }
+
+  @Override
+  public Unmarshaller createUnmarshaller() {
+    return unmarshallers.get();
+  }
+
+  @Override
+  public void setMtomEnabled(boolean mtomEnabled) {
+    if (mtomEnabled) {
+      throw new UnsupportedOperationException("MTOM is not supported with cached marshallers");
+    }
+    super.setMtomEnabled(false);
+  }
+}
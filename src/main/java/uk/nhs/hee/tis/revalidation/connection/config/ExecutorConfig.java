@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Configures the executors used to run work off the request thread.
+ */
+@Configuration
+public class ExecutorConfig {
+
+  /**
+   * Provides a bounded executor for GMC TryAddDoctor/TryRemoveDoctor calls, so that the doctors in
+   * a bulk connection request are submitted to GMC in parallel.
+   *
+   * @param parallelism             the maximum number of concurrent calls to GMC
+   * @param awaitTerminationSeconds how long shutdown waits for the calls in progress to finish
+   * @return the executor used for GMC calls
+   */
+  @Bean
+  public ThreadPoolTaskExecutor gmcRequestExecutor(
+      @Value("${app.gmc.bulk.parallelism}") int parallelism,
+      @Value("${app.gmc.bulk.awaitTerminationSeconds}") int awaitTerminationSeconds) {
+    var executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(parallelism);
+    executor.setMaxPoolSize(parallelism);
+    executor.setThreadNamePrefix("gmc-request-");
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    executor.setAwaitTerminationSeconds(awaitTerminationSeconds);
+    return executor;
+  }
+
+  /**
+   * Provides the executor that bulk connection jobs are run on, so a large request does not hold
+   * the HTTP thread while every doctor is sent to GMC. Jobs are rejected once the queue is full.
+   *
+   * @param concurrency   the maximum number of jobs processed at the same time
+   * @param queueCapacity the maximum number of jobs waiting to be processed
+   * @return the executor used for connection jobs
+   */
+  @Bean
+  public ThreadPoolTaskExecutor connectionJobExecutor(
+      @Value("${app.reval.connectionjob.concurrency}") int concurrency,
+      @Value("${app.reval.connectionjob.queueCapacity}") int queueCapacity) {
+    var executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(concurrency);
+    executor.setMaxPoolSize(concurrency);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("connection-job-");
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    return executor;
+  }
+
+  /**
+   * Provides a single thread executor for copying hidden discrepancy changes to the master index,
+   * so hiding or showing a discrepancy does not wait for Elasticsearch. Changes are collected by
+   * the listener while an update is waiting, so at most one update is ever queued.
+   *
+   * @return the executor used for hidden discrepancy index updates
+   */
+  @Bean
+  public ThreadPoolTaskExecutor hiddenDiscrepancyIndexExecutor() {
+    var executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setMaxPoolSize(1);
+    executor.setQueueCapacity(1);
+    executor.setThreadNamePrefix("hidden-discrepancy-index-");
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    return executor;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.config;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.ws.transport.http.HttpComponentsMessageSender;
+import org.springframework.ws.transport.http.HttpComponentsMessageSender.RemoveSoapHeadersInterceptor;
+
+/**
+ * Configures the pooled HTTP transport used by the WebServiceTemplate for calls to GMC, so that
+ * connections are kept alive and reused across the doctors in a bulk request.
+ */
+@Configuration
+public class GmcHttpClientConfig {
+
+  private static final String GMC_POOL_NAME = "gmc";
+
+  @Value("${app.gmc.http.maxConnections}")
+  private int maxConnections;
+
+  @Value("${app.gmc.http.connectTimeoutMs}")
+  private int connectTimeoutMs;
+
+  @Value("${app.gmc.http.readTimeoutMs}")
+  private int readTimeoutMs;
+
+  @Value("${app.gmc.http.connectionRequestTimeoutMs}")
+  private int connectionRequestTimeoutMs;
+
+  @Value("${app.gmc.http.keepAliveMs}")
+  private long keepAliveMs;
+
+  @Value("${app.gmc.http.idleEvictionMs}")
+  private long idleEvictionMs;
+
+  /**
+   * Provides the connection pool for GMC. All calls go to the same host, so the per-route limit
+   * is the same as the total limit.
+   *
+   * @return the pooling connection manager
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager gmcConnectionManager() {
+    var connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    return connectionManager;
+  }
+
+  /**
+   * Provides the HTTP client for GMC, with timeouts, keep-alive and eviction of idle connections.
+   * The SOAP headers set by Spring WS are removed first, as the client would otherwise reject the
+   * request for already having a Content-Length.
+   *
+   * @param gmcConnectionManager the pooling connection manager
+   * @return the HTTP client
+   */
+  @Bean
+  public HttpClient gmcHttpClient(PoolingHttpClientConnectionManager gmcConnectionManager) {
+    var requestConfig = RequestConfig.custom()
+        .setConnectTimeout(connectTimeoutMs)
+        .setSocketTimeout(readTimeoutMs)
+        .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+        .build();
+    return HttpClients.custom()
+        .addInterceptorFirst(new RemoveSoapHeadersInterceptor())
+        .setConnectionManager(gmcConnectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(keepAliveStrategy())
+        .evictExpiredConnections()
+        .evictIdleConnections(idleEvictionMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Provides the message sender used by the WebServiceTemplate.
+   *
+   * @param gmcHttpClient the HTTP client for GMC
+   * @return the message sender
+   */
+  @Bean
+  public HttpComponentsMessageSender gmcMessageSender(HttpClient gmcHttpClient) {
+    return new HttpComponentsMessageSender(gmcHttpClient);
+  }
+
+  /**
+   * Publishes the pool size, leased, pending and available connections to the metrics endpoint.
+   *
+   * @param gmcConnectionManager the pooling connection manager
+   * @return the binder for the pool metrics
+   */
+  @Bean
+  public MeterBinder gmcConnectionPoolMetrics(
+      PoolingHttpClientConnectionManager gmcConnectionManager) {
+    return new PoolingHttpClientConnectionManagerMetricsBinder(gmcConnectionManager,
+        GMC_POOL_NAME);
+  }
+
+  /**
+   * Use the keep-alive sent by GMC where there is one, otherwise keep the connection for the
+   * configured time.
+   */
+  private ConnectionKeepAliveStrategy keepAliveStrategy() {
+    return (response, context) -> {
+      long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+          .getKeepAliveDuration(response, context);
+      return serverKeepAlive > 0 ? serverKeepAlive : keepAliveMs;
+    };
+  }
+}
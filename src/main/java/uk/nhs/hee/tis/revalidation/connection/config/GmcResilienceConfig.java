@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures the circuit breaker, rate limiter and bulkheads which protect calls to GMC.
+ */
+@Configuration
+public class GmcResilienceConfig {
+
+  @Value("${app.gmc.resilience.circuitBreaker.failureRateThreshold}")
+  private float failureRateThreshold;
+
+  @Value("${app.gmc.resilience.circuitBreaker.slowCallDurationMs}")
+  private long slowCallDurationMs;
+
+  @Value("${app.gmc.resilience.circuitBreaker.slidingWindowSize}")
+  private int slidingWindowSize;
+
+  @Value("${app.gmc.resilience.circuitBreaker.openStateWaitMs}")
+  private long openStateWaitMs;
+
+  @Value("${app.gmc.resilience.rateLimiter.initialLimitPerSecond}")
+  private int initialLimitPerSecond;
+
+  @Value("${app.gmc.resilience.rateLimiter.permitWaitMs}")
+  private long permitWaitMs;
+
+  @Value("${app.gmc.resilience.bulkhead.add.maxConcurrentCalls}")
+  private int addMaxConcurrentCalls;
+
+  @Value("${app.gmc.resilience.bulkhead.remove.maxConcurrentCalls}")
+  private int removeMaxConcurrentCalls;
+
+  @Value("${app.gmc.resilience.bulkhead.maxWaitMs}")
+  private long bulkheadMaxWaitMs;
+
+  /**
+   * Provides the circuit breaker which fails fast once too many GMC calls fail or are slow. The
+   * rate limiter is applied before it, so calls turned away by the limiter never reach it.
+   *
+   * @return the circuit breaker for GMC
+   */
+  @Bean
+  public CircuitBreaker gmcCircuitBreaker() {
+    return CircuitBreaker.of("gmc", CircuitBreakerConfig.custom()
+        .failureRateThreshold(failureRateThreshold)
+        .slowCallRateThreshold(failureRateThreshold)
+        .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationMs))
+        .slidingWindowSize(slidingWindowSize)
+        .minimumNumberOfCalls(slidingWindowSize)
+        .waitDurationInOpenState(Duration.ofMillis(openStateWaitMs))
+        .build());
+  }
+
+  /**
+   * Provides the token bucket rate limiter for GMC. The limit is adjusted at runtime by
+   * {@link uk.nhs.hee.tis.revalidation.connection.service.GmcCallGuard GmcCallGuard}.
+   *
+   * @return the rate limiter for GMC
+   */
+  @Bean
+  public RateLimiter gmcRateLimiter() {
+    return RateLimiter.of("gmc", RateLimiterConfig.custom()
+        .limitForPeriod(initialLimitPerSecond)
+        .limitRefreshPeriod(Duration.ofSeconds(1))
+        .timeoutDuration(Duration.ofMillis(permitWaitMs))
+        .build());
+  }
+
+  /**
+   * Provides the bulkhead for TryAddDoctor calls.
+   *
+   * @return the bulkhead for adding connections
+   */
+  @Bean
+  public Bulkhead gmcAddBulkhead() {
+    return Bulkhead.of("gmc-add", bulkheadConfig(addMaxConcurrentCalls));
+  }
+
+  /**
+   * Provides the bulkhead for TryRemoveDoctor calls.
+   *
+   * @return the bulkhead for removing connections
+   */
+  @Bean
+  public Bulkhead gmcRemoveBulkhead() {
+    return Bulkhead.of("gmc-remove", bulkheadConfig(removeMaxConcurrentCalls));
+  }
+
+  private BulkheadConfig bulkheadConfig(int maxConcurrentCalls) {
+    return BulkheadConfig.custom()
+        .maxConcurrentCalls(maxConcurrentCalls)
+        .maxWaitDuration(Duration.ofMillis(bulkheadMaxWaitMs))
+        .build();
+  }
+}
@@ -37,7 +37,9 @@ import java.util.Objects;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -46,20 +48,27 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDashboardDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionJobDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.DiscrepancyFacetsDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancyDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancySummaryDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionResponseDto;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionJobRejectedException;
 import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
 import uk.nhs.hee.tis.revalidation.connection.service.ConnectedElasticSearchService;
+import uk.nhs.hee.tis.revalidation.connection.service.ConnectionJobService;
 import uk.nhs.hee.tis.revalidation.connection.service.ConnectionService;
+import uk.nhs.hee.tis.revalidation.connection.service.DashboardElasticSearchService;
 import uk.nhs.hee.tis.revalidation.connection.service.DiscrepanciesElasticSearchService;
 import uk.nhs.hee.tis.revalidation.connection.service.ElasticsearchQueryHelper;
 import uk.nhs.hee.tis.revalidation.connection.service.HiddenDiscrepancyService;
+import uk.nhs.hee.tis.revalidation.connection.service.util.SearchAfterCursor;
 
 @Slf4j
 @RestController
@@ -83,11 +92,15 @@ public class ConnectionController {
   private static final String CONNECTION_LAST_UPDATED_DATE_FROM = "lastConnectionDateTimeFrom";
   private static final String CONNECTION_LAST_UPDATED_DATE_TO = "lastConnectionDateTimeTo";
   private static final String UPDATED_BY = "updatedBy";
+  private static final String CURSOR = "cursor";
+  private static final int PAGE_SIZE = 20;
 
   private ConnectionService connectionService;
   private DiscrepanciesElasticSearchService discrepanciesElasticSearchService;
   private ConnectedElasticSearchService connectedElasticSearchService;
   private HiddenDiscrepancyService hiddenDiscrepancyService;
+  private ConnectionJobService connectionJobService;
+  private DashboardElasticSearchService dashboardElasticSearchService;
 
   /**
    * Constructs a new ConnectionController with the specified services.
@@ -96,15 +109,21 @@ public class ConnectionController {
    * @param discrepanciesElasticSearchService the service for retrieving doctor discrepancies
    * @param connectedElasticSearchService     the service for retrieving connected doctors
    * @param hiddenDiscrepancyService          the service for managing hidden discrepancies
+   * @param connectionJobService              the service for background connection jobs
+   * @param dashboardElasticSearchService     the service for loading all summary tabs at once
    */
   public ConnectionController(ConnectionService connectionService,
       DiscrepanciesElasticSearchService discrepanciesElasticSearchService,
       ConnectedElasticSearchService connectedElasticSearchService,
-      HiddenDiscrepancyService hiddenDiscrepancyService) {
+      HiddenDiscrepancyService hiddenDiscrepancyService,
+      ConnectionJobService connectionJobService,
+      DashboardElasticSearchService dashboardElasticSearchService) {
     this.connectionService = connectionService;
     this.discrepanciesElasticSearchService = discrepanciesElasticSearchService;
     this.connectedElasticSearchService = connectedElasticSearchService;
     this.hiddenDiscrepancyService = hiddenDiscrepancyService;
+    this.connectionJobService = connectionJobService;
+    this.dashboardElasticSearchService = dashboardElasticSearchService;
   }
 
   /**
@@ -148,6 +167,77 @@ public class ConnectionController {
     return ResponseEntity.ok(message);
   }
 
+  /**
+   * POST  /connections/jobs/add : Add connections in a background job.
+   *
+   * @param addDoctorDto the connections to add
+   * @return the ResponseEntity with status 202 (Accepted) and the created job in body, or 503
+   *     (Service Unavailable) when too many jobs are waiting
+   */
+  @ApiOperation(value = "Add GMC connections in the background", notes =
+      "It will create a job to send add connection requests to GMC and return the job",
+      response = ConnectionJobDto.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 202, message = "Add connection job has been created",
+          response = ConnectionJobDto.class),
+      @ApiResponse(code = 503, message = "Too many connection jobs are waiting")})
+  @PostMapping("/jobs/add")
+  public ResponseEntity<ConnectionJobDto> addDoctorJob(
+      @RequestBody final UpdateConnectionDto addDoctorDto) {
+    log.info("Request receive to ADD doctor connection job: {}", addDoctorDto);
+    try {
+      final var job = connectionJobService.submitAddDoctors(addDoctorDto);
+      return ResponseEntity.accepted().body(job);
+    } catch (ConnectionJobRejectedException e) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+  }
+
+  /**
+   * POST  /connections/jobs/remove : Remove connections in a background job.
+   *
+   * @param removeDoctorDto the connections to remove
+   * @return the ResponseEntity with status 202 (Accepted) and the created job in body, or 503
+   *     (Service Unavailable) when too many jobs are waiting
+   */
+  @ApiOperation(value = "Remove GMC connections in the background", notes =
+      "It will create a job to send remove connection requests to GMC and return the job",
+      response = ConnectionJobDto.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 202, message = "Remove connection job has been created",
+          response = ConnectionJobDto.class),
+      @ApiResponse(code = 503, message = "Too many connection jobs are waiting")})
+  @PostMapping("/jobs/remove")
+  public ResponseEntity<ConnectionJobDto> removeDoctorJob(
+      @RequestBody final UpdateConnectionDto removeDoctorDto) {
+    log.info("Request receive to REMOVE doctor connection job: {}", removeDoctorDto);
+    try {
+      final var job = connectionJobService.submitRemoveDoctors(removeDoctorDto);
+      return ResponseEntity.accepted().body(job);
+    } catch (ConnectionJobRejectedException e) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+  }
+
+  /**
+   * GET  /connections/jobs/{jobId} : get the progress of a connection job.
+   *
+   * @param jobId the id of the job
+   * @return the ResponseEntity with status 200 (OK) and the job in body, or 404 (Not Found)
+   */
+  @ApiOperation(value = "Get the progress of a connection job", notes =
+      "It will return the job status and the GMC response for each doctor processed so far",
+      response = ConnectionJobDto.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "Connection job details",
+          response = ConnectionJobDto.class),
+      @ApiResponse(code = 404, message = "Connection job not found")})
+  @GetMapping("/jobs/{jobId}")
+  public ResponseEntity<ConnectionJobDto> getConnectionJob(
+      @PathVariable("jobId") final String jobId) {
+    return ResponseEntity.of(connectionJobService.getJob(jobId));
+  }
+
   /**
    * GET  /connections/{gmcId} : get connection details of the gmcId.
    *
@@ -179,7 +269,10 @@ public class ConnectionController {
    * @param tisDbcs       tis designated body code of the user
    * @param programmeName programme name to filter by
    * @param searchQuery   search query of data to get
-   * @return the ResponseEntity with status 200 (OK) and discrepancies summary in body
+   * @param cursor        opt in to search_after paging: empty for the first page, otherwise the
+   *                      nextCursor of the previous page; pageNumber is then ignored
+   * @return the ResponseEntity with status 200 (OK) and discrepancies summary in body, or 400
+   *     (Bad Request) if the cursor is not one returned by a previous page
    */
   @GetMapping(value = {"/exception", "/discrepancies"})
   public ResponseEntity<ConnectionSummaryDto> getSummaryDiscrepancies(
@@ -216,15 +309,41 @@ public class ConnectionController {
       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
       LocalDate lastConnectionDateTimeTo,
       @RequestParam(name = UPDATED_BY, defaultValue = EMPTY_STRING, required = false)
-      String updatedBy) throws ConnectionQueryException {
+      String updatedBy,
+      @RequestParam(name = CURSOR, required = false) final String cursor)
+      throws ConnectionQueryException {
     final var direction = "asc".equalsIgnoreCase(sortOrder) ? ASC : DESC;
-    final var pageableAndSortable = of(pageNumber, 20,
-        by(direction, ElasticsearchQueryHelper.formatSortFieldForElasticsearchQuery(sortColumn)));
+    final var sort =
+        by(direction, ElasticsearchQueryHelper.formatSortFieldForElasticsearchQuery(sortColumn));
+    final var pageableAndSortable = of(pageNumber, PAGE_SIZE, sort);
 
     searchQuery = getConverter(searchQuery).fromJson().decodeUrl().escapeForSql().toString();
     var searchQueryES = getConverter(searchQuery).fromJson().decodeUrl().escapeForElasticSearch()
         .toString().toLowerCase();
 
+    if (cursor != null) {
+      if (isInvalidCursor(cursor)) {
+        return ResponseEntity.badRequest().build();
+      }
+      return ResponseEntity.ok(
+          discrepanciesElasticSearchService.searchForDiscrepanciesPageWithCursor(
+              searchQueryES,
+              dbcs,
+              tisDbcs,
+              programmeName,
+              membershipEndDateFrom,
+              membershipEndDateTo,
+              submissionDateFrom,
+              submissionDateTo,
+              lastConnectionDateTimeFrom,
+              lastConnectionDateTimeTo,
+              updatedBy,
+              sort,
+              PAGE_SIZE,
+              cursor
+          ));
+    }
+
     final ConnectionSummaryDto connectionSummaryDto =
         discrepanciesElasticSearchService.searchForDiscrepanciesPageWithFilters(
             searchQueryES,
@@ -244,6 +363,66 @@ public class ConnectionController {
     return ResponseEntity.ok(connectionSummaryDto);
   }
 
+  /**
+   * GET  /discrepancies/facets : get the number of discrepancies under each filter value.
+   *
+   * @param dbcs          gmc designated body code of the user
+   * @param tisDbcs       tis designated body code of the user
+   * @param programmeName programme name to filter by
+   * @param searchQuery   search query of data to get
+   * @return the ResponseEntity with status 200 (OK) and discrepancy counts in body
+   */
+  @GetMapping("/discrepancies/facets")
+  public ResponseEntity<DiscrepancyFacetsDto> getDiscrepancyFacets(
+      @RequestParam(name = DESIGNATED_BODY_CODES,
+          required = false, defaultValue = EMPTY_STRING) final List<String> dbcs,
+      @RequestParam(name = TIS_DESIGNATED_BODY_CODES,
+          required = false, defaultValue = EMPTY_STRING) final List<String> tisDbcs,
+      @RequestParam(name = PROGRAMME_NAME,
+          required = false, defaultValue = EMPTY_STRING) final String programmeName,
+      @RequestParam(name = SEARCH_QUERY, defaultValue = EMPTY_STRING, required = false)
+      String searchQuery,
+      @RequestParam(name = MEMBERSHIP_END_DATE_FROM, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate membershipEndDateFrom,
+      @RequestParam(name = MEMBERSHIP_END_DATE_TO, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate membershipEndDateTo,
+      @RequestParam(name = GMC_SUBMISSION_DATE_FROM, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate submissionDateFrom,
+      @RequestParam(name = GMC_SUBMISSION_DATE_TO, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate submissionDateTo,
+      @RequestParam(name = CONNECTION_LAST_UPDATED_DATE_FROM, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate lastConnectionDateTimeFrom,
+      @RequestParam(name = CONNECTION_LAST_UPDATED_DATE_TO, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate lastConnectionDateTimeTo,
+      @RequestParam(name = UPDATED_BY, defaultValue = EMPTY_STRING, required = false)
+      String updatedBy)
+      throws ConnectionQueryException {
+    searchQuery = getConverter(searchQuery).fromJson().decodeUrl().escapeForSql().toString();
+    var searchQueryES = getConverter(searchQuery).fromJson().decodeUrl().escapeForElasticSearch()
+        .toString().toLowerCase();
+
+    return ResponseEntity.ok(
+        discrepanciesElasticSearchService.getDiscrepancyFacets(
+            searchQueryES,
+            dbcs,
+            tisDbcs,
+            programmeName,
+            membershipEndDateFrom,
+            membershipEndDateTo,
+            submissionDateFrom,
+            submissionDateTo,
+            lastConnectionDateTimeFrom,
+            lastConnectionDateTimeTo,
+            updatedBy
+        ));
+  }
+
   /**
    * GET  /connected : get connected summary.
    *
@@ -252,7 +431,10 @@ public class ConnectionController {
    * @param pageNumber  page number of data to get
    * @param dbcs        designated body code of the user
    * @param searchQuery search query of data to get
-   * @return the ResponseEntity with status 200 (OK) and connected summary in body
+   * @param cursor      opt in to search_after paging: empty for the first page, otherwise the
+   *                    nextCursor of the previous page; pageNumber is then ignored
+   * @return the ResponseEntity with status 200 (OK) and connected summary in body, or 400 (Bad
+   *     Request) if the cursor is not one returned by a previous page
    */
   @GetMapping("/connected")
   public ResponseEntity<ConnectionSummaryDto> getSummaryConnected(
@@ -287,15 +469,40 @@ public class ConnectionController {
       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
       LocalDate lastConnectionDateTimeTo,
       @RequestParam(name = UPDATED_BY, defaultValue = EMPTY_STRING, required = false)
-      String updatedBy) throws ConnectionQueryException {
+      String updatedBy,
+      @RequestParam(name = CURSOR, required = false) final String cursor)
+      throws ConnectionQueryException {
     final var direction = "asc".equalsIgnoreCase(sortOrder) ? ASC : DESC;
-    final var pageableAndSortable = of(pageNumber, 20,
-        by(direction, ElasticsearchQueryHelper.formatSortFieldForElasticsearchQuery(sortColumn)));
+    final var sort =
+        by(direction, ElasticsearchQueryHelper.formatSortFieldForElasticsearchQuery(sortColumn));
+    final var pageableAndSortable = of(pageNumber, PAGE_SIZE, sort);
 
     searchQuery = getConverter(searchQuery).fromJson().decodeUrl().escapeForSql().toString();
     var searchQueryES = getConverter(searchQuery).fromJson().decodeUrl().escapeForElasticSearch()
         .toString().toLowerCase();
 
+    if (cursor != null) {
+      if (isInvalidCursor(cursor)) {
+        return ResponseEntity.badRequest().build();
+      }
+      return ResponseEntity.ok(
+          connectedElasticSearchService.searchForConnectionPageWithCursor(
+              searchQueryES,
+              dbcs,
+              programmeName,
+              membershipEndDateFrom,
+              membershipEndDateTo,
+              submissionDateFrom,
+              submissionDateTo,
+              lastConnectionDateTimeFrom,
+              lastConnectionDateTimeTo,
+              updatedBy,
+              sort,
+              PAGE_SIZE,
+              cursor
+          ));
+    }
+
     final ConnectionSummaryDto connectionSummaryDto =
         connectedElasticSearchService.searchForConnectionPageWithFilters(
             searchQueryES,
@@ -358,6 +565,80 @@ public class ConnectionController {
     return ResponseEntity.ok(hiddenDiscrepancies);
   }
 
+  /**
+   * GET  /dashboard : get the connected, discrepancies and hidden discrepancies summaries at once.
+   *
+   * @param sortColumn    column to be sorted
+   * @param sortOrder     sorting order (ASC or DESC)
+   * @param pageNumber    page number of data to get
+   * @param dbcs          gmc designated body code of the user
+   * @param tisDbcs       tis designated body code of the user
+   * @param programmeName programme name to filter by
+   * @param searchQuery   search query of data to get
+   * @return the ResponseEntity with status 200 (OK) and the three summaries in body
+   */
+  @GetMapping("/dashboard")
+  public ResponseEntity<ConnectionDashboardDto> getSummaryDashboard(
+      @RequestParam(name = SORT_COLUMN, defaultValue = GMC_REFERENCE_NUMBER,
+          required = false) final String sortColumn,
+      @RequestParam(name = SORT_ORDER, defaultValue = "desc",
+          required = false) final String sortOrder,
+      @RequestParam(name = PAGE_NUMBER, defaultValue = PAGE_NUMBER_VALUE,
+          required = false) final int pageNumber,
+      @RequestParam(name = DESIGNATED_BODY_CODES,
+          required = false, defaultValue = EMPTY_STRING) final List<String> dbcs,
+      @RequestParam(name = TIS_DESIGNATED_BODY_CODES,
+          required = false, defaultValue = EMPTY_STRING) final List<String> tisDbcs,
+      @RequestParam(name = PROGRAMME_NAME,
+          required = false, defaultValue = EMPTY_STRING) final String programmeName,
+      @RequestParam(name = SEARCH_QUERY, defaultValue = EMPTY_STRING, required = false)
+      String searchQuery,
+      @RequestParam(name = MEMBERSHIP_END_DATE_FROM, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate membershipEndDateFrom,
+      @RequestParam(name = MEMBERSHIP_END_DATE_TO, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate membershipEndDateTo,
+      @RequestParam(name = GMC_SUBMISSION_DATE_FROM, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate submissionDateFrom,
+      @RequestParam(name = GMC_SUBMISSION_DATE_TO, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate submissionDateTo,
+      @RequestParam(name = CONNECTION_LAST_UPDATED_DATE_FROM, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate lastConnectionDateTimeFrom,
+      @RequestParam(name = CONNECTION_LAST_UPDATED_DATE_TO, required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+      LocalDate lastConnectionDateTimeTo,
+      @RequestParam(name = UPDATED_BY, defaultValue = EMPTY_STRING, required = false)
+      String updatedBy)
+      throws ConnectionQueryException {
+    final var direction = "asc".equalsIgnoreCase(sortOrder) ? ASC : DESC;
+    final var pageableAndSortable = of(pageNumber, PAGE_SIZE,
+        by(direction, ElasticsearchQueryHelper.formatSortFieldForElasticsearchQuery(sortColumn)));
+
+    searchQuery = getConverter(searchQuery).fromJson().decodeUrl().escapeForSql().toString();
+    var searchQueryES = getConverter(searchQuery).fromJson().decodeUrl().escapeForElasticSearch()
+        .toString().toLowerCase();
+
+    return ResponseEntity.ok(
+        dashboardElasticSearchService.searchForDashboard(
+            searchQueryES,
+            dbcs,
+            tisDbcs,
+            programmeName,
+            membershipEndDateFrom,
+            membershipEndDateTo,
+            submissionDateFrom,
+            submissionDateTo,
+            lastConnectionDateTimeFrom,
+            lastConnectionDateTimeTo,
+            updatedBy,
+            pageableAndSortable
+        ));
+  }
+
   /**
    * POST  /discrepancies/hidden : Hide discrepancies for a list of GMC IDs.
    *
@@ -404,4 +685,8 @@ public class ConnectionController {
       return ResponseEntity.notFound().build();
     }
   }
+
+  private static boolean isInvalidCursor(String cursor) {
+    return StringUtils.hasText(cursor) && !SearchAfterCursor.isValid(cursor);
+  }
 }
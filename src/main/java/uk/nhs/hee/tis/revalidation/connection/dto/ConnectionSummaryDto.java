@@ -33,4 +33,6 @@ public class ConnectionSummaryDto {
   private long totalPages;
   private long totalResults;
   private List<ConnectionInfoDto> connections;
+  private String nextCursor;
+  private boolean hasNextPage;
 }
@@ -42,4 +42,5 @@ public class HiddenDiscrepancySummaryDto {
   private long totalPages;
   private long totalResults;
   List<HiddenDiscrepancyInfoDto> hiddenDiscrepancies;
+  private boolean hasNextPage;
 }
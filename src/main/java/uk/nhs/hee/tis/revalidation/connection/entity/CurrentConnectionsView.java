@@ -40,12 +40,16 @@ import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 @Data
 @Document(indexName = "current_connections", createIndex = false)
+@Setting(settingPath = "/elasticsearch/doctor-index-settings.json")
 public class CurrentConnectionsView {
 
   @Id
@@ -55,10 +59,22 @@ public class CurrentConnectionsView {
 
   private Long tcsPersonId;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete",
+          searchAnalyzer = "autocomplete_search")})
   private String gmcReferenceNumber;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete",
+          searchAnalyzer = "autocomplete_search")})
   private String doctorFirstName;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete",
+          searchAnalyzer = "autocomplete_search")})
   private String doctorLastName;
 
   @Field(type = FieldType.Date, format = DateFormat.custom, pattern = "uuuu-MM-dd")
@@ -69,8 +85,16 @@ public class CurrentConnectionsView {
 
   private String membershipType;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "normalised", type = FieldType.Keyword,
+          normalizer = "dbc_normalizer")})
   private String designatedBody;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "normalised", type = FieldType.Keyword,
+          normalizer = "dbc_normalizer")})
   private String tcsDesignatedBody;
 
   private String programmeOwner;
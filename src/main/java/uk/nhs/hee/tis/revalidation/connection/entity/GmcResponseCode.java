@@ -39,7 +39,11 @@ public enum GmcResponseCode {
   DOCTOR_NOT_ASSOCIATED_WITH_DESIGNATED_BODY("140",
       "Doctor not associated with your Designated Body"),
   DOCTOR_DB_HISTORY_LOCKED("160",
-      "Doctor’s DB History is locked, please contact the GMC Revalidation team");
+      "Doctor’s DB History is locked, please contact the GMC Revalidation team"),
+  // Not returned by GMC, used when the request was not sent because GMC is unavailable
+  GMC_UNAVAILABLE("-1", "GMC is currently unavailable, please try again later"),
+  // Not returned by GMC, used when the request was sent but GMC did not respond in time
+  GMC_TIMEOUT("-2", "GMC did not respond in time, please check the connection before retrying");
 
   final String code;
   final String message;
@@ -29,6 +29,7 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.experimental.SuperBuilder;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
@@ -39,12 +40,21 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @NoArgsConstructor
 @SuperBuilder
 @EqualsAndHashCode(callSuper = true)
-@CompoundIndex(def = "{'gmcId':1,'hiddenForDesignatedBodyCode':1}",
-    name = "gmc_dbc_idx",
-    unique = true)
+@CompoundIndexes({
+    @CompoundIndex(def = "{'gmcId':1,'hiddenForDesignatedBodyCode':1}",
+        name = "gmc_dbc_idx",
+        unique = true),
+    @CompoundIndex(def = "{'hiddenUntilDate':1,'gmcId':1}",
+        name = HiddenDiscrepancy.HIDDEN_UNTIL_GMC_INDEX)
+})
 @Document(collection = "hiddenDiscrepancy")
 public class HiddenDiscrepancy extends Discrepancy {
 
+  /**
+   * The index which covers the query for the GMC IDs of expired hidden discrepancies.
+   */
+  public static final String HIDDEN_UNTIL_GMC_INDEX = "hidden_until_gmc_idx";
+
   private String hiddenForDesignatedBodyCode;
   private String hiddenBy;
   private String reason;
@@ -44,6 +44,9 @@ import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 @NoArgsConstructor
 @AllArgsConstructor
@@ -51,6 +54,7 @@ import org.springframework.data.elasticsearch.annotations.FieldType;
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 @Document(indexName = "masterdoctorindex")
+@Setting(settingPath = "/elasticsearch/doctor-index-settings.json")
 public class MasterDoctorView {
 
   @Id
@@ -60,10 +64,22 @@ public class MasterDoctorView {
 
   private Long tcsPersonId;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete",
+          searchAnalyzer = "autocomplete_search")})
   private String gmcReferenceNumber;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete",
+          searchAnalyzer = "autocomplete_search")})
   private String doctorFirstName;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "autocomplete", type = FieldType.Text, analyzer = "autocomplete",
+          searchAnalyzer = "autocomplete_search")})
   private String doctorLastName;
 
   @JsonDeserialize(using = LocalDateDeserializer.class)
@@ -76,8 +92,16 @@ public class MasterDoctorView {
 
   private String membershipType;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "normalised", type = FieldType.Keyword,
+          normalizer = "dbc_normalizer")})
   private String designatedBody;
 
+  @MultiField(mainField = @Field(type = FieldType.Text), otherFields = {
+      @InnerField(suffix = "keyword", type = FieldType.Keyword),
+      @InnerField(suffix = "normalised", type = FieldType.Keyword,
+          normalizer = "dbc_normalizer")})
   private String tcsDesignatedBody;
 
   private String programmeOwner;
@@ -0,0 +1,46 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.event;
+
+import java.util.Set;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An application event that is published when discrepancies are hidden or shown. The event
+ * contains the GMC IDs of the doctors whose hidden discrepancies have changed.
+ */
+@Getter
+public class HiddenDiscrepanciesChangedApplicationEvent extends ApplicationEvent {
+
+  private final Set<String> gmcIds;
+
+  /**
+   * Create a HiddenDiscrepanciesChangedApplicationEvent.
+   *
+   * @param source the GMC IDs of the doctors whose hidden discrepancies have changed
+   */
+  public HiddenDiscrepanciesChangedApplicationEvent(Set<String> source) {
+    super(source);
+    this.gmcIds = source;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.event.listener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
+import uk.nhs.hee.tis.revalidation.connection.event.HiddenDiscrepanciesChangedApplicationEvent;
+import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyRepository;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService;
+import uk.nhs.hee.tis.revalidation.connection.service.SearchResultCache;
+
+/**
+ * Listens for HiddenDiscrepanciesChangedApplicationEvent events.
+ *
+ * <p>The master index is updated off the thread which published the event. The GMC IDs of events
+ * published while an update is waiting or running are collected, so a burst of changes, such as a
+ * bulk connection request, is written with one read and one index update rather than one per
+ * doctor.
+ */
+@Component
+@Slf4j
+public class HiddenDiscrepanciesChangedApplicationEventListener {
+
+  private final HiddenDiscrepancyRepository hiddenDiscrepancyRepository;
+  private final MasterElasticSearchService masterElasticSearchService;
+  private final SearchResultCache searchResultCache;
+  private final TaskExecutor hiddenDiscrepancyIndexExecutor;
+  private final Set<String> pendingGmcIds = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean updateScheduled = new AtomicBoolean();
+
+  /**
+   * Create a listener for HiddenDiscrepanciesChangedApplicationEvent Events.
+   *
+   * @param hiddenDiscrepancyRepository    the repository of hidden discrepancies
+   * @param masterElasticSearchService     the service to update the master index
+   * @param searchResultCache              the cache of search results to clear once the index
+   *                                       has been updated
+   * @param hiddenDiscrepancyIndexExecutor the executor the index updates are run on
+   */
+  public HiddenDiscrepanciesChangedApplicationEventListener(
+      HiddenDiscrepancyRepository hiddenDiscrepancyRepository,
+      MasterElasticSearchService masterElasticSearchService,
+      SearchResultCache searchResultCache,
+      @Qualifier("hiddenDiscrepancyIndexExecutor") TaskExecutor hiddenDiscrepancyIndexExecutor) {
+    this.hiddenDiscrepancyRepository = hiddenDiscrepancyRepository;
+    this.masterElasticSearchService = masterElasticSearchService;
+    this.searchResultCache = searchResultCache;
+    this.hiddenDiscrepancyIndexExecutor = hiddenDiscrepancyIndexExecutor;
+  }
+
+  /**
+   * Handle HiddenDiscrepanciesChangedApplicationEvent events by scheduling a copy of the current
+   * hidden discrepancies of each doctor to the master index. A failure is logged rather than
+   * thrown, as the change has been saved and a full hidden discrepancy sync will repair the index.
+   *
+   * @param event the event containing the GMC IDs of the changed doctors
+   */
+  @EventListener
+  public void handleHiddenDiscrepanciesChangedEvent(
+      HiddenDiscrepanciesChangedApplicationEvent event) {
+    if (event.getGmcIds() == null || event.getGmcIds().isEmpty()) {
+      return;
+    }
+    pendingGmcIds.addAll(event.getGmcIds());
+    if (updateScheduled.compareAndSet(false, true)) {
+      try {
+        hiddenDiscrepancyIndexExecutor.execute(this::updatePending);
+      } catch (TaskRejectedException e) {
+        updateScheduled.set(false);
+        // the IDs stay pending and are included in the update scheduled by the next change
+        log.error("Failed to schedule the master index update of hidden discrepancies for GMC "
+            + "IDs: {}", event.getGmcIds(), e);
+      }
+    }
+  }
+
+  void updatePending() {
+    // cleared first, so an event arriving while the pending IDs are taken schedules another update
+    updateScheduled.set(false);
+    Set<String> gmcIds = new HashSet<>();
+    for (var iterator = pendingGmcIds.iterator(); iterator.hasNext(); ) {
+      gmcIds.add(iterator.next());
+      iterator.remove();
+    }
+    if (gmcIds.isEmpty()) {
+      return;
+    }
+    try {
+      updateMasterIndex(gmcIds);
+    } catch (RuntimeException e) {
+      log.error("Failed to update hidden discrepancies in the master index for GMC IDs: {}",
+          gmcIds, e);
+    }
+  }
+
+  /**
+   * Copy the current hidden discrepancies of each doctor to the master index, then clear the
+   * cached search results, which would otherwise still show the doctors as they were. A failure is
+   * thrown, so a message carrying the change is redelivered or dead-lettered rather than lost.
+   *
+   * @param gmcIds the GMC IDs of the changed doctors
+   */
+  public void updateMasterIndex(Collection<String> gmcIds) {
+    Map<String, List<HiddenDiscrepancy>> hiddenDiscrepanciesByGmcId = new HashMap<>();
+    gmcIds.forEach(gmcId -> hiddenDiscrepanciesByGmcId.put(gmcId, new ArrayList<>()));
+    hiddenDiscrepancyRepository.findByGmcIdIn(gmcIds).forEach(hiddenDiscrepancy ->
+        hiddenDiscrepanciesByGmcId.get(hiddenDiscrepancy.getGmcId()).add(hiddenDiscrepancy));
+    long updated = masterElasticSearchService.updateHiddenDiscrepancies(
+        hiddenDiscrepanciesByGmcId);
+    searchResultCache.invalidateAll();
+    log.info("Updated hidden discrepancies of {} master index records for {} GMC IDs",
+        updated, hiddenDiscrepanciesByGmcId.size());
+  }
+}
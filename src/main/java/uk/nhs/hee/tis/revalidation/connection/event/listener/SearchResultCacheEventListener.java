@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.event.listener;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import uk.nhs.hee.tis.revalidation.connection.event.ConnectionChangedApplicationEvent;
+import uk.nhs.hee.tis.revalidation.connection.service.SearchResultCache;
+
+/**
+ * Clears the cached search results when a doctor's connection changes.
+ */
+@Component
+public class SearchResultCacheEventListener {
+
+  private final SearchResultCache searchResultCache;
+
+  /**
+   * Create a listener which clears the search result cache.
+   *
+   * @param searchResultCache the cache of search results
+   */
+  public SearchResultCacheEventListener(SearchResultCache searchResultCache) {
+    this.searchResultCache = searchResultCache;
+  }
+
+  /**
+   * Handle ConnectionChangedApplicationEvent events by discarding every cached search result, as
+   * the doctor may have moved between the connected and discrepancies results. The index is
+   * updated by the integration service after this, so results cached in between stay until the
+   * TTL passes.
+   *
+   * @param event the event containing the connection log information
+   */
+  @EventListener
+  public void handleConnectionChangedEvent(ConnectionChangedApplicationEvent event) {
+    searchResultCache.invalidateAll();
+  }
+}
@@ -0,0 +1,364 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package uk.nhs.hee.tis.revalidation.connection.message;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes {@link ConnectionMessage}s in batches on a single channel, and waits for the publisher
+ * confirms of each batch before sending the next.
+ *
+ * <p>Messages are held in a bounded buffer. When the buffer is full, {@link #publish} blocks until
+ * there is space, so a large bulk update cannot outrun the broker. A message which is nacked, or
+ * not confirmed within the timeout, is published again after a backoff which doubles with each
+ * retry, so a message which reached the broker without its confirm may be delivered twice. Once
+ * the attempts run out, the message is logged and counted as unconfirmed. Attempts which fail
+ * because the broker cannot be reached are not counted, so messages are kept until it is back.
+ * While messages wait to be retried no new messages are taken from the buffer, so the buffer
+ * fills and {@link #publish} blocks rather than the retries growing while the broker is down.
+ *
+ * <p>On shutdown the publisher stops after the web server and the rabbit listeners, and first
+ * waits for the GMC calls on the {@code gmcRequestExecutor} to finish, so the messages for them
+ * are still published. Messages waiting to be retried are then published without their backoff,
+ * and every failed attempt is counted, so shutdown is not held up by an unreachable broker.
+ */
+@Slf4j
+@Component
+public class ConnectionMessagePublisher implements SmartLifecycle {
+
+  /**
+   * Stopped after the web server and the rabbit listener containers, which are in later phases.
+   */
+  static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 1024;
+
+  private static final long IDLE_POLL_MS = 500;
+
+  private final RabbitTemplate rabbitTemplate;
+  private final ThreadPoolTaskExecutor gmcRequestExecutor;
+  private final BlockingQueue<ConnectionMessage> buffer;
+  private final DelayQueue<PendingMessage> retries = new DelayQueue<>();
+  private final Counter unconfirmedCounter;
+  private final String exchange;
+  private final String routingKey;
+  private final int batchSize;
+  private final long lingerMs;
+  private final long confirmTimeoutMs;
+  private final int maxAttempts;
+  private final long retryBackoffMs;
+  private final long maxRetryBackoffMs;
+
+  private volatile boolean running;
+  private Thread publisherThread;
+
+  /**
+   * Constructs a new ConnectionMessagePublisher.
+   *
+   * @param rabbitTemplate     the template used to publish the messages
+   * @param gmcRequestExecutor the executor of the GMC calls which publish the messages
+   * @param meterRegistry      the registry for the unconfirmed message count
+   * @param exchange           the exchange to publish to
+   * @param routingKey         the routing key for connection messages
+   * @param bufferCapacity     the number of messages which can wait to be published
+   * @param batchSize          the maximum number of messages published together
+   * @param lingerMs           how long to wait for more messages to fill a batch
+   * @param confirmTimeoutMs   how long to wait for the confirms of a batch
+   * @param maxAttempts        how many times a message is published before it is given up on
+   * @param retryBackoffMs     how long to wait before publishing a failed message again
+   * @param maxRetryBackoffMs  the longest wait before publishing a failed message again
+   */
+  public ConnectionMessagePublisher(RabbitTemplate rabbitTemplate,
+      @Qualifier("gmcRequestExecutor") ThreadPoolTaskExecutor gmcRequestExecutor,
+      MeterRegistry meterRegistry,
+      @Value("${app.rabbit.reval.exchange}") String exchange,
+      @Value("${app.rabbit.reval.routingKey.connection.manualupdate}") String routingKey,
+      @Value("${app.rabbit.reval.publisher.bufferCapacity}") int bufferCapacity,
+      @Value("${app.rabbit.reval.publisher.batchSize}") int batchSize,
+      @Value("${app.rabbit.reval.publisher.lingerMs}") long lingerMs,
+      @Value("${app.rabbit.reval.publisher.confirmTimeoutMs}") long confirmTimeoutMs,
+      @Value("${app.rabbit.reval.publisher.maxAttempts}") int maxAttempts,
+      @Value("${app.rabbit.reval.publisher.retryBackoffMs}") long retryBackoffMs,
+      @Value("${app.rabbit.reval.publisher.maxRetryBackoffMs}") long maxRetryBackoffMs) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.gmcRequestExecutor = gmcRequestExecutor;
+    this.unconfirmedCounter = meterRegistry.counter("connection.messages.unconfirmed");
+    this.exchange = exchange;
+    this.routingKey = routingKey;
+    this.buffer = new ArrayBlockingQueue<>(bufferCapacity);
+    this.batchSize = batchSize;
+    this.lingerMs = lingerMs;
+    this.confirmTimeoutMs = confirmTimeoutMs;
+    this.maxAttempts = maxAttempts;
+    this.retryBackoffMs = retryBackoffMs;
+    this.maxRetryBackoffMs = maxRetryBackoffMs;
+  }
+
+  /**
+   * Add a message to be published, waiting for space in the buffer if it is full.
+   *
+   * @param connectionMessage the message to publish
+   */
+  public void publish(ConnectionMessage connectionMessage) {
+    try {
+      buffer.put(connectionMessage);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(
+          "Interrupted waiting to publish message for " + connectionMessage.getGmcId(), e);
+    }
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    publisherThread = new Thread(this::publishUntilStopped, "connection-message-publisher");
+    publisherThread.start();
+  }
+
+  @Override
+  public void stop() {
+    // waits for the GMC calls in progress, as each publishes its message once GMC has responded
+    gmcRequestExecutor.shutdown();
+    running = false;
+    try {
+      publisherThread.join(IDLE_POLL_MS + lingerMs + confirmTimeoutMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    publishPending();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  /**
+   * Publish everything currently in the buffer, in batches, along with any messages to retry
+   * whether or not their backoff has passed.
+   */
+  void publishPending() {
+    final List<PendingMessage> batch = new ArrayList<>(batchSize);
+    while (true) {
+      takeAllRetries(batch);
+      drainBuffer(batch);
+      if (batch.isEmpty()) {
+        return;
+      }
+      publishBatch(batch);
+      batch.clear();
+    }
+  }
+
+  private void publishUntilStopped() {
+    while (running) {
+      try {
+        final var batch = nextBatch();
+        if (!batch.isEmpty()) {
+          publishBatch(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("Failed to publish connection messages", e);
+      }
+    }
+  }
+
+  private List<PendingMessage> nextBatch() throws InterruptedException {
+    final List<PendingMessage> batch = new ArrayList<>(batchSize);
+    if (!retries.isEmpty()) {
+      final var retry = retries.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+      if (retry != null) {
+        batch.add(retry);
+        takeRetries(batch);
+      }
+      return batch;
+    }
+    final var first = buffer.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return batch;
+    }
+    batch.add(PendingMessage.first(first));
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    while (batch.size() < batchSize) {
+      drainBuffer(batch);
+      final long remaining = deadline - System.nanoTime();
+      if (batch.size() >= batchSize || remaining <= 0) {
+        break;
+      }
+      final var next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(PendingMessage.first(next));
+    }
+    return batch;
+  }
+
+  private void takeRetries(List<PendingMessage> batch) {
+    PendingMessage retry;
+    while (batch.size() < batchSize && (retry = retries.poll()) != null) {
+      batch.add(retry);
+    }
+  }
+
+  private void takeAllRetries(List<PendingMessage> batch) {
+    final Iterator<PendingMessage> iterator = retries.iterator();
+    while (batch.size() < batchSize && iterator.hasNext()) {
+      batch.add(iterator.next());
+      iterator.remove();
+    }
+  }
+
+  private void drainBuffer(List<PendingMessage> batch) {
+    final List<ConnectionMessage> messages = new ArrayList<>();
+    buffer.drainTo(messages, batchSize - batch.size());
+    messages.forEach(message -> batch.add(PendingMessage.first(message)));
+  }
+
+  private void publishBatch(List<PendingMessage> batch) {
+    final List<CorrelationData> correlations = batch.stream()
+        .map(pending -> new CorrelationData(pending.message.getGmcId()))
+        .collect(Collectors.toList());
+    try {
+      rabbitTemplate.invoke(operations -> {
+        for (int i = 0; i < batch.size(); i++) {
+          operations.convertAndSend(exchange, routingKey, batch.get(i).message,
+              correlations.get(i));
+        }
+        return null;
+      });
+    } catch (AmqpConnectException e) {
+      // the broker was not reached, so while running this does not use up an attempt
+      batch.forEach(pending -> retryOrRecordUnconfirmed(pending, e.getMessage(), running));
+      return;
+    } catch (AmqpException e) {
+      batch.forEach(pending -> retryOrRecordUnconfirmed(pending, e.getMessage()));
+      return;
+    }
+    log.debug("Published {} connection messages", batch.size());
+    awaitConfirms(batch, correlations);
+  }
+
+  private void awaitConfirms(List<PendingMessage> batch, List<CorrelationData> correlations) {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+    for (int i = 0; i < batch.size(); i++) {
+      try {
+        final var confirm = correlations.get(i).getFuture()
+            .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (!confirm.isAck()) {
+          retryOrRecordUnconfirmed(batch.get(i), "nacked: " + confirm.getReason());
+        }
+      } catch (TimeoutException e) {
+        retryOrRecordUnconfirmed(batch.get(i),
+            "not confirmed within " + confirmTimeoutMs + "ms");
+      } catch (ExecutionException e) {
+        retryOrRecordUnconfirmed(batch.get(i), e.getCause().getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        retryOrRecordUnconfirmed(batch.get(i), "interrupted waiting for confirm");
+      }
+    }
+  }
+
+  private void retryOrRecordUnconfirmed(PendingMessage pending, String reason) {
+    retryOrRecordUnconfirmed(pending, reason, false);
+  }
+
+  private void retryOrRecordUnconfirmed(PendingMessage pending, String reason,
+      boolean brokerUnreachable) {
+    final int attempts = brokerUnreachable ? pending.attempts : pending.attempts + 1;
+    if (attempts < maxAttempts) {
+      final long backoffMs = pending.backoffMs == 0 ? retryBackoffMs
+          : Math.min(pending.backoffMs * 2, maxRetryBackoffMs);
+      log.warn("Connection message for gmcId {} was not confirmed by the broker, publishing it "
+          + "again in {}ms: {}", pending.message.getGmcId(), backoffMs, reason);
+      retries.add(new PendingMessage(pending.message, attempts, backoffMs));
+      return;
+    }
+    unconfirmedCounter.increment();
+    log.error("Connection message was not confirmed by the broker after {} attempts: {}: {}",
+        attempts, reason, pending.message);
+  }
+
+  /**
+   * A message waiting to be published, with the number of times it has already been published
+   * and the backoff it is waiting out before it is published again.
+   */
+  private static final class PendingMessage implements Delayed {
+
+    private final ConnectionMessage message;
+    private final int attempts;
+    private final long backoffMs;
+    private final long notBeforeNanos;
+
+    private PendingMessage(ConnectionMessage message, int attempts, long backoffMs) {
+      this.message = message;
+      this.attempts = attempts;
+      this.backoffMs = backoffMs;
+      this.notBeforeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+    }
+
+    private static PendingMessage first(ConnectionMessage message) {
+      return new PendingMessage(message, 0, 0);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(notBeforeNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(notBeforeNanos, ((PendingMessage) other).notBeforeNanos);
+    }
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.message;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.mongodb.MongoCommandException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.core.ClockProvider;
+import net.javacrumbs.shedlock.core.LockConfiguration;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.OutboxRepository;
+
+/**
+ * Relays the messages saved to the outbox to the exchange, in batches, and deletes each message
+ * once the broker has confirmed it.
+ *
+ * <p>New messages are read from a change stream of the outbox, whose resume token is saved after
+ * each batch so a restart carries on where the relay stopped. Messages saved before the stream
+ * was opened, or not confirmed by the broker, are read from the outbox itself while the stream is
+ * idle. Only messages still in the outbox are sent, so a message is relayed at least once and
+ * normally exactly once.
+ *
+ * <p>Every instance starts a relay, but only the one holding the {@value #LOCK_NAME} lock relays
+ * messages; the others poll for the lock so one of them takes over when the leader stops or its
+ * lease runs out. The leader renews its lease while relaying and stops as soon as a renewal fails.
+ */
+@Slf4j
+@Component
+public class OutboxRelay implements SmartLifecycle {
+
+  static final String LOCK_NAME = "outboxRelay";
+
+  private static final long RETRY_DELAY_MS = 5000;
+
+  /**
+   * Server errors for a resume token which is no longer in the oplog.
+   */
+  private static final Set<Integer> HISTORY_LOST_ERRORS = Set.of(136, 280, 286);
+
+  private final OutboxRepository outboxRepository;
+  private final RabbitTemplate rabbitTemplate;
+  private final LockProvider lockProvider;
+  private final Counter unconfirmedCounter;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long maxAwaitMs;
+  private final long confirmTimeoutMs;
+  private final Duration lease;
+
+  private volatile boolean running;
+  private Thread relayThread;
+  private SimpleLock leaderLock;
+  private long leaseRenewAt;
+
+  /**
+   * Constructs a new OutboxRelay.
+   *
+   * @param outboxRepository the repository of the outbox
+   * @param rabbitTemplate   the template used to publish the messages
+   * @param lockProvider     the provider of the lock held by the relaying instance
+   * @param meterRegistry    the registry for the unconfirmed message count
+   * @param enabled          whether messages are written to the outbox and relayed
+   * @param batchSize        the maximum number of messages relayed together
+   * @param maxAwaitMs       how long to wait for new messages before sending a partial batch
+   * @param confirmTimeoutMs how long to wait for the confirms of a batch
+   * @param leaseMs          how long the lock is held without being renewed
+   */
+  public OutboxRelay(OutboxRepository outboxRepository, RabbitTemplate rabbitTemplate,
+      LockProvider lockProvider, MeterRegistry meterRegistry,
+      @Value("${app.reval.outbox.enabled}") boolean enabled,
+      @Value("${app.reval.outbox.batchSize}") int batchSize,
+      @Value("${app.reval.outbox.maxAwaitMs}") long maxAwaitMs,
+      @Value("${app.rabbit.reval.publisher.confirmTimeoutMs}") long confirmTimeoutMs,
+      @Value("${app.reval.outbox.leaseMs}") long leaseMs) {
+    this.outboxRepository = outboxRepository;
+    this.rabbitTemplate = rabbitTemplate;
+    this.lockProvider = lockProvider;
+    this.unconfirmedCounter = meterRegistry.counter("outbox.messages.unconfirmed");
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.maxAwaitMs = maxAwaitMs;
+    this.confirmTimeoutMs = confirmTimeoutMs;
+    this.lease = Duration.ofMillis(leaseMs);
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    running = true;
+    relayThread = new Thread(this::relayUntilStopped, "outbox-relay");
+    relayThread.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    if (relayThread == null) {
+      return;
+    }
+    try {
+      relayThread.join(maxAwaitMs + confirmTimeoutMs);
+      // an instance waiting for the lock may be part way through its pause
+      relayThread.interrupt();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void relayUntilStopped() {
+    while (running) {
+      if (!acquireLeadership()) {
+        pause(lease.toMillis() / 2);
+        continue;
+      }
+      try {
+        relayChanges();
+      } catch (MongoCommandException e) {
+        if (HISTORY_LOST_ERRORS.contains(e.getErrorCode())) {
+          // the outbox still holds every message not relayed, so start again from now
+          log.warn("Outbox change stream can no longer be resumed: {}", e.getErrorMessage());
+          outboxRepository.saveResumeToken(null);
+        } else {
+          waitToRetry(e);
+        }
+      } catch (RuntimeException e) {
+        waitToRetry(e);
+      }
+    }
+    releaseLeadership();
+  }
+
+  /**
+   * Take the relay lock, unless this instance already holds it.
+   *
+   * @return true if this instance holds the lock
+   */
+  boolean acquireLeadership() {
+    if (leaderLock != null) {
+      return true;
+    }
+    final var lock = lockProvider.lock(
+        new LockConfiguration(ClockProvider.now(), LOCK_NAME, lease, Duration.ZERO));
+    if (lock.isPresent()) {
+      log.info("Outbox relay lock acquired, relaying outbox messages");
+      leaderLock = lock.get();
+      leaseRenewAt = System.nanoTime() + lease.toNanos() / 2;
+    }
+    return leaderLock != null;
+  }
+
+  /**
+   * Check this instance still holds the relay lock, renewing the lease once half of it has run.
+   *
+   * @return true if this instance still holds the lock
+   */
+  boolean holdsLeadership() {
+    if (leaderLock == null) {
+      return false;
+    }
+    if (System.nanoTime() - leaseRenewAt < 0) {
+      return true;
+    }
+    final var renewed = leaderLock.extend(lease, Duration.ZERO);
+    if (renewed.isEmpty()) {
+      log.warn("Outbox relay lock lost, no longer relaying outbox messages");
+      leaderLock = null;
+      return false;
+    }
+    leaderLock = renewed.get();
+    leaseRenewAt = System.nanoTime() + lease.toNanos() / 2;
+    return true;
+  }
+
+  private void releaseLeadership() {
+    if (leaderLock != null) {
+      leaderLock.unlock();
+      leaderLock = null;
+    }
+  }
+
+  /**
+   * Relay the messages inserted into the outbox until the relay is stopped.
+   */
+  void relayChanges() {
+    try (var changes = outboxRepository.watchInserts(outboxRepository.findResumeToken(),
+        batchSize, maxAwaitMs)) {
+      boolean backlogPending = true;
+      final List<OutboxMessage> batch = new ArrayList<>(batchSize);
+      while (running && holdsLeadership()) {
+        final var change = changes.tryNext();
+        if (change != null && change.getFullDocument() != null) {
+          batch.add(outboxRepository.read(change.getFullDocument()));
+        }
+        if (batch.size() >= batchSize || (change == null && !batch.isEmpty())) {
+          backlogPending |= !relay(batch);
+          outboxRepository.saveResumeToken(changes.getResumeToken());
+          batch.clear();
+        } else if (change == null && backlogPending) {
+          backlogPending = !relayBacklog();
+        }
+      }
+    }
+  }
+
+  /**
+   * Relay the messages already in the outbox, oldest first.
+   *
+   * @return true if every message was confirmed
+   */
+  boolean relayBacklog() {
+    List<OutboxMessage> oldest;
+    do {
+      oldest = outboxRepository.findOldest(batchSize);
+      if (!relay(oldest)) {
+        return false;
+      }
+    } while (running && holdsLeadership() && oldest.size() == batchSize);
+    return true;
+  }
+
+  /**
+   * Publish the messages which are still in the outbox, and delete those the broker confirms.
+   *
+   * @param messages the messages to relay
+   * @return true if every message still in the outbox was confirmed
+   */
+  boolean relay(List<OutboxMessage> messages) {
+    if (messages.isEmpty()) {
+      return true;
+    }
+    final Set<String> remainingIds = new HashSet<>(outboxRepository.findRemainingIds(
+        messages.stream().map(OutboxMessage::getId).collect(Collectors.toList())));
+    final List<OutboxMessage> toSend = messages.stream()
+        .filter(message -> remainingIds.contains(message.getId()))
+        .collect(Collectors.toList());
+    if (toSend.isEmpty()) {
+      return true;
+    }
+
+    final List<CorrelationData> correlations = toSend.stream()
+        .map(message -> new CorrelationData(message.getId()))
+        .collect(Collectors.toList());
+    rabbitTemplate.invoke(operations -> {
+      for (int i = 0; i < toSend.size(); i++) {
+        final var message = toSend.get(i);
+        operations.send(message.getExchange(), message.getRoutingKey(), toAmqpMessage(message),
+            correlations.get(i));
+      }
+      return null;
+    });
+    final var confirmedIds = awaitConfirms(correlations);
+    if (!confirmedIds.isEmpty()) {
+      outboxRepository.deleteAllById(confirmedIds);
+    }
+    log.debug("Relayed {} of {} outbox messages", confirmedIds.size(), toSend.size());
+    return confirmedIds.size() == toSend.size();
+  }
+
+  private static Message toAmqpMessage(OutboxMessage outboxMessage) {
+    final var properties = new MessageProperties();
+    properties.setContentType(outboxMessage.getContentType());
+    properties.setContentEncoding(UTF_8.name());
+    properties.setMessageId(outboxMessage.getId());
+    if (outboxMessage.getTypeId() != null) {
+      properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME,
+          outboxMessage.getTypeId());
+    }
+    return new Message(outboxMessage.getBody().getBytes(UTF_8), properties);
+  }
+
+  private List<String> awaitConfirms(List<CorrelationData> correlations) {
+    final List<String> confirmedIds = new ArrayList<>(correlations.size());
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+    for (CorrelationData correlation : correlations) {
+      try {
+        final var confirm = correlation.getFuture()
+            .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (confirm.isAck()) {
+          confirmedIds.add(correlation.getId());
+        } else {
+          recordUnconfirmed(correlation, "nacked: " + confirm.getReason());
+        }
+      } catch (TimeoutException e) {
+        recordUnconfirmed(correlation, "not confirmed within " + confirmTimeoutMs + "ms");
+      } catch (ExecutionException e) {
+        recordUnconfirmed(correlation, e.getCause().getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        recordUnconfirmed(correlation, "interrupted waiting for confirm");
+      }
+    }
+    return confirmedIds;
+  }
+
+  private void recordUnconfirmed(CorrelationData correlation, String reason) {
+    unconfirmedCounter.increment();
+    log.warn("Outbox message {} was not confirmed by the broker and will be retried: {}",
+        correlation.getId(), reason);
+  }
+
+  private void waitToRetry(RuntimeException e) {
+    log.error("Failed to relay outbox messages, retrying in {}ms", RETRY_DELAY_MS, e);
+    pause(RETRY_DELAY_MS);
+  }
+
+  private void pause(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+}
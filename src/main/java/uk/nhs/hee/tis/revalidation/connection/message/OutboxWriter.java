@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.message;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.mongodb.MongoException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.stereotype.Component;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.OutboxRepository;
+
+/**
+ * Writes rabbit messages to the outbox, to be relayed to the exchange by the {@link OutboxRelay}
+ * once the change they describe has been saved.
+ */
+@Slf4j
+@Component
+public class OutboxWriter {
+
+  static final int MAX_TRANSACTION_ATTEMPTS = 3;
+  private static final int DUPLICATE_KEY_ERROR = 11000;
+
+  private final OutboxRepository outboxRepository;
+  private final MessageConverter jsonMessageConverter;
+  private final String exchange;
+
+  /**
+   * Constructs a new OutboxWriter.
+   *
+   * @param outboxRepository     the repository of the outbox
+   * @param jsonMessageConverter the converter the rabbit template sends messages with
+   * @param exchange             the exchange the messages are relayed to
+   */
+  public OutboxWriter(OutboxRepository outboxRepository, MessageConverter jsonMessageConverter,
+      @Value("${app.rabbit.reval.exchange}") String exchange) {
+    this.outboxRepository = outboxRepository;
+    this.jsonMessageConverter = jsonMessageConverter;
+    this.exchange = exchange;
+  }
+
+  /**
+   * Create an outbox message, converting the payload as the rabbit template would when sending it.
+   *
+   * @param routingKey the routing key to relay the message with
+   * @param payload    the payload of the message
+   * @return the outbox message, which has not been saved
+   */
+  public OutboxMessage create(String routingKey, Object payload) {
+    final var message = jsonMessageConverter.toMessage(payload, new MessageProperties());
+    final var properties = message.getMessageProperties();
+    return OutboxMessage.builder()
+        .id(UUID.randomUUID().toString())
+        .exchange(exchange)
+        .routingKey(routingKey)
+        .typeId((String) properties.getHeaders()
+            .get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME))
+        .contentType(properties.getContentType())
+        .body(new String(message.getBody(), UTF_8))
+        .createdAt(LocalDateTime.now())
+        .build();
+  }
+
+  /**
+   * Make the writes and save the outbox messages for them in one transaction.
+   *
+   * <p>The transaction is retried when it is aborted by a transient error or by a duplicate key,
+   * which means a concurrent transaction saved the same document first, so the writes must be
+   * safe to repeat.
+   *
+   * @param writes   the writes to make
+   * @param messages the outbox messages for the result of the writes, which may be empty
+   * @param <T>      the type of the result of the writes
+   * @return the result of the writes
+   */
+  public <T> T writeWithMessages(Supplier<T> writes,
+      Function<T, Collection<OutboxMessage>> messages) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return outboxRepository.inTransaction(() -> {
+          final var result = writes.get();
+          final var outboxMessages = messages.apply(result);
+          if (!outboxMessages.isEmpty()) {
+            outboxRepository.insertAll(outboxMessages);
+          }
+          return result;
+        });
+      } catch (RuntimeException e) {
+        if (attempt >= MAX_TRANSACTION_ATTEMPTS || !isRetryable(e)) {
+          throw e;
+        }
+        log.warn("Outbox transaction aborted on attempt {}, retrying: {}", attempt,
+            e.getMessage());
+      }
+    }
+  }
+
+  private static boolean isRetryable(RuntimeException e) {
+    if (e instanceof BulkOperationException) {
+      return ((BulkOperationException) e).getErrors().stream()
+          .allMatch(error -> error.getCode() == DUPLICATE_KEY_ERROR);
+    }
+    if (e instanceof DuplicateKeyException) {
+      return true;
+    }
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof MongoException && ((MongoException) cause)
+          .hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
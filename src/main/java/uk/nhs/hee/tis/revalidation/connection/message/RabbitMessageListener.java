@@ -2,15 +2,22 @@ package uk.nhs.hee.tis.revalidation.connection.message;
 
 import static org.springframework.util.StringUtils.hasText;
 
+import java.util.List;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionLogDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.TcsDoctorInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.event.listener.HiddenDiscrepanciesChangedApplicationEventListener;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.HiddenDiscrepanciesChangedMessage;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.IndexSyncMessage;
 import uk.nhs.hee.tis.revalidation.connection.service.ConnectionService;
 import uk.nhs.hee.tis.revalidation.connection.service.HiddenDiscrepancyService;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService;
 
 @Slf4j
 @Component
@@ -21,6 +28,8 @@ public class RabbitMessageListener {
       = "hiddenDiscrepancySyncStart";
   private final ConnectionService connectionService;
   private final HiddenDiscrepancyService hiddenDiscrepancyService;
+  private final HiddenDiscrepanciesChangedApplicationEventListener hiddenDiscrepancyListener;
+  private final MasterElasticSearchService masterElasticSearchService;
 
   @Value("${app.reval.essync.connectionlog.batchsize}")
   protected int connectionLogBatchSize;
@@ -28,9 +37,13 @@ public class RabbitMessageListener {
   protected int hiddenDiscrepancyBatchSize;
 
   public RabbitMessageListener(ConnectionService connectionService,
-      HiddenDiscrepancyService hiddenDiscrepancyService) {
+      HiddenDiscrepancyService hiddenDiscrepancyService,
+      HiddenDiscrepanciesChangedApplicationEventListener hiddenDiscrepancyListener,
+      MasterElasticSearchService masterElasticSearchService) {
     this.connectionService = connectionService;
     this.hiddenDiscrepancyService = hiddenDiscrepancyService;
+    this.hiddenDiscrepancyListener = hiddenDiscrepancyListener;
+    this.masterElasticSearchService = masterElasticSearchService;
   }
 
   @RabbitListener(queues = "${app.rabbit.reval.queue.connection.connectionlog}")
@@ -88,4 +101,45 @@ public class RabbitMessageListener {
     }
     hiddenDiscrepancyService.handleTcsDoctorInfoUpdateMessage(message);
   }
+
+  /**
+   * Listens to hidden discrepancy changes relayed from the outbox. A failure to update the master
+   * index is thrown, so the message is redelivered or dead-lettered.
+   *
+   * @param message the message with the GMC IDs whose hidden discrepancies changed
+   */
+  @RabbitListener(queues = "${app.rabbit.reval.queue.hiddendiscrepancy.changed}",
+      autoStartup = "${app.reval.outbox.enabled}")
+  public void receiveHiddenDiscrepanciesChangedMessage(HiddenDiscrepanciesChangedMessage message) {
+    if (message == null || message.getGmcIds() == null || message.getGmcIds().isEmpty()) {
+      throw new AmqpRejectAndDontRequeueException(
+          "Received invalid hidden discrepancies changed message");
+    }
+    hiddenDiscrepancyListener.updateMasterIndex(Set.copyOf(message.getGmcIds()));
+  }
+
+  /**
+   * Listens to batches of doctors to write to the master index, which are written with one bulk
+   * request per batch.
+   *
+   * @param message the message with the doctors to insert or update
+   */
+  @RabbitListener(queues = "${app.rabbit.reval.queue.masterdoctorview.essyncdata}",
+      autoStartup = "${app.es.master.bulkUpsert.consumerEnabled}")
+  public void receiveMasterDoctorViewsForSync(IndexSyncMessage<List<ConnectionInfoDto>> message) {
+    if (message == null || message.getPayload() == null) {
+      throw new AmqpRejectAndDontRequeueException(
+          "Received invalid master doctor view sync message");
+    }
+    if (message.getPayload().isEmpty()) {
+      return;
+    }
+    final var result = masterElasticSearchService.updateMasterIndex(message.getPayload());
+    log.info("Wrote {} master index records from a batch of {} doctors", result.getWritten(),
+        message.getPayload().size());
+    if (!result.getFailures().isEmpty()) {
+      log.warn("{} doctors could not be written to the master index: {}",
+          result.getFailures().size(), result.getFailures());
+    }
+  }
 }
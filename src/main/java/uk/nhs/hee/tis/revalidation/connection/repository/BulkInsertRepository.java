@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository for inserting many documents in a single unordered bulk write.
+ */
+@Slf4j
+@Repository
+public class BulkInsertRepository {
+
+  private final MongoTemplate mongoTemplate;
+
+  /**
+   * Constructor for BulkInsertRepository.
+   *
+   * @param mongoTemplate the MongoTemplate to interact with MongoDB
+   */
+  public BulkInsertRepository(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /**
+   * Insert the documents into the collection of the entity class. The write is unordered, so a
+   * document which fails does not stop the rest from being inserted.
+   *
+   * @param entityClass the entity class which determines the collection
+   * @param documents   the documents to insert
+   * @param <T>         the entity type
+   * @return the documents which could not be inserted, empty when all were inserted
+   */
+  public <T> List<FailedInsert> insertAll(Class<T> entityClass, List<? extends T> documents) {
+    try {
+      mongoTemplate.bulkOps(BulkMode.UNORDERED, entityClass).insert(documents).execute();
+      return List.of();
+    } catch (BulkOperationException e) {
+      log.error("{} of {} {} documents could not be inserted", e.getErrors().size(),
+          documents.size(), entityClass.getSimpleName());
+      return e.getErrors().stream()
+          .map(error -> new FailedInsert(documents.get(error.getIndex()), error.getMessage()))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * A document which could not be inserted, with the reason given by MongoDB.
+   */
+  @Value
+  public static class FailedInsert {
+
+    Object document;
+    String message;
+  }
+}
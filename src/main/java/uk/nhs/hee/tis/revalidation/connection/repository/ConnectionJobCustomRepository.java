@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob.DoctorResult;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJobStatus;
+
+/**
+ * Custom repository for ConnectionJob with in-place updates, so that doctors completing in
+ * parallel can record their results without overwriting each other.
+ */
+@Repository
+public class ConnectionJobCustomRepository {
+
+  private static final String ID_FIELD = "_id";
+  private static final String STATUS_FIELD = "status";
+  private static final String LAST_UPDATED_FIELD = "lastUpdatedDateTime";
+  private static final List<ConnectionJobStatus> UNFINISHED =
+      List.of(ConnectionJobStatus.PENDING, ConnectionJobStatus.RUNNING);
+  private final MongoTemplate mongoTemplate;
+
+  /**
+   * Constructor for ConnectionJobCustomRepository.
+   *
+   * @param mongoTemplate the MongoTemplate to interact with MongoDB
+   */
+  public ConnectionJobCustomRepository(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /**
+   * Mark a job as having started processing, unless it has already finished.
+   *
+   * @param jobId           the id of the job
+   * @param startedDateTime when the job started
+   */
+  public void markRunning(String jobId, LocalDateTime startedDateTime) {
+    mongoTemplate.updateFirst(query(where(ID_FIELD).is(jobId).and(STATUS_FIELD).in(UNFINISHED)),
+        new Update().set(STATUS_FIELD, ConnectionJobStatus.RUNNING)
+            .set("startedDateTime", startedDateTime)
+            .set(LAST_UPDATED_FIELD, startedDateTime),
+        ConnectionJob.class);
+  }
+
+  /**
+   * Append the result for a single doctor and increment the processed count.
+   *
+   * @param jobId           the id of the job
+   * @param result          the GMC response for the doctor
+   * @param updatedDateTime when the result was received
+   */
+  public void addResult(String jobId, DoctorResult result, LocalDateTime updatedDateTime) {
+    mongoTemplate.updateFirst(query(where(ID_FIELD).is(jobId)),
+        new Update().push("results", result).inc("processedDoctors", 1)
+            .set(LAST_UPDATED_FIELD, updatedDateTime),
+        ConnectionJob.class);
+  }
+
+  /**
+   * Mark a job as finished, with the overall outcome. A job which has already finished keeps its
+   * status, so a job failed as stale is not later marked as completed.
+   *
+   * @param jobId             the id of the job
+   * @param status            the final status of the job
+   * @param message           the overall message for the job
+   * @param completedDateTime when the job finished
+   */
+  public void markFinished(String jobId, ConnectionJobStatus status, String message,
+      LocalDateTime completedDateTime) {
+    mongoTemplate.updateFirst(query(where(ID_FIELD).is(jobId).and(STATUS_FIELD).in(UNFINISHED)),
+        new Update().set(STATUS_FIELD, status)
+            .set("message", message)
+            .set("completedDateTime", completedDateTime)
+            .set(LAST_UPDATED_FIELD, completedDateTime),
+        ConnectionJob.class);
+  }
+
+  /**
+   * Record that the unfinished jobs are still being processed, so they are not treated as stale.
+   *
+   * @param jobIds          the ids of the jobs
+   * @param updatedDateTime when the jobs were last known to be active
+   */
+  public void markActive(Collection<String> jobIds, LocalDateTime updatedDateTime) {
+    mongoTemplate.updateMulti(
+        query(where(ID_FIELD).in(jobIds).and(STATUS_FIELD).in(UNFINISHED)),
+        new Update().set(LAST_UPDATED_FIELD, updatedDateTime),
+        ConnectionJob.class);
+  }
+
+  /**
+   * Fail the unfinished jobs which have not been updated since the given time, as the instance
+   * processing them has stopped.
+   *
+   * @param staleBefore       the time before which an unfinished job is stale
+   * @param message           the overall message for the failed jobs
+   * @param completedDateTime when the jobs were failed
+   * @return the number of jobs failed
+   */
+  public long failStale(LocalDateTime staleBefore, String message,
+      LocalDateTime completedDateTime) {
+    final var notUpdated = new Criteria().orOperator(
+        where(LAST_UPDATED_FIELD).lt(staleBefore),
+        where(LAST_UPDATED_FIELD).exists(false));
+    return mongoTemplate.updateMulti(
+        query(where(STATUS_FIELD).in(UNFINISHED).andOperator(notUpdated)),
+        new Update().set(STATUS_FIELD, ConnectionJobStatus.FAILED)
+            .set("message", message)
+            .set("completedDateTime", completedDateTime)
+            .set(LAST_UPDATED_FIELD, completedDateTime),
+        ConnectionJob.class).getModifiedCount();
+  }
+}
@@ -21,22 +21,20 @@
 
 package uk.nhs.hee.tis.revalidation.connection.repository;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.aggregation.GroupOperation;
-import org.springframework.data.mongodb.core.aggregation.LimitOperation;
 import org.springframework.data.mongodb.core.aggregation.MatchOperation;
 import org.springframework.data.mongodb.core.aggregation.ReplaceRootOperation;
-import org.springframework.data.mongodb.core.aggregation.SkipOperation;
 import org.springframework.data.mongodb.core.aggregation.SortOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Repository;
 import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
 
@@ -61,23 +59,22 @@ public class ConnectionLogCustomRepository {
   }
 
   /**
-   * Retrieves the latest connection logs for each unique gmcId with pagination.
+   * Streams the latest connection log for each unique gmcId through a single aggregation cursor,
+   * handing them to the consumer in chunks as they are read.
    * Only logs with responseCode "0" or missing responseCode are considered.
-   * The pipeline includes filtering, sorting, grouping, and pagination stages as below:
+   * The pipeline is run once with allowDiskUse, so the sort and group stages may spill to disk:
    * [
    *   { "$match": { "$or": [{ "responseCode": "0" }, { "responseCode": { "$exists": false } }] } },
    *   { "$sort": { "gmcId": 1, "requestTime": -1 } },
    *   { "$group": { "_id": "$gmcId", "latestRecord": { "$first": "$$ROOT" } } },
-   *   { "$replaceRoot": { "newRoot": "$latestRecord" } },
-   *   { "$skip": page * pageSize },
-   *   { "$limit": pageSize }
+   *   { "$replaceRoot": { "newRoot": "$latestRecord" } }
    * ]
    *
-   * @param page     the page number (0-based)
-   * @param pageSize the number of records per page
-   * @return a Page of ConnectionLog containing the latest logs
+   * @param chunkSize     the maximum number of logs passed to the consumer at a time
+   * @param chunkConsumer the consumer of each chunk of latest logs
+   * @return the total number of latest logs streamed
    */
-  public Page<ConnectionLog> getLatestLogsWithPaging(int page, int pageSize) {
+  public long streamLatestLogs(int chunkSize, Consumer<List<ConnectionLog>> chunkConsumer) {
     // $match stage to filter logs with responseCode "0" or missing responseCode
     MatchOperation match = Aggregation.match(
         new Criteria().orOperator(
@@ -98,31 +95,31 @@ public class ConnectionLogCustomRepository {
     // $replaceRoot stage to replace the root with the latestLog document
     ReplaceRootOperation replaceRoot = Aggregation.replaceRoot("latestLog");
 
-    // $skip and $limit stages for pagination
-    SkipOperation skip = Aggregation.skip((long) page * pageSize);
-    LimitOperation limit = Aggregation.limit(pageSize);
-
-    // Get the total count of records after grouping
-    GroupOperation countGroup = Aggregation.group(GMC_ID_FIELD);
-    Aggregation countAggregation = Aggregation.newAggregation(match, countGroup,
-        Aggregation.count().as("total"));
-
-    var resultMap = mongoTemplate.aggregate(countAggregation, COLLECTION_NAME, Map.class)
-        .getUniqueMappedResult();
-    int total = resultMap == null ? 0 : (int) resultMap.get("total");
-
-    log.debug("Total records: {}, Total Pages: {}", total,
-        (int) Math.ceil((double) total / pageSize));
-
-    // Final aggregation pipeline
-    Aggregation aggregation = Aggregation.newAggregation(
-        match, sort, group, replaceRoot, skip, limit
-    );
-
-    List<ConnectionLog> logs = mongoTemplate.aggregate(aggregation, COLLECTION_NAME,
-            ConnectionLog.class)
-        .getMappedResults();
-
-    return new PageImpl<>(logs, PageRequest.of(page, pageSize), total);
+    AggregationOptions options = AggregationOptions.builder()
+        .allowDiskUse(true)
+        .cursorBatchSize(chunkSize)
+        .build();
+    Aggregation aggregation = Aggregation.newAggregation(match, sort, group, replaceRoot)
+        .withOptions(options);
+
+    long total = 0;
+    List<ConnectionLog> chunk = new ArrayList<>(chunkSize);
+    try (CloseableIterator<ConnectionLog> logs = mongoTemplate.aggregateStream(aggregation,
+        COLLECTION_NAME, ConnectionLog.class)) {
+      while (logs.hasNext()) {
+        chunk.add(logs.next());
+        total++;
+        if (chunk.size() >= chunkSize) {
+          chunkConsumer.accept(chunk);
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunkConsumer.accept(chunk);
+    }
+
+    log.debug("Streamed {} latest connection logs in chunks of {}", total, chunkSize);
+    return total;
   }
 }
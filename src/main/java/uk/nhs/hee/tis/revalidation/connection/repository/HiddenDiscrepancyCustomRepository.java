@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.mongodb.bulk.BulkWriteResult;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
+
+/**
+ * Repository for writing and expiring hidden discrepancies in bulk.
+ */
+@Slf4j
+@Repository
+public class HiddenDiscrepancyCustomRepository {
+
+  protected static final int DUPLICATE_KEY_ERROR = 11000;
+  private static final String GMC_ID_FIELD = "gmcId";
+  private static final String HIDDEN_FOR_DBC_FIELD = "hiddenForDesignatedBodyCode";
+  private static final String HIDDEN_UNTIL_DATE_FIELD = "hiddenUntilDate";
+  private static final String ID_FIELD = "_id";
+  private final MongoTemplate mongoTemplate;
+
+  /**
+   * Constructor for HiddenDiscrepancyCustomRepository.
+   *
+   * @param mongoTemplate the MongoTemplate to interact with MongoDB
+   */
+  public HiddenDiscrepancyCustomRepository(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /**
+   * Insert each hidden discrepancy unless one is already hidden for the same gmcId and designated
+   * body, using one unordered bulk write of upserts matched on the gmc_dbc_idx index. An existing
+   * hidden discrepancy is left unchanged.
+   *
+   * <p>Inside a transaction any write error aborts the transaction, so the bulk write error is
+   * rethrown rather than reported as an outcome, and the transaction is left to be retried.
+   *
+   * @param hiddenDiscrepancies the hidden discrepancies to insert
+   * @return the outcome of each hidden discrepancy, in the same order
+   */
+  public List<UpsertOutcome> insertAbsent(List<HiddenDiscrepancy> hiddenDiscrepancies) {
+    if (hiddenDiscrepancies.isEmpty()) {
+      return List.of();
+    }
+
+    BulkOperations bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, HiddenDiscrepancy.class);
+    hiddenDiscrepancies.forEach(hiddenDiscrepancy -> bulkOps.upsert(
+        query(where(GMC_ID_FIELD).is(hiddenDiscrepancy.getGmcId())
+            .and(HIDDEN_FOR_DBC_FIELD).is(hiddenDiscrepancy.getHiddenForDesignatedBodyCode())),
+        insertOnly(hiddenDiscrepancy)));
+
+    // anything neither inserted nor failed matched an existing hidden discrepancy
+    List<UpsertOutcome> outcomes = new ArrayList<>(
+        Collections.nCopies(hiddenDiscrepancies.size(), UpsertOutcome.EXISTING));
+    BulkWriteResult result;
+    try {
+      result = bulkOps.execute();
+    } catch (BulkOperationException e) {
+      if (TransactionSynchronizationManager.isActualTransactionActive()) {
+        throw e;
+      }
+      result = e.getResult();
+      // a duplicate key means a concurrent request inserted the same hidden discrepancy
+      e.getErrors().stream()
+          .filter(error -> error.getCode() != DUPLICATE_KEY_ERROR)
+          .forEach(error -> {
+            HiddenDiscrepancy failed = hiddenDiscrepancies.get(error.getIndex());
+            log.error("Hidden discrepancy for GMC ID: {} and designated body: {} could not be "
+                    + "saved: {}", failed.getGmcId(), failed.getHiddenForDesignatedBodyCode(),
+                error.getMessage());
+            outcomes.set(error.getIndex(), UpsertOutcome.FAILED);
+          });
+    }
+    result.getUpserts().forEach(upsert -> outcomes.set(upsert.getIndex(), UpsertOutcome.INSERTED));
+    return outcomes;
+  }
+
+  /**
+   * Pass the GMC IDs of the hidden discrepancies hidden until before the date to the consumer, in
+   * batches of distinct GMC IDs. The query is covered by the hidden_until_gmc_idx index, so only
+   * index keys are read, and only one batch is held in memory at a time.
+   *
+   * @param date          the date the hidden discrepancies expire before
+   * @param batchSize     the maximum number of GMC IDs in each batch
+   * @param batchConsumer the consumer of each batch of GMC IDs
+   */
+  public void forEachExpiredGmcIdBatch(LocalDate date, int batchSize,
+      Consumer<Set<String>> batchConsumer) {
+    Query expired = query(where(HIDDEN_UNTIL_DATE_FIELD).lt(date))
+        .withHint(HiddenDiscrepancy.HIDDEN_UNTIL_GMC_INDEX);
+    expired.fields().include(GMC_ID_FIELD).exclude(ID_FIELD);
+
+    Set<String> batch = new LinkedHashSet<>();
+    try (var expiredIterator = mongoTemplate.stream(expired, HiddenDiscrepancy.class)) {
+      while (expiredIterator.hasNext()) {
+        batch.add(expiredIterator.next().getGmcId());
+        if (batch.size() >= batchSize) {
+          batchConsumer.accept(Set.copyOf(batch));
+          batch.clear();
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      batchConsumer.accept(Set.copyOf(batch));
+    }
+  }
+
+  /**
+   * Delete the hidden discrepancies of the doctors which are hidden until before the date, with a
+   * single deleteMany.
+   *
+   * @param gmcIds the GMC IDs of the doctors
+   * @param date   the date the hidden discrepancies expire before
+   * @return the number of hidden discrepancies deleted
+   */
+  public long deleteExpired(Collection<String> gmcIds, LocalDate date) {
+    return mongoTemplate.remove(query(where(GMC_ID_FIELD).in(gmcIds)
+        .and(HIDDEN_UNTIL_DATE_FIELD).lt(date)), HiddenDiscrepancy.class).getDeletedCount();
+  }
+
+  private static Update insertOnly(HiddenDiscrepancy hiddenDiscrepancy) {
+    return new Update()
+        .setOnInsert("currentDesignatedBodyCode", hiddenDiscrepancy.getCurrentDesignatedBodyCode())
+        .setOnInsert("programmeOwnerDesignatedBodyCode",
+            hiddenDiscrepancy.getProgrammeOwnerDesignatedBodyCode())
+        .setOnInsert("hiddenBy", hiddenDiscrepancy.getHiddenBy())
+        .setOnInsert("reason", hiddenDiscrepancy.getReason())
+        .setOnInsert("hiddenDateTime", hiddenDiscrepancy.getHiddenDateTime())
+        .setOnInsert("hiddenUntilDate", hiddenDiscrepancy.getHiddenUntilDate());
+  }
+
+  /**
+   * The outcome of inserting a hidden discrepancy.
+   */
+  public enum UpsertOutcome {
+    INSERTED,
+    EXISTING,
+    FAILED
+  }
+}
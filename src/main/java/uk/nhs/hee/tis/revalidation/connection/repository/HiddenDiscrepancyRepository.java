@@ -21,7 +21,7 @@
 
 package uk.nhs.hee.tis.revalidation.connection.repository;
 
-import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
@@ -33,19 +33,6 @@ import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
 @Repository
 public interface HiddenDiscrepancyRepository extends MongoRepository<HiddenDiscrepancy, String> {
 
-  /**
-   * Finds hidden discrepancies by GMC reference numbers and designated body code.
-   *
-   * @param gmcReferenceNumbers         the list of GMC reference numbers to search for
-   * @param hiddenForDesignatedBodyCodes the list of designated body codes for which the
-   *                                     discrepancies are hidden
-   * @return a list of HiddenDiscrepancy entities matching the criteria
-   */
-  List<HiddenDiscrepancy> findByGmcIdInAndHiddenForDesignatedBodyCodeIn(
-      List<String> gmcReferenceNumbers,
-      List<String> hiddenForDesignatedBodyCodes
-  );
-
   /**
    * Finds hidden discrepancies by GMC reference number.
    *
@@ -55,17 +42,17 @@ public interface HiddenDiscrepancyRepository extends MongoRepository<HiddenDiscr
   List<HiddenDiscrepancy> findByGmcId(String gmcId);
 
   /**
-   * Deletes hidden discrepancies by GMC reference number.
+   * Finds hidden discrepancies by GMC reference numbers.
    *
-   * @param gmcId the GMC reference number for which to delete hidden discrepancies
+   * @param gmcIds the GMC reference numbers to search for
+   * @return a list of HiddenDiscrepancy entities with any of the GMC IDs
    */
-  void deleteByGmcId(String gmcId);
+  List<HiddenDiscrepancy> findByGmcIdIn(Collection<String> gmcIds);
 
   /**
-   * Deletes hidden discrepancies whose hiddenUntilDate is before the given date.
+   * Deletes hidden discrepancies by GMC reference number.
    *
-   * @param date the reference date; records before this date are considered expired
-   * @return the number of deleted records
+   * @param gmcId the GMC reference number for which to delete hidden discrepancies
    */
-  long deleteByHiddenUntilDateLessThan(LocalDate date);
+  void deleteByGmcId(String gmcId);
 }
@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.SUCCESS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Repository;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.LatestConnectionLog;
+
+/**
+ * Repository for the latest successful connection log of each doctor, keyed by gmcId.
+ */
+@Slf4j
+@Repository
+public class LatestConnectionLogRepository {
+
+  protected static final int DUPLICATE_KEY_ERROR = 11000;
+  private static final String ID_FIELD = "_id";
+  private static final String REQUEST_TIME_FIELD = "requestTime";
+  private final MongoTemplate mongoTemplate;
+
+  /**
+   * Constructor for LatestConnectionLogRepository.
+   *
+   * @param mongoTemplate the MongoTemplate to interact with MongoDB
+   */
+  public LatestConnectionLogRepository(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /**
+   * Record each successful connection log as the latest for its doctor, unless a later log is
+   * already recorded. Each upsert only matches a document with an earlier requestTime, so an
+   * older log fails the insert on the duplicate gmcId and is ignored.
+   *
+   * @param connectionLogs the connection logs which have been saved
+   */
+  public void upsertLatest(List<? extends ConnectionLog> connectionLogs) {
+    List<? extends ConnectionLog> successfulLogs = connectionLogs.stream()
+        .filter(connectionLog -> connectionLog.getGmcId() != null)
+        .filter(LatestConnectionLogRepository::isSuccessful)
+        .collect(Collectors.toList());
+    if (successfulLogs.isEmpty()) {
+      return;
+    }
+
+    BulkOperations bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, LatestConnectionLog.class);
+    successfulLogs.forEach(connectionLog -> bulkOps.upsert(
+        query(earlierThan(connectionLog)), latestUpdate(connectionLog)));
+    try {
+      bulkOps.execute();
+    } catch (BulkOperationException e) {
+      e.getErrors().stream()
+          .filter(error -> error.getCode() != DUPLICATE_KEY_ERROR)
+          .forEach(error -> log.error("Latest connection log for {} could not be updated: {}",
+              successfulLogs.get(error.getIndex()).getGmcId(), error.getMessage()));
+    }
+  }
+
+  /**
+   * Stream every latest connection log in gmcId order, handing them to the consumer in chunks.
+   *
+   * @param chunkSize     the maximum number of logs passed to the consumer at a time
+   * @param chunkConsumer the consumer of each chunk of latest logs
+   * @return the total number of latest logs streamed
+   */
+  public long streamAll(int chunkSize, Consumer<List<ConnectionLog>> chunkConsumer) {
+    Query query = new Query().with(Sort.by(ID_FIELD)).cursorBatchSize(chunkSize);
+
+    long total = 0;
+    List<ConnectionLog> chunk = new ArrayList<>(chunkSize);
+    try (CloseableIterator<LatestConnectionLog> latestLogs = mongoTemplate.stream(query,
+        LatestConnectionLog.class)) {
+      while (latestLogs.hasNext()) {
+        chunk.add(toConnectionLog(latestLogs.next()));
+        total++;
+        if (chunk.size() >= chunkSize) {
+          chunkConsumer.accept(chunk);
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunkConsumer.accept(chunk);
+    }
+    return total;
+  }
+
+  /**
+   * Find the latest connection logs of the given doctors.
+   *
+   * @param gmcIds the gmcIds of the doctors
+   * @return the latest connection logs which are recorded
+   */
+  public List<LatestConnectionLog> findAllById(Collection<String> gmcIds) {
+    return mongoTemplate.find(query(where(ID_FIELD).in(gmcIds)), LatestConnectionLog.class);
+  }
+
+  /**
+   * Count the doctors with a latest connection log recorded.
+   *
+   * @return the number of latest connection logs
+   */
+  public long count() {
+    return mongoTemplate.count(new Query(), LatestConnectionLog.class);
+  }
+
+  /**
+   * Whether the connection log counts towards the latest connection of the doctor, matching the
+   * logs considered by {@link ConnectionLogCustomRepository#streamLatestLogs}.
+   *
+   * @param connectionLog the connection log
+   * @return true if the log has no response code or a successful one
+   */
+  static boolean isSuccessful(ConnectionLog connectionLog) {
+    if (connectionLog instanceof ConnectionRequestLog) {
+      String responseCode = ((ConnectionRequestLog) connectionLog).getResponseCode();
+      return responseCode == null || SUCCESS.getCode().equals(responseCode);
+    }
+    return true;
+  }
+
+  private static Criteria earlierThan(ConnectionLog connectionLog) {
+    Criteria criteria = where(ID_FIELD).is(connectionLog.getGmcId());
+    if (connectionLog.getRequestTime() == null) {
+      return criteria.and(REQUEST_TIME_FIELD).is(null);
+    }
+    return criteria.orOperator(
+        where(REQUEST_TIME_FIELD).lt(connectionLog.getRequestTime()),
+        where(REQUEST_TIME_FIELD).is(null));
+  }
+
+  private static Update latestUpdate(ConnectionLog connectionLog) {
+    return new Update()
+        .set("connectionLogId", connectionLog.getId())
+        .set("newDesignatedBodyCode", connectionLog.getNewDesignatedBodyCode())
+        .set("previousDesignatedBodyCode", connectionLog.getPreviousDesignatedBodyCode())
+        .set("updatedBy", connectionLog.getUpdatedBy())
+        .set(REQUEST_TIME_FIELD, connectionLog.getRequestTime());
+  }
+
+  private static ConnectionLog toConnectionLog(LatestConnectionLog latestLog) {
+    return ConnectionLog.builder()
+        .id(latestLog.getConnectionLogId())
+        .gmcId(latestLog.getGmcId())
+        .newDesignatedBodyCode(latestLog.getNewDesignatedBodyCode())
+        .previousDesignatedBodyCode(latestLog.getPreviousDesignatedBodyCode())
+        .updatedBy(latestLog.getUpdatedBy())
+        .requestTime(latestLog.getRequestTime())
+        .build();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+
+/**
+ * Repository for the outbox of rabbit messages waiting to be relayed, and the resume token of the
+ * relay's change stream.
+ */
+@Repository
+public class OutboxRepository {
+
+  private static final String ID_FIELD = "_id";
+  private static final String CREATED_AT_FIELD = "createdAt";
+  private static final String RELAY_STATE_COLLECTION = "outboxRelayState";
+  private static final String RELAY_STATE_ID = "relay";
+  private static final String RESUME_TOKEN_FIELD = "resumeToken";
+  private final MongoTemplate mongoTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  /**
+   * Constructor for OutboxRepository. The transaction manager is kept to the outbox, so other
+   * writes are not made transactional.
+   *
+   * @param mongoTemplate        the MongoTemplate to interact with MongoDB
+   * @param mongoDatabaseFactory the factory the MongoTemplate uses, which transactions bind to
+   */
+  public OutboxRepository(MongoTemplate mongoTemplate, MongoDatabaseFactory mongoDatabaseFactory) {
+    this.mongoTemplate = mongoTemplate;
+    this.transactionTemplate = new TransactionTemplate(
+        new MongoTransactionManager(mongoDatabaseFactory));
+  }
+
+  /**
+   * Run the writes in a MongoDB transaction, so that outbox messages inserted with them are only
+   * saved if every write is.
+   *
+   * @param writes the writes to make
+   * @param <T>    the type of the result of the writes
+   * @return the result of the writes
+   */
+  public <T> T inTransaction(Supplier<T> writes) {
+    return transactionTemplate.execute(status -> writes.get());
+  }
+
+  /**
+   * Insert the outbox messages.
+   *
+   * @param outboxMessages the messages to relay
+   */
+  public void insertAll(Collection<OutboxMessage> outboxMessages) {
+    mongoTemplate.insert(outboxMessages, OutboxMessage.class);
+  }
+
+  /**
+   * Find the oldest outbox messages, which have not been relayed.
+   *
+   * @param limit the maximum number of messages
+   * @return the messages in the order they were created
+   */
+  public List<OutboxMessage> findOldest(int limit) {
+    Query oldest = new Query().with(Sort.by(CREATED_AT_FIELD, ID_FIELD)).limit(limit);
+    return mongoTemplate.find(oldest, OutboxMessage.class);
+  }
+
+  /**
+   * Find which of the outbox messages have not been relayed yet.
+   *
+   * @param ids the ids of the messages
+   * @return the ids of the messages still in the outbox
+   */
+  public List<String> findRemainingIds(Collection<String> ids) {
+    Query remaining = query(where(ID_FIELD).in(ids));
+    remaining.fields().include(ID_FIELD);
+    return mongoTemplate.find(remaining, OutboxMessage.class).stream()
+        .map(OutboxMessage::getId)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Delete the outbox messages which have been relayed.
+   *
+   * @param ids the ids of the messages
+   */
+  public void deleteAllById(Collection<String> ids) {
+    mongoTemplate.remove(query(where(ID_FIELD).in(ids)), OutboxMessage.class);
+  }
+
+  /**
+   * Open a change stream of the messages inserted into the outbox.
+   *
+   * @param resumeToken the token to resume after, or null to start from now
+   * @param batchSize   the number of changes fetched at a time
+   * @param maxAwaitMs  how long the server waits for changes before returning none
+   * @return the cursor of inserted messages, which must be closed
+   */
+  public MongoChangeStreamCursor<ChangeStreamDocument<Document>> watchInserts(
+      BsonDocument resumeToken, int batchSize, long maxAwaitMs) {
+    var changeStream = mongoTemplate.getCollection(
+            mongoTemplate.getCollectionName(OutboxMessage.class))
+        .watch(List.of(Aggregates.match(Filters.eq("operationType", "insert"))))
+        .batchSize(batchSize)
+        .maxAwaitTime(maxAwaitMs, TimeUnit.MILLISECONDS);
+    if (resumeToken != null) {
+      changeStream = changeStream.resumeAfter(resumeToken);
+    }
+    return changeStream.cursor();
+  }
+
+  /**
+   * Read an outbox message from the full document of a change.
+   *
+   * @param document the document inserted into the outbox
+   * @return the outbox message
+   */
+  public OutboxMessage read(Document document) {
+    return mongoTemplate.getConverter().read(OutboxMessage.class, document);
+  }
+
+  /**
+   * Find the token the relay resumes its change stream after.
+   *
+   * @return the resume token, or null when the relay has not saved one
+   */
+  public BsonDocument findResumeToken() {
+    Document state = mongoTemplate.findById(RELAY_STATE_ID, Document.class,
+        RELAY_STATE_COLLECTION);
+    if (state == null || state.get(RESUME_TOKEN_FIELD) == null) {
+      return null;
+    }
+    return BsonDocument.parse(state.get(RESUME_TOKEN_FIELD, Document.class).toJson());
+  }
+
+  /**
+   * Save the token the relay resumes its change stream after.
+   *
+   * @param resumeToken the resume token of the last change relayed, or null to start from now
+   */
+  public void saveResumeToken(BsonDocument resumeToken) {
+    mongoTemplate.upsert(query(where(ID_FIELD).is(RELAY_STATE_ID)),
+        Update.update(RESUME_TOKEN_FIELD,
+            resumeToken == null ? null : Document.parse(resumeToken.toJson())),
+        RELAY_STATE_COLLECTION);
+  }
+}
@@ -22,55 +22,48 @@
 package uk.nhs.hee.tis.revalidation.connection.service;
 
 import static java.util.stream.Collectors.toList;
-import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
-import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
-import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
-import static org.elasticsearch.index.query.QueryBuilders.wildcardQuery;
-import static uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType.FROM;
-import static uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType.TO;
 
 import java.time.LocalDate;
 import java.util.List;
 import org.elasticsearch.index.query.BoolQueryBuilder;
-import org.elasticsearch.index.search.MatchQuery.ZeroTermsQuery;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
 import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.service.ElasticsearchCursorSearch.CursorPage;
 import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils;
 
 @Service
 public class ConnectedElasticSearchService {
 
-  private static final String DOCTOR_FIRST_NAME_FIELD = "doctorFirstName";
-  private static final String DOCTOR_LAST_NAME_FIELD = "doctorLastName";
-  private static final String GMC_REFERENCE_NUMBER_FIELD = "gmcReferenceNumber";
-  private static final String PROGRAMME_NAME_FIELD = "programmeName";
-  private static final String DESIGNATED_BODY_FIELD = "designatedBody";
-  private static final String MEMBERSHIP_TYPE_FIELD = "membershipType";
-  private static final String PLACEMENT_GRADE_FIELD = "placementGrade";
-  private static final String EXCLUDED_PLACEMENT_GRADE = "279";
-  private static final String EXCLUDED_MEMBERSHIP_TYPE = "MILITARY";
-  private static final String PROGRAMME_MEMBERSHIP_END_DATE_FIELD = "membershipEndDate";
-  private static final String GMC_SUBMISSION_DATE_FIELD = "submissionDate";
-  private static final String CONNECTION_LAST_UPDATED_DATE_FIELD = "lastConnectionDateTime";
-  private static final String UPDATED_BY_FIELD = "updatedBy";
-
   @Autowired
   ConnectionInfoMapper connectionInfoMapper;
   @Autowired
   private ElasticsearchOperations elasticsearchOperations;
+  @Autowired
+  private ElasticsearchCursorSearch elasticsearchCursorSearch;
+  @Autowired
+  private SearchResultCache searchResultCache;
+  @Value("${app.es.search.autocomplete.enabled}")
+  private boolean autocompleteEnabled;
+  @Value("${app.es.search.designatedBodyTerms.enabled}")
+  private boolean designatedBodyTermsEnabled;
+  @Value("${app.es.search.countFree.enabled}")
+  private boolean countFreeEnabled;
+  @Value("${app.es.search.countFree.trackTotalHitsUpTo}")
+  private int trackTotalHitsUpTo;
 
   /**
    * Get connected trainees from Connected elasticsearch index when pm end date values are there for
@@ -100,64 +93,38 @@ public class ConnectedElasticSearchService {
       String updatedBy,
       Pageable pageable)
       throws ConnectionQueryException {
+    return searchResultCache.get(
+        SearchResultCache.key("connected", searchQuery, dbcs, programmeName, membershipEndDateFrom,
+            membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy, pageable),
+        () -> searchConnectionPage(searchQuery, dbcs, programmeName,
+            membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy, pageable));
+  }
+
+  private ConnectionSummaryDto searchConnectionPage(String searchQuery,
+      List<String> dbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy,
+      Pageable pageable)
+      throws ConnectionQueryException {
 
     try {
-      BoolQueryBuilder rootQuery = boolQuery();
-
-      rootQuery.filter(
-          boolQuery().mustNot(matchQuery(MEMBERSHIP_TYPE_FIELD, EXCLUDED_MEMBERSHIP_TYPE)));
-
-      rootQuery.filter(
-          boolQuery().mustNot(matchQuery(PLACEMENT_GRADE_FIELD, EXCLUDED_PLACEMENT_GRADE)));
-
-      String formattedDbcs = ElasticsearchQueryHelper
-          .formatDesignatedBodyCodesForElasticsearchQuery(dbcs);
-      if (StringUtils.hasText(formattedDbcs)) {
-        rootQuery.filter(matchQuery(DESIGNATED_BODY_FIELD, formattedDbcs));
-      }
-
-      if (StringUtils.hasText(programmeName)) {
-        rootQuery.filter(matchPhraseQuery(PROGRAMME_NAME_FIELD, programmeName).zeroTermsQuery(
-            ZeroTermsQuery.ALL));
-      }
-
-      if (StringUtils.hasText(searchQuery)) {
-        BoolQueryBuilder searchSubQuery = boolQuery()
-            .should(wildcardQuery(DOCTOR_FIRST_NAME_FIELD, searchQuery + "*"))
-            .should(wildcardQuery(DOCTOR_LAST_NAME_FIELD, searchQuery + "*"))
-            .should(wildcardQuery(GMC_REFERENCE_NUMBER_FIELD, searchQuery + "*"))
-            .minimumShouldMatch(1);
-
-        rootQuery.filter(searchSubQuery);
-      }
-
-      EsQueryUtils.addDateRangeFilter(rootQuery,
-          PROGRAMME_MEMBERSHIP_END_DATE_FIELD,
-          membershipEndDateFrom != null ? membershipEndDateFrom.toString() : null,
-          membershipEndDateTo != null ? membershipEndDateTo.toString() : null);
-
-      EsQueryUtils.addDateRangeFilter(rootQuery,
-          GMC_SUBMISSION_DATE_FIELD,
-          gmcSubmissionDateFrom != null ? gmcSubmissionDateFrom.toString() : null,
-          gmcSubmissionDateTo != null ? gmcSubmissionDateTo.toString() : null);
-
-      EsQueryUtils.addDateRangeFilter(rootQuery,
-          CONNECTION_LAST_UPDATED_DATE_FIELD,
-          lastConnectionDateTimeFrom != null ? EsQueryUtils.getDateTimeQueryFromRange(
-              lastConnectionDateTimeFrom, FROM) : null,
-          lastConnectionDateTimeTo != null ? EsQueryUtils.getDateTimeQueryFromRange(
-              lastConnectionDateTimeTo, TO) : null);
-
-      if (StringUtils.hasText(updatedBy)) {
-        rootQuery.filter(
-            matchPhraseQuery(UPDATED_BY_FIELD, updatedBy).zeroTermsQuery(
-                ZeroTermsQuery.ALL));
-      }
+      BoolQueryBuilder rootQuery = buildConnectedQuery(searchQuery, dbcs, programmeName,
+          membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+          lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy);
 
       NativeSearchQuery searchQueryEsResult = new NativeSearchQueryBuilder()
           .withQuery(rootQuery)
           .withPageable(pageable)
           .build();
+      EsQueryUtils.limitTotalHits(searchQueryEsResult, countFreeEnabled, trackTotalHitsUpTo);
 
       SearchHits<CurrentConnectionsView> searchHits =
           elasticsearchOperations.search(searchQueryEsResult, CurrentConnectionsView.class);
@@ -175,6 +142,7 @@ public class ConnectedElasticSearchService {
       return ConnectionSummaryDto.builder()
           .totalPages(page.getTotalPages())
           .totalResults(page.getTotalElements())
+          .hasNextPage(EsQueryUtils.hasNextPage(pageable, searchHits))
           .connections(
               connectionInfoMapper.currentConnectionsToConnectionInfoDtos(connectedTrainees))
           .build();
@@ -183,4 +151,87 @@ public class ConnectedElasticSearchService {
       throw new ConnectionQueryException("current connections", searchQuery, re);
     }
   }
+
+  /**
+   * Get a page of connected trainees from Connected elasticsearch index, starting after the cursor
+   * returned with the previous page rather than at a page number.
+   *
+   * @param searchQuery                query to run
+   * @param dbcs                       designated body
+   * @param programmeName              programme name
+   * @param membershipEndDateFrom      range of membership end date from
+   * @param membershipEndDateTo        range of membership end date to
+   * @param gmcSubmissionDateFrom      range of gmc submission date from
+   * @param gmcSubmissionDateTo        range of gmc submission date to
+   * @param lastConnectionDateTimeFrom range of connection last updated date from
+   * @param lastConnectionDateTimeTo   range of connection last updated date to
+   * @param updatedBy                  updated by
+   * @param sort                       sort order, which must be the same for every page
+   * @param size                       number of trainees on a page
+   * @param cursor                     cursor from the previous page, or empty for the first page
+   */
+  public ConnectionSummaryDto searchForConnectionPageWithCursor(String searchQuery,
+      List<String> dbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy,
+      Sort sort,
+      int size,
+      String cursor)
+      throws ConnectionQueryException {
+
+    try {
+      BoolQueryBuilder rootQuery = buildConnectedQuery(searchQuery, dbcs, programmeName,
+          membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+          lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy);
+
+      CursorPage<CurrentConnectionsView> page = elasticsearchCursorSearch.search(rootQuery, sort,
+          size, cursor, CurrentConnectionsView.class,
+          elasticsearchOperations.getIndexCoordinatesFor(CurrentConnectionsView.class));
+
+      return ConnectionSummaryDto.builder()
+          .totalPages((page.getTotalHits() + size - 1) / size)
+          .totalResults(page.getTotalHits())
+          .connections(
+              connectionInfoMapper.currentConnectionsToConnectionInfoDtos(page.getContent()))
+          .nextCursor(page.getNextCursor())
+          .hasNextPage(page.getNextCursor() != null)
+          .build();
+
+    } catch (RuntimeException re) {
+      throw new ConnectionQueryException("current connections", searchQuery, re);
+    }
+  }
+
+  BoolQueryBuilder buildConnectedQuery(String searchQuery,
+      List<String> dbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy) {
+    return ConnectionSearchSpec.builder()
+        .searchQuery(searchQuery)
+        .autocomplete(autocompleteEnabled)
+        .designatedBodies(dbcs)
+        .designatedBodyTerms(designatedBodyTermsEnabled)
+        .programmeName(programmeName)
+        .membershipEndDateFrom(membershipEndDateFrom)
+        .membershipEndDateTo(membershipEndDateTo)
+        .gmcSubmissionDateFrom(gmcSubmissionDateFrom)
+        .gmcSubmissionDateTo(gmcSubmissionDateTo)
+        .lastConnectionDateTimeFrom(lastConnectionDateTimeFrom)
+        .lastConnectionDateTimeTo(lastConnectionDateTimeTo)
+        .updatedBy(updatedBy)
+        .build()
+        .toQuery();
+  }
 }
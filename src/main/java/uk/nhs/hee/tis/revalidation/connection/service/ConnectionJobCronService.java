@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2026 Crown Copyright (NHS England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cron service to fail connection jobs which were left unfinished when the instance processing
+ * them stopped. It also runs at startup, so jobs interrupted by a restart are failed as soon as
+ * they are stale.
+ */
+@Slf4j
+@Service
+public class ConnectionJobCronService {
+
+  public static final String STALE_LOCK_NAME = "connectionJobStaleCronLock";
+
+  public static final String PREFIX = "${app.reval.cron.connectionjob.stale.";
+
+  public static final String SPEL_STALE_CRON = PREFIX + "expression}";
+  public static final String SPEL_STALE_CRONLOCK = PREFIX + "lock}";
+
+  private final ConnectionJobService connectionJobService;
+
+  /**
+   * Constructor for the ConnectionJobCronService.
+   *
+   * @param connectionJobService the service to manage connection jobs
+   */
+  @Autowired
+  public ConnectionJobCronService(ConnectionJobService connectionJobService) {
+    this.connectionJobService = connectionJobService;
+  }
+
+  /**
+   * Scheduled method to fail stale connection jobs. It uses ShedLock to ensure that only one
+   * instance of this job runs at a time.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(cron = SPEL_STALE_CRON)
+  @SchedulerLock(
+      name = STALE_LOCK_NAME,
+      lockAtMostFor = SPEL_STALE_CRONLOCK)
+  public void failStaleConnectionJobs() {
+    log.info("Cron job started to fail stale connection jobs.");
+    long start = System.currentTimeMillis();
+    try {
+      connectionJobService.failStaleJobs();
+    } finally {
+      long diff = System.currentTimeMillis() - start;
+      log.info("Stale connection jobs check : EXIT took[{}]ms", diff);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionJobDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob.DoctorResult;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJobStatus;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
+import uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionJobRejectedException;
+import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionJobMapper;
+import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionJobCustomRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionJobRepository;
+
+/**
+ * Service for running bulk connection requests in the background, so the caller can poll for
+ * progress instead of waiting for every doctor to be sent to GMC. Jobs are only held in memory by
+ * the instance that accepted them, so each instance regularly marks its jobs as active and jobs
+ * which stop being marked, e.g. after a restart, are failed as stale.
+ */
+@Slf4j
+@Service
+public class ConnectionJobService {
+
+  static final String QUEUE_FULL_MESSAGE = "Too many connection jobs are waiting, try again later";
+  static final String STALE_MESSAGE = "Connection job was interrupted before it finished";
+
+  private final ConnectionJobRepository connectionJobRepository;
+  private final ConnectionJobCustomRepository connectionJobCustomRepository;
+  private final ConnectionService connectionService;
+  private final ConnectionJobMapper connectionJobMapper;
+  private final TaskExecutor connectionJobExecutor;
+  private final Clock clock;
+  private final long staleAfterMs;
+  private final Set<String> activeJobIds = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Constructs a new ConnectionJobService.
+   *
+   * @param connectionJobRepository       the repository for connection jobs
+   * @param connectionJobCustomRepository the repository for in-place updates to connection jobs
+   * @param connectionService             the service which sends the changes to GMC
+   * @param connectionJobMapper           the mapper for connection job DTOs
+   * @param connectionJobExecutor         the executor the jobs are run on
+   * @param clock                         the clock used for job timestamps
+   * @param staleAfterMs                  how long an unfinished job can go without being marked
+   *                                      as active before it is failed
+   */
+  public ConnectionJobService(ConnectionJobRepository connectionJobRepository,
+      ConnectionJobCustomRepository connectionJobCustomRepository,
+      ConnectionService connectionService, ConnectionJobMapper connectionJobMapper,
+      @Qualifier("connectionJobExecutor") TaskExecutor connectionJobExecutor, Clock clock,
+      @Value("${app.reval.connectionjob.staleAfterMs}") long staleAfterMs) {
+    this.connectionJobRepository = connectionJobRepository;
+    this.connectionJobCustomRepository = connectionJobCustomRepository;
+    this.connectionService = connectionService;
+    this.connectionJobMapper = connectionJobMapper;
+    this.connectionJobExecutor = connectionJobExecutor;
+    this.clock = clock;
+    this.staleAfterMs = staleAfterMs;
+  }
+
+  /**
+   * Create a job to add connections for the doctors and start it in the background.
+   *
+   * @param addDoctorsDto the connection update request
+   * @return the newly created job
+   * @throws ConnectionJobRejectedException when too many jobs are already waiting
+   */
+  public ConnectionJobDto submitAddDoctors(final UpdateConnectionDto addDoctorsDto) {
+    return submitJob(addDoctorsDto, ConnectionRequestType.ADD);
+  }
+
+  /**
+   * Create a job to remove connections for the doctors and start it in the background.
+   *
+   * @param removeDoctorsDto the connection update request
+   * @return the newly created job
+   * @throws ConnectionJobRejectedException when too many jobs are already waiting
+   */
+  public ConnectionJobDto submitRemoveDoctors(final UpdateConnectionDto removeDoctorsDto) {
+    return submitJob(removeDoctorsDto, ConnectionRequestType.REMOVE);
+  }
+
+  /**
+   * Get the current progress of a job.
+   *
+   * @param jobId the id of the job
+   * @return the job, or empty if there is no job with the id
+   */
+  public Optional<ConnectionJobDto> getJob(final String jobId) {
+    return connectionJobRepository.findById(jobId).map(connectionJobMapper::toDto);
+  }
+
+  /**
+   * Mark the jobs accepted by this instance as active, so they are not failed as stale while they
+   * are waiting or running.
+   */
+  @Scheduled(fixedDelayString = "${app.reval.connectionjob.heartbeatMs}")
+  public void markActiveJobs() {
+    if (!activeJobIds.isEmpty()) {
+      connectionJobCustomRepository.markActive(List.copyOf(activeJobIds),
+          LocalDateTime.now(clock));
+    }
+  }
+
+  /**
+   * Fail the unfinished jobs which are no longer being marked as active by any instance.
+   *
+   * @return the number of jobs failed
+   */
+  public long failStaleJobs() {
+    final var now = LocalDateTime.now(clock);
+    final var failed = connectionJobCustomRepository.failStale(
+        now.minus(staleAfterMs, ChronoUnit.MILLIS), STALE_MESSAGE, now);
+    if (failed > 0) {
+      log.warn("Failed {} stale connection jobs", failed);
+    }
+    return failed;
+  }
+
+  private ConnectionJobDto submitJob(final UpdateConnectionDto bulkRequestDto,
+      final ConnectionRequestType requestType) {
+    final var now = LocalDateTime.now(clock);
+    final var job = connectionJobRepository.save(ConnectionJob.builder()
+        .id(UUID.randomUUID().toString())
+        .requestType(requestType)
+        .designatedBodyCode(bulkRequestDto.getDesignatedBodyCode())
+        .changeReason(bulkRequestDto.getChangeReason())
+        .admin(bulkRequestDto.getAdmin())
+        .status(ConnectionJobStatus.PENDING)
+        .totalDoctors(bulkRequestDto.getDoctors().size())
+        .createdDateTime(now)
+        .lastUpdatedDateTime(now)
+        .build());
+    log.info("Created {} connection job {} for {} doctors", requestType, job.getId(),
+        job.getTotalDoctors());
+
+    activeJobIds.add(job.getId());
+    try {
+      connectionJobExecutor.execute(() -> runJob(job.getId(), bulkRequestDto, requestType));
+    } catch (TaskRejectedException e) {
+      activeJobIds.remove(job.getId());
+      log.warn("Connection job {} rejected: {}", job.getId(), e.getMessage());
+      connectionJobCustomRepository.markFinished(job.getId(), ConnectionJobStatus.FAILED,
+          QUEUE_FULL_MESSAGE, LocalDateTime.now(clock));
+      throw new ConnectionJobRejectedException(QUEUE_FULL_MESSAGE, e);
+    }
+    return connectionJobMapper.toDto(job);
+  }
+
+  private void runJob(final String jobId, final UpdateConnectionDto bulkRequestDto,
+      final ConnectionRequestType requestType) {
+    connectionJobCustomRepository.markRunning(jobId, LocalDateTime.now(clock));
+    try {
+      final Consumer<ConnectionRequestLog> onDoctorProcessed =
+          processed -> recordResult(jobId, processed);
+      final var response = ConnectionRequestType.ADD.equals(requestType)
+          ? connectionService.addDoctors(bulkRequestDto, onDoctorProcessed)
+          : connectionService.removeDoctors(bulkRequestDto, onDoctorProcessed);
+      connectionJobCustomRepository.markFinished(jobId, ConnectionJobStatus.COMPLETED,
+          response.getMessage(), LocalDateTime.now(clock));
+      log.info("Connection job {} completed: {}", jobId, response.getMessage());
+    } catch (RuntimeException e) {
+      log.error("Connection job {} failed", jobId, e);
+      connectionJobCustomRepository.markFinished(jobId, ConnectionJobStatus.FAILED,
+          e.getMessage(), LocalDateTime.now(clock));
+    } finally {
+      activeJobIds.remove(jobId);
+    }
+  }
+
+  private void recordResult(final String jobId, final ConnectionRequestLog processed) {
+    connectionJobCustomRepository.addResult(jobId, DoctorResult.builder()
+        .gmcId(processed.getGmcId())
+        .responseCode(processed.getResponseCode())
+        .responseMessage(GmcResponseCode.fromCodeToMessage(processed.getResponseCode()))
+        .build(), LocalDateTime.now(clock));
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static java.time.LocalDateTime.now;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.ExceptionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository.FailedInsert;
+import uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository;
+
+/**
+ * Collects the connection logs and exception logs written while processing a bulk connection
+ * request, and inserts them in bulk each time the number of waiting documents reaches the flush
+ * size, and when the request is closed. The connection logs which were inserted are then
+ * recorded as the latest for their doctors. Doctors are processed in parallel, so the waiting
+ * documents are taken under a lock and written outside it, and other doctors can keep adding
+ * documents while a write is in progress.
+ *
+ * <p>An outbox message is added with its connection log, and outbox messages are inserted before
+ * the logs, so the message for a doctor is never lost once their log has been written.
+ *
+ * <p>A doctor which finishes after the batch was closed, for example after the request timed
+ * out, is written straight away.
+ */
+@Slf4j
+public class ConnectionLogBatch {
+
+  private final BulkInsertRepository bulkInsertRepository;
+  private final LatestConnectionLogRepository latestConnectionLogRepository;
+  private final int flushSize;
+  private List<ConnectionLog> connectionLogs = new ArrayList<>();
+  private List<ExceptionLog> exceptionLogs = new ArrayList<>();
+  private List<OutboxMessage> outboxMessages = new ArrayList<>();
+  private Map<ConnectionLog, Runnable> insertedCallbacks = new IdentityHashMap<>();
+  private final List<FailedInsert> failedInserts = new ArrayList<>();
+  private boolean closed;
+
+  /**
+   * Create a batch for a single bulk request.
+   *
+   * @param bulkInsertRepository          the repository used to insert the documents
+   * @param latestConnectionLogRepository the repository of the latest connection logs
+   * @param flushSize                     the number of waiting documents which triggers a write
+   */
+  public ConnectionLogBatch(BulkInsertRepository bulkInsertRepository,
+      LatestConnectionLogRepository latestConnectionLogRepository, int flushSize) {
+    this.bulkInsertRepository = bulkInsertRepository;
+    this.latestConnectionLogRepository = latestConnectionLogRepository;
+    this.flushSize = flushSize;
+  }
+
+  /**
+   * Add a connection log to be inserted.
+   *
+   * @param connectionLog the connection log
+   */
+  public void addConnectionLog(ConnectionLog connectionLog) {
+    addConnectionLog(connectionLog, null);
+  }
+
+  /**
+   * Add a connection log to be inserted, and a callback to run once it has been inserted. The
+   * callback is not run if the insert fails, and may run on the thread of another doctor.
+   *
+   * @param connectionLog the connection log
+   * @param onInserted    called once the connection log has been inserted, or null
+   */
+  public void addConnectionLog(ConnectionLog connectionLog, Runnable onInserted) {
+    addConnectionLog(connectionLog, null, onInserted);
+  }
+
+  /**
+   * Add a connection log and the outbox message for it together, so that a write can never take
+   * the connection log without the message. The callback is not run if the insert fails, and may
+   * run on the thread of another doctor.
+   *
+   * @param connectionLog the connection log
+   * @param outboxMessage the message to relay once the connection log is written, or null
+   * @param onInserted    called once the connection log has been inserted, or null
+   */
+  public void addConnectionLog(ConnectionLog connectionLog, OutboxMessage outboxMessage,
+      Runnable onInserted) {
+    final WaitingDocuments waiting;
+    synchronized (this) {
+      if (outboxMessage != null) {
+        outboxMessages.add(outboxMessage);
+      }
+      connectionLogs.add(connectionLog);
+      if (onInserted != null) {
+        insertedCallbacks.put(connectionLog, onInserted);
+      }
+      waiting = takeIfNeeded();
+    }
+    write(waiting);
+  }
+
+  /**
+   * Add a Failed Update to be inserted.
+   *
+   * @param gmcId        gmcId of the doctor whose connection update failed
+   * @param errorMessage the reason for the failure
+   * @param admin        the admin who made the request
+   */
+  public void addExceptionLog(String gmcId, String errorMessage, String admin) {
+    final WaitingDocuments waiting;
+    synchronized (this) {
+      exceptionLogs.add(ExceptionLog.builder().gmcId(gmcId).errorMessage(errorMessage)
+          .timestamp(now()).admin(admin).build());
+      waiting = takeIfNeeded();
+    }
+    write(waiting);
+  }
+
+  /**
+   * Insert any waiting documents and write later documents straight away.
+   *
+   * @return every document in the batch which could not be inserted
+   */
+  public List<FailedInsert> close() {
+    final WaitingDocuments waiting;
+    synchronized (this) {
+      closed = true;
+      waiting = take();
+    }
+    write(waiting);
+    synchronized (this) {
+      return List.copyOf(failedInserts);
+    }
+  }
+
+  private WaitingDocuments takeIfNeeded() {
+    if (closed || connectionLogs.size() + exceptionLogs.size() + outboxMessages.size()
+        >= flushSize) {
+      return take();
+    }
+    return null;
+  }
+
+  private WaitingDocuments take() {
+    final var waiting = new WaitingDocuments(connectionLogs, exceptionLogs, outboxMessages,
+        insertedCallbacks);
+    connectionLogs = new ArrayList<>();
+    exceptionLogs = new ArrayList<>();
+    outboxMessages = new ArrayList<>();
+    insertedCallbacks = new IdentityHashMap<>();
+    return waiting;
+  }
+
+  private void write(WaitingDocuments waiting) {
+    if (waiting == null) {
+      return;
+    }
+    final List<FailedInsert> failed = new ArrayList<>();
+    List<ConnectionLog> insertedLogs = List.of();
+    if (!waiting.outboxMessages.isEmpty()) {
+      failed.addAll(bulkInsertRepository.insertAll(OutboxMessage.class, waiting.outboxMessages));
+    }
+    if (!waiting.connectionLogs.isEmpty()) {
+      final var failedLogs = bulkInsertRepository.insertAll(ConnectionLog.class,
+          waiting.connectionLogs);
+      failed.addAll(failedLogs);
+      insertedLogs = inserted(waiting.connectionLogs, failedLogs);
+      latestConnectionLogRepository.upsertLatest(insertedLogs);
+    }
+    if (!waiting.exceptionLogs.isEmpty()) {
+      failed.addAll(bulkInsertRepository.insertAll(ExceptionLog.class, waiting.exceptionLogs));
+    }
+    if (!failed.isEmpty()) {
+      synchronized (this) {
+        failedInserts.addAll(failed);
+      }
+    }
+    insertedLogs.forEach(insertedLog -> runInsertedCallback(waiting, insertedLog));
+  }
+
+  private static void runInsertedCallback(WaitingDocuments waiting, ConnectionLog insertedLog) {
+    final var callback = waiting.insertedCallbacks.get(insertedLog);
+    if (callback == null) {
+      return;
+    }
+    try {
+      callback.run();
+    } catch (RuntimeException e) {
+      log.error("Failed to handle the inserted connection log for gmcId {}",
+          insertedLog.getGmcId(), e);
+    }
+  }
+
+  private static List<ConnectionLog> inserted(List<ConnectionLog> documents,
+      List<FailedInsert> failed) {
+    if (failed.isEmpty()) {
+      return documents;
+    }
+    Set<Object> failedDocuments = Collections.newSetFromMap(new IdentityHashMap<>());
+    failed.forEach(failedInsert -> failedDocuments.add(failedInsert.getDocument()));
+    return documents.stream()
+        .filter(document -> !failedDocuments.contains(document))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * The documents taken from the batch to be written together.
+   */
+  private static final class WaitingDocuments {
+
+    private final List<ConnectionLog> connectionLogs;
+    private final List<ExceptionLog> exceptionLogs;
+    private final List<OutboxMessage> outboxMessages;
+    private final Map<ConnectionLog, Runnable> insertedCallbacks;
+
+    private WaitingDocuments(List<ConnectionLog> connectionLogs, List<ExceptionLog> exceptionLogs,
+        List<OutboxMessage> outboxMessages, Map<ConnectionLog, Runnable> insertedCallbacks) {
+      this.connectionLogs = connectionLogs;
+      this.exceptionLogs = exceptionLogs;
+      this.outboxMessages = outboxMessages;
+      this.insertedCallbacks = insertedCallbacks;
+    }
+  }
+}
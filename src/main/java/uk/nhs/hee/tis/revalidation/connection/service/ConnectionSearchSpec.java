@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.apache.lucene.search.join.ScoreMode.None;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.nestedQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType.FROM;
+import static uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType.TO;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import lombok.Builder;
+import lombok.Value;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.search.MatchQuery.ZeroTermsQuery;
+import org.springframework.util.StringUtils;
+import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils;
+
+/**
+ * The filters shared by the connected, discrepancies and hidden discrepancies searches, compiled
+ * to a single bool query by {@link #toQuery()}.
+ *
+ * <p>Every clause is added in filter context so that none of them are scored, which also lets
+ * Elasticsearch cache them in the node query cache and reuse them across searches. The exclusions
+ * stay analysed match queries so they match the same documents as before. Any filter left unset
+ * is not applied.
+ */
+@Value
+@Builder
+public class ConnectionSearchSpec {
+
+  static final String DOCTOR_FIRST_NAME_FIELD = "doctorFirstName";
+  static final String DOCTOR_LAST_NAME_FIELD = "doctorLastName";
+  static final String GMC_REFERENCE_NUMBER_FIELD = "gmcReferenceNumber";
+  static final String PROGRAMME_NAME_FIELD = "programmeName";
+  static final String DESIGNATED_BODY_FIELD = "designatedBody";
+  static final String TCS_DESIGNATED_BODY_FIELD = "tcsDesignatedBody";
+  static final String DESIGNATED_BODY_NORMALISED_FIELD = "designatedBody.normalised";
+  static final String TCS_DESIGNATED_BODY_NORMALISED_FIELD = "tcsDesignatedBody.normalised";
+  static final String MEMBERSHIP_TYPE_FIELD = "membershipType";
+  static final String PLACEMENT_GRADE_FIELD = "placementGrade";
+  static final String EXCLUDED_MEMBERSHIP_TYPE = "MILITARY";
+  static final String EXCLUDED_PLACEMENT_GRADE = "279";
+  static final String PROGRAMME_MEMBERSHIP_END_DATE_FIELD = "membershipEndDate";
+  static final String GMC_SUBMISSION_DATE_FIELD = "submissionDate";
+  static final String CONNECTION_LAST_UPDATED_DATE_FIELD = "lastConnectionDateTime";
+  static final String UPDATED_BY_FIELD = "updatedBy";
+  static final String HIDDEN_DISCREPANCY_DBC_PATH = "hiddenDiscrepancies";
+  static final String HIDDEN_DISCREPANCY_DBC_FIELD =
+      "hiddenDiscrepancies.hiddenForDesignatedBodyCode.keyword";
+
+  /**
+   * Text matched as a prefix of the doctor's first name, last name or GMC number.
+   */
+  String searchQuery;
+
+  /**
+   * Whether the search query is matched against the edge-ngram autocomplete sub-fields.
+   */
+  boolean autocomplete;
+
+  /**
+   * Designated bodies the doctor is connected to in GMC.
+   */
+  List<String> designatedBodies;
+
+  /**
+   * Designated bodies the doctor belongs to in TIS. When set, a doctor matches if either their
+   * GMC or their TIS designated body matches.
+   */
+  List<String> tisDesignatedBodies;
+
+  /**
+   * Whether designated bodies are filtered with terms queries on the normalised keyword
+   * sub-fields, rather than with match queries on the analysed text fields.
+   */
+  boolean designatedBodyTerms;
+
+  String programmeName;
+  LocalDate membershipEndDateFrom;
+  LocalDate membershipEndDateTo;
+  LocalDate gmcSubmissionDateFrom;
+  LocalDate gmcSubmissionDateTo;
+  LocalDate lastConnectionDateTimeFrom;
+  LocalDate lastConnectionDateTimeTo;
+  String updatedBy;
+
+  /**
+   * Designated bodies for which discrepancies marked as hidden are excluded.
+   */
+  Collection<String> excludeHiddenFor;
+
+  /**
+   * Designated bodies for which only discrepancies marked as hidden are included.
+   */
+  Collection<String> onlyHiddenFor;
+
+  /**
+   * Compile the spec to a bool query containing only filter clauses.
+   *
+   * @return the root query for the search
+   */
+  public BoolQueryBuilder toQuery() {
+    BoolQueryBuilder rootQuery = boolQuery();
+
+    rootQuery.filter(boolQuery()
+        .mustNot(matchQuery(MEMBERSHIP_TYPE_FIELD, EXCLUDED_MEMBERSHIP_TYPE))
+        .mustNot(matchQuery(PLACEMENT_GRADE_FIELD, EXCLUDED_PLACEMENT_GRADE)));
+
+    addDesignatedBodyFilter(rootQuery);
+
+    if (StringUtils.hasText(programmeName)) {
+      rootQuery.filter(matchPhraseQuery(PROGRAMME_NAME_FIELD, programmeName)
+          .zeroTermsQuery(ZeroTermsQuery.ALL));
+    }
+
+    if (StringUtils.hasText(searchQuery)) {
+      rootQuery.filter(EsQueryUtils.buildDoctorSearchQuery(searchQuery, autocomplete,
+          DOCTOR_FIRST_NAME_FIELD, DOCTOR_LAST_NAME_FIELD, GMC_REFERENCE_NUMBER_FIELD));
+    }
+
+    EsQueryUtils.addDateRangeFilter(rootQuery,
+        PROGRAMME_MEMBERSHIP_END_DATE_FIELD,
+        membershipEndDateFrom != null ? membershipEndDateFrom.toString() : null,
+        membershipEndDateTo != null ? membershipEndDateTo.toString() : null);
+
+    EsQueryUtils.addDateRangeFilter(rootQuery,
+        GMC_SUBMISSION_DATE_FIELD,
+        gmcSubmissionDateFrom != null ? gmcSubmissionDateFrom.toString() : null,
+        gmcSubmissionDateTo != null ? gmcSubmissionDateTo.toString() : null);
+
+    EsQueryUtils.addDateRangeFilter(rootQuery,
+        CONNECTION_LAST_UPDATED_DATE_FIELD,
+        lastConnectionDateTimeFrom != null ? EsQueryUtils.getDateTimeQueryFromRange(
+            lastConnectionDateTimeFrom, FROM) : null,
+        lastConnectionDateTimeTo != null ? EsQueryUtils.getDateTimeQueryFromRange(
+            lastConnectionDateTimeTo, TO) : null);
+
+    if (StringUtils.hasText(updatedBy)) {
+      rootQuery.filter(matchPhraseQuery(UPDATED_BY_FIELD, updatedBy)
+          .zeroTermsQuery(ZeroTermsQuery.ALL));
+    }
+
+    if (excludeHiddenFor != null) {
+      rootQuery.filter(boolQuery().mustNot(nestedQuery(HIDDEN_DISCREPANCY_DBC_PATH,
+          boolQuery().must(termsQuery(HIDDEN_DISCREPANCY_DBC_FIELD, excludeHiddenFor)),
+          None).ignoreUnmapped(true)));
+    }
+
+    if (onlyHiddenFor != null) {
+      rootQuery.filter(boolQuery().must(nestedQuery(HIDDEN_DISCREPANCY_DBC_PATH,
+          boolQuery().must(termsQuery(HIDDEN_DISCREPANCY_DBC_FIELD, onlyHiddenFor)),
+          None).ignoreUnmapped(true)));
+    }
+
+    return rootQuery;
+  }
+
+  private void addDesignatedBodyFilter(BoolQueryBuilder rootQuery) {
+    if (designatedBodies == null) {
+      return;
+    }
+    if (designatedBodyTerms) {
+      addDesignatedBodyTermsFilter(rootQuery);
+      return;
+    }
+    String formattedDbcs =
+        ElasticsearchQueryHelper.formatDesignatedBodyCodesForElasticsearchQuery(designatedBodies);
+    if (tisDesignatedBodies == null) {
+      if (StringUtils.hasText(formattedDbcs)) {
+        rootQuery.filter(matchQuery(DESIGNATED_BODY_FIELD, formattedDbcs));
+      }
+      return;
+    }
+    String formattedTisDbcs = ElasticsearchQueryHelper
+        .formatDesignatedBodyCodesForElasticsearchQuery(tisDesignatedBodies);
+    rootQuery.filter(boolQuery()
+        .should(matchQuery(DESIGNATED_BODY_FIELD, formattedDbcs))
+        .should(matchQuery(TCS_DESIGNATED_BODY_FIELD, formattedTisDbcs))
+        .minimumShouldMatch(1));
+  }
+
+  /**
+   * The dbc_normalizer lowercases the codes and strips the "1-" prefix at index time, and is
+   * applied to the terms of the query as well, so the codes are passed through unformatted.
+   */
+  private void addDesignatedBodyTermsFilter(BoolQueryBuilder rootQuery) {
+    if (tisDesignatedBodies == null) {
+      if (!designatedBodies.isEmpty()) {
+        rootQuery.filter(termsQuery(DESIGNATED_BODY_NORMALISED_FIELD, designatedBodies));
+      }
+      return;
+    }
+    rootQuery.filter(boolQuery()
+        .should(termsQuery(DESIGNATED_BODY_NORMALISED_FIELD, designatedBodies))
+        .should(termsQuery(TCS_DESIGNATED_BODY_NORMALISED_FIELD, tisDesignatedBodies))
+        .minimumShouldMatch(1));
+  }
+}
@@ -26,22 +26,32 @@ import static java.util.stream.Collectors.toList;
 import static uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType.ADD;
 import static uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType.REMOVE;
 import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.DOCTOR_ALREADY_ASSOCIATED;
+import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.GMC_TIMEOUT;
+import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.GMC_UNAVAILABLE;
 import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.SUCCESS;
 import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.fromCode;
 
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.data.domain.Page;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.ws.client.WebServiceIOException;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionHistoryDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionLogDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.DoctorInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.GmcConnectionResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionResponseDto;
@@ -52,11 +62,16 @@ import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
 import uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode;
 import uk.nhs.hee.tis.revalidation.connection.entity.RemoveConnectionReasonCode;
 import uk.nhs.hee.tis.revalidation.connection.event.ConnectionChangedApplicationEvent;
+import uk.nhs.hee.tis.revalidation.connection.exception.GmcUnavailableException;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionLogMapper;
 import uk.nhs.hee.tis.revalidation.connection.message.ConnectionMessage;
+import uk.nhs.hee.tis.revalidation.connection.message.ConnectionMessagePublisher;
+import uk.nhs.hee.tis.revalidation.connection.message.OutboxWriter;
 import uk.nhs.hee.tis.revalidation.connection.message.payloads.IndexSyncMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository;
 import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionLogCustomRepository;
 import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository;
 
 @Slf4j
 @Service
@@ -64,49 +79,99 @@ public class ConnectionService {
 
   private final GmcClientService gmcClientService;
 
-  private final ExceptionLogService exceptionService;
+  private final BulkInsertRepository bulkInsertRepository;
 
   private final ConnectionRepository repository;
 
   private final ConnectionLogCustomRepository connectionLogCustomRepository;
 
+  private final LatestConnectionLogRepository latestConnectionLogRepository;
+
   private final RabbitTemplate rabbitTemplate;
 
+  private final ConnectionMessagePublisher connectionMessagePublisher;
+
+  private final OutboxWriter outboxWriter;
+
   private final ConnectionLogMapper connectionLogMapper;
 
   private final ApplicationEventPublisher applicationEventPublisher;
 
+  private final TaskExecutor gmcRequestExecutor;
+
+  @Value("${app.reval.connectionlog.bulkFlushSize}")
+  private int logFlushSize;
+
+  @Value("${app.reval.latestconnectionlog.enabled}")
+  private boolean latestConnectionLogsEnabled;
+
+  @Value("${app.reval.outbox.enabled}")
+  private boolean outboxEnabled;
+
   @Value("${app.rabbit.reval.exchange}")
   private String exchange;
 
   @Value("${app.rabbit.reval.routingKey.connection.manualupdate}")
-  private String routingKey;
+  private String connectionRoutingKey;
 
   @Value("${app.rabbit.reval.routingKey.connectionlog.essyncdata}")
   private String esSyncDataRoutingKey;
 
   private static final String UPDATED_BY_GMC = "Updated by GMC";
 
-  public ConnectionService(GmcClientService gmcClientService, ExceptionLogService exceptionService,
+  public ConnectionService(GmcClientService gmcClientService,
+      BulkInsertRepository bulkInsertRepository,
       ConnectionRepository repository, ConnectionLogCustomRepository connectionLogCustomRepository,
-      RabbitTemplate rabbitTemplate,
-      ConnectionLogMapper connectionLogMapper,
-      ApplicationEventPublisher applicationEventPublisher) {
+      LatestConnectionLogRepository latestConnectionLogRepository,
+      RabbitTemplate rabbitTemplate, ConnectionMessagePublisher connectionMessagePublisher,
+      OutboxWriter outboxWriter, ConnectionLogMapper connectionLogMapper,
+      ApplicationEventPublisher applicationEventPublisher,
+      @Qualifier("gmcRequestExecutor") TaskExecutor gmcRequestExecutor) {
     this.gmcClientService = gmcClientService;
-    this.exceptionService = exceptionService;
+    this.bulkInsertRepository = bulkInsertRepository;
     this.repository = repository;
     this.connectionLogCustomRepository = connectionLogCustomRepository;
+    this.latestConnectionLogRepository = latestConnectionLogRepository;
     this.rabbitTemplate = rabbitTemplate;
+    this.connectionMessagePublisher = connectionMessagePublisher;
+    this.outboxWriter = outboxWriter;
     this.connectionLogMapper = connectionLogMapper;
     this.applicationEventPublisher = applicationEventPublisher;
+    this.gmcRequestExecutor = gmcRequestExecutor;
   }
 
   public UpdateConnectionResponseDto addDoctors(final UpdateConnectionDto addDoctorsDto) {
-    return processConnectionRequest(addDoctorsDto, ADD);
+    return addDoctors(addDoctorsDto, processed -> {
+    });
+  }
+
+  /**
+   * Add connections for doctors, notifying the caller as each doctor is processed.
+   *
+   * @param addDoctorsDto     the connection update request
+   * @param onDoctorProcessed called with the request log once the GMC has responded for a doctor
+   * @return response indicating success or failure with appropriate message
+   */
+  public UpdateConnectionResponseDto addDoctors(final UpdateConnectionDto addDoctorsDto,
+      final Consumer<ConnectionRequestLog> onDoctorProcessed) {
+    return processConnectionRequest(addDoctorsDto, ADD, onDoctorProcessed);
   }
 
   public UpdateConnectionResponseDto removeDoctors(final UpdateConnectionDto removeDoctorsDto) {
-    return processConnectionRequest(removeDoctorsDto, REMOVE);
+    return removeDoctors(removeDoctorsDto, processed -> {
+    });
+  }
+
+  /**
+   * Remove connections for doctors, notifying the caller as each doctor is processed.
+   *
+   * @param removeDoctorsDto  the connection update request
+   * @param onDoctorProcessed called with the request log once the GMC has responded for a doctor
+   * @return response indicating success or failure with appropriate message
+   */
+  public UpdateConnectionResponseDto removeDoctors(final UpdateConnectionDto removeDoctorsDto,
+      final Consumer<ConnectionRequestLog> onDoctorProcessed) {
+    return processConnectionRequest(removeDoctorsDto, REMOVE, onDoctorProcessed);
   }
 
   /**
@@ -157,6 +222,7 @@ public class ConnectionService {
     ConnectionLog log = connectionLogMapper.fromDto(connectionLogDto);
     log.setId(UUID.randomUUID().toString());
     ConnectionLog savedLog = repository.save(log);
+    latestConnectionLogRepository.upsertLatest(List.of(savedLog));
     publishConnectionChangedApplicationEvent(savedLog);
   }
 
@@ -166,7 +232,11 @@ public class ConnectionService {
    *
    * <p>Flow:
    * <ol>
-   *   <li>For each doctor: delegate to GMC API and handle the response</li>
+   *   <li>For each doctor: delegate to GMC API and handle the response. The doctors are submitted
+   *   in parallel on the {@code gmcRequestExecutor}, each call bounded by the read timeout of
+   *   the GMC HTTP client</li>
+   *   <li>Wait for every doctor to be processed, then insert any connection logs and Failed
+   *   Updates not yet written by the {@link ConnectionLogBatch}</li>
    *   <li>Check if any requests failed</li>
    *   <li>Return appropriate success or error message</li>
    * </ol>
@@ -174,27 +244,34 @@ public class ConnectionService {
    * @param bulkRequestDto        the connection update request containing doctors and change
    *                              reason
    * @param connectionRequestType whether to ADD or REMOVE the connection
+   * @param onDoctorProcessed     called with the request log once the GMC has responded for a
+   *                              doctor
    * @return response indicating success or failure with appropriate message
    */
   private UpdateConnectionResponseDto processConnectionRequest(
       final UpdateConnectionDto bulkRequestDto,
-      final ConnectionRequestType connectionRequestType) {
-
-    final var responseCodes = bulkRequestDto.getDoctors().stream()
-        .map(doctor -> {
-          ConnectionRequestLog connectionRequestLog = ConnectionRequestLog.builder()
-              .id(UUID.randomUUID().toString())
-              .gmcId(doctor.getGmcId())
-              .newDesignatedBodyCode(bulkRequestDto.getDesignatedBodyCode())
-              .previousDesignatedBodyCode(doctor.getCurrentDesignatedBodyCode())
-              .reason(bulkRequestDto.getChangeReason())
-              .requestType(connectionRequestType)
-              .requestTime(now())
-              .updatedBy(bulkRequestDto.getAdmin())
-              .build();
-          return changeDoctorConnection(bulkRequestDto, connectionRequestLog);
-        })
-        .collect(Collectors.toSet());
+      final ConnectionRequestType connectionRequestType,
+      final Consumer<ConnectionRequestLog> onDoctorProcessed) {
+
+    final var logBatch = new ConnectionLogBatch(bulkInsertRepository,
+        latestConnectionLogRepository, logFlushSize);
+    final Set<GmcResponseCode> responseCodes;
+    try {
+      final List<CompletableFuture<GmcResponseCode>> pendingResponses =
+          bulkRequestDto.getDoctors().stream()
+              .map(doctor -> submitDoctorConnectionChange(bulkRequestDto,
+                  buildConnectionRequestLog(bulkRequestDto, doctor, connectionRequestType),
+                  logBatch, onDoctorProcessed))
+              .collect(toList());
+      responseCodes = awaitResponseCodes(pendingResponses);
+    } finally {
+      final var failedInserts = logBatch.close();
+      if (!failedInserts.isEmpty()) {
+        log.error("{} logs for the {} request by {} could not be saved: {}",
+            failedInserts.size(), connectionRequestType, bulkRequestDto.getAdmin(),
+            failedInserts);
+      }
+    }
 
     Optional<GmcResponseCode> firstFail = responseCodes.stream()
         .filter(code -> !SUCCESS.equals(code))
@@ -211,6 +288,71 @@ public class ConnectionService {
         .build();
   }
 
+  private ConnectionRequestLog buildConnectionRequestLog(UpdateConnectionDto bulkRequestDto,
+      DoctorInfoDto doctor, ConnectionRequestType connectionRequestType) {
+    return ConnectionRequestLog.builder()
+        .id(UUID.randomUUID().toString())
+        .gmcId(doctor.getGmcId())
+        .newDesignatedBodyCode(bulkRequestDto.getDesignatedBodyCode())
+        .previousDesignatedBodyCode(doctor.getCurrentDesignatedBodyCode())
+        .reason(bulkRequestDto.getChangeReason())
+        .requestType(connectionRequestType)
+        .requestTime(now())
+        .updatedBy(bulkRequestDto.getAdmin())
+        .build();
+  }
+
+  /**
+   * Submit the change for a single doctor to the GMC request executor. The call is bounded by the
+   * timeouts of the GMC HTTP client, which start when the call is picked up by the executor, so
+   * doctors queued behind a busy pool are not penalised.
+   *
+   * @param bulkRequestDto       the user request with shared attributes
+   * @param connectionRequestLog the request for an individual doctor without response attributes
+   * @param logBatch             the batch the logs for the request are written to
+   * @param onDoctorProcessed    called with the request log once the GMC has responded
+   * @return a future completed with the response code from the GMC
+   */
+  private CompletableFuture<GmcResponseCode> submitDoctorConnectionChange(
+      UpdateConnectionDto bulkRequestDto, ConnectionRequestLog connectionRequestLog,
+      ConnectionLogBatch logBatch, Consumer<ConnectionRequestLog> onDoctorProcessed) {
+    final var result = new CompletableFuture<GmcResponseCode>();
+    gmcRequestExecutor.execute(() -> {
+      try {
+        final var responseCode =
+            changeDoctorConnection(bulkRequestDto, connectionRequestLog, logBatch);
+        onDoctorProcessed.accept(connectionRequestLog);
+        result.complete(responseCode);
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Wait for all submitted doctors to be processed. Where any call failed, the failure is rethrown
+   * once every call has settled, as it would have been when the doctors were processed in turn.
+   *
+   * @param pendingResponses the futures for each doctor in the request
+   * @return the distinct response codes from the GMC
+   */
+  private Set<GmcResponseCode> awaitResponseCodes(
+      List<CompletableFuture<GmcResponseCode>> pendingResponses) {
+    try {
+      CompletableFuture.allOf(pendingResponses.toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException e) {
+      final var cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+    return pendingResponses.stream()
+        .map(CompletableFuture::join)
+        .collect(Collectors.toSet());
+  }
+
   /**
    * Process a connection request (ADD or REMOVE) for a doctor. This method is responsible for
    * controlling the external save and initiating actions to make TIS-Revalidation data consistent
@@ -218,7 +360,9 @@ public class ConnectionService {
    *
    * <p>Flow:
    * <ol>
-   *   <li>For each doctor: delegate to GMC API</li>
+   *   <li>For each doctor: delegate to GMC API. Where the request is not sent because GMC is
+   *   unavailable, or GMC does not respond before the HTTP client times out, only a Failed Update
+   *   is saved</li>
    *   <li>Use the response from the GMC to determine what actions should be taken:
    *     <ul>
    *       <li>When the request is to `ADD`, record when the doctor is already connected</li>
@@ -236,23 +380,45 @@ public class ConnectionService {
    *
    * @param bulkRequestDto       the user request with shared attributes
    * @param connectionRequestLog the request for an individual doctor without response attributes
+   * @param logBatch             the batch the logs for the request are written to
    * @return the response code from the GMC.  Null where the response code is not recognised.
    */
   private GmcResponseCode changeDoctorConnection(UpdateConnectionDto bulkRequestDto,
-      ConnectionRequestLog connectionRequestLog) {
+      ConnectionRequestLog connectionRequestLog, ConnectionLogBatch logBatch) {
     /*
      * Delegate the connection request to the appropriate GMC Client API method. Routes to
      * either tryAddDoctor or tryRemoveDoctor based on request type.
      */
     GmcConnectionResponseDto gmcResponse;
-    if (ADD.equals(connectionRequestLog.getRequestType())) {
-      gmcResponse = gmcClientService.tryAddDoctor(connectionRequestLog.getGmcId(),
-          bulkRequestDto.getChangeReason(),
-          connectionRequestLog.getNewDesignatedBodyCode());
-    } else {
-      gmcResponse = gmcClientService.tryRemoveDoctor(connectionRequestLog.getGmcId(),
-          bulkRequestDto.getChangeReason(),
-          connectionRequestLog.getPreviousDesignatedBodyCode());
+    try {
+      if (ADD.equals(connectionRequestLog.getRequestType())) {
+        gmcResponse = gmcClientService.tryAddDoctor(connectionRequestLog.getGmcId(),
+            bulkRequestDto.getChangeReason(),
+            connectionRequestLog.getNewDesignatedBodyCode());
+      } else {
+        gmcResponse = gmcClientService.tryRemoveDoctor(connectionRequestLog.getGmcId(),
+            bulkRequestDto.getChangeReason(),
+            connectionRequestLog.getPreviousDesignatedBodyCode());
+      }
+    } catch (GmcUnavailableException e) {
+      // The request was never sent, so only a Failed Update is recorded
+      log.warn("Request for doctor {} not sent to GMC: {}", connectionRequestLog.getGmcId(),
+          e.getMessage());
+      connectionRequestLog.setResponseCode(GMC_UNAVAILABLE.getCode());
+      logBatch.addExceptionLog(connectionRequestLog.getGmcId(), GMC_UNAVAILABLE.getMessage(),
+          bulkRequestDto.getAdmin());
+      return GMC_UNAVAILABLE;
+    } catch (WebServiceIOException e) {
+      if (!(e.getMostSpecificCause() instanceof InterruptedIOException)) {
+        throw e;
+      }
+      // GMC may still apply the change, so it is reported as failed rather than retried
+      log.warn("Request for doctor {} timed out waiting for GMC: {}",
+          connectionRequestLog.getGmcId(), e.getMessage());
+      connectionRequestLog.setResponseCode(GMC_TIMEOUT.getCode());
+      logBatch.addExceptionLog(connectionRequestLog.getGmcId(), GMC_TIMEOUT.getMessage(),
+          bulkRequestDto.getAdmin());
+      return GMC_TIMEOUT;
     }
 
     connectionRequestLog.setGmcClientId(gmcResponse.getGmcRequestId());
@@ -267,7 +433,7 @@ public class ConnectionService {
        * It is possible that the intention was to save a `ConnectionLog`, missed from TIS21-7864,
        *  following commit 0a574bed4adac6976ea6282f905b8120c5626004.
        */
-      repository.save(ConnectionRequestLog.builder()
+      logBatch.addConnectionLog(ConnectionRequestLog.builder()
           .gmcId(connectionRequestLog.getGmcId())
           .newDesignatedBodyCode(bulkRequestDto.getDesignatedBodyCode())
           .previousDesignatedBodyCode(connectionRequestLog.getPreviousDesignatedBodyCode())
@@ -275,8 +441,26 @@ public class ConnectionService {
           .requestTime(now())
           .build());
     }
-    // Persist the connection request log to Database
-    repository.save(connectionRequestLog);
+    final boolean connectionChanged = SUCCESS.getCode().equals(returnCodeString)
+        || DOCTOR_ALREADY_ASSOCIATED.getCode().equals(returnCodeString);
+    final var connectionMessage = connectionChanged ? ConnectionMessage.builder()
+        .gmcId(connectionRequestLog.getGmcId())
+        .designatedBodyCode(bulkRequestDto.getDesignatedBodyCode())
+        .submissionDate(gmcResponse.getSubmissionDate())
+        .gmcLastUpdatedDateTime(now())
+        .build() : null;
+    // Relayed from the outbox once it has been written with the connection log
+    final var outboxMessage = connectionChanged && outboxEnabled
+        ? outboxWriter.create(connectionRoutingKey, connectionMessage) : null;
+
+    /*
+     * Persist the connection request log to Database. For successful changes or
+     * already-associated outcomes an application event is published once it has been saved,
+     * which allows other parts of the system to react to connection changes (show discrepancies).
+     * Without the outbox the connection message is also only sent once the log has been saved.
+     */
+    logBatch.addConnectionLog(connectionRequestLog, outboxMessage, connectionChanged
+        ? () -> onConnectionLogSaved(connectionRequestLog, connectionMessage) : null);
 
     // Convert response code to human-readable message
     GmcResponseCode responseCode = fromCode(returnCodeString);
@@ -284,56 +468,47 @@ public class ConnectionService {
 
     if (!SUCCESS.getCode().equals(returnCodeString)) {
       // Save Failed Update `ExceptionLog` for visibility and troubleshooting
-      exceptionService.createExceptionLog(connectionRequestLog.getGmcId(), responseMessage,
+      logBatch.addExceptionLog(connectionRequestLog.getGmcId(), responseMessage,
           bulkRequestDto.getAdmin());
     }
 
-    /*
-     * Publish application event for successful changes or already-associated outcomes
-     * This allows other parts of the system to react to connection changes (show discrepancies)
-     */
-    if (SUCCESS.getCode().equals(returnCodeString)
-        || DOCTOR_ALREADY_ASSOCIATED.getCode().equals(returnCodeString)) {
-      publishConnectionChangedApplicationEvent(connectionRequestLog);
-      final var connectionMessage = ConnectionMessage.builder()
-          .gmcId(connectionRequestLog.getGmcId())
-          .designatedBodyCode(bulkRequestDto.getDesignatedBodyCode())
-          .submissionDate(gmcResponse.getSubmissionDate())
-          .gmcLastUpdatedDateTime(now())
-          .build();
-      log.info("Sending message to rabbit to update designated body code");
-      rabbitTemplate.convertAndSend(exchange, routingKey, connectionMessage);
-    }
-
     return responseCode;
   }
 
   /**
-   * Send connection logs to rabbit for elasticsearch sync in pages.
+   * Send connection logs to rabbit for elasticsearch sync in batches. The latest logs are read
+   * from the latestConnectionLogs collection when it is enabled, otherwise they are streamed from
+   * a single aggregation of the connectionLogs collection.
    *
-   * @param pageSize the size of each page
+   * @param batchSize the maximum number of connection logs in each sync message
    */
-  public void sendConnectionLogsForSync(int pageSize) {
-    int currentPage = 0;
-    Page<ConnectionLog> connectionLogs;
-
-    do {
-      connectionLogs = connectionLogCustomRepository.getLatestLogsWithPaging(currentPage, pageSize);
-      log.info("Fetched page {} with {} connection logs for sync.", currentPage,
-          connectionLogs.getNumberOfElements());
+  public void sendConnectionLogsForSync(int batchSize) {
+    Consumer<List<ConnectionLog>> sendForSync = connectionLogs -> {
+      log.info("Sending {} connection logs for sync.", connectionLogs.size());
       var syncDataPayload = IndexSyncMessage.builder()
-          .payload(connectionLogMapper.toDtoList(connectionLogs.toList())).syncEnd(false).build();
+          .payload(connectionLogMapper.toDtoList(connectionLogs)).syncEnd(false).build();
       rabbitTemplate.convertAndSend(exchange, esSyncDataRoutingKey, syncDataPayload);
-      currentPage++;
-    } while (currentPage < connectionLogs.getTotalPages());
+    };
+    long total = latestConnectionLogsEnabled
+        ? latestConnectionLogRepository.streamAll(batchSize, sendForSync)
+        : connectionLogCustomRepository.streamLatestLogs(batchSize, sendForSync);
 
-    log.info("Total pages to process for connection logs sync: {}", connectionLogs.getTotalPages());
+    log.info("Total connection logs sent for sync: {}", total);
 
     var syncEndPayload = IndexSyncMessage.builder().payload(List.of()).syncEnd(true)
         .build();
     rabbitTemplate.convertAndSend(exchange, esSyncDataRoutingKey, syncEndPayload);
   }
 
+  private void onConnectionLogSaved(ConnectionLog connectionLog,
+      ConnectionMessage connectionMessage) {
+    publishConnectionChangedApplicationEvent(connectionLog);
+    if (!outboxEnabled) {
+      log.info("Sending message to rabbit to update designated body code");
+      connectionMessagePublisher.publish(connectionMessage);
+    }
+  }
+
   private void publishConnectionChangedApplicationEvent(ConnectionLog connectionLog) {
     var event = new ConnectionChangedApplicationEvent(connectionLog);
     applicationEventPublisher.publishEvent(event);
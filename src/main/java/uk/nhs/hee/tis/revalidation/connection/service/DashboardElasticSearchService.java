@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.apache.lucene.search.TotalHits.Relation;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHits;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDashboardDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancySummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
+import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
+import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.mapper.HiddenDiscrepancyInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils;
+
+/**
+ * Loads the connected, discrepancies and hidden discrepancies tabs with one _msearch request,
+ * using the same queries as the searches for each tab.
+ */
+@Service
+public class DashboardElasticSearchService {
+
+  private static final String DASHBOARD = "connections dashboard";
+
+  private final ElasticsearchMultiSearch elasticsearchMultiSearch;
+
+  private final ConnectedElasticSearchService connectedElasticSearchService;
+
+  private final DiscrepanciesElasticSearchService discrepanciesElasticSearchService;
+
+  private final ConnectionInfoMapper connectionInfoMapper;
+
+  private final HiddenDiscrepancyInfoMapper hiddenDiscrepancyInfoMapper;
+
+  private final SearchResultCache searchResultCache;
+
+  @Value("${app.es.search.countFree.enabled}")
+  private boolean countFreeEnabled;
+
+  @Value("${app.es.search.countFree.trackTotalHitsUpTo}")
+  private int trackTotalHitsUpTo;
+
+  /**
+   * Constructs a new DashboardElasticSearchService with the specified services and mappers.
+   *
+   * @param elasticsearchMultiSearch          the helper class for executing _msearch requests
+   * @param connectedElasticSearchService     the service building connected queries
+   * @param discrepanciesElasticSearchService the service building discrepancy queries
+   * @param connectionInfoMapper              a mapper for connection/discrepancy details
+   * @param hiddenDiscrepancyInfoMapper       a mapper for hidden discrepancies
+   * @param searchResultCache                 the cache of recently loaded search result pages
+   */
+  public DashboardElasticSearchService(ElasticsearchMultiSearch elasticsearchMultiSearch,
+      ConnectedElasticSearchService connectedElasticSearchService,
+      DiscrepanciesElasticSearchService discrepanciesElasticSearchService,
+      ConnectionInfoMapper connectionInfoMapper,
+      HiddenDiscrepancyInfoMapper hiddenDiscrepancyInfoMapper,
+      SearchResultCache searchResultCache) {
+    this.elasticsearchMultiSearch = elasticsearchMultiSearch;
+    this.connectedElasticSearchService = connectedElasticSearchService;
+    this.discrepanciesElasticSearchService = discrepanciesElasticSearchService;
+    this.connectionInfoMapper = connectionInfoMapper;
+    this.hiddenDiscrepancyInfoMapper = hiddenDiscrepancyInfoMapper;
+    this.searchResultCache = searchResultCache;
+  }
+
+  /**
+   * Get a page of each of the connected, discrepancies and hidden discrepancies tabs.
+   *
+   * @param searchQuery                query to run
+   * @param dbcs                       designated body
+   * @param tisDbcs                    tis designated body
+   * @param programmeName              programme name
+   * @param membershipEndDateFrom      range of membership end date from
+   * @param membershipEndDateTo        range of membership end date to
+   * @param gmcSubmissionDateFrom      range of gmc submission date from
+   * @param gmcSubmissionDateTo        range of gmc submission date to
+   * @param lastConnectionDateTimeFrom range of connection last updated date from
+   * @param lastConnectionDateTimeTo   range of connection last updated date to
+   * @param updatedBy                  updated by
+   * @param pageable                   pagination information, shared by the tabs
+   */
+  public ConnectionDashboardDto searchForDashboard(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy,
+      Pageable pageable)
+      throws ConnectionQueryException {
+    return searchResultCache.get(
+        SearchResultCache.key("dashboard", searchQuery, dbcs, tisDbcs, programmeName,
+            membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy, pageable),
+        () -> searchDashboard(searchQuery, dbcs, tisDbcs, programmeName, membershipEndDateFrom,
+            membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy, pageable));
+  }
+
+  private ConnectionDashboardDto searchDashboard(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy,
+      Pageable pageable)
+      throws ConnectionQueryException {
+    MultiSearchResponse.Item[] items;
+    try {
+      SearchRequest connectedRequest = buildRequest(
+          connectedElasticSearchService.buildConnectedQuery(searchQuery, dbcs, programmeName,
+              membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom,
+              gmcSubmissionDateTo, lastConnectionDateTimeFrom, lastConnectionDateTimeTo,
+              updatedBy),
+          pageable, null,
+          elasticsearchMultiSearch.getIndexCoordinatesFor(CurrentConnectionsView.class));
+      SearchRequest discrepanciesRequest = buildRequest(
+          discrepanciesElasticSearchService.buildDiscrepanciesQuery(searchQuery, dbcs, tisDbcs,
+              programmeName, membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom,
+              gmcSubmissionDateTo, lastConnectionDateTimeFrom, lastConnectionDateTimeTo,
+              updatedBy),
+          pageable, null,
+          IndexCoordinates.of(DiscrepanciesElasticSearchService.DISCREPANCIES_INDEX_ALIAS));
+      SearchRequest hiddenRequest = buildRequest(
+          discrepanciesElasticSearchService.buildHiddenDiscrepanciesQuery(searchQuery, dbcs,
+              programmeName),
+          pageable, DiscrepanciesElasticSearchService.HIDDEN_DISCREPANCY_SOURCE_FIELDS,
+          IndexCoordinates.of(DiscrepanciesElasticSearchService.DISCREPANCIES_INDEX_ALIAS));
+
+      items = elasticsearchMultiSearch.search(
+          List.of(connectedRequest, discrepanciesRequest, hiddenRequest));
+    } catch (RuntimeException re) {
+      throw new ConnectionQueryException(DASHBOARD, searchQuery, re);
+    }
+
+    SearchResponse connected = getResponse(items[0], "current connections", searchQuery);
+    SearchResponse discrepancies = getResponse(items[1],
+        DiscrepanciesElasticSearchService.DISCREPANCIES_INDEX_ALIAS, searchQuery);
+    SearchResponse hidden = getResponse(items[2], "hidden discrepancies", searchQuery);
+
+    return ConnectionDashboardDto.builder()
+        .connected(ConnectionSummaryDto.builder()
+            .totalPages(totalPages(connected, pageable))
+            .totalResults(connected.getHits().getTotalHits().value)
+            .hasNextPage(hasNextPage(connected, pageable))
+            .connections(connectionInfoMapper.currentConnectionsToConnectionInfoDtos(
+                elasticsearchMultiSearch.read(connected, CurrentConnectionsView.class)))
+            .build())
+        .discrepancies(ConnectionSummaryDto.builder()
+            .totalPages(totalPages(discrepancies, pageable))
+            .totalResults(discrepancies.getHits().getTotalHits().value)
+            .hasNextPage(hasNextPage(discrepancies, pageable))
+            .connections(connectionInfoMapper.masterToDtos(
+                elasticsearchMultiSearch.read(discrepancies, MasterDoctorView.class)))
+            .build())
+        .hiddenDiscrepancies(HiddenDiscrepancySummaryDto.builder()
+            .totalPages(totalPages(hidden, pageable))
+            .totalResults(hidden.getHits().getTotalHits().value)
+            .hasNextPage(hasNextPage(hidden, pageable))
+            .hiddenDiscrepancies(hiddenDiscrepancyInfoMapper.toHiddenDiscrepancyInfoDtoList(
+                elasticsearchMultiSearch.read(hidden, MasterDoctorView.class)))
+            .build())
+        .build();
+  }
+
+  private SearchRequest buildRequest(QueryBuilder query,
+      Pageable pageable, String[] sourceIncludes, IndexCoordinates index) {
+    SearchRequest request =
+        elasticsearchMultiSearch.buildRequest(query, pageable, sourceIncludes, index);
+    if (countFreeEnabled) {
+      request.source().trackTotalHitsUpTo(trackTotalHitsUpTo);
+    }
+    return request;
+  }
+
+  private static SearchResponse getResponse(MultiSearchResponse.Item item, String target,
+      String searchQuery) throws ConnectionQueryException {
+    if (item.isFailure()) {
+      throw new ConnectionQueryException(target, searchQuery, item.getFailure());
+    }
+    return item.getResponse();
+  }
+
+  private static long totalPages(SearchResponse response, Pageable pageable) {
+    long totalHits = response.getHits().getTotalHits().value;
+    return (totalHits + pageable.getPageSize() - 1) / pageable.getPageSize();
+  }
+
+  private static boolean hasNextPage(SearchResponse response, Pageable pageable) {
+    SearchHits hits = response.getHits();
+    return EsQueryUtils.hasNextPage(pageable, hits.getHits().length, hits.getTotalHits().value,
+        hits.getTotalHits().relation == Relation.EQUAL_TO);
+  }
+}
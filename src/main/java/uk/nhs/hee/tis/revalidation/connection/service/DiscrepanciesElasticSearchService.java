@@ -22,62 +22,59 @@
 package uk.nhs.hee.tis.revalidation.connection.service;
 
 import static java.util.stream.Collectors.toList;
-import static org.apache.lucene.search.join.ScoreMode.None;
-import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
-import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
-import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
-import static org.elasticsearch.index.query.QueryBuilders.nestedQuery;
-import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
-import static org.elasticsearch.index.query.QueryBuilders.wildcardQuery;
-import static uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType.FROM;
-import static uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType.TO;
 
 import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.elasticsearch.index.query.BoolQueryBuilder;
-import org.elasticsearch.index.search.MatchQuery.ZeroTermsQuery;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.DiscrepancyFacetsDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancySummaryDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
 import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
 import uk.nhs.hee.tis.revalidation.connection.mapper.HiddenDiscrepancyInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.service.ElasticsearchCursorSearch.CursorPage;
 import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils;
 
 @Service
 public class DiscrepanciesElasticSearchService {
 
-  private static final String DISCREPANCIES_INDEX_ALIAS = "discrepancies";
-  private static final String DOCTOR_FIRST_NAME_DISCREPANCIES = "doctorFirstName";
-  private static final String DOCTOR_LAST_NAME_DISCREPANCIES = "doctorLastName";
-  private static final String GMC_REFERENCE_NUMBER_DISCREPANCIES = "gmcReferenceNumber";
-  private static final String PROGRAMME_NAME_DISCREPANCIES = "programmeName";
-  private static final String DESIGNATED_BODY_DISCREPANCIES = "designatedBody";
-  private static final String TCS_DESIGNATED_BODY_DISCREPANCIES = "tcsDesignatedBody";
-  private static final String MEMBERSHIP_TYPE_DISCREPANCIES = "membershipType";
-  private static final String PLACEMENT_GRADE_DISCREPANCIES = "placementGrade";
-  private static final String EXCLUDED_PLACEMENT_GRADE_DISCREPANCIES = "279";
-  private static final String EXCLUDED_MEMBERSHIP_TYPE = "MILITARY";
-  private static final String PROGRAMME_MEMBERSHIP_END_DATE_FIELD = "membershipEndDate";
-  private static final String GMC_SUBMISSION_DATE_FIELD = "submissionDate";
-  private static final String CONNECTION_LAST_UPDATED_DATE_FIELD = "lastConnectionDateTime";
-  private static final String UPDATED_BY_FIELD = "updatedBy";
-  private static final String HIDDEN_DISCREPANCY_DBC_PATH = "hiddenDiscrepancies";
-  private static final String HIDDEN_DISCREPANCY_DBC_FIELD =
-      "hiddenDiscrepancies.hiddenForDesignatedBodyCode.keyword";
+  static final String DISCREPANCIES_INDEX_ALIAS = "discrepancies";
+
+  /**
+   * The fields read by the hidden discrepancies summary, which needs the nested hidden
+   * discrepancies but none of the programme membership details.
+   */
+  static final String[] HIDDEN_DISCREPANCY_SOURCE_FIELDS = {"gmcReferenceNumber",
+      "doctorFirstName", "doctorLastName", "programmeName", "designatedBody", "tcsDesignatedBody",
+      "hiddenDiscrepancies"};
+
+  static final String PROGRAMME_NAME_FACET = "programmeName";
+  static final String DESIGNATED_BODY_FACET = "designatedBody";
+  static final String TCS_DESIGNATED_BODY_FACET = "tcsDesignatedBody";
+  static final String UPDATED_BY_FACET = "updatedBy";
+  static final String MEMBERSHIP_END_MONTH_FACET = "membershipEndMonth";
 
   ConnectionInfoMapper connectionInfoMapper;
 
@@ -85,6 +82,25 @@ public class DiscrepanciesElasticSearchService {
 
   private final ElasticsearchOperations elasticsearchOperations;
 
+  private final ElasticsearchCursorSearch elasticsearchCursorSearch;
+
+  private final SearchResultCache searchResultCache;
+
+  @Value("${app.es.search.autocomplete.enabled}")
+  private boolean autocompleteEnabled;
+
+  @Value("${app.es.search.designatedBodyTerms.enabled}")
+  private boolean designatedBodyTermsEnabled;
+
+  @Value("${app.es.search.countFree.enabled}")
+  private boolean countFreeEnabled;
+
+  @Value("${app.es.search.countFree.trackTotalHitsUpTo}")
+  private int trackTotalHitsUpTo;
+
+  @Value("${app.es.search.facets.size}")
+  private int facetsSize;
+
   /**
    * Constructs a new DiscrepanciesElasticSearchService with the specified services and mappers.
    *
@@ -93,11 +109,17 @@ public class DiscrepanciesElasticSearchService {
    *                                    hidden discrepancies
    * @param connectionInfoMapper        a mapper for converting between search results and dto for
    *                                    connection/discrepancy details
+   * @param elasticsearchCursorSearch   the helper class for executing search_after queries
+   * @param searchResultCache           the cache of recently loaded search result pages
    */
   public DiscrepanciesElasticSearchService(ElasticsearchOperations elasticsearchOperations,
       HiddenDiscrepancyInfoMapper hiddenDiscrepancyInfoMapper,
-      ConnectionInfoMapper connectionInfoMapper) {
+      ConnectionInfoMapper connectionInfoMapper,
+      ElasticsearchCursorSearch elasticsearchCursorSearch,
+      SearchResultCache searchResultCache) {
     this.elasticsearchOperations = elasticsearchOperations;
+    this.elasticsearchCursorSearch = elasticsearchCursorSearch;
+    this.searchResultCache = searchResultCache;
     this.hiddenDiscrepancyInfoMapper = hiddenDiscrepancyInfoMapper;
     this.connectionInfoMapper = connectionInfoMapper;
   }
@@ -132,79 +154,40 @@ public class DiscrepanciesElasticSearchService {
       String updatedBy,
       Pageable pageable)
       throws ConnectionQueryException {
+    return searchResultCache.get(
+        SearchResultCache.key("discrepancies", searchQuery, dbcs, tisDbcs, programmeName,
+            membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy, pageable),
+        () -> searchDiscrepanciesPage(searchQuery, dbcs, tisDbcs,
+            programmeName, membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom,
+            gmcSubmissionDateTo, lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy,
+            pageable));
+  }
+
+  private ConnectionSummaryDto searchDiscrepanciesPage(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy,
+      Pageable pageable)
+      throws ConnectionQueryException {
 
     try {
-      BoolQueryBuilder rootQuery = boolQuery();
-
-      rootQuery.filter(
-          boolQuery().mustNot(matchQuery(MEMBERSHIP_TYPE_DISCREPANCIES, EXCLUDED_MEMBERSHIP_TYPE)));
-
-      rootQuery.filter(boolQuery().mustNot(
-          matchQuery(PLACEMENT_GRADE_DISCREPANCIES, EXCLUDED_PLACEMENT_GRADE_DISCREPANCIES)));
-
-      String formattedDbcs =
-          ElasticsearchQueryHelper.formatDesignatedBodyCodesForElasticsearchQuery(dbcs);
-      String formattedTisDbcs =
-          ElasticsearchQueryHelper.formatDesignatedBodyCodesForElasticsearchQuery(tisDbcs);
-      BoolQueryBuilder designatedBodyQuery = boolQuery()
-          .should(matchQuery(DESIGNATED_BODY_DISCREPANCIES, formattedDbcs))
-          .should(matchQuery(TCS_DESIGNATED_BODY_DISCREPANCIES, formattedTisDbcs))
-          .minimumShouldMatch(1);
-      rootQuery.filter(designatedBodyQuery);
-
-      if (StringUtils.hasText(programmeName)) {
-        rootQuery.filter(
-            matchPhraseQuery(PROGRAMME_NAME_DISCREPANCIES, programmeName).zeroTermsQuery(
-                ZeroTermsQuery.ALL));
-      }
-
-      if (StringUtils.hasText(searchQuery)) {
-        BoolQueryBuilder searchSubQuery = boolQuery()
-            .should(wildcardQuery(DOCTOR_FIRST_NAME_DISCREPANCIES, searchQuery + "*"))
-            .should(wildcardQuery(DOCTOR_LAST_NAME_DISCREPANCIES, searchQuery + "*"))
-            .should(
-                wildcardQuery(GMC_REFERENCE_NUMBER_DISCREPANCIES, searchQuery + "*"))
-            .minimumShouldMatch(1);
-
-        rootQuery.filter(searchSubQuery);
-      }
-
-      EsQueryUtils.addDateRangeFilter(rootQuery,
-          PROGRAMME_MEMBERSHIP_END_DATE_FIELD,
-          membershipEndDateFrom != null ? membershipEndDateFrom.toString() : null,
-          membershipEndDateTo != null ? membershipEndDateTo.toString() : null);
-
-      EsQueryUtils.addDateRangeFilter(rootQuery,
-          GMC_SUBMISSION_DATE_FIELD,
-          gmcSubmissionDateFrom != null ? gmcSubmissionDateFrom.toString() : null,
-          gmcSubmissionDateTo != null ? gmcSubmissionDateTo.toString() : null);
-
-      EsQueryUtils.addDateRangeFilter(rootQuery,
-          CONNECTION_LAST_UPDATED_DATE_FIELD,
-          lastConnectionDateTimeFrom != null ? EsQueryUtils.getDateTimeQueryFromRange(
-              lastConnectionDateTimeFrom, FROM) : null,
-          lastConnectionDateTimeTo != null ? EsQueryUtils.getDateTimeQueryFromRange(
-              lastConnectionDateTimeTo, TO) : null);
-
-      if (StringUtils.hasText(updatedBy)) {
-        rootQuery.filter(
-            matchPhraseQuery(UPDATED_BY_FIELD, updatedBy).zeroTermsQuery(
-                ZeroTermsQuery.ALL));
-      }
-
-      //combine dbcs without duplicates
-      Set<String> joinedSet = new HashSet<>();
-      joinedSet.addAll(dbcs);
-      joinedSet.addAll(tisDbcs);
-
-      rootQuery.filter(boolQuery().mustNot(nestedQuery(HIDDEN_DISCREPANCY_DBC_PATH,
-          boolQuery().must(termsQuery(HIDDEN_DISCREPANCY_DBC_FIELD, joinedSet)),
-          None).ignoreUnmapped(true)));
+      BoolQueryBuilder rootQuery = buildDiscrepanciesQuery(searchQuery, dbcs, tisDbcs,
+          programmeName, membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom,
+          gmcSubmissionDateTo, lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy);
 
       NativeSearchQuery searchQueryEsResult = new NativeSearchQueryBuilder()
           .withQuery(rootQuery)
           .withPageable(pageable)
           .build();
+      EsQueryUtils.limitTotalHits(searchQueryEsResult, countFreeEnabled, trackTotalHitsUpTo);
 
       SearchHits<MasterDoctorView> searchHits =
           elasticsearchOperations.search(searchQueryEsResult, MasterDoctorView.class,
@@ -223,6 +206,7 @@ public class DiscrepanciesElasticSearchService {
       return ConnectionSummaryDto.builder()
           .totalPages(page.getTotalPages())
           .totalResults(page.getTotalElements())
+          .hasNextPage(EsQueryUtils.hasNextPage(pageable, searchHits))
           .connections(
               connectionInfoMapper.masterToDtos(discrepanciesTrainees))
           .build();
@@ -232,6 +216,197 @@ public class DiscrepanciesElasticSearchService {
     }
   }
 
+  /**
+   * Count trainees with discrepancies under each programme, designated body, updated by and
+   * membership end month, using the same filters as the discrepancies page.
+   *
+   * @param searchQuery                query to run
+   * @param dbcs                       designated body
+   * @param tisDbcs                    tis designated body
+   * @param programmeName              programme name
+   * @param membershipEndDateFrom      range of membership end date from
+   * @param membershipEndDateTo        range of membership end date to
+   * @param gmcSubmissionDateFrom      range of gmc submission date from
+   * @param gmcSubmissionDateTo        range of gmc submission date to
+   * @param lastConnectionDateTimeFrom range of connection last updated date from
+   * @param lastConnectionDateTimeTo   range of connection last updated date to
+   * @param updatedBy                  updated by
+   */
+  public DiscrepancyFacetsDto getDiscrepancyFacets(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy)
+      throws ConnectionQueryException {
+    return searchResultCache.get(
+        SearchResultCache.key("discrepancyFacets", searchQuery, dbcs, tisDbcs, programmeName,
+            membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy),
+        () -> searchDiscrepancyFacets(searchQuery, dbcs, tisDbcs, programmeName,
+            membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom, gmcSubmissionDateTo,
+            lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy));
+  }
+
+  private DiscrepancyFacetsDto searchDiscrepancyFacets(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy)
+      throws ConnectionQueryException {
+
+    try {
+      BoolQueryBuilder rootQuery = buildDiscrepanciesQuery(searchQuery, dbcs, tisDbcs,
+          programmeName, membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom,
+          gmcSubmissionDateTo, lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy);
+
+      NativeSearchQuery facetsQuery = new NativeSearchQueryBuilder()
+          .withQuery(rootQuery)
+          .addAggregation(AggregationBuilders.terms(PROGRAMME_NAME_FACET)
+              .field("programmeName.keyword").size(facetsSize))
+          .addAggregation(AggregationBuilders.terms(DESIGNATED_BODY_FACET)
+              .field("designatedBody.keyword").size(facetsSize))
+          .addAggregation(AggregationBuilders.terms(TCS_DESIGNATED_BODY_FACET)
+              .field("tcsDesignatedBody.keyword").size(facetsSize))
+          .addAggregation(AggregationBuilders.terms(UPDATED_BY_FACET)
+              .field("updatedBy.keyword").size(facetsSize))
+          .addAggregation(AggregationBuilders.dateHistogram(MEMBERSHIP_END_MONTH_FACET)
+              .field("membershipEndDate").calendarInterval(DateHistogramInterval.MONTH)
+              .format("yyyy-MM").minDocCount(1))
+          .build();
+      // only the counts are needed, not the hits
+      facetsQuery.setMaxResults(0);
+      facetsQuery.setTrackTotalHits(true);
+
+      SearchHits<MasterDoctorView> searchHits =
+          elasticsearchOperations.search(facetsQuery, MasterDoctorView.class,
+              IndexCoordinates.of(DISCREPANCIES_INDEX_ALIAS));
+      Aggregations aggregations = searchHits.getAggregations();
+
+      return DiscrepancyFacetsDto.builder()
+          .totalResults(searchHits.getTotalHits())
+          .programmeName(bucketCounts(aggregations.get(PROGRAMME_NAME_FACET)))
+          .designatedBody(bucketCounts(aggregations.get(DESIGNATED_BODY_FACET)))
+          .tcsDesignatedBody(bucketCounts(aggregations.get(TCS_DESIGNATED_BODY_FACET)))
+          .updatedBy(bucketCounts(aggregations.get(UPDATED_BY_FACET)))
+          .membershipEndMonth(bucketCounts(aggregations.get(MEMBERSHIP_END_MONTH_FACET)))
+          .build();
+
+    } catch (RuntimeException re) {
+      throw new ConnectionQueryException(DISCREPANCIES_INDEX_ALIAS, searchQuery, re);
+    }
+  }
+
+  private static Map<String, Long> bucketCounts(MultiBucketsAggregation aggregation) {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (MultiBucketsAggregation.Bucket bucket : aggregation.getBuckets()) {
+      counts.put(bucket.getKeyAsString(), bucket.getDocCount());
+    }
+    return counts;
+  }
+
+  /**
+   * Get a page of trainees with discrepancies from discrepancies elasticsearch index, starting
+   * after the cursor returned with the previous page rather than at a page number.
+   *
+   * @param searchQuery                query to run
+   * @param dbcs                       designated body
+   * @param tisDbcs                    tis designated body
+   * @param programmeName              programme name
+   * @param membershipEndDateFrom      range of membership end date from
+   * @param membershipEndDateTo        range of membership end date to
+   * @param gmcSubmissionDateFrom      range of gmc submission date from
+   * @param gmcSubmissionDateTo        range of gmc submission date to
+   * @param lastConnectionDateTimeFrom range of connection last updated date from
+   * @param lastConnectionDateTimeTo   range of connection last updated date to
+   * @param updatedBy                  updated by
+   * @param sort                       sort order, which must be the same for every page
+   * @param size                       number of trainees on a page
+   * @param cursor                     cursor from the previous page, or empty for the first page
+   */
+  public ConnectionSummaryDto searchForDiscrepanciesPageWithCursor(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy,
+      Sort sort,
+      int size,
+      String cursor)
+      throws ConnectionQueryException {
+
+    try {
+      BoolQueryBuilder rootQuery = buildDiscrepanciesQuery(searchQuery, dbcs, tisDbcs,
+          programmeName, membershipEndDateFrom, membershipEndDateTo, gmcSubmissionDateFrom,
+          gmcSubmissionDateTo, lastConnectionDateTimeFrom, lastConnectionDateTimeTo, updatedBy);
+
+      CursorPage<MasterDoctorView> page = elasticsearchCursorSearch.search(rootQuery, sort, size,
+          cursor, MasterDoctorView.class, IndexCoordinates.of(DISCREPANCIES_INDEX_ALIAS));
+
+      return ConnectionSummaryDto.builder()
+          .totalPages((page.getTotalHits() + size - 1) / size)
+          .totalResults(page.getTotalHits())
+          .connections(connectionInfoMapper.masterToDtos(page.getContent()))
+          .nextCursor(page.getNextCursor())
+          .hasNextPage(page.getNextCursor() != null)
+          .build();
+
+    } catch (RuntimeException re) {
+      throw new ConnectionQueryException(DISCREPANCIES_INDEX_ALIAS, searchQuery, re);
+    }
+  }
+
+  BoolQueryBuilder buildDiscrepanciesQuery(String searchQuery,
+      List<String> dbcs,
+      List<String> tisDbcs,
+      String programmeName,
+      LocalDate membershipEndDateFrom,
+      LocalDate membershipEndDateTo,
+      LocalDate gmcSubmissionDateFrom,
+      LocalDate gmcSubmissionDateTo,
+      LocalDate lastConnectionDateTimeFrom,
+      LocalDate lastConnectionDateTimeTo,
+      String updatedBy) {
+    //combine dbcs without duplicates
+    Set<String> joinedSet = new HashSet<>();
+    joinedSet.addAll(dbcs);
+    joinedSet.addAll(tisDbcs);
+
+    return ConnectionSearchSpec.builder()
+        .searchQuery(searchQuery)
+        .autocomplete(autocompleteEnabled)
+        .designatedBodies(dbcs)
+        .designatedBodyTerms(designatedBodyTermsEnabled)
+        .tisDesignatedBodies(tisDbcs)
+        .programmeName(programmeName)
+        .membershipEndDateFrom(membershipEndDateFrom)
+        .membershipEndDateTo(membershipEndDateTo)
+        .gmcSubmissionDateFrom(gmcSubmissionDateFrom)
+        .gmcSubmissionDateTo(gmcSubmissionDateTo)
+        .lastConnectionDateTimeFrom(lastConnectionDateTimeFrom)
+        .lastConnectionDateTimeTo(lastConnectionDateTimeTo)
+        .updatedBy(updatedBy)
+        .excludeHiddenFor(joinedSet)
+        .build()
+        .toQuery();
+  }
+
   /**
    * Get a list of hidden discrepancies from discrepancies elasticsearch index.
    *
@@ -246,40 +421,27 @@ public class DiscrepanciesElasticSearchService {
       String programmeName,
       Pageable pageable)
       throws ConnectionQueryException {
-    try {
-      BoolQueryBuilder rootQuery = boolQuery();
-
-      rootQuery.filter(
-          boolQuery().mustNot(matchQuery(MEMBERSHIP_TYPE_DISCREPANCIES, EXCLUDED_MEMBERSHIP_TYPE)));
-
-      rootQuery.filter(boolQuery().mustNot(
-          matchQuery(PLACEMENT_GRADE_DISCREPANCIES, EXCLUDED_PLACEMENT_GRADE_DISCREPANCIES)));
-
-      if (StringUtils.hasText(searchQuery)) {
-        BoolQueryBuilder searchSubQuery = boolQuery()
-            .should(wildcardQuery(DOCTOR_FIRST_NAME_DISCREPANCIES, searchQuery + "*"))
-            .should(wildcardQuery(DOCTOR_LAST_NAME_DISCREPANCIES, searchQuery + "*"))
-            .should(
-                wildcardQuery(GMC_REFERENCE_NUMBER_DISCREPANCIES, searchQuery + "*"))
-            .minimumShouldMatch(1);
-
-        rootQuery.filter(searchSubQuery);
-      }
-
-      if (StringUtils.hasText(programmeName)) {
-        rootQuery.filter(
-            matchPhraseQuery(PROGRAMME_NAME_DISCREPANCIES, programmeName).zeroTermsQuery(
-                ZeroTermsQuery.ALL));
-      }
+    return searchResultCache.get(
+        SearchResultCache.key("hiddenDiscrepancies", searchQuery, dbcs, programmeName, pageable),
+        () -> searchHiddenDiscrepanciesPage(searchQuery, dbcs, programmeName, pageable));
+  }
 
-      rootQuery.filter(boolQuery().must(nestedQuery(HIDDEN_DISCREPANCY_DBC_PATH,
-          boolQuery().must(termsQuery(HIDDEN_DISCREPANCY_DBC_FIELD, dbcs)),
-          None).ignoreUnmapped(true)));
+  private HiddenDiscrepancySummaryDto searchHiddenDiscrepanciesPage(
+      String searchQuery,
+      List<String> dbcs,
+      String programmeName,
+      Pageable pageable)
+      throws ConnectionQueryException {
+    try {
+      BoolQueryBuilder rootQuery = buildHiddenDiscrepanciesQuery(searchQuery, dbcs,
+          programmeName);
 
       NativeSearchQuery searchQueryEsResult = new NativeSearchQueryBuilder()
           .withQuery(rootQuery)
+          .withSourceFilter(new FetchSourceFilter(HIDDEN_DISCREPANCY_SOURCE_FIELDS, null))
           .withPageable(pageable)
           .build();
+      EsQueryUtils.limitTotalHits(searchQueryEsResult, countFreeEnabled, trackTotalHitsUpTo);
 
       SearchHits<MasterDoctorView> searchHits =
           elasticsearchOperations.search(searchQueryEsResult, MasterDoctorView.class,
@@ -298,6 +460,7 @@ public class DiscrepanciesElasticSearchService {
       return HiddenDiscrepancySummaryDto.builder()
           .totalPages(page.getTotalPages())
           .totalResults(page.getTotalElements())
+          .hasNextPage(EsQueryUtils.hasNextPage(pageable, searchHits))
           .hiddenDiscrepancies(
               hiddenDiscrepancyInfoMapper.toHiddenDiscrepancyInfoDtoList(hiddenDiscrepancies))
           .build();
@@ -305,4 +468,16 @@ public class DiscrepanciesElasticSearchService {
       throw new ConnectionQueryException("hidden discrepancies", searchQuery, re);
     }
   }
+
+  BoolQueryBuilder buildHiddenDiscrepanciesQuery(String searchQuery,
+      List<String> dbcs,
+      String programmeName) {
+    return ConnectionSearchSpec.builder()
+        .searchQuery(searchQuery)
+        .autocomplete(autocompleteEnabled)
+        .programmeName(programmeName)
+        .onlyHiddenFor(dbcs)
+        .build()
+        .toQuery();
+  }
 }
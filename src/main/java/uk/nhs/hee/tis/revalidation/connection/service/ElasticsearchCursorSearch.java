@@ -0,0 +1,137 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils;
+import uk.nhs.hee.tis.revalidation.connection.service.util.SearchAfterCursor;
+
+/**
+ * Runs searches which page with search_after instead of from/size, so that every page costs the
+ * same as the first and deep pages are not limited by max_result_window.
+ */
+@Component
+public class ElasticsearchCursorSearch {
+
+  /**
+   * Sorted on last so that hits with equal sort values have a total order between pages. The
+   * document id is used as it is the only field which is unique, as an index can hold several
+   * documents for a GMC number or none with a GMC number at all.
+   */
+  protected static final String TIEBREAKER_FIELD = "_id";
+
+  private final ElasticsearchRestTemplate elasticsearchRestTemplate;
+
+  @Value("${app.es.search.countFree.enabled}")
+  private boolean countFreeEnabled;
+
+  @Value("${app.es.search.countFree.trackTotalHitsUpTo}")
+  private int trackTotalHitsUpTo;
+
+  public ElasticsearchCursorSearch(ElasticsearchRestTemplate elasticsearchRestTemplate) {
+    this.elasticsearchRestTemplate = elasticsearchRestTemplate;
+  }
+
+  /**
+   * Get the page of hits after the cursor.
+   *
+   * @param query  the query to run
+   * @param sort   the sort order, which must be the same for every page
+   * @param size   the number of hits on a page
+   * @param cursor the cursor returned with the previous page, or empty for the first page
+   * @param type   the class of the documents
+   * @param index  the index to search
+   * @param <T>    the document type
+   * @return the page of documents with the cursor for the next page
+   */
+  public <T> CursorPage<T> search(QueryBuilder query, Sort sort, int size, String cursor,
+      Class<T> type, IndexCoordinates index) {
+    final var request = buildRequest(query, sort, size, cursor, index);
+    final SearchResponse response = elasticsearchRestTemplate.execute(
+        client -> client.search(request, RequestOptions.DEFAULT));
+
+    ElasticsearchConverter converter = elasticsearchRestTemplate.getElasticsearchConverter();
+    List<T> content = new ArrayList<>();
+    Object[] lastSortValues = null;
+    for (SearchHit hit : response.getHits().getHits()) {
+      Document document = Document.from(hit.getSourceAsMap());
+      document.setId(hit.getId());
+      content.add(converter.read(type, document));
+      lastSortValues = hit.getSortValues();
+    }
+
+    TotalHits totalHits = response.getHits().getTotalHits();
+    String nextCursor = content.size() < size || lastSortValues == null ? null
+        : SearchAfterCursor.encode(lastSortValues);
+    return new CursorPage<>(content, totalHits == null ? 0 : totalHits.value, nextCursor);
+  }
+
+  SearchRequest buildRequest(QueryBuilder query, Sort sort, int size, String cursor,
+      IndexCoordinates index) {
+    SearchSourceBuilder source = new SearchSourceBuilder()
+        .query(query)
+        .size(size)
+        .trackTotalHits(true);
+    EsQueryUtils.limitTotalHits(source, countFreeEnabled, trackTotalHitsUpTo);
+    sort.forEach(order -> source.sort(SortBuilders.fieldSort(order.getProperty())
+        .order(order.isAscending() ? SortOrder.ASC : SortOrder.DESC)));
+    source.sort(SortBuilders.fieldSort(TIEBREAKER_FIELD).order(SortOrder.ASC));
+    if (StringUtils.hasText(cursor)) {
+      source.searchAfter(SearchAfterCursor.decode(cursor));
+    }
+    return new SearchRequest(index.getIndexNames()).source(source);
+  }
+
+  /**
+   * A page of documents and the cursor for the next page, which is null on the last page.
+   *
+   * @param <T> the document type
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class CursorPage<T> {
+
+    private final List<T> content;
+    private final long totalHits;
+    private final String nextCursor;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs several paged searches, which may be on different indices, as a single _msearch request so
+ * that a screen showing them together costs one round trip to the cluster.
+ */
+@Component
+public class ElasticsearchMultiSearch {
+
+  private final ElasticsearchRestTemplate elasticsearchRestTemplate;
+
+  public ElasticsearchMultiSearch(ElasticsearchRestTemplate elasticsearchRestTemplate) {
+    this.elasticsearchRestTemplate = elasticsearchRestTemplate;
+  }
+
+  /**
+   * Run the searches together.
+   *
+   * @param requests the searches to run
+   * @return the response for each search in the same order, each of which may have failed
+   */
+  public MultiSearchResponse.Item[] search(List<SearchRequest> requests) {
+    final var multiSearchRequest = new MultiSearchRequest();
+    requests.forEach(multiSearchRequest::add);
+    final MultiSearchResponse response = elasticsearchRestTemplate.execute(
+        client -> client.msearch(multiSearchRequest, RequestOptions.DEFAULT));
+    return response.getResponses();
+  }
+
+  /**
+   * Read the hits of a search response as documents.
+   *
+   * @param response the response of one of the searches
+   * @param type     the class of the documents
+   * @param <T>      the document type
+   * @return the documents in hit order
+   */
+  public <T> List<T> read(SearchResponse response, Class<T> type) {
+    ElasticsearchConverter converter = elasticsearchRestTemplate.getElasticsearchConverter();
+    List<T> content = new ArrayList<>();
+    for (SearchHit hit : response.getHits().getHits()) {
+      Document document = Document.from(hit.getSourceAsMap());
+      document.setId(hit.getId());
+      content.add(converter.read(type, document));
+    }
+    return content;
+  }
+
+  /**
+   * Get the index the documents of a class are stored in.
+   *
+   * @param type the class of the documents
+   * @return the index coordinates
+   */
+  public IndexCoordinates getIndexCoordinatesFor(Class<?> type) {
+    return elasticsearchRestTemplate.getIndexCoordinatesFor(type);
+  }
+
+  /**
+   * Build the request for a page of hits.
+   *
+   * @param query          the query to run
+   * @param pageable       the page and sort order
+   * @param sourceIncludes the fields to fetch from the _source, or null for the whole document
+   * @param index          the index to search
+   * @return the search request
+   */
+  public SearchRequest buildRequest(QueryBuilder query, Pageable pageable,
+      String[] sourceIncludes, IndexCoordinates index) {
+    SearchSourceBuilder source = new SearchSourceBuilder()
+        .query(query)
+        .from((int) pageable.getOffset())
+        .size(pageable.getPageSize())
+        .trackTotalHits(true);
+    pageable.getSort().forEach(order -> source.sort(SortBuilders.fieldSort(order.getProperty())
+        .order(order.isAscending() ? SortOrder.ASC : SortOrder.DESC)));
+    if (sourceIncludes != null) {
+      source.fetchSource(sourceIncludes, null);
+    }
+    return new SearchRequest(index.getIndexNames()).source(source);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
+import uk.nhs.hee.tis.revalidation.connection.exception.GmcUnavailableException;
+
+/**
+ * Guards calls to GMC with a separate bulkhead for add and remove traffic, a rate limiter and a
+ * circuit breaker, applied in that order.
+ *
+ * <p>The rate limit adapts to the observed GMC latency: an exponentially weighted average of the
+ * duration of calls which GMC answered is kept, and when it rises above the target the limit is
+ * cut by a quarter, while each call under the target raises the limit by one, up to the
+ * configured maximum. Failed calls and calls rejected by the circuit breaker do not change the
+ * limit.
+ */
+@Slf4j
+@Component
+public class GmcCallGuard {
+
+  private static final double LATENCY_SMOOTHING = 0.2;
+  private static final double LIMIT_DECREASE_FACTOR = 0.75;
+
+  private final CircuitBreaker circuitBreaker;
+  private final RateLimiter rateLimiter;
+  private final Bulkhead addBulkhead;
+  private final Bulkhead removeBulkhead;
+  private final long targetLatencyMs;
+  private final int minLimitPerSecond;
+  private final int maxLimitPerSecond;
+
+  private double averageLatencyMs;
+  private int currentLimit;
+
+  /**
+   * Constructs a new GmcCallGuard.
+   *
+   * @param gmcCircuitBreaker the circuit breaker for GMC
+   * @param gmcRateLimiter    the rate limiter for GMC
+   * @param gmcAddBulkhead    the bulkhead for adding connections
+   * @param gmcRemoveBulkhead the bulkhead for removing connections
+   * @param targetLatencyMs   the GMC latency above which the rate limit is reduced
+   * @param minLimitPerSecond the lowest the rate limit can be reduced to
+   * @param maxLimitPerSecond the highest the rate limit can be raised to
+   */
+  public GmcCallGuard(CircuitBreaker gmcCircuitBreaker, RateLimiter gmcRateLimiter,
+      @Qualifier("gmcAddBulkhead") Bulkhead gmcAddBulkhead,
+      @Qualifier("gmcRemoveBulkhead") Bulkhead gmcRemoveBulkhead,
+      @Value("${app.gmc.resilience.rateLimiter.targetLatencyMs}") long targetLatencyMs,
+      @Value("${app.gmc.resilience.rateLimiter.minLimitPerSecond}") int minLimitPerSecond,
+      @Value("${app.gmc.resilience.rateLimiter.maxLimitPerSecond}") int maxLimitPerSecond) {
+    this.circuitBreaker = gmcCircuitBreaker;
+    this.rateLimiter = gmcRateLimiter;
+    this.addBulkhead = gmcAddBulkhead;
+    this.removeBulkhead = gmcRemoveBulkhead;
+    this.targetLatencyMs = targetLatencyMs;
+    this.minLimitPerSecond = minLimitPerSecond;
+    this.maxLimitPerSecond = maxLimitPerSecond;
+    this.currentLimit = gmcRateLimiter.getRateLimiterConfig().getLimitForPeriod();
+    this.averageLatencyMs = targetLatencyMs;
+  }
+
+  /**
+   * Make a call to GMC if the guards allow it.
+   *
+   * @param requestType whether the call adds or removes a connection
+   * @param gmcCall     the call to GMC
+   * @param <T>         the type of the GMC response
+   * @return the GMC response
+   * @throws GmcUnavailableException when the call was not made
+   */
+  public <T> T execute(ConnectionRequestType requestType, Supplier<T> gmcCall) {
+    Supplier<T> timedCall = () -> {
+      final long start = System.nanoTime();
+      final T response = gmcCall.get();
+      // failed calls are not timed, as one failing fast would pull the average latency down
+      recordLatency((System.nanoTime() - start) / 1_000_000);
+      return response;
+    };
+    final var bulkhead = ConnectionRequestType.ADD.equals(requestType)
+        ? addBulkhead : removeBulkhead;
+    // the rate limiter sits outside the circuit breaker, so a throttled call is not counted as a
+    // GMC failure, and only calls the breaker lets through can be timed to adapt the limit
+    final var guardedCall = Bulkhead.decorateSupplier(bulkhead,
+        RateLimiter.decorateSupplier(rateLimiter,
+            CircuitBreaker.decorateSupplier(circuitBreaker, timedCall)));
+    try {
+      return guardedCall.get();
+    } catch (CallNotPermittedException e) {
+      throw new GmcUnavailableException("GMC circuit breaker is open", e);
+    } catch (RequestNotPermitted e) {
+      throw new GmcUnavailableException("GMC rate limit reached", e);
+    } catch (BulkheadFullException e) {
+      throw new GmcUnavailableException(
+          String.format("Too many concurrent %s requests to GMC", requestType), e);
+    }
+  }
+
+  int getCurrentLimit() {
+    return currentLimit;
+  }
+
+  private synchronized void recordLatency(long latencyMs) {
+    averageLatencyMs =
+        LATENCY_SMOOTHING * latencyMs + (1 - LATENCY_SMOOTHING) * averageLatencyMs;
+    final int newLimit;
+    if (averageLatencyMs > targetLatencyMs) {
+      newLimit = Math.max(minLimitPerSecond, (int) (currentLimit * LIMIT_DECREASE_FACTOR));
+    } else {
+      newLimit = Math.min(maxLimitPerSecond, currentLimit + 1);
+    }
+    if (newLimit != currentLimit) {
+      log.debug("Changing GMC rate limit from {} to {}/s, average latency {}ms", currentLimit,
+          newLimit, Math.round(averageLatencyMs));
+      currentLimit = newLimit;
+      rateLimiter.changeLimitForPeriod(newLimit);
+    }
+  }
+}
@@ -25,7 +25,6 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.ws.client.core.WebServiceTemplate;
@@ -37,6 +36,7 @@ import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctor;
 import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctorRequest;
 import uk.nhs.hee.tis.gmc.client.generated.TryRemoveDoctorResponse;
 import uk.nhs.hee.tis.revalidation.connection.dto.GmcConnectionResponseDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
 
 @Slf4j
 @Service
@@ -45,21 +45,47 @@ public class GmcClientService {
   private static final String TRY_ADD_DOCTOR = "TryAddDoctor";
   private static final String TRY_REMOVE_DOCTOR = "TryRemoveDoctor";
   private static final String INTERNAL_USER = "Admin"; //TODO: update when pass real user
+  private static final DateTimeFormatter SUBMISSION_DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
-  @Autowired
-  private WebServiceTemplate webServiceTemplate;
+  private final WebServiceTemplate webServiceTemplate;
 
-  @Value("${app.gmc.url}")
-  private String gmcConnectUrl;
+  private final GmcCallGuard gmcCallGuard;
 
-  @Value("${app.gmc.gmcUsername}")
-  private String gmcUserName;
+  private final String gmcConnectUrl;
 
-  @Value("${app.gmc.gmcPassword}")
-  private String gmcPassword;
+  private final String gmcUserName;
 
-  @Value("${app.gmc.soapActionBase}")
-  private String gmcSoapBaseAction;
+  private final String gmcPassword;
+
+  private final SoapActionCallback tryAddDoctorAction;
+
+  private final SoapActionCallback tryRemoveDoctorAction;
+
+  /**
+   * Constructs a new GmcClientService. The SOAP actions are built once, as they are the same for
+   * every request.
+   *
+   * @param webServiceTemplate the template used to call GMC
+   * @param gmcCallGuard       the circuit breaker, rate limiter and bulkheads for GMC calls
+   * @param gmcConnectUrl      the GMC web service url
+   * @param gmcSoapBaseAction  the base of the GMC SOAP actions
+   * @param gmcUserName        the GMC username
+   * @param gmcPassword        the GMC password
+   */
+  public GmcClientService(WebServiceTemplate webServiceTemplate, GmcCallGuard gmcCallGuard,
+      @Value("${app.gmc.url}") String gmcConnectUrl,
+      @Value("${app.gmc.soapActionBase}") String gmcSoapBaseAction,
+      @Value("${app.gmc.gmcUsername}") String gmcUserName,
+      @Value("${app.gmc.gmcPassword}") String gmcPassword) {
+    this.webServiceTemplate = webServiceTemplate;
+    this.gmcCallGuard = gmcCallGuard;
+    this.gmcConnectUrl = gmcConnectUrl;
+    this.gmcUserName = gmcUserName;
+    this.gmcPassword = gmcPassword;
+    this.tryAddDoctorAction = new SoapActionCallback(gmcSoapBaseAction + TRY_ADD_DOCTOR);
+    this.tryRemoveDoctorAction = new SoapActionCallback(gmcSoapBaseAction + TRY_REMOVE_DOCTOR);
+  }
 
   /**
    * add GMC connection for a doctor.
@@ -77,10 +103,9 @@ public class GmcClientService {
     final var tryAddDoctorResult = tryAddDoctorResponse.getTryAddDoctorResult();
     final var submissionDateString = tryAddDoctorResult.getSubmissionDate();
 
-    final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
     final LocalDate submissionDate =
         StringUtils.isBlank(submissionDateString)
-            ? null : LocalDate.parse(submissionDateString, formatter);
+            ? null : LocalDate.parse(submissionDateString, SUBMISSION_DATE_FORMATTER);
     return GmcConnectionResponseDto.builder()
         .clientRequestId(tryAddDoctorResult.getClientRequestID())
         .gmcRequestId(tryAddDoctorResult.getGMCRequestID())
@@ -141,13 +166,15 @@ public class GmcClientService {
   }
 
   private TryAddDoctorResponse submitTryAddDoctor(final TryAddDoctor tryAddDoctor) {
-    return (TryAddDoctorResponse) webServiceTemplate.marshalSendAndReceive(gmcConnectUrl,
-        tryAddDoctor, new SoapActionCallback(gmcSoapBaseAction + TRY_ADD_DOCTOR));
+    return gmcCallGuard.execute(ConnectionRequestType.ADD,
+        () -> (TryAddDoctorResponse) webServiceTemplate.marshalSendAndReceive(gmcConnectUrl,
+            tryAddDoctor, tryAddDoctorAction));
   }
 
   private TryRemoveDoctorResponse submitTryRemoveDoctor(final TryRemoveDoctor tryRemoveDoctor) {
-    return (TryRemoveDoctorResponse) webServiceTemplate.marshalSendAndReceive(gmcConnectUrl,
-        tryRemoveDoctor, new SoapActionCallback(gmcSoapBaseAction + TRY_REMOVE_DOCTOR));
+    return gmcCallGuard.execute(ConnectionRequestType.REMOVE,
+        () -> (TryRemoveDoctorResponse) webServiceTemplate.marshalSendAndReceive(gmcConnectUrl,
+            tryRemoveDoctor, tryRemoveDoctorAction));
   }
 
 }
@@ -28,7 +28,9 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
- * Cron service to remove expired hidden discrepancies from the database.
+ * Cron service to remove expired hidden discrepancies from the database. Discrepancies are hidden
+ * until a date, so they all expire at the start of a day, and by default the job runs just after
+ * midnight.
  */
 @Slf4j
 @Service
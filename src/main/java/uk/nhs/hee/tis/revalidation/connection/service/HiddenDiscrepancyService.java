@@ -34,11 +34,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
@@ -50,9 +54,14 @@ import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyResponseDto.HiddenDiscrepancyResponseItem;
 import uk.nhs.hee.tis.revalidation.connection.dto.TcsDoctorInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
+import uk.nhs.hee.tis.revalidation.connection.event.HiddenDiscrepanciesChangedApplicationEvent;
 import uk.nhs.hee.tis.revalidation.connection.mapper.HiddenDiscrepancyMapper;
 import uk.nhs.hee.tis.revalidation.connection.mapper.HideDiscrepancyMapper;
+import uk.nhs.hee.tis.revalidation.connection.message.OutboxWriter;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.HiddenDiscrepanciesChangedMessage;
 import uk.nhs.hee.tis.revalidation.connection.message.payloads.IndexSyncMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome;
 import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyRepository;
 
 /*
@@ -68,31 +77,52 @@ public class HiddenDiscrepancyService {
   @Value("${app.rabbit.reval.routingKey.hiddendiscrepancy.essyncdata}")
   private String esSyncDataRoutingKey;
 
+  @Value("${app.rabbit.reval.routingKey.hiddendiscrepancy.changed}")
+  private String changedRoutingKey;
+
+  @Value("${app.reval.outbox.enabled}")
+  private boolean outboxEnabled;
+
+  @Value("${app.reval.cron.hiddendiscrepancy.expiry.batchSize}")
+  private int expiryBatchSize;
+
   private final RabbitTemplate rabbitTemplate;
   private final HiddenDiscrepancyRepository hiddenDiscrepancyRepository;
+  private final HiddenDiscrepancyCustomRepository hiddenDiscrepancyCustomRepository;
   private final HideDiscrepancyMapper hideDiscrepancyMapper;
   private final HiddenDiscrepancyMapper hiddenDiscrepancyMapper;
   private final Clock clock;
+  private final ApplicationEventPublisher applicationEventPublisher;
+  private final OutboxWriter outboxWriter;
 
   /**
    * Constructs a new HiddenDiscrepancyService with the specified repository and mapper.
    *
    * @param hiddenDiscrepancyRepository the repository for managing hidden discrepancies
+   * @param hiddenDiscrepancyCustomRepository the repository for writing hidden discrepancies in
+   *                                    bulk
    * @param hideDiscrepancyMapper       the mapper for converting HideDiscrepancy between DTOs and
    *                                    entities
    * @param hiddenDiscrepancyMapper     the mapper for converting between HiddenDiscrepancy DTOs and
    *                                    entities
    * @param rabbitTemplate              the template for sending rabbitmq messages
    * @param clock                       the clock used for time-based operations
+   * @param applicationEventPublisher   the publisher of hidden discrepancy changes
+   * @param outboxWriter                the writer of hidden discrepancy changes to the outbox
    */
   public HiddenDiscrepancyService(HiddenDiscrepancyRepository hiddenDiscrepancyRepository,
+      HiddenDiscrepancyCustomRepository hiddenDiscrepancyCustomRepository,
       HideDiscrepancyMapper hideDiscrepancyMapper, RabbitTemplate rabbitTemplate,
-      HiddenDiscrepancyMapper hiddenDiscrepancyMapper, Clock clock) {
+      HiddenDiscrepancyMapper hiddenDiscrepancyMapper, Clock clock,
+      ApplicationEventPublisher applicationEventPublisher, OutboxWriter outboxWriter) {
     this.rabbitTemplate = rabbitTemplate;
     this.hiddenDiscrepancyRepository = hiddenDiscrepancyRepository;
+    this.hiddenDiscrepancyCustomRepository = hiddenDiscrepancyCustomRepository;
     this.hideDiscrepancyMapper = hideDiscrepancyMapper;
     this.hiddenDiscrepancyMapper = hiddenDiscrepancyMapper;
     this.clock = clock;
+    this.applicationEventPublisher = applicationEventPublisher;
+    this.outboxWriter = outboxWriter;
   }
 
   /**
@@ -112,21 +142,20 @@ public class HiddenDiscrepancyService {
     var responseItemsMap = prepareResponseItemsMap(dto.getDoctors());
 
     Map<String, List<String>> toHideByGmc = new HashMap<>();
-    Set<String> allGmcIds = new HashSet<>();
-    Set<String> allDbcs = new HashSet<>();
-    prepareToHideData(dto.getDoctors(), adminDesignatedBodyCodes, toHideByGmc, allGmcIds, allDbcs);
+    prepareToHideData(dto.getDoctors(), adminDesignatedBodyCodes, toHideByGmc);
 
     if (toHideByGmc.isEmpty()) {
       response.getResults().addAll(responseItemsMap.values());
       return response;
     }
 
-    Set<String> existingPairs = queryExistingPairs(allGmcIds, allDbcs);
+    List<HiddenDiscrepancy> toSave = buildEntitiesToSave(dto, toHideByGmc);
 
-    List<HiddenDiscrepancy> toSave = buildEntitiesToSave(dto, toHideByGmc, existingPairs,
-        responseItemsMap);
-
-    saveEntitiesBatch(toSave, responseItemsMap);
+    // the outbox may retry the writes, so the outcomes are merged once they have committed
+    List<UpsertOutcome> outcomes = writeChanges(
+        () -> hiddenDiscrepancyCustomRepository.insertAbsent(toSave),
+        result -> insertedGmcIds(toSave, result));
+    mergeOutcomes(toSave, outcomes, responseItemsMap);
 
     response.getResults().addAll(responseItemsMap.values());
     return response;
@@ -142,7 +171,10 @@ public class HiddenDiscrepancyService {
     if (!hasText(gmcId)) {
       throw new IllegalArgumentException("GMC ID must not be null");
     }
-    hiddenDiscrepancyRepository.deleteByGmcId(gmcId);
+    writeChanges(() -> {
+      hiddenDiscrepancyRepository.deleteByGmcId(gmcId);
+      return Set.of(gmcId);
+    }, Function.identity());
     log.info("Successfully removed all hidden discrepancies for GMC ID: {}", gmcId);
   }
 
@@ -172,8 +204,7 @@ public class HiddenDiscrepancyService {
   }
 
   private void prepareToHideData(List<DoctorInfoDto> doctors,
-      List<String> adminDesignatedBodyCodes, Map<String, List<String>> toHideByGmc,
-      Set<String> allGmcIds, Set<String> allDbcs) {
+      List<String> adminDesignatedBodyCodes, Map<String, List<String>> toHideByGmc) {
 
     for (DoctorInfoDto doctor : doctors) {
       String gmcId = doctor.getGmcId();
@@ -190,29 +221,13 @@ public class HiddenDiscrepancyService {
 
         if (!toHideList.isEmpty()) {
           toHideByGmc.put(gmcId, toHideList);
-          allGmcIds.add(gmcId);
-          allDbcs.addAll(toHideList);
         }
       }
     }
   }
 
-  // Query existing hidden discrepancies for the given GMC IDs and designated body codes
-  private Set<String> queryExistingPairs(Set<String> allGmcIds, Set<String> allDbcs) {
-    if (allGmcIds.isEmpty() || allDbcs.isEmpty()) {
-      return Set.of();
-    }
-    var existing = hiddenDiscrepancyRepository.findByGmcIdInAndHiddenForDesignatedBodyCodeIn(
-        new ArrayList<>(allGmcIds), new ArrayList<>(allDbcs));
-    // Create a set of "GMCID#DBC" strings for easy lookup when building entities to save
-    return existing.stream()
-        .map(e -> buildKey(e.getGmcId(), e.getHiddenForDesignatedBodyCode()))
-        .collect(Collectors.toSet());
-  }
-
   private List<HiddenDiscrepancy> buildEntitiesToSave(HideDiscrepancyDto dto,
-      Map<String, List<String>> toHideByGmc, Set<String> existingPairs,
-      Map<String, HiddenDiscrepancyResponseItem> responseItems) {
+      Map<String, List<String>> toHideByGmc) {
     List<HiddenDiscrepancy> toSave = new ArrayList<>();
     LocalDateTime saveTime = LocalDateTime.now(clock);
 
@@ -223,54 +238,70 @@ public class HiddenDiscrepancyService {
 
     for (Map.Entry<String, List<String>> entry : toHideByGmc.entrySet()) {
       String gmcId = entry.getKey();
-      var item = responseItems.get(gmcId);
       DoctorInfoDto doctorInfo = doctorsByGmcId.get(gmcId);
+      String currentDbc = doctorInfo != null ? doctorInfo.getCurrentDesignatedBodyCode() : null;
+      String programmeDbc =
+          doctorInfo != null ? doctorInfo.getProgrammeOwnerDesignatedBodyCode() : null;
 
       for (String dbc : entry.getValue()) {
-        String key = buildKey(gmcId, dbc);
-        if (existingPairs.contains(key)) {
-          mergeExisting(item, dbc);
-        } else {
-          String currentDbc = doctorInfo != null ? doctorInfo.getCurrentDesignatedBodyCode() : null;
-          String programmeDbc =
-              doctorInfo != null ? doctorInfo.getProgrammeOwnerDesignatedBodyCode() : null;
-
-          var entity = hideDiscrepancyMapper.toEntity(dto, gmcId, saveTime, dbc,
-              currentDbc, programmeDbc);
-          toSave.add(entity);
-        }
+        toSave.add(hideDiscrepancyMapper.toEntity(dto, gmcId, saveTime, dbc,
+            currentDbc, programmeDbc));
       }
     }
     return toSave;
   }
 
-  private String buildKey(String gmcId, String dbc) {
-    return gmcId + "#" + dbc;
+  // Find the GMC IDs with any hidden discrepancy inserted by the bulk write
+  private Set<String> insertedGmcIds(List<HiddenDiscrepancy> toSave,
+      List<UpsertOutcome> outcomes) {
+    Set<String> insertedGmcIds = new HashSet<>();
+    for (int i = 0; i < toSave.size(); i++) {
+      if (outcomes.get(i) == UpsertOutcome.INSERTED) {
+        insertedGmcIds.add(toSave.get(i).getGmcId());
+      }
+    }
+    return insertedGmcIds;
   }
 
-  private void saveEntitiesBatch(List<HiddenDiscrepancy> toSave,
+  // Add the outcome of each hidden discrepancy written to the response item for its GMC ID
+  private void mergeOutcomes(List<HiddenDiscrepancy> toSave, List<UpsertOutcome> outcomes,
       Map<String, HiddenDiscrepancyResponseItem> responseItems) {
-    if (toSave.isEmpty()) {
-      return;
-    }
-    var saved = hiddenDiscrepancyRepository.saveAll(toSave);
-    // build set of saved keys for comparison
-    var savedKeys = saved.stream()
-        .map(s -> buildKey(s.getGmcId(), s.getHiddenForDesignatedBodyCode()))
-        .collect(Collectors.toSet());
-
-    // mark all saved entries as successful
-    for (HiddenDiscrepancy hd : saved) {
-      mergeSuccessful(responseItems.get(hd.getGmcId()), hd.getHiddenForDesignatedBodyCode());
+    for (int i = 0; i < toSave.size(); i++) {
+      HiddenDiscrepancy hd = toSave.get(i);
+      var item = responseItems.get(hd.getGmcId());
+      switch (outcomes.get(i)) {
+        case INSERTED:
+          mergeSuccessful(item, hd.getHiddenForDesignatedBodyCode());
+          break;
+        case EXISTING:
+          mergeExisting(item, hd.getHiddenForDesignatedBodyCode());
+          break;
+        default:
+          mergeFailed(item, hd.getHiddenForDesignatedBodyCode());
+      }
     }
+  }
 
-    // any toSave element not present in savedKeys -> failed
-    for (HiddenDiscrepancy hd : toSave) {
-      String key = buildKey(hd.getGmcId(), hd.getHiddenForDesignatedBodyCode());
-      if (!savedKeys.contains(key)) {
-        mergeFailed(responseItems.get(hd.getGmcId()), hd.getHiddenForDesignatedBodyCode());
-      }
+  /*
+   * Run the writes and find the GMC IDs they changed. With the outbox enabled, the change message
+   * is saved in the same transaction as the writes, otherwise the change is published once they
+   * are done.
+   */
+  private <T> T writeChanges(Supplier<T> writes, Function<T, Set<String>> changedGmcIds) {
+    if (outboxEnabled) {
+      return outboxWriter.writeWithMessages(writes, result -> {
+        Set<String> gmcIds = changedGmcIds.apply(result);
+        return gmcIds.isEmpty() ? List.of() : List.of(outboxWriter.create(changedRoutingKey,
+            new HiddenDiscrepanciesChangedMessage(List.copyOf(gmcIds))));
+      });
+    }
+    T result = writes.get();
+    Set<String> gmcIds = changedGmcIds.apply(result);
+    if (!gmcIds.isEmpty()) {
+      applicationEventPublisher.publishEvent(
+          new HiddenDiscrepanciesChangedApplicationEvent(gmcIds));
     }
+    return result;
   }
 
   private void mergeSuccessful(HiddenDiscrepancyResponseItem item,
@@ -310,7 +341,10 @@ public class HiddenDiscrepancyService {
    */
   public void showDiscrepancy(String discrepancyId) {
     hiddenDiscrepancyRepository.findById(discrepancyId).ifPresentOrElse(entity -> {
-          hiddenDiscrepancyRepository.delete(entity);
+          writeChanges(() -> {
+            hiddenDiscrepancyRepository.delete(entity);
+            return Set.of(entity.getGmcId());
+          }, Function.identity());
           log.info("Successfully removed hidden discrepancy for GMC ID: {} and designated body: {}",
               entity.getGmcId(), entity.getHiddenForDesignatedBodyCode());
         }, () -> {
@@ -392,13 +426,19 @@ public class HiddenDiscrepancyService {
   }
 
   /**
-   * Remove expired hidden discrepancies whose hidden until date is before the current date.
+   * Remove expired hidden discrepancies whose hidden until date is before the current date. The
+   * doctors with expired hidden discrepancies are found and removed in batches, and the change is
+   * published for each batch, so the memory used does not grow with the number expired.
    */
   public void removeExpiredHiddenDiscrepancies() {
-    long count = hiddenDiscrepancyRepository.deleteByHiddenUntilDateLessThan(
-        LocalDate.now(clock));
-    if (count > 0) {
-      log.info("Removed {} expired hidden discrepancies", count);
+    LocalDate today = LocalDate.now(clock);
+    AtomicLong removed = new AtomicLong();
+    hiddenDiscrepancyCustomRepository.forEachExpiredGmcIdBatch(today, expiryBatchSize,
+        gmcIds -> removed.addAndGet(writeChanges(
+            () -> hiddenDiscrepancyCustomRepository.deleteExpired(gmcIds, today),
+            deleted -> deleted > 0 ? gmcIds : Set.of())));
+    if (removed.get() > 0) {
+      log.info("Removed {} expired hidden discrepancies", removed.get());
     } else {
       log.info("No expired hidden discrepancies found for removal");
     }
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cron service to backfill and check the latestConnectionLogs collection.
+ */
+@Slf4j
+@Service
+public class LatestConnectionLogCronService {
+
+  public static final String BACKFILL_LOCK_NAME = "latestConnectionLogBackfillCronLock";
+  public static final String CONSISTENCY_LOCK_NAME = "latestConnectionLogConsistencyCronLock";
+
+  public static final String PREFIX = "${app.reval.cron.latestconnectionlog.";
+
+  public static final String SPEL_BACKFILL_CRON = PREFIX + "backfill.expression}";
+  public static final String SPEL_BACKFILL_CRONLOCK = PREFIX + "backfill.lock}";
+  public static final String SPEL_CONSISTENCY_CRON = PREFIX + "consistency.expression}";
+  public static final String SPEL_CONSISTENCY_CRONLOCK = PREFIX + "consistency.lock}";
+
+  private final LatestConnectionLogService latestConnectionLogService;
+  private final int batchSize;
+  private final boolean repair;
+
+  /**
+   * Constructor for the LatestConnectionLogCronService.
+   *
+   * @param latestConnectionLogService the service to populate the latest connection logs
+   * @param batchSize                  the number of doctors processed at a time
+   * @param repair                     whether the consistency check repairs what it finds
+   */
+  public LatestConnectionLogCronService(LatestConnectionLogService latestConnectionLogService,
+      @Value("${app.reval.latestconnectionlog.batchSize}") int batchSize,
+      @Value("${app.reval.cron.latestconnectionlog.consistency.repair}") boolean repair) {
+    this.latestConnectionLogService = latestConnectionLogService;
+    this.batchSize = batchSize;
+    this.repair = repair;
+  }
+
+  /**
+   * Scheduled method to backfill the latest connection logs from the connectionLogs collection.
+   * It is disabled unless a cron expression is configured, as it is only needed once.
+   */
+  @Scheduled(cron = SPEL_BACKFILL_CRON)
+  @SchedulerLock(
+      name = BACKFILL_LOCK_NAME,
+      lockAtMostFor = SPEL_BACKFILL_CRONLOCK)
+  public void backfillLatestConnectionLogs() {
+    log.info("Cron job started to backfill latest connection logs.");
+    long start = System.currentTimeMillis();
+    try {
+      latestConnectionLogService.backfill(batchSize);
+    } finally {
+      long diff = System.currentTimeMillis() - start;
+      log.info("Latest connection logs backfill : EXIT took[{}]ms", diff);
+    }
+  }
+
+  /**
+   * Scheduled method to check the latest connection logs against the connectionLogs collection.
+   */
+  @Scheduled(cron = SPEL_CONSISTENCY_CRON)
+  @SchedulerLock(
+      name = CONSISTENCY_LOCK_NAME,
+      lockAtMostFor = SPEL_CONSISTENCY_CRONLOCK)
+  public void checkLatestConnectionLogs() {
+    log.info("Cron job started to check latest connection logs.");
+    long start = System.currentTimeMillis();
+    try {
+      latestConnectionLogService.checkConsistency(batchSize, repair);
+    } finally {
+      long diff = System.currentTimeMillis() - start;
+      log.info("Latest connection logs consistency check : EXIT took[{}]ms", diff);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.LatestConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionLogCustomRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository;
+
+/**
+ * Service to populate the latestConnectionLogs collection from the connectionLogs collection, and
+ * to check that it agrees with the latest logs found by aggregating connectionLogs.
+ */
+@Slf4j
+@Service
+public class LatestConnectionLogService {
+
+  private final ConnectionLogCustomRepository connectionLogCustomRepository;
+  private final LatestConnectionLogRepository latestConnectionLogRepository;
+
+  /**
+   * Constructor for LatestConnectionLogService.
+   *
+   * @param connectionLogCustomRepository the repository to aggregate the connection logs
+   * @param latestConnectionLogRepository the repository of the latest connection logs
+   */
+  public LatestConnectionLogService(ConnectionLogCustomRepository connectionLogCustomRepository,
+      LatestConnectionLogRepository latestConnectionLogRepository) {
+    this.connectionLogCustomRepository = connectionLogCustomRepository;
+    this.latestConnectionLogRepository = latestConnectionLogRepository;
+  }
+
+  /**
+   * Record the latest log of every doctor found by aggregating connectionLogs. A log recorded
+   * since the aggregation started is later, so it is not overwritten.
+   *
+   * @param batchSize the number of logs upserted at a time
+   * @return the number of latest logs found by the aggregation
+   */
+  public long backfill(int batchSize) {
+    long total = connectionLogCustomRepository.streamLatestLogs(batchSize,
+        latestConnectionLogRepository::upsertLatest);
+    log.info("Backfilled latest connection logs for {} doctors", total);
+    return total;
+  }
+
+  /**
+   * Compare the latest logs found by aggregating connectionLogs with the latestConnectionLogs
+   * collection.
+   *
+   * @param batchSize the number of doctors compared at a time
+   * @param repair    whether to upsert the missing and out of date latest logs
+   * @return the result of the comparison
+   */
+  public ConsistencyReport checkConsistency(int batchSize, boolean repair) {
+    final var missing = new AtomicLong();
+    final var outOfDate = new AtomicLong();
+
+    long expected = connectionLogCustomRepository.streamLatestLogs(batchSize, latestLogs -> {
+      List<String> gmcIds = latestLogs.stream().map(ConnectionLog::getGmcId)
+          .filter(Objects::nonNull).collect(Collectors.toList());
+      Map<String, LatestConnectionLog> recorded = latestConnectionLogRepository
+          .findAllById(gmcIds).stream()
+          .collect(Collectors.toMap(LatestConnectionLog::getGmcId, Function.identity()));
+
+      List<ConnectionLog> inconsistent = new ArrayList<>();
+      for (ConnectionLog latestLog : latestLogs) {
+        if (latestLog.getGmcId() == null) {
+          continue;
+        }
+        LatestConnectionLog recordedLog = recorded.get(latestLog.getGmcId());
+        if (recordedLog == null) {
+          missing.incrementAndGet();
+          inconsistent.add(latestLog);
+        } else if (!matches(recordedLog, latestLog)) {
+          outOfDate.incrementAndGet();
+          inconsistent.add(latestLog);
+        }
+      }
+      if (repair && !inconsistent.isEmpty()) {
+        latestConnectionLogRepository.upsertLatest(inconsistent);
+      }
+    });
+
+    final var report = new ConsistencyReport(expected, latestConnectionLogRepository.count(),
+        missing.get(), outOfDate.get());
+    if (report.isConsistent()) {
+      log.info("Latest connection logs are consistent: {}", report);
+    } else {
+      log.warn("Latest connection logs are inconsistent, repair {}: {}",
+          repair ? "attempted" : "not attempted", report);
+    }
+    return report;
+  }
+
+  private static boolean matches(LatestConnectionLog recordedLog, ConnectionLog latestLog) {
+    return Objects.equals(recordedLog.getRequestTime(), latestLog.getRequestTime())
+        && Objects.equals(recordedLog.getNewDesignatedBodyCode(),
+        latestLog.getNewDesignatedBodyCode());
+  }
+
+  /**
+   * The result of comparing the aggregated latest logs with the latestConnectionLogs collection.
+   */
+  @Value
+  public static class ConsistencyReport {
+
+    long expected;
+    long recorded;
+    long missing;
+    long outOfDate;
+
+    public boolean isConsistent() {
+      return missing == 0 && outOfDate == 0 && expected == recorded;
+    }
+  }
+}
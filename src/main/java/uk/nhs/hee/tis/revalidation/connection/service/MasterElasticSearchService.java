@@ -21,18 +21,58 @@
 
 package uk.nhs.hee.tis.revalidation.connection.service;
 
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
+
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.common.util.iterable.Iterables;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.UpdateByQueryRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.SearchScrollHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
 import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
 import uk.nhs.hee.tis.revalidation.connection.repository.MasterElasticSearchRepository;
@@ -41,24 +81,60 @@ import uk.nhs.hee.tis.revalidation.connection.repository.MasterElasticSearchRepo
 @Slf4j
 public class MasterElasticSearchService {
 
+  /**
+   * The most records a lookup of existing records returns, which is the default
+   * max_result_window of an index.
+   */
+  private static final int MAX_LOOKUP_HITS = 10000;
+
+  private static final String GMC_REFERENCE_NUMBER = "gmcReferenceNumber";
+
+  private static final String TCS_PERSON_ID = "tcsPersonId";
+
+  private static final String HIDDEN_DISCREPANCIES_PARAM = "hiddenDiscrepancies";
+
+  /**
+   * Replaces the hidden discrepancies of a record with those passed for its GMC number.
+   */
+  private static final String UPDATE_HIDDEN_DISCREPANCIES_SCRIPT =
+      "ctx._source.hiddenDiscrepancies = params." + HIDDEN_DISCREPANCIES_PARAM
+          + "[ctx._source." + GMC_REFERENCE_NUMBER + "]";
+
   private MasterElasticSearchRepository masterElasticSearchRepository;
 
   private ConnectionInfoMapper connectionInfoMapper;
 
+  private ElasticsearchRestTemplate elasticsearchRestTemplate;
+
+  @Value("${app.es.master.bulkUpsert.batchSize}")
+  private int bulkUpsertBatchSize;
+
+  @Value("${app.es.master.deterministicIds.enabled}")
+  private boolean deterministicIdsEnabled;
+
   /**
    * constructor.
    */
   public MasterElasticSearchService(
       MasterElasticSearchRepository masterElasticSearchRepository,
-      ConnectionInfoMapper connectionInfoMapper) {
+      ConnectionInfoMapper connectionInfoMapper,
+      ElasticsearchRestTemplate elasticsearchRestTemplate) {
     this.masterElasticSearchRepository = masterElasticSearchRepository;
     this.connectionInfoMapper = connectionInfoMapper;
+    this.elasticsearchRestTemplate = elasticsearchRestTemplate;
   }
 
   public void updateMasterIndex(ConnectionInfoDto connectionInfoDto) {
     MasterDoctorView masterDoctorToSave = connectionInfoMapper
         .dtoToMaster(connectionInfoDto);
     try {
+      String id = deterministicIdsEnabled
+          ? documentId(masterDoctorToSave.getGmcReferenceNumber()) : null;
+      if (id != null) {
+        masterDoctorToSave.setId(id);
+        masterElasticSearchRepository.save(masterDoctorToSave);
+        return;
+      }
       Iterable<MasterDoctorView> existingRecords = findMasterDoctorRecordByGmcNumberPersonId(masterDoctorToSave);
       if(Iterables.size(existingRecords) > 0) {
         updateRecords(existingRecords, masterDoctorToSave);
@@ -124,4 +200,418 @@ public class MasterElasticSearchService {
       masterElasticSearchRepository.save(dataToSave);
     });
   }
+
+  /**
+   * Insert or update the master index records of many doctors. Existing records are matched on
+   * GMC number and TIS person id in the same way as {@link #updateMasterIndex(ConnectionInfoDto)},
+   * but each batch is looked up with one search and written with one bulk request. With
+   * deterministic ids enabled the lookup is skipped for doctors with a GMC number, as their record
+   * is written to its {@link #documentId(String)}. Only the last update of a doctor in the list is
+   * written, so a doctor new to the index is not written as two records. The writes are not
+   * refreshed, so they become visible to searches on the next scheduled refresh.
+   *
+   * @param connectionInfoDtos the doctors to insert or update
+   * @return the number of records written and the doctors which could not be written
+   */
+  public BulkUpsertResult updateMasterIndex(List<ConnectionInfoDto> connectionInfoDtos) {
+    int written = 0;
+    List<UpsertFailure> failures = new ArrayList<>();
+
+    for (List<ConnectionInfoDto> batch : ListUtils.partition(
+        latestUpdatePerDoctor(connectionInfoDtos), bulkUpsertBatchSize)) {
+      List<MasterDoctorView> toSave = batch.stream()
+          .map(connectionInfoMapper::dtoToMaster)
+          .collect(toList());
+      try {
+        BulkRequest bulkRequest = buildBulkRequest(toSave, findExistingRecords(toSave.stream()
+            .filter(view -> !deterministicIdsEnabled
+                || documentId(view.getGmcReferenceNumber()) == null)
+            .collect(toList())));
+        BulkResponse bulkResponse = elasticsearchRestTemplate.execute(
+            client -> client.bulk(bulkRequest, RequestOptions.DEFAULT));
+
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+          if (item.isFailed()) {
+            failures.add(toFailure(bulkRequest.requests().get(item.getItemId()),
+                item.getFailureMessage()));
+          } else {
+            written++;
+          }
+        }
+      } catch (RuntimeException e) {
+        log.warn("Exception in bulk `updateMasterIndex` of {} doctors: {}", toSave.size(),
+            e.getMessage());
+        toSave.forEach(view -> failures.add(new UpsertFailure(view.getGmcReferenceNumber(),
+            view.getTcsPersonId(), e.getMessage())));
+      }
+    }
+    return new BulkUpsertResult(written, failures);
+  }
+
+  /**
+   * Keep only the last update of each doctor, identified by GMC number or, without one, by TIS
+   * person id. Updates with neither are all kept, as they cannot be told apart.
+   *
+   * @param connectionInfoDtos the updates, oldest first
+   * @return the updates to write
+   */
+  static List<ConnectionInfoDto> latestUpdatePerDoctor(List<ConnectionInfoDto> connectionInfoDtos) {
+    Map<String, ConnectionInfoDto> latestByDoctor = new LinkedHashMap<>();
+    List<ConnectionInfoDto> latest = new ArrayList<>();
+    for (ConnectionInfoDto connectionInfoDto : connectionInfoDtos) {
+      String key = StringUtils.hasText(connectionInfoDto.getGmcReferenceNumber())
+          ? GMC_REFERENCE_NUMBER + ":" + connectionInfoDto.getGmcReferenceNumber()
+          : connectionInfoDto.getTcsPersonId() == null ? null
+              : TCS_PERSON_ID + ":" + connectionInfoDto.getTcsPersonId();
+      if (key == null) {
+        latest.add(connectionInfoDto);
+      } else {
+        latestByDoctor.put(key, connectionInfoDto);
+      }
+    }
+    latest.addAll(latestByDoctor.values());
+    return latest;
+  }
+
+  /**
+   * Build the bulk request writing each record to its deterministic id when they are enabled and
+   * it has one, otherwise over the existing records it matches, or as a new record when there are
+   * none.
+   *
+   * @param toSave          the records to write
+   * @param existingRecords the existing records which may match them
+   * @return the bulk request, which is not refreshed
+   */
+  BulkRequest buildBulkRequest(List<MasterDoctorView> toSave,
+      List<MasterDoctorView> existingRecords) {
+    ElasticsearchConverter converter = elasticsearchRestTemplate.getElasticsearchConverter();
+    String indexName = elasticsearchRestTemplate
+        .getIndexCoordinatesFor(MasterDoctorView.class).getIndexName();
+    BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(RefreshPolicy.NONE);
+
+    for (MasterDoctorView dataToSave : toSave) {
+      // serialised the same way as a repository save
+      String source = converter.mapObject(dataToSave).toJson();
+      String id = deterministicIdsEnabled ? documentId(dataToSave.getGmcReferenceNumber()) : null;
+      List<MasterDoctorView> matches = id != null ? List.of() : existingRecords.stream()
+          .filter(existing -> isSameDoctor(dataToSave, existing))
+          .collect(toList());
+      if (matches.isEmpty()) {
+        bulkRequest.add(new IndexRequest(indexName).id(id).source(source, XContentType.JSON));
+      } else {
+        matches.forEach(existing -> bulkRequest.add(new IndexRequest(indexName)
+            .id(existing.getId()).source(source, XContentType.JSON)));
+      }
+    }
+    return bulkRequest;
+  }
+
+  /**
+   * Replace the hidden discrepancies of the given doctors' master index records, leaving the rest
+   * of each record unchanged. Each batch of doctors is updated with one update by query, whose
+   * writes are not refreshed. Records changed concurrently are skipped rather than failing the
+   * update, as a full hidden discrepancy sync will repair them.
+   *
+   * @param hiddenDiscrepanciesByGmcId the current hidden discrepancies of each doctor, which are
+   *                                   empty for a doctor with none
+   * @return the number of records updated
+   */
+  public long updateHiddenDiscrepancies(
+      Map<String, List<HiddenDiscrepancy>> hiddenDiscrepanciesByGmcId) {
+    long updated = 0;
+    for (List<String> gmcIds : ListUtils.partition(
+        new ArrayList<>(hiddenDiscrepanciesByGmcId.keySet()), bulkUpsertBatchSize)) {
+      UpdateByQueryRequest request = buildHiddenDiscrepanciesUpdate(gmcIds,
+          hiddenDiscrepanciesByGmcId);
+      BulkByScrollResponse response = elasticsearchRestTemplate.execute(
+          client -> client.updateByQuery(request, RequestOptions.DEFAULT));
+      if (!response.getBulkFailures().isEmpty() || !response.getSearchFailures().isEmpty()) {
+        log.warn("Failures updating hidden discrepancies of {} doctors: {} bulk, {} search",
+            gmcIds.size(), response.getBulkFailures().size(),
+            response.getSearchFailures().size());
+      }
+      updated += response.getUpdated();
+    }
+    return updated;
+  }
+
+  /**
+   * Build the update by query setting the hidden discrepancies of the records with the GMC numbers.
+   *
+   * @param gmcIds                     the GMC numbers of the records to update
+   * @param hiddenDiscrepanciesByGmcId the hidden discrepancies of each doctor
+   * @return the update, which is not refreshed and continues past version conflicts
+   */
+  UpdateByQueryRequest buildHiddenDiscrepanciesUpdate(List<String> gmcIds,
+      Map<String, List<HiddenDiscrepancy>> hiddenDiscrepanciesByGmcId) {
+    ElasticsearchConverter converter = elasticsearchRestTemplate.getElasticsearchConverter();
+    Map<String, Object> hiddenDiscrepancies = new HashMap<>();
+    // serialised the same way as the nested field of a repository save
+    gmcIds.forEach(gmcId -> hiddenDiscrepancies.put(gmcId,
+        hiddenDiscrepanciesByGmcId.get(gmcId).stream()
+            .map(hiddenDiscrepancy -> Document.parse(
+                converter.mapObject(hiddenDiscrepancy).toJson()))
+            .collect(toList())));
+
+    UpdateByQueryRequest request = new UpdateByQueryRequest(elasticsearchRestTemplate
+        .getIndexCoordinatesFor(MasterDoctorView.class).getIndexName());
+    request.setQuery(termsQuery(GMC_REFERENCE_NUMBER + ".keyword", gmcIds));
+    request.setScript(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+        UPDATE_HIDDEN_DISCREPANCIES_SCRIPT,
+        Map.of(HIDDEN_DISCREPANCIES_PARAM, hiddenDiscrepancies)));
+    request.setAbortOnVersionConflict(false);
+    request.setRefresh(false);
+    return request;
+  }
+
+  /**
+   * Re-key the master index to deterministic ids and remove duplicate records. The index is
+   * scrolled in order of GMC number and latest submission, so the records of each doctor are
+   * adjacent. The record already at the doctor's deterministic id is kept, otherwise the latest
+   * one is created there, unless a live write has created it since; every other record of the
+   * doctor is deleted. The old records of a doctor
+   * whose record is moved are only deleted once it has been written at its new id, so a failed
+   * write leaves them for a re-run. Records without a GMC number are left alone, as they are still
+   * matched by lookup. Re-running it is safe, as a re-keyed index is left unchanged.
+   *
+   * @param batchSize the number of records scrolled, and roughly the bulk operations sent, at once
+   * @return the number of records scanned, re-keyed and removed as duplicates
+   */
+  public RekeyResult rekeyMasterIndex(int batchSize) {
+    RekeyResult result = new RekeyResult();
+    IndexCoordinates index = elasticsearchRestTemplate.getIndexCoordinatesFor(
+        MasterDoctorView.class);
+    NativeSearchQuery scrollQuery = new NativeSearchQueryBuilder()
+        .withQuery(matchAllQuery())
+        .withSort(fieldSort(GMC_REFERENCE_NUMBER + ".keyword").order(SortOrder.ASC))
+        .withSort(fieldSort("submissionDate").order(SortOrder.DESC))
+        .withPageable(PageRequest.of(0, batchSize))
+        .build();
+
+    BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(RefreshPolicy.NONE);
+    Map<String, List<String>> deletesAfterIndex = new HashMap<>();
+    String groupId = null;
+    List<MasterDoctorView> group = new ArrayList<>();
+    try (SearchHitsIterator<MasterDoctorView> hits = elasticsearchRestTemplate
+        .searchForStream(scrollQuery, MasterDoctorView.class, index)) {
+      while (hits.hasNext()) {
+        MasterDoctorView view = hits.next().getContent();
+        result.scanned++;
+        String id = documentId(view.getGmcReferenceNumber());
+        if (!Objects.equals(id, groupId)) {
+          addRekeyRequests(groupId, group, index.getIndexName(), bulkRequest, deletesAfterIndex);
+          group.clear();
+          groupId = id;
+          if (bulkRequest.numberOfActions() >= batchSize) {
+            executeRekeyRequest(bulkRequest, deletesAfterIndex, index.getIndexName(), result);
+            bulkRequest = new BulkRequest().setRefreshPolicy(RefreshPolicy.NONE);
+          }
+        }
+        group.add(view);
+      }
+    }
+    addRekeyRequests(groupId, group, index.getIndexName(), bulkRequest, deletesAfterIndex);
+    if (bulkRequest.numberOfActions() > 0) {
+      executeRekeyRequest(bulkRequest, deletesAfterIndex, index.getIndexName(), result);
+    }
+    return result;
+  }
+
+  /**
+   * The id of a doctor's master index record, derived from the doctor's GMC number alone so that
+   * a record is written to the same document every time, whether or not its TIS person id is
+   * known yet.
+   *
+   * @param gmcReferenceNumber the GMC number of the doctor
+   * @return the id, or null when the doctor has no GMC number and must be matched by lookup
+   */
+  public static String documentId(String gmcReferenceNumber) {
+    if (!StringUtils.hasText(gmcReferenceNumber)) {
+      return null;
+    }
+    return "gmc:" + gmcReferenceNumber;
+  }
+
+  /**
+   * Add the requests re-keying the records of one doctor. When none of them is at the doctor's id,
+   * the latest is indexed there and the deletes of every record are held back until that write
+   * has succeeded; otherwise the duplicates are deleted straight away.
+   */
+  private void addRekeyRequests(String id, List<MasterDoctorView> group, String indexName,
+      BulkRequest bulkRequest, Map<String, List<String>> deletesAfterIndex) {
+    if (id == null || group.isEmpty()) {
+      return;
+    }
+    MasterDoctorView survivor = group.stream()
+        .filter(view -> id.equals(view.getId()))
+        .findFirst()
+        .orElse(null);
+    if (survivor != null) {
+      group.stream()
+          .filter(duplicate -> duplicate != survivor)
+          .forEach(duplicate -> bulkRequest.add(new DeleteRequest(indexName, duplicate.getId())));
+      return;
+    }
+    deletesAfterIndex.put(id, group.stream().map(MasterDoctorView::getId).collect(toList()));
+    MasterDoctorView latest = group.get(0);
+    latest.setId(id);
+    bulkRequest.add(buildRekeyCreate(indexName, latest));
+  }
+
+  /**
+   * Build the request writing a doctor's record at its new id.
+   *
+   * @param indexName the index of the record
+   * @param record    the record, with its new id
+   * @return the request, which only creates the record so that a record written by a live upsert
+   *     since the scroll started is kept
+   */
+  IndexRequest buildRekeyCreate(String indexName, MasterDoctorView record) {
+    return new IndexRequest(indexName).id(record.getId()).opType(DocWriteRequest.OpType.CREATE)
+        .source(elasticsearchRestTemplate.getElasticsearchConverter().mapObject(record).toJson(),
+            XContentType.JSON);
+  }
+
+  /**
+   * Execute the re-key requests, then delete the old records of each doctor whose record was
+   * written at its new id.
+   */
+  private void executeRekeyRequest(BulkRequest bulkRequest,
+      Map<String, List<String>> deletesAfterIndex, String indexName, RekeyResult result) {
+    BulkRequest deleteRequest = new BulkRequest().setRefreshPolicy(RefreshPolicy.NONE);
+    Set<String> movedIds = new HashSet<>();
+    for (BulkItemResponse item : executeBulk(bulkRequest).getItems()) {
+      if (isAlreadyKeyed(item)) {
+        // every old record is a duplicate of the one now at the new id
+        deletesAfterIndex.get(item.getId())
+            .forEach(oldId -> deleteRequest.add(new DeleteRequest(indexName, oldId)));
+        continue;
+      }
+      if (item.isFailed()) {
+        continue;
+      }
+      if (item.getOpType() == DocWriteRequest.OpType.DELETE) {
+        result.duplicatesRemoved++;
+      } else {
+        result.rekeyed++;
+        List<String> oldIds = deletesAfterIndex.get(item.getId());
+        // the first old record is the one which was moved, the rest are duplicates
+        movedIds.add(oldIds.get(0));
+        oldIds.forEach(oldId -> deleteRequest.add(new DeleteRequest(indexName, oldId)));
+      }
+    }
+    deletesAfterIndex.clear();
+    if (deleteRequest.numberOfActions() > 0) {
+      for (BulkItemResponse item : executeBulk(deleteRequest).getItems()) {
+        if (!item.isFailed() && !movedIds.contains(item.getId())) {
+          result.duplicatesRemoved++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the record could not be created at its new id because one is already there.
+   */
+  private static boolean isAlreadyKeyed(BulkItemResponse item) {
+    return item.isFailed() && item.getOpType() == DocWriteRequest.OpType.CREATE
+        && item.getFailure().getStatus() == RestStatus.CONFLICT;
+  }
+
+  private BulkResponse executeBulk(BulkRequest bulkRequest) {
+    BulkResponse bulkResponse = elasticsearchRestTemplate.execute(
+        client -> client.bulk(bulkRequest, RequestOptions.DEFAULT));
+    if (bulkResponse.hasFailures()) {
+      log.warn("Failures re-keying the master index, which a re-run will retry: {}",
+          bulkResponse.buildFailureMessage());
+    }
+    return bulkResponse;
+  }
+
+  private List<MasterDoctorView> findExistingRecords(List<MasterDoctorView> toSave) {
+    Set<String> gmcReferenceNumbers = toSave.stream()
+        .map(MasterDoctorView::getGmcReferenceNumber)
+        .filter(Objects::nonNull)
+        .collect(toSet());
+    Set<Long> tcsPersonIds = toSave.stream()
+        .map(MasterDoctorView::getTcsPersonId)
+        .filter(Objects::nonNull)
+        .collect(toSet());
+    if (gmcReferenceNumbers.isEmpty() && tcsPersonIds.isEmpty()) {
+      return List.of();
+    }
+
+    BoolQueryBuilder lookupQuery = boolQuery().minimumShouldMatch(1);
+    if (!gmcReferenceNumbers.isEmpty()) {
+      lookupQuery.should(termsQuery(GMC_REFERENCE_NUMBER + ".keyword", gmcReferenceNumbers));
+    }
+    if (!tcsPersonIds.isEmpty()) {
+      lookupQuery.should(termsQuery(TCS_PERSON_ID, tcsPersonIds));
+    }
+    NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+        .withQuery(lookupQuery)
+        .withSourceFilter(
+            new FetchSourceFilter(new String[]{GMC_REFERENCE_NUMBER, TCS_PERSON_ID}, null))
+        .withPageable(PageRequest.of(0, MAX_LOOKUP_HITS))
+        .build();
+
+    return elasticsearchRestTemplate.search(searchQuery, MasterDoctorView.class,
+            elasticsearchRestTemplate.getIndexCoordinatesFor(MasterDoctorView.class))
+        .getSearchHits()
+        .stream()
+        .map(SearchHit::getContent)
+        .collect(toList());
+  }
+
+  private static boolean isSameDoctor(MasterDoctorView dataToSave, MasterDoctorView existing) {
+    String gmcReferenceNumber = dataToSave.getGmcReferenceNumber();
+    Long tcsPersonId = dataToSave.getTcsPersonId();
+    if (gmcReferenceNumber == null && tcsPersonId == null) {
+      return false;
+    }
+    return (gmcReferenceNumber == null
+        || gmcReferenceNumber.equals(existing.getGmcReferenceNumber()))
+        && (tcsPersonId == null || tcsPersonId.equals(existing.getTcsPersonId()));
+  }
+
+  private static UpsertFailure toFailure(DocWriteRequest<?> request, String message) {
+    Map<String, Object> source = ((IndexRequest) request).sourceAsMap();
+    Object tcsPersonId = source.get(TCS_PERSON_ID);
+    return new UpsertFailure((String) source.get(GMC_REFERENCE_NUMBER),
+        tcsPersonId == null ? null : ((Number) tcsPersonId).longValue(), message);
+  }
+
+  /**
+   * The outcome of a bulk upsert.
+   */
+  @Data
+  @AllArgsConstructor
+  public static class BulkUpsertResult {
+
+    private final int written;
+    private final List<UpsertFailure> failures;
+  }
+
+  /**
+   * The outcome of re-keying the master index.
+   */
+  @Getter
+  public static class RekeyResult {
+
+    private int scanned;
+    private int rekeyed;
+    private int duplicatesRemoved;
+  }
+
+  /**
+   * A doctor whose record could not be written, with the reason.
+   */
+  @Data
+  @AllArgsConstructor
+  public static class UpsertFailure {
+
+    private final String gmcReferenceNumber;
+    private final Long tcsPersonId;
+    private final String message;
+  }
 }
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService.RekeyResult;
+
+/**
+ * Cron service to re-key the master index to deterministic ids and remove duplicate records.
+ */
+@Slf4j
+@Service
+public class MasterIndexRekeyCronService {
+
+  public static final String REKEY_LOCK_NAME = "masterIndexRekeyCronLock";
+
+  public static final String PREFIX = "${app.reval.cron.masterindex.rekey.";
+
+  public static final String SPEL_REKEY_CRON = PREFIX + "expression}";
+  public static final String SPEL_REKEY_CRONLOCK = PREFIX + "lock}";
+
+  private final MasterElasticSearchService masterElasticSearchService;
+  private final int batchSize;
+
+  /**
+   * Constructor for the MasterIndexRekeyCronService.
+   *
+   * @param masterElasticSearchService the service to re-key the master index
+   * @param batchSize                  the number of records processed at a time
+   */
+  public MasterIndexRekeyCronService(MasterElasticSearchService masterElasticSearchService,
+      @Value("${app.es.master.bulkUpsert.batchSize}") int batchSize) {
+    this.masterElasticSearchService = masterElasticSearchService;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Scheduled method to re-key the master index. It is disabled unless a cron expression is
+   * configured, as it is only needed once deterministic ids are enabled.
+   */
+  @Scheduled(cron = SPEL_REKEY_CRON)
+  @SchedulerLock(
+      name = REKEY_LOCK_NAME,
+      lockAtMostFor = SPEL_REKEY_CRONLOCK)
+  public void rekeyMasterIndex() {
+    log.info("Cron job started to re-key the master index.");
+    long start = System.currentTimeMillis();
+    try {
+      RekeyResult result = masterElasticSearchService.rekeyMasterIndex(batchSize);
+      log.info("Master index re-key scanned [{}], re-keyed [{}], removed [{}] duplicates.",
+          result.getScanned(), result.getRekeyed(), result.getDuplicatesRemoved());
+    } finally {
+      long diff = System.currentTimeMillis() - start;
+      log.info("Master index re-key : EXIT took[{}]ms", diff);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDashboardDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancySummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
+
+/**
+ * A short lived in-process cache of search result pages, so that reloading the same page with the
+ * same filters does not go back to Elasticsearch.
+ *
+ * <p>The cache is bounded by the number of rows held rather than the number of pages. It is only
+ * cleared on the instance which made a change: once the master index has been updated after a
+ * discrepancy is hidden or shown, and when a connection changes. The master index writes are not
+ * refreshed, and connection changes reach the index through the integration service, so a result
+ * can be up to the TTL out of date even on that instance, and on every other instance any change
+ * is only seen once the TTL has passed. The cache is therefore off by default. Hit and miss counts
+ * are published as the {@code cache.*} metrics of the {@value #CACHE_NAME} cache.
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+  static final String CACHE_NAME = "connectionSearchResults";
+
+  private final Cache<List<Object>, Object> cache;
+  private final boolean enabled;
+
+  /**
+   * Constructs a new SearchResultCache.
+   *
+   * @param meterRegistry the registry for the cache metrics
+   * @param enabled       whether results are cached, otherwise every search is run
+   * @param ttlMs         how long a page is cached for after it was loaded
+   * @param maxRows       the maximum number of result rows held across all cached pages
+   */
+  public SearchResultCache(MeterRegistry meterRegistry,
+      @Value("${app.es.search.cache.enabled}") boolean enabled,
+      @Value("${app.es.search.cache.ttlMs}") long ttlMs,
+      @Value("${app.es.search.cache.maxRows}") long maxRows) {
+    this.enabled = enabled;
+    this.cache = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMillis(ttlMs))
+        .maximumWeight(maxRows)
+        .weigher((List<Object> key, Object value) -> weigh(value))
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Build a cache key from search parameters, so that equivalent searches share an entry. Blank
+   * strings are treated as absent and collections as unordered sets of values.
+   *
+   * @param search     the name of the search
+   * @param parameters the parameters of the search, including the page requested
+   * @return the key for the search
+   */
+  public static List<Object> key(String search, Object... parameters) {
+    List<Object> key = new ArrayList<>(parameters.length + 1);
+    key.add(search);
+    Arrays.stream(parameters).map(SearchResultCache::normalise).forEach(key::add);
+    return Collections.unmodifiableList(key);
+  }
+
+  /**
+   * Get a cached search result, running the search and caching the result when there is none.
+   *
+   * @param key    the key built from the search parameters
+   * @param search the search to run on a miss
+   * @param <T>    the type of the search result
+   * @return the cached or loaded result
+   * @throws ConnectionQueryException when the search fails, in which case nothing is cached
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(List<Object> key, Search<T> search) throws ConnectionQueryException {
+    if (!enabled) {
+      return search.run();
+    }
+    T result = (T) cache.getIfPresent(key);
+    if (result == null) {
+      result = search.run();
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * Discard every cached result.
+   */
+  public void invalidateAll() {
+    if (enabled) {
+      log.debug("Invalidating cached search results");
+      cache.invalidateAll();
+    }
+  }
+
+  private static Object normalise(Object parameter) {
+    if (parameter instanceof String) {
+      return StringUtils.hasText((String) parameter) ? ((String) parameter).trim() : null;
+    }
+    if (parameter instanceof Collection) {
+      TreeSet<String> values = new TreeSet<>();
+      ((Collection<?>) parameter).stream()
+          .filter(Objects::nonNull)
+          .map(Object::toString)
+          .forEach(values::add);
+      return List.copyOf(values);
+    }
+    return parameter;
+  }
+
+  private static int weigh(Object value) {
+    if (value instanceof ConnectionSummaryDto) {
+      List<?> rows = ((ConnectionSummaryDto) value).getConnections();
+      return 1 + (rows == null ? 0 : rows.size());
+    }
+    if (value instanceof HiddenDiscrepancySummaryDto) {
+      List<?> rows = ((HiddenDiscrepancySummaryDto) value).getHiddenDiscrepancies();
+      return 1 + (rows == null ? 0 : rows.size());
+    }
+    if (value instanceof ConnectionDashboardDto) {
+      ConnectionDashboardDto dashboard = (ConnectionDashboardDto) value;
+      return weigh(dashboard.getConnected()) + weigh(dashboard.getDiscrepancies())
+          + weigh(dashboard.getHiddenDiscrepancies());
+    }
+    return 1;
+  }
+
+  /**
+   * A search whose result can be cached.
+   *
+   * @param <T> the type of the search result
+   */
+  @FunctionalInterface
+  public interface Search<T> {
+
+    T run() throws ConnectionQueryException;
+  }
+}
@@ -21,17 +21,28 @@
 
 package uk.nhs.hee.tis.revalidation.connection.service.util;
 
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.wildcardQuery;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.query.Query;
 
 public final class EsQueryUtils {
 
+  public static final String AUTOCOMPLETE_SUFFIX = ".autocomplete";
+
   private EsQueryUtils() {
   }
 
@@ -61,6 +72,97 @@ public final class EsQueryUtils {
     rootQuery.filter(dateRange);
   }
 
+  /**
+   * Build the free-text doctor search sub query, matching the search term as a prefix of any of
+   * the given fields.
+   *
+   * <p>The wildcard form scans the term dictionary for every request, whereas the autocomplete
+   * form runs a plain match against the edge-ngram {@code .autocomplete} sub-field, so it only
+   * works once the index has been created with {@code doctor-index-settings.json}.
+   *
+   * @param searchQuery  the text entered by the user
+   * @param autocomplete whether to query the edge-ngram sub-fields instead of using wildcards
+   * @param fields       the fields to search
+   * @return a bool query that matches when any of the fields match
+   */
+  public static BoolQueryBuilder buildDoctorSearchQuery(String searchQuery, boolean autocomplete,
+      String... fields) {
+    BoolQueryBuilder searchSubQuery = boolQuery().minimumShouldMatch(1);
+    for (String field : fields) {
+      if (autocomplete) {
+        searchSubQuery.should(
+            matchQuery(field + AUTOCOMPLETE_SUFFIX, searchQuery).operator(Operator.AND));
+      } else {
+        searchSubQuery.should(wildcardQuery(field, searchQuery + "*"));
+      }
+    }
+    return searchSubQuery;
+  }
+
+  /**
+   * Stop counting hits at the limit when count-free paging is enabled, so that a search matching
+   * many documents can finish without visiting all of them. The total hits of the result are then
+   * a lower bound.
+   *
+   * @param query              the query to limit
+   * @param countFree          whether count-free paging is enabled
+   * @param trackTotalHitsUpTo the number of hits to count up to
+   */
+  public static void limitTotalHits(Query query, boolean countFree, int trackTotalHitsUpTo) {
+    if (countFree) {
+      query.setTrackTotalHitsUpTo(trackTotalHitsUpTo);
+    }
+  }
+
+  /**
+   * Stop counting hits at the limit when count-free paging is enabled, for searches built on the
+   * client directly.
+   *
+   * @param source             the search source to limit
+   * @param countFree          whether count-free paging is enabled
+   * @param trackTotalHitsUpTo the number of hits to count up to
+   */
+  public static void limitTotalHits(SearchSourceBuilder source, boolean countFree,
+      int trackTotalHitsUpTo) {
+    if (countFree) {
+      source.trackTotalHitsUpTo(trackTotalHitsUpTo);
+    }
+  }
+
+  /**
+   * Whether there are more hits after the page. When the total hits are a lower bound, a full page
+   * is taken to mean there may be more, so the last page may be reported as having a next page
+   * when it is exactly full.
+   *
+   * @param pageable   the page requested
+   * @param searchHits the hits returned for the page
+   * @return true if there is a next page
+   */
+  public static boolean hasNextPage(Pageable pageable, SearchHits<?> searchHits) {
+    TotalHitsRelation relation = searchHits.getTotalHitsRelation();
+    return hasNextPage(pageable, searchHits.getSearchHits().size(), searchHits.getTotalHits(),
+        relation != TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO
+            && relation != TotalHitsRelation.OFF);
+  }
+
+  /**
+   * Whether there are more hits after the page, for searches run on the client directly.
+   *
+   * @param pageable       the page requested
+   * @param pageHits       the number of hits returned for the page
+   * @param totalHits      the total hits, which may be a lower bound
+   * @param totalHitsExact whether the total hits were counted exactly
+   * @return true if there is a next page
+   */
+  public static boolean hasNextPage(Pageable pageable, int pageHits, long totalHits,
+      boolean totalHitsExact) {
+    boolean moreCounted = pageable.getOffset() + pageHits < totalHits;
+    if (!totalHitsExact) {
+      return moreCounted || pageHits == pageable.getPageSize();
+    }
+    return moreCounted;
+  }
+
   /**
    * A method to format front-end range queries from date pickers into required datetime format.
    *
@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes the sort values of the last hit of a page as an opaque cursor token, which is passed as
+ * search_after to get the next page.
+ */
+public final class SearchAfterCursor {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private SearchAfterCursor() {
+  }
+
+  /**
+   * Encode the sort values of a hit as a URL safe cursor token.
+   *
+   * @param sortValues the sort values of the last hit on the page
+   * @return the cursor token
+   */
+  public static String encode(Object[] sortValues) {
+    try {
+      return Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(OBJECT_MAPPER.writeValueAsBytes(sortValues));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unable to encode search_after cursor", e);
+    }
+  }
+
+  /**
+   * Decode a cursor token back to the sort values to search after.
+   *
+   * @param cursor the cursor token
+   * @return the sort values
+   * @throws IllegalArgumentException if the cursor was not created by {@link #encode(Object[])}
+   */
+  public static Object[] decode(String cursor) {
+    try {
+      byte[] json = Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII));
+      return OBJECT_MAPPER.readValue(json, Object[].class);
+    } catch (IllegalArgumentException | IOException e) {
+      throw new IllegalArgumentException("Invalid search_after cursor: " + cursor, e);
+    }
+  }
+
+  /**
+   * Check whether a cursor token can be decoded, so that a bad token can be rejected before a
+   * search is made.
+   *
+   * @param cursor the cursor token
+   * @return true if the cursor was created by {@link #encode(Object[])}
+   */
+  public static boolean isValid(String cursor) {
+    try {
+      decode(cursor);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.xml.transform.StringResult;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctor;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctorRequest;
+import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctorResponse;
+
+class CachingJaxb2MarshallerTest {
+
+  private CachingJaxb2Marshaller marshaller;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    marshaller = new CachingJaxb2Marshaller();
+    marshaller.setClassesToBeBound(TryAddDoctor.class, TryAddDoctorResponse.class);
+    marshaller.afterPropertiesSet();
+  }
+
+  @Test
+  void shouldReuseMarshallersOnTheSameThread() {
+    assertThat(marshaller.createMarshaller(), sameInstance(marshaller.createMarshaller()));
+    assertThat(marshaller.createUnmarshaller(), sameInstance(marshaller.createUnmarshaller()));
+  }
+
+  @Test
+  void shouldNotShareMarshallersBetweenThreads() {
+    final var otherThreadMarshaller =
+        CompletableFuture.supplyAsync(marshaller::createMarshaller).join();
+
+    assertThat(marshaller.createMarshaller(), not(sameInstance(otherThreadMarshaller)));
+  }
+
+  @Test
+  void shouldMarshalRepeatedRequests() {
+    for (String gmcId : new String[]{"1111111", "2222222"}) {
+      final var request = new TryAddDoctorRequest();
+      request.setDoctorUID(gmcId);
+      final var tryAddDoctor = new TryAddDoctor();
+      tryAddDoctor.setRecReq(request);
+      final var result = new StringResult();
+
+      marshaller.marshal(tryAddDoctor, result);
+
+      assertThat(result.toString(), containsString(gmcId));
+    }
+  }
+
+  @Test
+  void shouldRejectMtom() {
+    assertThrows(UnsupportedOperationException.class, () -> marshaller.setMtomEnabled(true));
+  }
+}
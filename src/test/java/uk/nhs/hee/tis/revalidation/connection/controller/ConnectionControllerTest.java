@@ -43,6 +43,8 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -55,10 +57,13 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDashboardDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionHistoryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionJobDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.DiscrepancyFacetsDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.DoctorInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancyDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancyInfoDto;
@@ -68,11 +73,16 @@ import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyResponseDto.HiddenDiscrepancyResponseItem;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionResponseDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJobStatus;
 import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionJobRejectedException;
 import uk.nhs.hee.tis.revalidation.connection.service.ConnectedElasticSearchService;
+import uk.nhs.hee.tis.revalidation.connection.service.ConnectionJobService;
 import uk.nhs.hee.tis.revalidation.connection.service.ConnectionService;
+import uk.nhs.hee.tis.revalidation.connection.service.DashboardElasticSearchService;
 import uk.nhs.hee.tis.revalidation.connection.service.DiscrepanciesElasticSearchService;
 import uk.nhs.hee.tis.revalidation.connection.service.HiddenDiscrepancyService;
+import uk.nhs.hee.tis.revalidation.connection.service.util.SearchAfterCursor;
 
 @WebMvcTest(ConnectionController.class)
 class ConnectionControllerTest {
@@ -89,6 +99,7 @@ class ConnectionControllerTest {
   private static final LocalDate EMPTY_DATE = null;
   private static final String PROGRAMME_NAME = "programmeName";
   private static final String ADMIN_NAME = "admin";
+  private static final String CURSOR = SearchAfterCursor.encode(new Object[]{"1234567"});
   private final Faker faker = new Faker();
   @Autowired
   private MockMvc mockMvc;
@@ -102,6 +113,10 @@ class ConnectionControllerTest {
   private ConnectedElasticSearchService connectedElasticSearchService;
   @MockBean
   private HiddenDiscrepancyService hiddenDiscrepancyService;
+  @MockBean
+  private ConnectionJobService connectionJobService;
+  @MockBean
+  private DashboardElasticSearchService dashboardElasticSearchService;
 
   private String changeReason;
   private String designatedBodyCode;
@@ -208,6 +223,93 @@ class ConnectionControllerTest {
         .andExpect(status().isOk());
   }
 
+  @Test
+  void shouldAcceptAddDoctorJob() throws Exception {
+    final var addDoctorDto = UpdateConnectionDto.builder().changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode).doctors(buildDoctorsList()).build();
+
+    final var job = ConnectionJobDto.builder().id(connectionId)
+        .requestType(ConnectionRequestType.ADD).status(ConnectionJobStatus.PENDING)
+        .totalDoctors(2).build();
+    when(connectionJobService.submitAddDoctors(any(UpdateConnectionDto.class))).thenReturn(job);
+    this.mockMvc.perform(post("/api/connections/jobs/add")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(addDoctorDto)))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.id").value(connectionId))
+        .andExpect(jsonPath("$.status").value("PENDING"));
+    verifyNoInteractions(connectionService);
+  }
+
+  @Test
+  void shouldAcceptRemoveDoctorJob() throws Exception {
+    final var removeDoctorDto = UpdateConnectionDto.builder().changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode).doctors(buildDoctorsList()).build();
+
+    final var job = ConnectionJobDto.builder().id(connectionId)
+        .requestType(ConnectionRequestType.REMOVE).status(ConnectionJobStatus.PENDING)
+        .totalDoctors(2).build();
+    when(connectionJobService.submitRemoveDoctors(any(UpdateConnectionDto.class)))
+        .thenReturn(job);
+    this.mockMvc.perform(post("/api/connections/jobs/remove")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(removeDoctorDto)))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.requestType").value("REMOVE"));
+  }
+
+  @Test
+  void shouldReturnServiceUnavailableWhenAddDoctorJobRejected() throws Exception {
+    final var addDoctorDto = UpdateConnectionDto.builder().changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode).doctors(buildDoctorsList()).build();
+
+    when(connectionJobService.submitAddDoctors(any(UpdateConnectionDto.class)))
+        .thenThrow(new ConnectionJobRejectedException("Queue full", null));
+    this.mockMvc.perform(post("/api/connections/jobs/add")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(addDoctorDto)))
+        .andExpect(status().isServiceUnavailable());
+  }
+
+  @Test
+  void shouldReturnServiceUnavailableWhenRemoveDoctorJobRejected() throws Exception {
+    final var removeDoctorDto = UpdateConnectionDto.builder().changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode).doctors(buildDoctorsList()).build();
+
+    when(connectionJobService.submitRemoveDoctors(any(UpdateConnectionDto.class)))
+        .thenThrow(new ConnectionJobRejectedException("Queue full", null));
+    this.mockMvc.perform(post("/api/connections/jobs/remove")
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(removeDoctorDto)))
+        .andExpect(status().isServiceUnavailable());
+  }
+
+  @Test
+  void shouldReturnConnectionJobProgress() throws Exception {
+    final var job = ConnectionJobDto.builder().id(connectionId)
+        .requestType(ConnectionRequestType.ADD).status(ConnectionJobStatus.RUNNING)
+        .totalDoctors(2).processedDoctors(1)
+        .results(List.of(ConnectionJobDto.DoctorResultDto.builder().gmcId(gmcId)
+            .responseCode("0").responseMessage("Success").build()))
+        .build();
+    when(connectionJobService.getJob(connectionId)).thenReturn(Optional.of(job));
+    this.mockMvc.perform(get("/api/connections/jobs/{jobId}", connectionId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.processedDoctors").value(1))
+        .andExpect(jsonPath("$.results.[*].gmcId").value(hasItem(gmcId)));
+  }
+
+  @Test
+  void shouldReturnNotFoundForUnknownConnectionJob() throws Exception {
+    when(connectionJobService.getJob(connectionId)).thenReturn(Optional.empty());
+    this.mockMvc.perform(get("/api/connections/jobs/{jobId}", connectionId))
+        .andExpect(status().isNotFound());
+  }
+
   @Test
   void shouldReturnAllConnectionsForADoctor() throws Exception {
     final var connectionDto = prepareConnectionDto();
@@ -356,6 +458,46 @@ class ConnectionControllerTest {
             jsonPath("$.connections.[*].tcsPersonId").value(hasItem(personId1.intValue())));
   }
 
+  @Test
+  void shouldReturnConnectedTraineeDoctorsAfterCursor() throws Exception {
+    final var connectionSummary = prepareConnectionSummary();
+    connectionSummary.setNextCursor("nextCursor");
+    when(connectedElasticSearchService.searchForConnectionPageWithCursor(EMPTY_STRING,
+        List.of(designatedBody1, designatedBody2), EMPTY_STRING, EMPTY_DATE, EMPTY_DATE,
+        EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_STRING,
+        by(ASC, "gmcReferenceNumber"), 20, CURSOR))
+        .thenReturn(connectionSummary);
+    this.mockMvc.perform(get("/api/connections/connected")
+            .param(SORT_ORDER, "asc")
+            .param(SORT_COLUMN, GMC_REFERENCE_NUMBER)
+            .param(SEARCH_QUERY, EMPTY_STRING)
+            .param(PROGRAMME_NAME, EMPTY_STRING)
+            .param(DESIGNATED_BODY_CODES, String.format("%s,%s", designatedBody1, designatedBody2))
+            .param("cursor", CURSOR))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.nextCursor").value("nextCursor"))
+        .andExpect(
+            jsonPath("$.connections.[*].tcsPersonId").value(hasItem(personId1.intValue())));
+  }
+
+  @Test
+  void shouldRejectInvalidCursorForConnectedTraineeDoctors() throws Exception {
+    this.mockMvc.perform(get("/api/connections/connected")
+            .param("cursor", "not a cursor!"))
+        .andExpect(status().isBadRequest());
+
+    verifyNoInteractions(connectedElasticSearchService);
+  }
+
+  @Test
+  void shouldRejectInvalidCursorForDiscrepancies() throws Exception {
+    this.mockMvc.perform(get("/api/connections/discrepancies")
+            .param("cursor", "not a cursor!"))
+        .andExpect(status().isBadRequest());
+
+    verifyNoInteractions(discrepanciesElasticSearchService);
+  }
+
   static Stream<Arguments> invalidHideDiscrepancyRequests() {
     var validDoctors = List.of(DoctorInfoDto.builder().build());
     return Stream.of(
@@ -518,6 +660,78 @@ class ConnectionControllerTest {
                 .value(hasItem(hiddenUntilDate.toString())));
   }
 
+  @Test
+  void shouldReturnDiscrepancyFacets() throws Exception {
+    final var facets = DiscrepancyFacetsDto.builder()
+        .totalResults(3)
+        .programmeName(Map.of(programmeName1, 3L))
+        .designatedBody(Map.of(designatedBody1, 3L))
+        .build();
+    when(discrepanciesElasticSearchService.getDiscrepancyFacets(EMPTY_STRING,
+        List.of(designatedBody1, designatedBody2), List.of(designatedBody1), EMPTY_STRING,
+        EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, ADMIN_NAME))
+        .thenReturn(facets);
+
+    final var dbcString = String.format("%s,%s", designatedBody1, designatedBody2);
+    this.mockMvc.perform(get("/api/connections/discrepancies/facets")
+            .param(DESIGNATED_BODY_CODES, dbcString)
+            .param(TIS_DESIGNATED_BODY_CODES, designatedBody1)
+            .param("updatedBy", ADMIN_NAME))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalResults").value(3))
+        .andExpect(jsonPath("$.programmeName['" + programmeName1 + "']").value(3))
+        .andExpect(jsonPath("$.designatedBody['" + designatedBody1 + "']").value(3));
+  }
+
+  @Test
+  void shouldReturnAllSummariesForDashboard() throws Exception {
+    final var connected = ConnectionSummaryDto.builder()
+        .totalResults(1)
+        .connections(List.of(ConnectionInfoDto.builder().gmcReferenceNumber(gmcId).build()))
+        .build();
+    final var discrepancies = ConnectionSummaryDto.builder()
+        .totalResults(2)
+        .connections(List.of(ConnectionInfoDto.builder().doctorFirstName(firstName1).build()))
+        .build();
+    final var hidden = HiddenDiscrepancySummaryDto.builder()
+        .totalResults(3)
+        .hiddenDiscrepancies(List.of(HiddenDiscrepancyInfoDto.builder()
+            .doctorLastName(lastName1).build()))
+        .build();
+
+    final var pageableAndSortable = PageRequest.of(Integer.parseInt(PAGE_NUMBER_VALUE), 20,
+        by(ASC, "gmcReferenceNumber"));
+    when(dashboardElasticSearchService.searchForDashboard(EMPTY_STRING,
+        List.of(designatedBody1, designatedBody2), List.of(designatedBody1), programmeName1,
+        EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_DATE, EMPTY_STRING,
+        pageableAndSortable))
+        .thenReturn(ConnectionDashboardDto.builder()
+            .connected(connected)
+            .discrepancies(discrepancies)
+            .hiddenDiscrepancies(hidden)
+            .build());
+
+    final var dbcString = String.format("%s,%s", designatedBody1, designatedBody2);
+    this.mockMvc.perform(get("/api/connections/dashboard")
+            .param(SORT_ORDER, "asc")
+            .param(SORT_COLUMN, GMC_REFERENCE_NUMBER)
+            .param(PAGE_NUMBER, PAGE_NUMBER_VALUE)
+            .param(SEARCH_QUERY, EMPTY_STRING)
+            .param(PROGRAMME_NAME, programmeName1)
+            .param(DESIGNATED_BODY_CODES, dbcString)
+            .param(TIS_DESIGNATED_BODY_CODES, designatedBody1))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.connected.totalResults").value(1))
+        .andExpect(jsonPath("$.connected.connections[*].gmcReferenceNumber")
+            .value(hasItem(gmcId)))
+        .andExpect(jsonPath("$.discrepancies.totalResults").value(2))
+        .andExpect(jsonPath("$.discrepancies.connections[*].doctorFirstName")
+            .value(hasItem(firstName1)))
+        .andExpect(jsonPath("$.hiddenDiscrepancies.totalResults").value(3))
+        .andExpect(jsonPath("$.hiddenDiscrepancies.hiddenDiscrepancies[*].doctorLastName")
+            .value(hasItem(lastName1)));
+  }
+
   @Test
   void showDiscrepancyShouldReturnOkWhenDiscrepancyIsShown() throws Exception {
     var hiddenDiscrepancyId = "507f1f77bcf86cd799439012";
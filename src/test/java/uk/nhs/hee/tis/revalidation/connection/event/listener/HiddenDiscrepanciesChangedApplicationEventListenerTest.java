@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.event.listener;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
+import uk.nhs.hee.tis.revalidation.connection.event.HiddenDiscrepanciesChangedApplicationEvent;
+import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyRepository;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService;
+import uk.nhs.hee.tis.revalidation.connection.service.SearchResultCache;
+
+@ExtendWith(MockitoExtension.class)
+class HiddenDiscrepanciesChangedApplicationEventListenerTest {
+
+  private static final String GMC_ID_1 = "1234567";
+  private static final String GMC_ID_2 = "7654321";
+  private static final String DBC_1 = "1-ABCDE";
+
+  @Mock
+  private HiddenDiscrepancyRepository hiddenDiscrepancyRepository;
+
+  @Mock
+  private MasterElasticSearchService masterElasticSearchService;
+
+  @Mock
+  private SearchResultCache searchResultCache;
+
+  @Captor
+  private ArgumentCaptor<Map<String, List<HiddenDiscrepancy>>> hiddenDiscrepanciesCaptor;
+
+  private final List<Runnable> scheduledUpdates = new ArrayList<>();
+
+  private HiddenDiscrepanciesChangedApplicationEventListener listener;
+
+  @BeforeEach
+  void setUp() {
+    listener = new HiddenDiscrepanciesChangedApplicationEventListener(hiddenDiscrepancyRepository,
+        masterElasticSearchService, searchResultCache, scheduledUpdates::add);
+  }
+
+  @Test
+  void shouldUpdateTheCurrentHiddenDiscrepanciesOfEachChangedDoctor() {
+    final var hiddenDiscrepancy = HiddenDiscrepancy.builder()
+        .gmcId(GMC_ID_1)
+        .hiddenForDesignatedBodyCode(DBC_1)
+        .build();
+    final var gmcIds = Set.of(GMC_ID_1, GMC_ID_2);
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(gmcIds)).thenReturn(List.of(hiddenDiscrepancy));
+
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(gmcIds));
+    runScheduledUpdates();
+
+    verify(masterElasticSearchService).updateHiddenDiscrepancies(
+        hiddenDiscrepanciesCaptor.capture());
+    final var hiddenDiscrepanciesByGmcId = hiddenDiscrepanciesCaptor.getValue();
+    assertEquals(List.of(hiddenDiscrepancy), hiddenDiscrepanciesByGmcId.get(GMC_ID_1));
+    // a doctor with nothing left hidden is cleared in the index
+    assertEquals(List.of(), hiddenDiscrepanciesByGmcId.get(GMC_ID_2));
+    verify(searchResultCache).invalidateAll();
+  }
+
+  @Test
+  void shouldNotThrowWhenTheIndexUpdateFails() {
+    final var gmcIds = Set.of(GMC_ID_1);
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(gmcIds)).thenReturn(List.of());
+    when(masterElasticSearchService.updateHiddenDiscrepancies(anyMap()))
+        .thenThrow(new IllegalStateException("elasticsearch unavailable"));
+
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(gmcIds));
+
+    assertDoesNotThrow(this::runScheduledUpdates);
+  }
+
+  @Test
+  void shouldNotUpdateOnThePublishingThread() {
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_1)));
+
+    assertEquals(1, scheduledUpdates.size());
+    verifyNoInteractions(hiddenDiscrepancyRepository);
+    verifyNoInteractions(masterElasticSearchService);
+  }
+
+  @Test
+  void shouldCombineChangesPublishedBeforeTheUpdateRuns() {
+    final var gmcIds = Set.of(GMC_ID_1, GMC_ID_2);
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(gmcIds)).thenReturn(List.of());
+
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_1)));
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_2)));
+    runScheduledUpdates();
+
+    verify(masterElasticSearchService).updateHiddenDiscrepancies(
+        hiddenDiscrepanciesCaptor.capture());
+    assertEquals(gmcIds, hiddenDiscrepanciesCaptor.getValue().keySet());
+  }
+
+  @Test
+  void shouldScheduleAnotherUpdateForChangesAfterTheUpdateStarts() {
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(Set.of(GMC_ID_1))).thenReturn(List.of());
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(Set.of(GMC_ID_2))).thenReturn(List.of());
+
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_1)));
+    runScheduledUpdates();
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_2)));
+    runScheduledUpdates();
+
+    verify(masterElasticSearchService, times(2)).updateHiddenDiscrepancies(anyMap());
+  }
+
+  @Test
+  void shouldKeepChangesPendingWhenTheUpdateCannotBeScheduled() {
+    final var gmcIds = Set.of(GMC_ID_1, GMC_ID_2);
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(gmcIds)).thenReturn(List.of());
+    final var rejected = new AtomicBoolean();
+    listener = new HiddenDiscrepanciesChangedApplicationEventListener(hiddenDiscrepancyRepository,
+        masterElasticSearchService, searchResultCache, task -> {
+          if (rejected.compareAndSet(false, true)) {
+            throw new TaskRejectedException("queue full");
+          }
+          scheduledUpdates.add(task);
+        });
+
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_1)));
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of(GMC_ID_2)));
+    runScheduledUpdates();
+
+    verify(masterElasticSearchService).updateHiddenDiscrepancies(
+        hiddenDiscrepanciesCaptor.capture());
+    assertEquals(gmcIds, hiddenDiscrepanciesCaptor.getValue().keySet());
+  }
+
+  @Test
+  void shouldThrowWhenTheIndexUpdateFailsOutsideTheEvent() {
+    final var gmcIds = Set.of(GMC_ID_1);
+    when(hiddenDiscrepancyRepository.findByGmcIdIn(gmcIds)).thenReturn(List.of());
+    when(masterElasticSearchService.updateHiddenDiscrepancies(anyMap()))
+        .thenThrow(new IllegalStateException("elasticsearch unavailable"));
+
+    assertThrows(IllegalStateException.class, () -> listener.updateMasterIndex(gmcIds));
+    // results cached before the failed write are still accurate
+    verifyNoInteractions(searchResultCache);
+  }
+
+  @Test
+  void shouldNotUpdateWhenNoDoctorsChanged() {
+    listener.handleHiddenDiscrepanciesChangedEvent(
+        new HiddenDiscrepanciesChangedApplicationEvent(Set.of()));
+
+    verifyNoInteractions(hiddenDiscrepancyRepository);
+    verifyNoInteractions(masterElasticSearchService);
+    verifyNoInteractions(searchResultCache);
+  }
+
+  private void runScheduledUpdates() {
+    final var updates = new ArrayList<>(scheduledUpdates);
+    scheduledUpdates.clear();
+    updates.forEach(Runnable::run);
+  }
+}
@@ -30,6 +30,7 @@ import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
 import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
 
 class ConnectionInfoMapperTest {
@@ -44,6 +45,8 @@ class ConnectionInfoMapperTest {
   private static final LocalDate PROGRAMME_MEMBERSHIP_START_DATE = LocalDate.now();
   private static final LocalDate PROGRAMME_MEMBERSHIP_END_DATE = LocalDate.now().plusDays(1);
   private static final String EXCEPTION_REASON = "exception_reason";
+  private static final HiddenDiscrepancy HIDDEN_DISCREPANCY = HiddenDiscrepancy.builder()
+      .gmcId(GMC_NUMBER).hiddenForDesignatedBodyCode(DESIGNATED_BODY).build();
 
   ConnectionInfoMapper testObj = new ConnectionInfoMapperImpl();
 
@@ -94,6 +97,7 @@ class ConnectionInfoMapperTest {
         .membershipStartDate(PROGRAMME_MEMBERSHIP_START_DATE)
         .membershipEndDate(PROGRAMME_MEMBERSHIP_END_DATE)
         .exceptionReason(EXCEPTION_REASON)
+        .hiddenDiscrepancies(List.of(HIDDEN_DISCREPANCY))
         .build();
 
     List<ConnectionInfoDto> connectionInfoDtos =
@@ -111,5 +115,6 @@ class ConnectionInfoMapperTest {
     assertThat(dto.getProgrammeMembershipStartDate(), is(PROGRAMME_MEMBERSHIP_START_DATE));
     assertThat(dto.getProgrammeMembershipEndDate(), is(PROGRAMME_MEMBERSHIP_END_DATE));
     assertThat(dto.getExceptionReason(), is(EXCEPTION_REASON));
+    assertThat(dto.getHiddenDiscrepancies(), is(List.of(HIDDEN_DISCREPANCY)));
   }
 }
@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitOperations.OperationsCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionMessagePublisherTest {
+
+  private static final String EXCHANGE = "exchange";
+  private static final String ROUTING_KEY = "routingKey";
+  private static final long RETRY_BACKOFF_MS = 20;
+
+  @Mock
+  private RabbitTemplate rabbitTemplate;
+
+  @Mock
+  private ThreadPoolTaskExecutor gmcRequestExecutor;
+
+  private final RabbitOperations rabbitOperations = mock(RabbitOperations.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<ConnectionMessage> sentMessages = new ArrayList<>();
+  private ConnectionMessagePublisher publisher;
+
+  @BeforeEach
+  void setUp() {
+    publisher = new ConnectionMessagePublisher(rabbitTemplate, gmcRequestExecutor, meterRegistry,
+        EXCHANGE, ROUTING_KEY, 10, 2, 0, 100, 2, RETRY_BACKOFF_MS, 1000);
+    when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+      OperationsCallback<?> callback = invocation.getArgument(0);
+      return callback.doInRabbit(rabbitOperations);
+    });
+  }
+
+  @Test
+  void shouldPublishBufferedMessagesInBatches() {
+    confirmEveryMessage(true);
+    for (int i = 0; i < 3; i++) {
+      publisher.publish(ConnectionMessage.builder().gmcId(String.valueOf(i)).build());
+    }
+
+    publisher.publishPending();
+
+    verify(rabbitTemplate, times(2)).invoke(any());
+    assertEquals(3, sentMessages.size());
+    assertEquals("0", sentMessages.get(0).getGmcId());
+    assertEquals(0, meterRegistry.counter("connection.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldCountMessagesStillNackedAfterTheLastAttempt() {
+    confirmEveryMessage(false);
+    publisher.publish(ConnectionMessage.builder().gmcId("1").build());
+
+    publisher.publishPending();
+
+    assertEquals(2, sentMessages.size());
+    assertEquals(1, meterRegistry.counter("connection.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldPublishNackedMessagesAgain() {
+    final List<Boolean> acks = new ArrayList<>(List.of(false, true));
+    doAnswer(invocation -> {
+      sentMessages.add(invocation.getArgument(2));
+      CorrelationData correlationData = invocation.getArgument(3);
+      correlationData.getFuture().set(new Confirm(acks.remove(0), null));
+      return null;
+    }).when(rabbitOperations).convertAndSend(eq(EXCHANGE), eq(ROUTING_KEY),
+        any(ConnectionMessage.class), any(CorrelationData.class));
+    publisher.publish(ConnectionMessage.builder().gmcId("1").build());
+
+    publisher.publishPending();
+
+    assertEquals(2, sentMessages.size());
+    assertEquals("1", sentMessages.get(1).getGmcId());
+    assertEquals(0, meterRegistry.counter("connection.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldPublishAgainWhenTheBrokerCannotBeReached() {
+    doThrow(new AmqpConnectException(new IllegalStateException("connection refused")))
+        .doAnswer(invocation -> {
+          sentMessages.add(invocation.getArgument(2));
+          CorrelationData correlationData = invocation.getArgument(3);
+          correlationData.getFuture().set(new Confirm(true, null));
+          return null;
+        }).when(rabbitOperations).convertAndSend(eq(EXCHANGE), eq(ROUTING_KEY),
+            any(ConnectionMessage.class), any(CorrelationData.class));
+    publisher.publish(ConnectionMessage.builder().gmcId("1").build());
+
+    publisher.publishPending();
+
+    assertEquals(1, sentMessages.size());
+    assertEquals(0, meterRegistry.counter("connection.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldKeepPublishingWithBackoffWhileTheConnectionIsRefused() throws Exception {
+    final List<Long> attemptNanos = new ArrayList<>();
+    final CountDownLatch published = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      attemptNanos.add(System.nanoTime());
+      if (attemptNanos.size() <= 3) {
+        throw new AmqpConnectException(new IllegalStateException("connection refused"));
+      }
+      sentMessages.add(invocation.getArgument(2));
+      CorrelationData correlationData = invocation.getArgument(3);
+      correlationData.getFuture().set(new Confirm(true, null));
+      published.countDown();
+      return null;
+    }).when(rabbitOperations).convertAndSend(eq(EXCHANGE), eq(ROUTING_KEY),
+        any(ConnectionMessage.class), any(CorrelationData.class));
+    publisher.start();
+
+    publisher.publish(ConnectionMessage.builder().gmcId("1").build());
+
+    assertTrue(published.await(5, TimeUnit.SECONDS));
+    publisher.stop();
+    // three refused attempts are more than maxAttempts, and the backoff doubles after each
+    assertEquals(4, attemptNanos.size());
+    assertTrue(attemptNanos.get(3) - attemptNanos.get(0)
+        >= TimeUnit.MILLISECONDS.toNanos(RETRY_BACKOFF_MS * (1 + 2 + 4)));
+    assertEquals(1, sentMessages.size());
+    assertEquals(0, meterRegistry.counter("connection.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldCountMessagesNotConfirmedInTime() {
+    publisher.publish(ConnectionMessage.builder().gmcId("1").build());
+
+    publisher.publishPending();
+
+    verify(rabbitOperations, times(2)).convertAndSend(eq(EXCHANGE), eq(ROUTING_KEY),
+        any(ConnectionMessage.class), any(CorrelationData.class));
+    assertEquals(1, meterRegistry.counter("connection.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldPublishMessagesOfGmcCallsFinishingAsItStops() {
+    confirmEveryMessage(true);
+    doAnswer(invocation -> {
+      publisher.publish(ConnectionMessage.builder().gmcId("1").build());
+      return null;
+    }).when(gmcRequestExecutor).shutdown();
+    publisher.start();
+
+    publisher.stop();
+
+    assertFalse(publisher.isRunning());
+    assertEquals(1, sentMessages.size());
+  }
+
+  private void confirmEveryMessage(boolean ack) {
+    doAnswer(invocation -> {
+      sentMessages.add(invocation.getArgument(2));
+      CorrelationData correlationData = invocation.getArgument(3);
+      correlationData.getFuture().set(new Confirm(ack, ack ? null : "nack"));
+      return null;
+    }).when(rabbitOperations).convertAndSend(eq(EXCHANGE), eq(ROUTING_KEY),
+        any(ConnectionMessage.class), any(CorrelationData.class));
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import net.javacrumbs.shedlock.core.LockConfiguration;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitOperations.OperationsCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.OutboxRepository;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+  private static final String EXCHANGE = "exchange";
+  private static final String ROUTING_KEY = "routingKey";
+  private static final String TYPE_ID = "uk.nhs.hee.tis.revalidation.connection.message.Payload";
+
+  @Mock
+  private OutboxRepository outboxRepository;
+
+  @Mock
+  private RabbitTemplate rabbitTemplate;
+
+  @Mock
+  private LockProvider lockProvider;
+
+  @Mock
+  private SimpleLock lock;
+
+  private final RabbitOperations rabbitOperations = mock(RabbitOperations.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<Message> sentMessages = new ArrayList<>();
+  private OutboxRelay relay;
+
+  @BeforeEach
+  void setUp() {
+    relay = new OutboxRelay(outboxRepository, rabbitTemplate, lockProvider, meterRegistry, true,
+        2, 0, 100, 60000);
+  }
+
+  @Test
+  void shouldPublishMessagesStillInOutboxAndDeleteThoseConfirmed() {
+    givenRabbitOperations();
+    confirmEveryMessage(true);
+    final var message1 = outboxMessage("1");
+    final var message2 = outboxMessage("2");
+    when(outboxRepository.findRemainingIds(List.of("1", "2"))).thenReturn(List.of("2"));
+
+    assertTrue(relay.relay(List.of(message1, message2)));
+
+    assertEquals(1, sentMessages.size());
+    final var sent = sentMessages.get(0);
+    assertEquals("2", sent.getMessageProperties().getMessageId());
+    assertEquals(TYPE_ID, sent.getMessageProperties().getHeaders().get("__TypeId__"));
+    assertEquals("application/json", sent.getMessageProperties().getContentType());
+    assertEquals("{\"gmcId\":\"2\"}", new String(sent.getBody(), StandardCharsets.UTF_8));
+    verify(outboxRepository).deleteAllById(List.of("2"));
+  }
+
+  @Test
+  void shouldKeepNackedMessagesInOutbox() {
+    givenRabbitOperations();
+    confirmEveryMessage(false);
+    when(outboxRepository.findRemainingIds(List.of("1"))).thenReturn(List.of("1"));
+
+    assertFalse(relay.relay(List.of(outboxMessage("1"))));
+
+    verify(outboxRepository, never()).deleteAllById(anyList());
+    assertEquals(1, meterRegistry.counter("outbox.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldKeepMessagesNotConfirmedInTimeInOutbox() {
+    givenRabbitOperations();
+    when(outboxRepository.findRemainingIds(List.of("1"))).thenReturn(List.of("1"));
+
+    assertFalse(relay.relay(List.of(outboxMessage("1"))));
+
+    verify(rabbitOperations).send(eq(EXCHANGE), eq(ROUTING_KEY), any(Message.class),
+        any(CorrelationData.class));
+    verify(outboxRepository, never()).deleteAllById(anyList());
+    assertEquals(1, meterRegistry.counter("outbox.messages.unconfirmed").count());
+  }
+
+  @Test
+  void shouldNotPublishWhenNoMessagesRemainInOutbox() {
+    when(outboxRepository.findRemainingIds(List.of("1"))).thenReturn(List.of());
+
+    assertTrue(relay.relay(List.of(outboxMessage("1"))));
+
+    verifyNoInteractions(rabbitTemplate);
+  }
+
+  @Test
+  void shouldRelayBacklogUntilOutboxIsDrained() {
+    setField(relay, "running", true);
+    when(lockProvider.lock(any(LockConfiguration.class))).thenReturn(Optional.of(lock));
+    relay.acquireLeadership();
+    givenRabbitOperations();
+    confirmEveryMessage(true);
+    final var fullBatch = List.of(outboxMessage("1"), outboxMessage("2"));
+    final var lastBatch = List.of(outboxMessage("3"));
+    when(outboxRepository.findOldest(2)).thenReturn(fullBatch, lastBatch);
+    when(outboxRepository.findRemainingIds(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    assertTrue(relay.relayBacklog());
+
+    verify(outboxRepository, times(2)).findOldest(2);
+    verify(outboxRepository).deleteAllById(List.of("1", "2"));
+    verify(outboxRepository).deleteAllById(List.of("3"));
+  }
+
+  @Test
+  void shouldStopRelayingBacklogWhenMessagesAreNotConfirmed() {
+    givenRabbitOperations();
+    confirmEveryMessage(false);
+    when(outboxRepository.findOldest(2))
+        .thenReturn(List.of(outboxMessage("1"), outboxMessage("2")));
+    when(outboxRepository.findRemainingIds(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    assertFalse(relay.relayBacklog());
+
+    verify(outboxRepository).findOldest(2);
+  }
+
+  @Test
+  void shouldStopRelayingBacklogWhenLeadershipIsLost() {
+    givenRabbitOperations();
+    confirmEveryMessage(true);
+    final var renewingRelay = new OutboxRelay(outboxRepository, rabbitTemplate, lockProvider,
+        meterRegistry, true, 2, 0, 100, 0);
+    setField(renewingRelay, "running", true);
+    when(lockProvider.lock(any(LockConfiguration.class))).thenReturn(Optional.of(lock));
+    when(lock.extend(any(), any())).thenReturn(Optional.empty());
+    when(outboxRepository.findOldest(2))
+        .thenReturn(List.of(outboxMessage("1"), outboxMessage("2")));
+    when(outboxRepository.findRemainingIds(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    renewingRelay.acquireLeadership();
+
+    assertTrue(renewingRelay.relayBacklog());
+
+    verify(outboxRepository).findOldest(2);
+    assertFalse(renewingRelay.holdsLeadership());
+  }
+
+  @Test
+  void shouldOnlyRelayWhenLockIsHeld() {
+    when(lockProvider.lock(any(LockConfiguration.class))).thenReturn(Optional.empty());
+
+    assertFalse(relay.acquireLeadership());
+    assertFalse(relay.holdsLeadership());
+  }
+
+  @Test
+  void shouldTakeRelayLockWithLease() {
+    final var configuration = ArgumentCaptor.forClass(LockConfiguration.class);
+    when(lockProvider.lock(configuration.capture())).thenReturn(Optional.of(lock));
+
+    assertTrue(relay.acquireLeadership());
+    assertTrue(relay.holdsLeadership());
+
+    assertEquals(OutboxRelay.LOCK_NAME, configuration.getValue().getName());
+    assertEquals(Duration.ofMinutes(1), configuration.getValue().getLockAtMostFor());
+    verify(lock, never()).extend(any(), any());
+  }
+
+  @Test
+  void shouldRenewLeaseOnceHalfOfItHasRun() {
+    final var renewingRelay = new OutboxRelay(outboxRepository, rabbitTemplate, lockProvider,
+        meterRegistry, true, 2, 0, 100, 0);
+    final var renewedLock = mock(SimpleLock.class);
+    when(lockProvider.lock(any(LockConfiguration.class))).thenReturn(Optional.of(lock));
+    when(lock.extend(Duration.ZERO, Duration.ZERO)).thenReturn(Optional.of(renewedLock));
+    renewingRelay.acquireLeadership();
+
+    assertTrue(renewingRelay.holdsLeadership());
+
+    verify(lock).extend(Duration.ZERO, Duration.ZERO);
+  }
+
+  @Test
+  void shouldNotStartWhenDisabled() {
+    final var disabledRelay = new OutboxRelay(outboxRepository, rabbitTemplate, lockProvider,
+        meterRegistry, false, 2, 0, 100, 60000);
+
+    disabledRelay.start();
+
+    assertFalse(disabledRelay.isRunning());
+    verifyNoInteractions(outboxRepository, lockProvider);
+  }
+
+  private static OutboxMessage outboxMessage(String id) {
+    return OutboxMessage.builder()
+        .id(id)
+        .exchange(EXCHANGE)
+        .routingKey(ROUTING_KEY)
+        .typeId(TYPE_ID)
+        .contentType("application/json")
+        .body("{\"gmcId\":\"" + id + "\"}")
+        .build();
+  }
+
+  private void givenRabbitOperations() {
+    when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+      OperationsCallback<?> callback = invocation.getArgument(0);
+      return callback.doInRabbit(rabbitOperations);
+    });
+  }
+
+  private void confirmEveryMessage(boolean ack) {
+    doAnswer(invocation -> {
+      sentMessages.add(invocation.getArgument(2));
+      CorrelationData correlationData = invocation.getArgument(3);
+      correlationData.getFuture().set(new Confirm(ack, ack ? null : "nack"));
+      return null;
+    }).when(rabbitOperations).send(eq(EXCHANGE), eq(ROUTING_KEY), any(Message.class),
+        any(CorrelationData.class));
+  }
+}
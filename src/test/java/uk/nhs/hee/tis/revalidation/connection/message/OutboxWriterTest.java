@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bson.BsonDocument;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.HiddenDiscrepanciesChangedMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.OutboxRepository;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxWriterTest {
+
+  private static final String EXCHANGE = "exchange";
+  private static final String ROUTING_KEY = "routingKey";
+
+  @Mock
+  private OutboxRepository outboxRepository;
+
+  private OutboxWriter outboxWriter;
+
+  @BeforeEach
+  void setUp() {
+    final var converter = new Jackson2JsonMessageConverter(
+        new ObjectMapper().findAndRegisterModules());
+    outboxWriter = new OutboxWriter(outboxRepository, converter, EXCHANGE);
+  }
+
+  @Test
+  void shouldCreateMessageAsRabbitTemplateWouldSendIt() {
+    final var message = outboxWriter.create(ROUTING_KEY,
+        new HiddenDiscrepanciesChangedMessage(List.of("1234567")));
+
+    assertNotNull(message.getId());
+    assertNotNull(message.getCreatedAt());
+    assertEquals(EXCHANGE, message.getExchange());
+    assertEquals(ROUTING_KEY, message.getRoutingKey());
+    assertEquals(HiddenDiscrepanciesChangedMessage.class.getName(), message.getTypeId());
+    assertEquals("application/json", message.getContentType());
+    assertEquals("{\"gmcIds\":[\"1234567\"]}", message.getBody());
+  }
+
+  @Test
+  void shouldInsertMessagesInSameTransactionAsWrites() {
+    givenTransaction();
+    final var outboxMessage = OutboxMessage.builder().id("1").build();
+
+    final var result = outboxWriter.writeWithMessages(() -> "written",
+        written -> List.of(outboxMessage));
+
+    assertEquals("written", result);
+    verify(outboxRepository).insertAll(List.of(outboxMessage));
+  }
+
+  @Test
+  void shouldNotInsertWhenWritesHaveNoMessages() {
+    givenTransaction();
+
+    outboxWriter.writeWithMessages(() -> "written", written -> List.of());
+
+    verify(outboxRepository, never()).insertAll(any());
+  }
+
+  @Test
+  void shouldRetryTransactionAbortedByDuplicateKey() {
+    givenTransaction();
+    final var duplicateKey = bulkOperationException(11000);
+    final var attempts = new AtomicInteger();
+    final var outboxMessage = OutboxMessage.builder().id("1").build();
+
+    final var result = outboxWriter.writeWithMessages(() -> {
+      if (attempts.incrementAndGet() == 1) {
+        throw duplicateKey;
+      }
+      return "existing";
+    }, written -> List.of(outboxMessage));
+
+    assertEquals("existing", result);
+    assertEquals(2, attempts.get());
+    verify(outboxRepository, times(2)).inTransaction(any());
+    verify(outboxRepository).insertAll(List.of(outboxMessage));
+  }
+
+  @Test
+  void shouldRetryTransactionAbortedByTransientError() {
+    givenTransaction();
+    final var writeConflict = new MongoException(112, "write conflict");
+    writeConflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+    final var attempts = new AtomicInteger();
+
+    final var result = outboxWriter.writeWithMessages(() -> {
+      if (attempts.incrementAndGet() == 1) {
+        throw new UncategorizedMongoDbException("write conflict", writeConflict);
+      }
+      return "written";
+    }, written -> List.of());
+
+    assertEquals("written", result);
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  void shouldNotRetryOtherWriteErrors() {
+    givenTransaction();
+    final var badValue = bulkOperationException(2);
+
+    assertThrows(BulkOperationException.class, () -> outboxWriter.writeWithMessages(() -> {
+      throw badValue;
+    }, written -> List.of()));
+
+    verify(outboxRepository).inTransaction(any());
+  }
+
+  @Test
+  void shouldStopRetryingAfterMaxAttempts() {
+    givenTransaction();
+    final var duplicateKey = bulkOperationException(11000);
+
+    assertThrows(BulkOperationException.class, () -> outboxWriter.writeWithMessages(() -> {
+      throw duplicateKey;
+    }, written -> List.of()));
+
+    verify(outboxRepository, times(OutboxWriter.MAX_TRANSACTION_ATTEMPTS)).inTransaction(any());
+  }
+
+  private static BulkOperationException bulkOperationException(int code) {
+    final var exception = mock(BulkOperationException.class);
+    when(exception.getErrors())
+        .thenReturn(List.of(new BulkWriteError(code, "error", new BsonDocument(), 0)));
+    return exception;
+  }
+
+  private void givenTransaction() {
+    when(outboxRepository.inTransaction(any())).thenAnswer(invocation -> {
+      Supplier<?> writes = invocation.getArgument(0);
+      return writes.get();
+    });
+  }
+}
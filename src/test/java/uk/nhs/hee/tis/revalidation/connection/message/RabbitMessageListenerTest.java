@@ -3,11 +3,15 @@ package uk.nhs.hee.tis.revalidation.connection.message;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verifyNoInteractions;
 
 import com.github.javafaker.Faker;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -19,10 +23,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionLogDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.TcsDoctorInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.event.listener.HiddenDiscrepanciesChangedApplicationEventListener;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.HiddenDiscrepanciesChangedMessage;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.IndexSyncMessage;
 import uk.nhs.hee.tis.revalidation.connection.service.ConnectionService;
 import uk.nhs.hee.tis.revalidation.connection.service.HiddenDiscrepancyService;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService.BulkUpsertResult;
 
 @ExtendWith(MockitoExtension.class)
 class RabbitMessageListenerTest {
@@ -44,6 +54,12 @@ class RabbitMessageListenerTest {
   @Mock
   HiddenDiscrepancyService hiddenDiscrepancyService;
 
+  @Mock
+  HiddenDiscrepanciesChangedApplicationEventListener hiddenDiscrepancyListener;
+
+  @Mock
+  MasterElasticSearchService masterElasticSearchService;
+
   @Captor
   ArgumentCaptor<ConnectionLogDto> connectionLogDtoArgumentCaptor;
 
@@ -128,4 +144,63 @@ class RabbitMessageListenerTest {
 
     verifyNoInteractions(hiddenDiscrepancyService);
   }
+
+  @Test
+  void shouldUpdateMasterIndexWhenReceivingHiddenDiscrepanciesChangedMessage() {
+    rabbitMessageListener.receiveHiddenDiscrepanciesChangedMessage(
+        new HiddenDiscrepanciesChangedMessage(List.of(GMC_ID, GMC_ID)));
+
+    verify(hiddenDiscrepancyListener).updateMasterIndex(Set.of(GMC_ID));
+  }
+
+  @Test
+  void shouldThrowWhenMasterIndexUpdateFailsSoMessageIsNotAcked() {
+    HiddenDiscrepanciesChangedMessage message =
+        new HiddenDiscrepanciesChangedMessage(List.of(GMC_ID));
+    doThrow(new IllegalStateException("elasticsearch unavailable"))
+        .when(hiddenDiscrepancyListener).updateMasterIndex(Set.of(GMC_ID));
+
+    assertThrows(IllegalStateException.class,
+        () -> rabbitMessageListener.receiveHiddenDiscrepanciesChangedMessage(message));
+  }
+
+  @Test
+  void shouldRejectHiddenDiscrepanciesChangedMessageWithoutGmcIds() {
+    HiddenDiscrepanciesChangedMessage message = new HiddenDiscrepanciesChangedMessage(List.of());
+
+    assertThrows(AmqpRejectAndDontRequeueException.class,
+        () -> rabbitMessageListener.receiveHiddenDiscrepanciesChangedMessage(message));
+
+    verifyNoInteractions(hiddenDiscrepancyListener);
+  }
+
+  @Test
+  void shouldBulkUpsertMasterDoctorViewsFromSyncMessage() {
+    final var doctors = List.of(ConnectionInfoDto.builder().gmcReferenceNumber(GMC_ID).build());
+    when(masterElasticSearchService.updateMasterIndex(doctors))
+        .thenReturn(new BulkUpsertResult(1, List.of()));
+
+    rabbitMessageListener.receiveMasterDoctorViewsForSync(
+        IndexSyncMessage.<List<ConnectionInfoDto>>builder().payload(doctors).build());
+
+    verify(masterElasticSearchService).updateMasterIndex(doctors);
+  }
+
+  @Test
+  void shouldNotWriteEmptyMasterDoctorViewSyncMessage() {
+    rabbitMessageListener.receiveMasterDoctorViewsForSync(
+        IndexSyncMessage.<List<ConnectionInfoDto>>builder().payload(List.of()).build());
+
+    verifyNoInteractions(masterElasticSearchService);
+  }
+
+  @Test
+  void shouldRejectMasterDoctorViewSyncMessageWithoutPayload() {
+    IndexSyncMessage<List<ConnectionInfoDto>> message = new IndexSyncMessage<>();
+
+    assertThrows(AmqpRejectAndDontRequeueException.class,
+        () -> rabbitMessageListener.receiveMasterDoctorViewsForSync(message));
+
+    verifyNoInteractions(masterElasticSearchService);
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.bulk.BulkWriteError;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+
+@ExtendWith(MockitoExtension.class)
+class BulkInsertRepositoryTest {
+
+  @Mock
+  private MongoTemplate mongoTemplate;
+
+  @Mock
+  private BulkOperations bulkOperations;
+
+  @InjectMocks
+  private BulkInsertRepository repository;
+
+  @Test
+  void shouldInsertAllDocumentsInOneUnorderedBulkWrite() {
+    final var documents = List.of(ConnectionLog.builder().gmcId("1").build(),
+        ConnectionLog.builder().gmcId("2").build());
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, ConnectionLog.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.insert(documents)).thenReturn(bulkOperations);
+
+    final var failures = repository.insertAll(ConnectionLog.class, documents);
+
+    assertTrue(failures.isEmpty());
+    verify(bulkOperations).execute();
+  }
+
+  @Test
+  void shouldReportDocumentsWhichFailedToInsert() {
+    final var failedDocument = ConnectionLog.builder().gmcId("2").build();
+    final var documents = List.of(ConnectionLog.builder().gmcId("1").build(), failedDocument);
+    final var bulkException = mock(BulkOperationException.class);
+    when(bulkException.getErrors())
+        .thenReturn(List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, ConnectionLog.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.insert(documents)).thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenThrow(bulkException);
+
+    final var failures = repository.insertAll(ConnectionLog.class, documents);
+
+    assertEquals(1, failures.size());
+    assertEquals(failedDocument, failures.get(0).getDocument());
+    assertEquals("duplicate key", failures.get(0).getMessage());
+  }
+}
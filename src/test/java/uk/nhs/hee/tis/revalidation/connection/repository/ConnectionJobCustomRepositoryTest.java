@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJobStatus;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionJobCustomRepositoryTest {
+
+  private static final String JOB_ID = "job1";
+  private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+  private static final Document UNFINISHED = new Document("$in",
+      List.of(ConnectionJobStatus.PENDING, ConnectionJobStatus.RUNNING));
+
+  @Mock
+  private MongoTemplate mongoTemplate;
+
+  @Captor
+  private ArgumentCaptor<Query> queryCaptor;
+
+  @InjectMocks
+  private ConnectionJobCustomRepository repository;
+
+  @Test
+  void shouldOnlyMarkUnfinishedJobAsFinished() {
+    // when
+    repository.markFinished(JOB_ID, ConnectionJobStatus.COMPLETED, "Success", NOW);
+
+    // then
+    verify(mongoTemplate).updateFirst(queryCaptor.capture(), any(Update.class),
+        eq(ConnectionJob.class));
+    Document query = queryCaptor.getValue().getQueryObject();
+    assertEquals(JOB_ID, query.get("_id"));
+    assertEquals(UNFINISHED, query.get("status"));
+  }
+
+  @Test
+  void shouldOnlyMarkUnfinishedJobAsRunning() {
+    // when
+    repository.markRunning(JOB_ID, NOW);
+
+    // then
+    verify(mongoTemplate).updateFirst(queryCaptor.capture(), any(Update.class),
+        eq(ConnectionJob.class));
+    Document query = queryCaptor.getValue().getQueryObject();
+    assertEquals(JOB_ID, query.get("_id"));
+    assertEquals(UNFINISHED, query.get("status"));
+  }
+}
@@ -30,83 +30,100 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.nhs.hee.tis.revalidation.connection.repository.ConnectionLogCustomRepository.COLLECTION_NAME;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import org.bson.Document;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Page;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.util.CloseableIterator;
 import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
 
 @ExtendWith(MockitoExtension.class)
 class ConnectionLogCustomRepositoryTest {
 
-  private static final int PAGE_SIZE = 10;
-  private static final int PAGE_NUMBER = 0;
-  private static final int TOTAL_LOGS = 25;
+  private static final int CHUNK_SIZE = 2;
 
   @Mock
   private MongoTemplate mongoTemplate;
 
-  @Mock
-  private AggregationResults<Map> countResults;
-
-  @Mock
-  private AggregationResults<ConnectionLog> logResults;
+  @Captor
+  private ArgumentCaptor<Aggregation> aggregationCaptor;
 
   @InjectMocks
   private ConnectionLogCustomRepository repository;
 
   @Test
-  void shouldReturnPagedLogsCorrectly() {
+  void shouldStreamLatestLogsInChunks() {
     // given
-    when(countResults.getUniqueMappedResult()).thenReturn(Map.of("total", TOTAL_LOGS));
-    when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(Map.class)))
-        .thenReturn(countResults);
-
     ConnectionLog log1 = new ConnectionLog();
     ConnectionLog log2 = new ConnectionLog();
-    when(logResults.getMappedResults()).thenReturn(List.of(log1, log2));
-    when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME),
-        eq(ConnectionLog.class))).thenReturn(logResults);
+    ConnectionLog log3 = new ConnectionLog();
+    TestCloseableIterator logs = new TestCloseableIterator(List.of(log1, log2, log3));
+    when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(COLLECTION_NAME),
+        eq(ConnectionLog.class))).thenReturn(logs);
 
     // when
-    Page<ConnectionLog> pageResult = repository.getLatestLogsWithPaging(PAGE_NUMBER, PAGE_SIZE);
+    List<List<ConnectionLog>> chunks = new ArrayList<>();
+    long total = repository.streamLatestLogs(CHUNK_SIZE, chunks::add);
 
     // then
-    assertEquals(25, pageResult.getTotalElements());
-    assertEquals(2, pageResult.getContent().size());
-    assertEquals(PAGE_SIZE, pageResult.getSize());
-
-    verify(mongoTemplate).aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(Map.class));
-    verify(mongoTemplate).aggregate(any(Aggregation.class), eq(COLLECTION_NAME),
-        eq(ConnectionLog.class));
+    assertEquals(3, total);
+    assertEquals(List.of(List.of(log1, log2), List.of(log3)), chunks);
+    assertTrue(logs.closed);
   }
 
   @Test
-  void shouldHandleNullCountResult() {
+  void shouldRunSingleAggregationAllowingDiskUse() {
     // given
-    // resultMap = null and total = 0
-    when(countResults.getUniqueMappedResult()).thenReturn(null);
-    when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(Map.class)))
-        .thenReturn(countResults);
-
-    when(logResults.getMappedResults()).thenReturn(List.of());
-    when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME),
-        eq(ConnectionLog.class))).thenReturn(logResults);
+    when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(COLLECTION_NAME),
+        eq(ConnectionLog.class))).thenReturn(new TestCloseableIterator(List.of()));
+
     // when
-    Page<ConnectionLog> pageResult = repository.getLatestLogsWithPaging(PAGE_NUMBER, PAGE_SIZE);
-    // then
-    assertEquals(0, pageResult.getTotalElements());
-    assertTrue(pageResult.getContent().isEmpty());
+    List<List<ConnectionLog>> chunks = new ArrayList<>();
+    long total = repository.streamLatestLogs(CHUNK_SIZE, chunks::add);
 
-    verify(mongoTemplate).aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(Map.class));
-    verify(mongoTemplate).aggregate(any(Aggregation.class), eq(COLLECTION_NAME),
+    // then
+    assertEquals(0, total);
+    assertTrue(chunks.isEmpty());
+    verify(mongoTemplate).aggregateStream(aggregationCaptor.capture(), eq(COLLECTION_NAME),
         eq(ConnectionLog.class));
+    Document options = aggregationCaptor.getValue().getOptions().toDocument();
+    assertEquals(true, options.get("allowDiskUse"));
+    List<Document> pipeline = aggregationCaptor.getValue()
+        .toPipeline(Aggregation.DEFAULT_CONTEXT);
+    assertEquals(4, pipeline.size());
+  }
+
+  private static class TestCloseableIterator implements CloseableIterator<ConnectionLog> {
+
+    private final Iterator<ConnectionLog> delegate;
+    private boolean closed;
+
+    TestCloseableIterator(List<ConnectionLog> logs) {
+      this.delegate = logs.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return delegate.hasNext();
+    }
+
+    @Override
+    public ConnectionLog next() {
+      return delegate.next();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
   }
 }
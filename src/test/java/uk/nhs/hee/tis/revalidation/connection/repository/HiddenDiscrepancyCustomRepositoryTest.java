@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.DUPLICATE_KEY_ERROR;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome.EXISTING;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome.FAILED;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome.INSERTED;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.result.DeleteResult;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
+
+@ExtendWith(MockitoExtension.class)
+class HiddenDiscrepancyCustomRepositoryTest {
+
+  private static final String DBC = "1-ABCDE";
+
+  @Mock
+  private MongoTemplate mongoTemplate;
+
+  @Mock
+  private BulkOperations bulkOperations;
+
+  @Captor
+  private ArgumentCaptor<Query> queryCaptor;
+
+  @Captor
+  private ArgumentCaptor<Update> updateCaptor;
+
+  @InjectMocks
+  private HiddenDiscrepancyCustomRepository repository;
+
+  @Test
+  void shouldUpsertOnTheGmcIdAndDesignatedBodyWithoutOverwritingExisting() {
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, HiddenDiscrepancy.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0,
+        List.of(), List.of()));
+
+    repository.insertAbsent(List.of(hiddenDiscrepancy("1")));
+
+    verify(bulkOperations).upsert(queryCaptor.capture(), updateCaptor.capture());
+    Document queryObject = queryCaptor.getValue().getQueryObject();
+    assertEquals("1", queryObject.get("gmcId"));
+    assertEquals(DBC, queryObject.get("hiddenForDesignatedBodyCode"));
+    Document setOnInsert = updateCaptor.getValue().getUpdateObject()
+        .get("$setOnInsert", Document.class);
+    assertEquals("admin", setOnInsert.get("hiddenBy"));
+    assertEquals(null, updateCaptor.getValue().getUpdateObject().get("$set"));
+  }
+
+  @Test
+  void shouldReadInsertedAndExistingFromTheBulkWriteResult() {
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, HiddenDiscrepancy.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 0,
+        List.of(new BulkWriteUpsert(1, new BsonObjectId())), List.of()));
+
+    var outcomes = repository.insertAbsent(
+        List.of(hiddenDiscrepancy("1"), hiddenDiscrepancy("2")));
+
+    verify(bulkOperations, times(2)).upsert(any(Query.class), any(Update.class));
+    verify(bulkOperations).execute();
+    assertEquals(List.of(EXISTING, INSERTED), outcomes);
+  }
+
+  @Test
+  void shouldReportFailedItemsAndTreatDuplicateKeysAsExisting() {
+    final var bulkException = mock(BulkOperationException.class);
+    when(bulkException.getErrors()).thenReturn(List.of(
+        new BulkWriteError(DUPLICATE_KEY_ERROR, "duplicate key", new BsonDocument(), 0),
+        new BulkWriteError(2, "bad value", new BsonDocument(), 2)));
+    when(bulkException.getResult()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0,
+        List.of(new BulkWriteUpsert(1, new BsonObjectId())), List.of()));
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, HiddenDiscrepancy.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenThrow(bulkException);
+
+    var outcomes = repository.insertAbsent(
+        List.of(hiddenDiscrepancy("1"), hiddenDiscrepancy("2"), hiddenDiscrepancy("3")));
+
+    assertEquals(List.of(EXISTING, INSERTED, FAILED), outcomes);
+  }
+
+  @Test
+  void shouldRethrowDuplicateKeysInsideTransaction() {
+    final var bulkException = mock(BulkOperationException.class);
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, HiddenDiscrepancy.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenThrow(bulkException);
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      final var hiddenDiscrepancies = List.of(hiddenDiscrepancy("1"));
+      assertThrows(BulkOperationException.class,
+          () -> repository.insertAbsent(hiddenDiscrepancies));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+  }
+
+  @Test
+  void shouldNotWriteWhenThereAreNoHiddenDiscrepancies() {
+    assertEquals(List.of(), repository.insertAbsent(List.of()));
+
+    verify(mongoTemplate, never()).bulkOps(any(BulkMode.class), any(Class.class));
+  }
+
+  @Test
+  void shouldPassExpiredGmcIdsInDistinctBatchesFromCoveredQuery() {
+    LocalDate today = LocalDate.now();
+    when(mongoTemplate.stream(any(Query.class), eq(HiddenDiscrepancy.class))).thenReturn(
+        iteratorOf(hiddenDiscrepancy("1"), hiddenDiscrepancy("1"), hiddenDiscrepancy("2"),
+            hiddenDiscrepancy("3")));
+    List<Set<String>> batches = new ArrayList<>();
+
+    repository.forEachExpiredGmcIdBatch(today, 2, batches::add);
+
+    assertEquals(List.of(Set.of("1", "2"), Set.of("3")), batches);
+    verify(mongoTemplate).stream(queryCaptor.capture(), eq(HiddenDiscrepancy.class));
+    Query query = queryCaptor.getValue();
+    assertEquals(new Document("$lt", today), query.getQueryObject().get("hiddenUntilDate"));
+    assertEquals(new Document("gmcId", 1).append("_id", 0), query.getFieldsObject());
+    assertEquals(HiddenDiscrepancy.HIDDEN_UNTIL_GMC_INDEX, query.getHint());
+  }
+
+  @Test
+  void shouldDeleteExpiredHiddenDiscrepanciesOfTheDoctorsWithOneDeleteMany() {
+    LocalDate today = LocalDate.now();
+    when(mongoTemplate.remove(any(Query.class), eq(HiddenDiscrepancy.class)))
+        .thenReturn(DeleteResult.acknowledged(3));
+
+    assertEquals(3, repository.deleteExpired(List.of("1"), today));
+
+    verify(mongoTemplate).remove(queryCaptor.capture(), eq(HiddenDiscrepancy.class));
+    Document queryObject = queryCaptor.getValue().getQueryObject();
+    assertEquals(new Document("$in", List.of("1")), queryObject.get("gmcId"));
+    assertEquals(new Document("$lt", today), queryObject.get("hiddenUntilDate"));
+  }
+
+  private static CloseableIterator<HiddenDiscrepancy> iteratorOf(
+      HiddenDiscrepancy... hiddenDiscrepancies) {
+    Iterator<HiddenDiscrepancy> iterator = List.of(hiddenDiscrepancies).iterator();
+    return new CloseableIterator<>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public HiddenDiscrepancy next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  private static HiddenDiscrepancy hiddenDiscrepancy(String gmcId) {
+    return HiddenDiscrepancy.builder()
+        .gmcId(gmcId)
+        .hiddenForDesignatedBodyCode(DBC)
+        .hiddenBy("admin")
+        .build();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.repository;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository.DUPLICATE_KEY_ERROR;
+
+import com.mongodb.bulk.BulkWriteError;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.LatestConnectionLog;
+
+@ExtendWith(MockitoExtension.class)
+class LatestConnectionLogRepositoryTest {
+
+  @Mock
+  private MongoTemplate mongoTemplate;
+
+  @Mock
+  private BulkOperations bulkOperations;
+
+  @Captor
+  private ArgumentCaptor<Query> queryCaptor;
+
+  @InjectMocks
+  private LatestConnectionLogRepository repository;
+
+  @Test
+  void shouldUpsertOnlySuccessfulConnectionLogs() {
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, LatestConnectionLog.class))
+        .thenReturn(bulkOperations);
+
+    repository.upsertLatest(List.of(
+        ConnectionLog.builder().gmcId("1").requestTime(LocalDateTime.now()).build(),
+        ConnectionRequestLog.builder().gmcId("2").responseCode("0").build(),
+        ConnectionRequestLog.builder().gmcId("3").responseCode("2").build()));
+
+    verify(bulkOperations, times(2)).upsert(any(Query.class), any(Update.class));
+    verify(bulkOperations).execute();
+  }
+
+  @Test
+  void shouldNotWriteWhenNoConnectionLogsAreSuccessful() {
+    repository.upsertLatest(List.of(
+        ConnectionRequestLog.builder().gmcId("1").responseCode("2").build()));
+
+    verify(mongoTemplate, never()).bulkOps(any(BulkMode.class), any(Class.class));
+  }
+
+  @Test
+  void shouldOnlyReplaceEarlierLatestConnectionLog() {
+    final var requestTime = LocalDateTime.now();
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, LatestConnectionLog.class))
+        .thenReturn(bulkOperations);
+
+    repository.upsertLatest(
+        List.of(ConnectionLog.builder().gmcId("1").requestTime(requestTime).build()));
+
+    verify(bulkOperations).upsert(queryCaptor.capture(), any(Update.class));
+    Document queryObject = queryCaptor.getValue().getQueryObject();
+    assertEquals("1", queryObject.get("_id"));
+    List<?> or = queryObject.get("$or", List.class);
+    assertEquals(new Document("requestTime", new Document("$lt", requestTime)), or.get(0));
+  }
+
+  @Test
+  void shouldIgnoreDuplicateKeyErrorsFromLaterLatestConnectionLogs() {
+    final var bulkException = mock(BulkOperationException.class);
+    when(bulkException.getErrors()).thenReturn(List.of(
+        new BulkWriteError(DUPLICATE_KEY_ERROR, "duplicate key", new BsonDocument(), 0)));
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, LatestConnectionLog.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenThrow(bulkException);
+
+    assertDoesNotThrow(() -> repository.upsertLatest(
+        List.of(ConnectionLog.builder().gmcId("1").requestTime(LocalDateTime.now()).build())));
+  }
+
+  @Test
+  void shouldStreamLatestConnectionLogsInChunks() {
+    final var latest1 = LatestConnectionLog.builder().gmcId("1").connectionLogId("log1").build();
+    final var latest2 = LatestConnectionLog.builder().gmcId("2").connectionLogId("log2").build();
+    final var latest3 = LatestConnectionLog.builder().gmcId("3").connectionLogId("log3").build();
+    when(mongoTemplate.stream(any(Query.class), eq(LatestConnectionLog.class)))
+        .thenReturn(new TestCloseableIterator(List.of(latest1, latest2, latest3)));
+
+    List<List<ConnectionLog>> chunks = new ArrayList<>();
+    long total = repository.streamAll(2, chunks::add);
+
+    assertEquals(3, total);
+    assertEquals(2, chunks.size());
+    assertEquals("log1", chunks.get(0).get(0).getId());
+    assertEquals("1", chunks.get(0).get(0).getGmcId());
+    assertEquals("log3", chunks.get(1).get(0).getId());
+  }
+
+  @Test
+  void shouldTreatConnectionLogsWithoutResponseCodeAsSuccessful() {
+    assertTrue(LatestConnectionLogRepository.isSuccessful(new ConnectionRequestLog()));
+    assertTrue(LatestConnectionLogRepository.isSuccessful(new ConnectionLog()));
+  }
+
+  private static class TestCloseableIterator implements CloseableIterator<LatestConnectionLog> {
+
+    private final Iterator<LatestConnectionLog> delegate;
+
+    TestCloseableIterator(List<LatestConnectionLog> latestLogs) {
+      this.delegate = latestLogs.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return delegate.hasNext();
+    }
+
+    @Override
+    public LatestConnectionLog next() {
+      return delegate.next();
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+}
@@ -35,9 +35,12 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import com.github.javafaker.Faker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.hamcrest.Matchers;
@@ -47,12 +50,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.Query;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
@@ -60,6 +67,7 @@ import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
 import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.service.ElasticsearchCursorSearch.CursorPage;
 
 @ExtendWith(MockitoExtension.class)
 class ConnectedElasticSearchServiceTest {
@@ -69,6 +77,11 @@ class ConnectedElasticSearchServiceTest {
   ConnectionInfoMapper connectionInfoMapper;
   @Mock
   private ElasticsearchOperations elasticsearchOperations;
+  @Mock
+  private ElasticsearchCursorSearch elasticsearchCursorSearch;
+  @Spy
+  private SearchResultCache searchResultCache =
+      new SearchResultCache(new SimpleMeterRegistry(), false, 0, 0);
   @InjectMocks
   ConnectedElasticSearchService connectedElasticSearchService;
   private String gmcRef;
@@ -185,6 +198,61 @@ class ConnectedElasticSearchServiceTest {
     assertThat(queryString, containsString("2024-12-29T23:59:59.000"));
   }
 
+  @Test
+  void shouldSearchAutocompleteFieldsWhenAutocompleteEnabled() throws Exception {
+    setField(connectedElasticSearchService, "autocompleteEnabled", true);
+
+    @SuppressWarnings("unchecked")
+    SearchHits<CurrentConnectionsView> hits =
+        (SearchHits<CurrentConnectionsView>) mock(SearchHits.class);
+    when(hits.getSearchHits()).thenReturn(List.of());
+    when(elasticsearchOperations.search((Query) any(), eq(CurrentConnectionsView.class)))
+        .thenReturn(hits);
+
+    connectedElasticSearchService.searchForConnectionPageWithFilters(searchQuery, dbcs,
+        programmeName, null, null, null, null, null, null, null, pageable);
+
+    ArgumentCaptor<NativeSearchQuery> queryCaptor =
+        ArgumentCaptor.forClass(NativeSearchQuery.class);
+    verify(elasticsearchOperations)
+        .search(queryCaptor.capture(), eq(CurrentConnectionsView.class));
+    String queryString = queryCaptor.getValue().getQuery().toString();
+
+    assertThat(queryString, containsString("doctorFirstName.autocomplete"));
+    assertThat(queryString, containsString("doctorLastName.autocomplete"));
+    assertThat(queryString, containsString("gmcReferenceNumber.autocomplete"));
+    assertThat(queryString, not(containsString("wildcard")));
+  }
+
+  @Test
+  void shouldLimitTotalHitsAndReportNextPageWhenCountFree() throws Exception {
+    setField(connectedElasticSearchService, "countFreeEnabled", true);
+    setField(connectedElasticSearchService, "trackTotalHitsUpTo", 10_000);
+
+    @SuppressWarnings("unchecked")
+    SearchHit<CurrentConnectionsView> hit =
+        (SearchHit<CurrentConnectionsView>) mock(SearchHit.class);
+    @SuppressWarnings("unchecked")
+    SearchHits<CurrentConnectionsView> hits =
+        (SearchHits<CurrentConnectionsView>) mock(SearchHits.class);
+    when(hits.getSearchHits()).thenReturn(Collections.nCopies(20, hit));
+    when(hits.getTotalHits()).thenReturn(10_000L);
+    when(hits.getTotalHitsRelation()).thenReturn(TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO);
+    when(elasticsearchOperations.search((Query) any(), eq(CurrentConnectionsView.class)))
+        .thenReturn(hits);
+
+    ConnectionSummaryDto result = connectedElasticSearchService
+        .searchForConnectionPageWithFilters(searchQuery, dbcs, programmeName, null, null, null,
+            null, null, null, null, PageRequest.of(499, 20));
+
+    assertThat(result.isHasNextPage(), is(true));
+    ArgumentCaptor<NativeSearchQuery> queryCaptor =
+        ArgumentCaptor.forClass(NativeSearchQuery.class);
+    verify(elasticsearchOperations)
+        .search(queryCaptor.capture(), eq(CurrentConnectionsView.class));
+    assertThat(queryCaptor.getValue().getTrackTotalHitsUpTo(), is(10_000));
+  }
+
   @Test
   void shouldSearchForPageWithNoDatesProvidedAndReturnConnectionsSummary()
       throws Exception {
@@ -288,4 +356,40 @@ class ConnectedElasticSearchServiceTest {
             searchQuery, dbcs, programmeName, membershipFrom, membershipTo, submissionFrom,
             submissionTo, lastConnectionFrom, lastConnectionTo, updatedBy, pageable));
   }
+
+  @Test
+  void shouldSearchForPageAfterCursorAndReturnNextCursor() throws Exception {
+    final var sort = Sort.by(Sort.Direction.ASC, "gmcReferenceNumber");
+    final var index = IndexCoordinates.of("current_connections");
+    when(elasticsearchOperations.getIndexCoordinatesFor(CurrentConnectionsView.class))
+        .thenReturn(index);
+    when(elasticsearchCursorSearch.search(any(QueryBuilder.class), eq(sort), eq(20),
+        eq("cursor1"), eq(CurrentConnectionsView.class), eq(index)))
+        .thenReturn(new CursorPage<>(List.of(currentConnectionsView), 41L, "cursor2"));
+    when(connectionInfoMapper.currentConnectionsToConnectionInfoDtos(
+        List.of(currentConnectionsView))).thenReturn(List.of(new ConnectionInfoDto()));
+
+    ConnectionSummaryDto result = connectedElasticSearchService
+        .searchForConnectionPageWithCursor(
+            searchQuery, dbcs, programmeName, membershipFrom, membershipTo, submissionFrom,
+            submissionTo, lastConnectionFrom, lastConnectionTo, updatedBy, sort, 20, "cursor1");
+
+    assertThat(result.getTotalResults(), is(41L));
+    assertThat(result.getTotalPages(), is(3L));
+    assertThat(result.getConnections(), hasSize(1));
+    assertThat(result.getNextCursor(), is("cursor2"));
+    assertThat(result.isHasNextPage(), is(true));
+  }
+
+  @Test
+  void shouldThrowConnectionQueryExceptionWhenCursorSearchFails() {
+    when(elasticsearchCursorSearch.search(any(), any(), eq(20), eq("invalid"), any(), any()))
+        .thenThrow(new IllegalArgumentException("Invalid search_after cursor"));
+
+    assertThrows(ConnectionQueryException.class, () -> connectedElasticSearchService
+        .searchForConnectionPageWithCursor(
+            searchQuery, dbcs, programmeName, membershipFrom, membershipTo, submissionFrom,
+            submissionTo, lastConnectionFrom, lastConnectionTo, updatedBy, Sort.unsorted(), 20,
+            "invalid"));
+  }
 }
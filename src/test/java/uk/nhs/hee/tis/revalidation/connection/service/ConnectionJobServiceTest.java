@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import uk.nhs.hee.tis.revalidation.connection.dto.DoctorInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionResponseDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJob.DoctorResult;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionJobStatus;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionJobRejectedException;
+import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionJobMapperImpl;
+import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionJobCustomRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionJobRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionJobServiceTest {
+
+  private static final String GMC_ID = "1234567";
+  private static final String DESIGNATED_BODY_CODE = "1-AIIDR8";
+  private static final LocalDateTime NOW = LocalDateTime.of(2026, 6, 5, 0, 0);
+  private static final long STALE_AFTER_MS = 600_000L;
+
+  @Mock
+  private ConnectionJobRepository connectionJobRepository;
+
+  @Mock
+  private ConnectionJobCustomRepository connectionJobCustomRepository;
+
+  @Mock
+  private ConnectionService connectionService;
+
+  private ConnectionJobService connectionJobService;
+
+  private UpdateConnectionDto updateConnectionDto;
+
+  private final List<Runnable> queuedJobs = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    connectionJobService = buildService(new SyncTaskExecutor());
+
+    updateConnectionDto = UpdateConnectionDto.builder()
+        .changeReason("1")
+        .designatedBodyCode(DESIGNATED_BODY_CODE)
+        .admin("admin")
+        .doctors(List.of(DoctorInfoDto.builder().gmcId(GMC_ID).build()))
+        .build();
+  }
+
+  @Test
+  void shouldSaveJobAndRecordResultForEachDoctor() {
+    when(connectionJobRepository.save(any(ConnectionJob.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    doAnswer(invocation -> {
+      Consumer<ConnectionRequestLog> onDoctorProcessed = invocation.getArgument(1);
+      onDoctorProcessed.accept(ConnectionRequestLog.builder().gmcId(GMC_ID)
+          .responseCode("0").build());
+      return UpdateConnectionResponseDto.builder().message("Success").build();
+    }).when(connectionService).addDoctors(eq(updateConnectionDto), any());
+
+    final var job = connectionJobService.submitAddDoctors(updateConnectionDto);
+
+    assertThat(job.getRequestType(), is(ConnectionRequestType.ADD));
+    assertThat(job.getStatus(), is(ConnectionJobStatus.PENDING));
+    assertThat(job.getTotalDoctors(), is(1));
+    assertThat(job.getCreatedDateTime(), is(NOW));
+
+    ArgumentCaptor<ConnectionJob> jobCaptor = ArgumentCaptor.forClass(ConnectionJob.class);
+    verify(connectionJobRepository).save(jobCaptor.capture());
+    assertThat(jobCaptor.getValue().getLastUpdatedDateTime(), is(NOW));
+
+    ArgumentCaptor<DoctorResult> resultCaptor = ArgumentCaptor.forClass(DoctorResult.class);
+    verify(connectionJobCustomRepository).markRunning(job.getId(), NOW);
+    verify(connectionJobCustomRepository)
+        .addResult(eq(job.getId()), resultCaptor.capture(), eq(NOW));
+    verify(connectionJobCustomRepository)
+        .markFinished(job.getId(), ConnectionJobStatus.COMPLETED, "Success", NOW);
+    assertThat(resultCaptor.getValue().getGmcId(), is(GMC_ID));
+    assertThat(resultCaptor.getValue().getResponseCode(), is("0"));
+    assertThat(resultCaptor.getValue().getResponseMessage(), is("Success"));
+  }
+
+  @Test
+  void shouldMarkJobFailedWhenProcessingThrows() {
+    when(connectionJobRepository.save(any(ConnectionJob.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    when(connectionService.removeDoctors(eq(updateConnectionDto), any()))
+        .thenThrow(new IllegalStateException("Timed out"));
+
+    final var job = connectionJobService.submitRemoveDoctors(updateConnectionDto);
+
+    assertThat(job.getRequestType(), is(ConnectionRequestType.REMOVE));
+    verify(connectionJobCustomRepository)
+        .markFinished(job.getId(), ConnectionJobStatus.FAILED, "Timed out", NOW);
+  }
+
+  @Test
+  void shouldReturnJobWhenFound() {
+    final var job = ConnectionJob.builder().id("jobId").status(ConnectionJobStatus.RUNNING)
+        .results(List.of(DoctorResult.builder().gmcId(GMC_ID).responseCode("0").build()))
+        .build();
+    when(connectionJobRepository.findById("jobId")).thenReturn(Optional.of(job));
+
+    final var result = connectionJobService.getJob("jobId");
+
+    assertThat(result.isPresent(), is(true));
+    assertThat(result.get().getStatus(), is(ConnectionJobStatus.RUNNING));
+    assertThat(result.get().getResults().get(0).getGmcId(), is(GMC_ID));
+  }
+
+  @Test
+  void shouldReturnEmptyWhenJobNotFound() {
+    when(connectionJobRepository.findById("jobId")).thenReturn(Optional.empty());
+
+    assertThat(connectionJobService.getJob("jobId").isPresent(), is(false));
+  }
+
+  @Test
+  void shouldFailJobAndThrowWhenQueueIsFull() {
+    connectionJobService = buildService(task -> {
+      throw new TaskRejectedException("Queue full");
+    });
+    when(connectionJobRepository.save(any(ConnectionJob.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    assertThrows(ConnectionJobRejectedException.class,
+        () -> connectionJobService.submitAddDoctors(updateConnectionDto));
+
+    ArgumentCaptor<ConnectionJob> jobCaptor = ArgumentCaptor.forClass(ConnectionJob.class);
+    verify(connectionJobRepository).save(jobCaptor.capture());
+    verify(connectionJobCustomRepository).markFinished(jobCaptor.getValue().getId(),
+        ConnectionJobStatus.FAILED, ConnectionJobService.QUEUE_FULL_MESSAGE, NOW);
+    connectionJobService.markActiveJobs();
+    verify(connectionJobCustomRepository, never()).markActive(any(), any());
+  }
+
+  @Test
+  void shouldMarkJobsActiveUntilTheyFinish() {
+    connectionJobService = buildService(queuedJobs::add);
+    when(connectionJobRepository.save(any(ConnectionJob.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    when(connectionService.addDoctors(eq(updateConnectionDto), any()))
+        .thenReturn(UpdateConnectionResponseDto.builder().message("Success").build());
+
+    final var job = connectionJobService.submitAddDoctors(updateConnectionDto);
+    connectionJobService.markActiveJobs();
+
+    verify(connectionJobCustomRepository).markActive(List.of(job.getId()), NOW);
+
+    queuedJobs.forEach(Runnable::run);
+    connectionJobService.markActiveJobs();
+
+    verify(connectionJobCustomRepository).markActive(any(), any());
+  }
+
+  @Test
+  void shouldFailJobsNotMarkedActiveWithinStaleTime() {
+    when(connectionJobCustomRepository.failStale(NOW.minusMinutes(10),
+        ConnectionJobService.STALE_MESSAGE, NOW)).thenReturn(2L);
+
+    assertThat(connectionJobService.failStaleJobs(), is(2L));
+  }
+
+  private ConnectionJobService buildService(TaskExecutor connectionJobExecutor) {
+    Clock fixedClock = Clock.fixed(Instant.parse("2026-06-05T00:00:00Z"), ZoneOffset.UTC);
+    return new ConnectionJobService(connectionJobRepository, connectionJobCustomRepository,
+        connectionService, new ConnectionJobMapperImpl(), connectionJobExecutor, fixedClock,
+        STALE_AFTER_MS);
+  }
+}
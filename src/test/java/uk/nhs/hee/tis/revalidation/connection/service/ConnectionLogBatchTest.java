@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.ExceptionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository.FailedInsert;
+import uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionLogBatchTest {
+
+  private static final int FLUSH_SIZE = 3;
+
+  @Mock
+  private BulkInsertRepository bulkInsertRepository;
+
+  @Mock
+  private LatestConnectionLogRepository latestConnectionLogRepository;
+
+  private ConnectionLogBatch batch;
+
+  @BeforeEach
+  void setUp() {
+    batch = new ConnectionLogBatch(bulkInsertRepository, latestConnectionLogRepository,
+        FLUSH_SIZE);
+  }
+
+  @Test
+  void shouldNotWriteUntilFlushSizeReached() {
+    batch.addConnectionLog(ConnectionLog.builder().gmcId("1").build());
+    batch.addExceptionLog("1", "error", "admin");
+
+    verify(bulkInsertRepository, never()).insertAll(any(), any());
+  }
+
+  @Test
+  void shouldWriteBothCollectionsWhenFlushSizeReached() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var log2 = ConnectionLog.builder().gmcId("2").build();
+    batch.addConnectionLog(log1);
+    batch.addConnectionLog(log2);
+    batch.addExceptionLog("2", "error", "admin");
+
+    verify(bulkInsertRepository).insertAll(ConnectionLog.class, List.of(log1, log2));
+    verify(bulkInsertRepository).insertAll(eq(ExceptionLog.class), any());
+  }
+
+  @Test
+  void shouldWriteRemainingDocumentsOnClose() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    batch.addConnectionLog(log1);
+
+    batch.close();
+
+    verify(bulkInsertRepository).insertAll(ConnectionLog.class, List.of(log1));
+    verify(bulkInsertRepository, never()).insertAll(eq(ExceptionLog.class), any());
+  }
+
+  @Test
+  void shouldWriteStraightAwayAfterClose() {
+    batch.close();
+    final var lateLog = ConnectionLog.builder().gmcId("1").build();
+
+    batch.addConnectionLog(lateLog);
+
+    verify(bulkInsertRepository).insertAll(ConnectionLog.class, List.of(lateLog));
+  }
+
+  @Test
+  void shouldReturnFailedInsertsOnClose() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var failedInsert = new FailedInsert(log1, "duplicate key");
+    when(bulkInsertRepository.insertAll(ConnectionLog.class, List.of(log1)))
+        .thenReturn(List.of(failedInsert));
+    batch.addConnectionLog(log1);
+
+    assertEquals(List.of(failedInsert), batch.close());
+  }
+
+  @Test
+  void shouldRecordOnlyInsertedConnectionLogsAsLatest() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var log2 = ConnectionLog.builder().gmcId("2").build();
+    when(bulkInsertRepository.insertAll(ConnectionLog.class, List.of(log1, log2)))
+        .thenReturn(List.of(new FailedInsert(log2, "duplicate key")));
+    batch.addConnectionLog(log1);
+    batch.addConnectionLog(log2);
+
+    batch.close();
+
+    verify(latestConnectionLogRepository).upsertLatest(List.of(log1));
+  }
+
+  @Test
+  void shouldRunCallbackOnceConnectionLogIsInserted() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final List<String> events = new ArrayList<>();
+    when(bulkInsertRepository.insertAll(ConnectionLog.class, List.of(log1))).thenAnswer(
+        invocation -> {
+          events.add("inserted");
+          return List.of();
+        });
+    batch.addConnectionLog(log1, () -> events.add("callback"));
+
+    batch.close();
+
+    assertEquals(List.of("inserted", "callback"), events);
+  }
+
+  @Test
+  void shouldNotRunCallbackWhenConnectionLogIsNotInserted() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var log2 = ConnectionLog.builder().gmcId("2").build();
+    final List<ConnectionLog> callbacks = new ArrayList<>();
+    when(bulkInsertRepository.insertAll(ConnectionLog.class, List.of(log1, log2)))
+        .thenReturn(List.of(new FailedInsert(log2, "duplicate key")));
+    batch.addConnectionLog(log1, () -> callbacks.add(log1));
+    batch.addConnectionLog(log2, () -> callbacks.add(log2));
+
+    batch.close();
+
+    assertEquals(List.of(log1), callbacks);
+  }
+
+  @Test
+  void shouldAcceptDocumentsWhileAWriteIsInProgress() throws Exception {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var writeStarted = new CountDownLatch(1);
+    final var addedDuringWrite = new CountDownLatch(1);
+    when(bulkInsertRepository.insertAll(ConnectionLog.class, List.of(log1))).thenAnswer(
+        invocation -> {
+          writeStarted.countDown();
+          assertTrue(addedDuringWrite.await(5, TimeUnit.SECONDS));
+          return List.of();
+        });
+    batch.close();
+    final var writer = new Thread(() -> batch.addConnectionLog(log1));
+    writer.start();
+    assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+
+    batch.addExceptionLog("2", "error", "admin");
+    // the lock is not held while writing, so the write is still waiting
+    assertTrue(writer.isAlive());
+    addedDuringWrite.countDown();
+    writer.join(5000);
+
+    verify(bulkInsertRepository).insertAll(eq(ExceptionLog.class), any());
+  }
+
+  @Test
+  void shouldWriteOutboxMessagesBeforeConnectionLogs() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var message = OutboxMessage.builder().id("message1").build();
+    batch.addConnectionLog(log1, message, null);
+    batch.addExceptionLog("1", "error", "admin");
+
+    final var order = inOrder(bulkInsertRepository);
+    order.verify(bulkInsertRepository).insertAll(OutboxMessage.class, List.of(message));
+    order.verify(bulkInsertRepository).insertAll(ConnectionLog.class, List.of(log1));
+  }
+
+  @Test
+  void shouldWriteOutboxMessageWithConnectionLogWhenFlushSizeReachedBetweenThem() {
+    final var log1 = ConnectionLog.builder().gmcId("1").build();
+    final var message = OutboxMessage.builder().id("message1").build();
+    batch.addExceptionLog("2", "error", "admin");
+    batch.addExceptionLog("3", "error", "admin");
+
+    // the connection log alone reaches the flush size
+    batch.addConnectionLog(log1, message, null);
+
+    final var order = inOrder(bulkInsertRepository);
+    order.verify(bulkInsertRepository).insertAll(OutboxMessage.class, List.of(message));
+    order.verify(bulkInsertRepository).insertAll(ConnectionLog.class, List.of(log1));
+  }
+}
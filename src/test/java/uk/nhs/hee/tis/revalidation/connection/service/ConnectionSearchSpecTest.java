@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.NestedQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.junit.jupiter.api.Test;
+
+class ConnectionSearchSpecTest {
+
+  private static final List<String> DBCS = List.of("1-1RSSPZ7", "1-1RSSQ1B");
+  private static final List<String> TIS_DBCS = List.of("1-1RSG4X0");
+
+  @Test
+  void shouldOnlyAddExclusionsWhenNoFiltersSet() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder().build().toQuery();
+
+    assertThat(query.filter(), hasSize(1));
+    assertThat(query.must(), is(empty()));
+    assertThat(query.should(), is(empty()));
+    assertThat(query.mustNot(), is(empty()));
+  }
+
+  @Test
+  void shouldExcludeMilitaryAndGradeUsingMatchQueries() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder().build().toQuery();
+
+    BoolQueryBuilder exclusions = (BoolQueryBuilder) query.filter().get(0);
+    assertThat(exclusions.mustNot(), hasSize(2));
+    MatchQueryBuilder membershipType = (MatchQueryBuilder) exclusions.mustNot().get(0);
+    assertThat(membershipType.fieldName(), is("membershipType"));
+    assertThat(membershipType.value(), is("MILITARY"));
+    MatchQueryBuilder placementGrade = (MatchQueryBuilder) exclusions.mustNot().get(1);
+    assertThat(placementGrade.fieldName(), is("placementGrade"));
+    assertThat(placementGrade.value(), is("279"));
+  }
+
+  @Test
+  void shouldFilterOnGmcDesignatedBodyWhenNoTisDesignatedBodiesSet() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .designatedBodies(DBCS)
+        .build()
+        .toQuery();
+
+    assertThat(query.filter(), hasSize(2));
+    MatchQueryBuilder designatedBody = (MatchQueryBuilder) query.filter().get(1);
+    assertThat(designatedBody.fieldName(), is("designatedBody"));
+    assertThat(designatedBody.value(), is("1rsspz7 1rssq1b"));
+  }
+
+  @Test
+  void shouldNotFilterOnDesignatedBodyWhenDesignatedBodiesEmpty() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .designatedBodies(List.of())
+        .build()
+        .toQuery();
+
+    assertThat(query.filter(), hasSize(1));
+  }
+
+  @Test
+  void shouldMatchEitherDesignatedBodyWhenTisDesignatedBodiesSet() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .designatedBodies(DBCS)
+        .tisDesignatedBodies(TIS_DBCS)
+        .build()
+        .toQuery();
+
+    BoolQueryBuilder designatedBody = (BoolQueryBuilder) query.filter().get(1);
+    assertThat(designatedBody.should(), hasSize(2));
+    assertThat(designatedBody.minimumShouldMatch(), is("1"));
+    assertThat(((MatchQueryBuilder) designatedBody.should().get(1)).fieldName(),
+        is("tcsDesignatedBody"));
+    assertThat(((MatchQueryBuilder) designatedBody.should().get(1)).value(), is("1rsg4x0"));
+  }
+
+  @Test
+  void shouldFilterOnNormalisedDesignatedBodyTermsWhenDesignatedBodyTermsSet() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .designatedBodies(DBCS)
+        .designatedBodyTerms(true)
+        .build()
+        .toQuery();
+
+    assertThat(query.filter(), hasSize(2));
+    TermsQueryBuilder designatedBody = (TermsQueryBuilder) query.filter().get(1);
+    assertThat(designatedBody.fieldName(), is("designatedBody.normalised"));
+    assertEquals(DBCS, designatedBody.values());
+  }
+
+  @Test
+  void shouldNotFilterOnDesignatedBodyTermsWhenDesignatedBodiesEmpty() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .designatedBodies(List.of())
+        .designatedBodyTerms(true)
+        .build()
+        .toQuery();
+
+    assertThat(query.filter(), hasSize(1));
+  }
+
+  @Test
+  void shouldMatchEitherDesignatedBodyTermWhenTisDesignatedBodiesSet() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .designatedBodies(DBCS)
+        .tisDesignatedBodies(TIS_DBCS)
+        .designatedBodyTerms(true)
+        .build()
+        .toQuery();
+
+    BoolQueryBuilder designatedBody = (BoolQueryBuilder) query.filter().get(1);
+    assertThat(designatedBody.should(), hasSize(2));
+    assertThat(designatedBody.minimumShouldMatch(), is("1"));
+    TermsQueryBuilder tisDesignatedBody = (TermsQueryBuilder) designatedBody.should().get(1);
+    assertThat(tisDesignatedBody.fieldName(), is("tcsDesignatedBody.normalised"));
+    assertEquals(TIS_DBCS, tisDesignatedBody.values());
+    assertThat(query.toString(), not(containsString("\"match\"")));
+  }
+
+  @Test
+  void shouldAddEveryFilterInFilterContext() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .searchQuery("smith")
+        .designatedBodies(DBCS)
+        .programmeName("Foundation")
+        .membershipEndDateFrom(LocalDate.of(2024, 1, 1))
+        .gmcSubmissionDateTo(LocalDate.of(2024, 12, 30))
+        .lastConnectionDateTimeFrom(LocalDate.of(2024, 1, 3))
+        .updatedBy("admin")
+        .build()
+        .toQuery();
+
+    assertThat(query.filter(), hasSize(8));
+    assertThat(query.must(), is(empty()));
+    assertThat(query.should(), is(empty()));
+    String queryString = query.toString();
+    assertThat(queryString, containsString("smith*"));
+    assertThat(queryString, containsString("Foundation"));
+    assertThat(queryString, containsString("2024-01-03T00:00:00.000"));
+    assertThat(queryString, containsString("admin"));
+  }
+
+  @Test
+  void shouldSearchAutocompleteFieldsWhenAutocompleteSet() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .searchQuery("smi")
+        .autocomplete(true)
+        .build()
+        .toQuery();
+
+    String queryString = query.toString();
+    assertThat(queryString, containsString("doctorLastName.autocomplete"));
+    assertThat(queryString, not(containsString("wildcard")));
+  }
+
+  @Test
+  void shouldExcludeDiscrepanciesHiddenForDesignatedBodies() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .excludeHiddenFor(Set.copyOf(DBCS))
+        .build()
+        .toQuery();
+
+    BoolQueryBuilder hidden = (BoolQueryBuilder) query.filter().get(1);
+    assertThat(hidden.mustNot(), hasSize(1));
+    assertThat(hidden.mustNot().get(0), instanceOf(NestedQueryBuilder.class));
+    assertThat(hidden.toString(),
+        containsString("hiddenDiscrepancies.hiddenForDesignatedBodyCode.keyword"));
+  }
+
+  @Test
+  void shouldOnlyIncludeDiscrepanciesHiddenForDesignatedBodies() {
+    BoolQueryBuilder query = ConnectionSearchSpec.builder()
+        .onlyHiddenFor(DBCS)
+        .build()
+        .toQuery();
+
+    BoolQueryBuilder hidden = (BoolQueryBuilder) query.filter().get(1);
+    assertThat(hidden.must(), hasSize(1));
+    assertThat(hidden.must().get(0), instanceOf(NestedQueryBuilder.class));
+  }
+}
@@ -27,10 +27,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -39,9 +43,14 @@ import static org.springframework.test.util.ReflectionTestUtils.setField;
 import static uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode.DOCTOR_ALREADY_ASSOCIATED;
 
 import com.github.javafaker.Faker;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -53,23 +62,33 @@ import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.ws.client.WebServiceIOException;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionLogDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.DoctorInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.GmcConnectionResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.UpdateConnectionResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
 import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestLog;
 import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
+import uk.nhs.hee.tis.revalidation.connection.entity.ExceptionLog;
 import uk.nhs.hee.tis.revalidation.connection.entity.GmcResponseCode;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.exception.GmcUnavailableException;
 import uk.nhs.hee.tis.revalidation.connection.event.ConnectionChangedApplicationEvent;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionLogMapper;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionLogMapperImpl;
 import uk.nhs.hee.tis.revalidation.connection.message.ConnectionMessage;
+import uk.nhs.hee.tis.revalidation.connection.message.ConnectionMessagePublisher;
+import uk.nhs.hee.tis.revalidation.connection.message.OutboxWriter;
 import uk.nhs.hee.tis.revalidation.connection.message.payloads.IndexSyncMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.BulkInsertRepository.FailedInsert;
 import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionLogCustomRepository;
 import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository;
 
 @ExtendWith(MockitoExtension.class)
 class ConnectionServiceTest {
@@ -89,14 +108,23 @@ class ConnectionServiceTest {
   @Mock
   private ConnectionLogCustomRepository connectionLogCustomRepository;
 
+  @Mock
+  private LatestConnectionLogRepository latestConnectionLogRepository;
+
   @Mock
   private RabbitTemplate rabbitTemplate;
 
+  @Mock
+  private ConnectionMessagePublisher connectionMessagePublisher;
+
+  @Mock
+  private OutboxWriter outboxWriter;
+
   @Mock
   private GmcConnectionResponseDto gmcConnectionResponseDtoMock;
 
   @Mock
-  private ExceptionLogService exceptionService;
+  private BulkInsertRepository bulkInsertRepository;
 
   @Mock
   private ApplicationEventPublisher applicationEventPublisher;
@@ -104,16 +132,21 @@ class ConnectionServiceTest {
   @Spy
   private ConnectionLogMapper connectionLogMapper = new ConnectionLogMapperImpl();
 
+  @Spy
+  private TaskExecutor gmcRequestExecutor = new SyncTaskExecutor();
+
   @Captor
   private ArgumentCaptor<ConnectionMessage> connectionMessageArgCaptor;
   @Captor
   private ArgumentCaptor<ConnectionLog> connectionLogArgCaptor;
   @Captor
-  private ArgumentCaptor<ConnectionRequestLog> connectionRequestLogArgumentCaptor;
-  @Captor
   private ArgumentCaptor<IndexSyncMessage<List<ConnectionLogDto>>> indexSyncMessageCaptor;
   @Captor
   private ArgumentCaptor<ConnectionChangedApplicationEvent> connectionChangedEventCaptor;
+  @Captor
+  private ArgumentCaptor<List<ConnectionLog>> insertedConnectionLogsCaptor;
+  @Captor
+  private ArgumentCaptor<List<ExceptionLog>> insertedExceptionLogsCaptor;
 
   private String changeReason;
   private String designatedBodyCode;
@@ -160,8 +193,56 @@ class ConnectionServiceTest {
     admin = "admin";
 
     setField(connectionService, "exchange", "esExchange");
-    setField(connectionService, "routingKey", "routingKey");
     setField(connectionService, "esSyncDataRoutingKey", "esSyncRoutingKey");
+    setField(connectionService, "logFlushSize", 100);
+  }
+
+  @Test
+  void shouldNotPublishConnectionChangesWhenConnectionLogIsNotSaved() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(buildDoctorsList())
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(gmcConnectionResponseDtoMock);
+    when(gmcConnectionResponseDtoMock.getGmcRequestId()).thenReturn(gmcRequestId);
+    when(gmcConnectionResponseDtoMock.getReturnCode()).thenReturn(returnCode);
+    when(gmcConnectionResponseDtoMock.getSubmissionDate()).thenReturn(submissionDate);
+    when(bulkInsertRepository.insertAll(eq(ConnectionLog.class), any()))
+        .thenAnswer(invocation -> invocation.<List<?>>getArgument(1).stream()
+            .map(document -> new FailedInsert(document, "write concern error"))
+            .collect(Collectors.toList()));
+
+    connectionService.addDoctors(addDoctorDto);
+
+    verify(applicationEventPublisher, never())
+        .publishEvent(any(ConnectionChangedApplicationEvent.class));
+    verify(connectionMessagePublisher, never()).publish(any(ConnectionMessage.class));
+  }
+
+  @Test
+  void shouldPublishConnectionMessagesOnceConnectionLogsAreSaved() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(buildDoctorsList())
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(gmcConnectionResponseDtoMock);
+    when(gmcConnectionResponseDtoMock.getGmcRequestId()).thenReturn(gmcRequestId);
+    when(gmcConnectionResponseDtoMock.getReturnCode()).thenReturn(returnCode);
+    when(gmcConnectionResponseDtoMock.getSubmissionDate()).thenReturn(submissionDate);
+
+    connectionService.addDoctors(addDoctorDto);
+
+    final var order = inOrder(bulkInsertRepository, connectionMessagePublisher);
+    order.verify(bulkInsertRepository).insertAll(eq(ConnectionLog.class), any());
+    order.verify(connectionMessagePublisher, times(2)).publish(any(ConnectionMessage.class));
   }
 
   @Test
@@ -181,9 +262,23 @@ class ConnectionServiceTest {
 
     connectionService.addDoctors(addDoctorDto);
 
-    verify(rabbitTemplate, times(2)).convertAndSend(eq("esExchange"),
-        eq("routingKey"), connectionMessageArgCaptor.capture());
-    verify(repository, times(2)).save(any(ConnectionRequestLog.class));
+    verify(connectionMessagePublisher, times(2)).publish(connectionMessageArgCaptor.capture());
+    verify(bulkInsertRepository)
+        .insertAll(eq(ConnectionLog.class), insertedConnectionLogsCaptor.capture());
+    verify(repository, never()).save(any(ConnectionRequestLog.class));
+    List<ConnectionLog> insertedLogs = insertedConnectionLogsCaptor.getValue();
+    assertEquals(2, insertedLogs.size());
+    ConnectionRequestLog insertedLog = (ConnectionRequestLog) insertedLogs.get(0);
+    assertNotNull(insertedLog.getId());
+    assertEquals(gmcId, insertedLog.getGmcId());
+    assertEquals(gmcRequestId, insertedLog.getGmcClientId());
+    assertEquals(designatedBodyCode, insertedLog.getNewDesignatedBodyCode());
+    assertEquals(designatedBodyCode, insertedLog.getPreviousDesignatedBodyCode());
+    assertEquals(changeReason, insertedLog.getReason());
+    assertEquals(ConnectionRequestType.ADD, insertedLog.getRequestType());
+    assertNotNull(insertedLog.getRequestTime());
+    assertEquals(returnCode, insertedLog.getResponseCode());
+    assertEquals(admin, insertedLog.getUpdatedBy());
     verify(applicationEventPublisher, times(2))
         .publishEvent(any(ConnectionChangedApplicationEvent.class));
 
@@ -203,6 +298,38 @@ class ConnectionServiceTest {
     assertNotNull(connectionMessage2.getGmcLastUpdatedDateTime());
   }
 
+  @Test
+  void shouldWriteConnectionMessagesToOutboxWhenEnabled() {
+    setField(connectionService, "outboxEnabled", true);
+    setField(connectionService, "connectionRoutingKey", "connectionRoutingKey");
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(buildDoctorsList())
+        .admin(admin)
+        .build();
+    final var outboxMessage = OutboxMessage.builder().id(faker.internet().uuid()).build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(gmcConnectionResponseDtoMock);
+    when(gmcConnectionResponseDtoMock.getGmcRequestId()).thenReturn(gmcRequestId);
+    when(gmcConnectionResponseDtoMock.getReturnCode()).thenReturn(returnCode);
+    when(gmcConnectionResponseDtoMock.getSubmissionDate()).thenReturn(submissionDate);
+    when(outboxWriter.create(eq("connectionRoutingKey"), any(ConnectionMessage.class)))
+        .thenReturn(outboxMessage);
+
+    connectionService.addDoctors(addDoctorDto);
+
+    verify(connectionMessagePublisher, never()).publish(any(ConnectionMessage.class));
+    verify(outboxWriter, times(2))
+        .create(eq("connectionRoutingKey"), connectionMessageArgCaptor.capture());
+    assertEquals(gmcId, connectionMessageArgCaptor.getValue().getGmcId());
+    assertEquals(designatedBodyCode,
+        connectionMessageArgCaptor.getValue().getDesignatedBodyCode());
+    verify(bulkInsertRepository)
+        .insertAll(OutboxMessage.class, List.of(outboxMessage, outboxMessage));
+  }
+
   @Test
   void shouldRemoveADoctor() {
     final var removeDoctorDto = UpdateConnectionDto.builder()
@@ -219,9 +346,14 @@ class ConnectionServiceTest {
 
     connectionService.removeDoctors(removeDoctorDto);
 
-    verify(rabbitTemplate, times(2)).convertAndSend(eq("esExchange"),
-        eq("routingKey"), connectionMessageArgCaptor.capture());
-    verify(repository, times(2)).save(any(ConnectionRequestLog.class));
+    verify(connectionMessagePublisher, times(2)).publish(connectionMessageArgCaptor.capture());
+    verify(bulkInsertRepository)
+        .insertAll(eq(ConnectionLog.class), insertedConnectionLogsCaptor.capture());
+    List<ConnectionLog> insertedLogs = insertedConnectionLogsCaptor.getValue();
+    assertEquals(2, insertedLogs.size());
+    assertEquals(ConnectionRequestType.REMOVE,
+        ((ConnectionRequestLog) insertedLogs.get(1)).getRequestType());
+    verify(bulkInsertRepository, never()).insertAll(eq(ExceptionLog.class), any());
     verify(applicationEventPublisher, times(2))
         .publishEvent(any(ConnectionChangedApplicationEvent.class));
 
@@ -257,7 +389,14 @@ class ConnectionServiceTest {
     when(gmcConnectionResponseDtoMock.getGmcRequestId()).thenReturn(gmcRequestId);
     when(gmcConnectionResponseDtoMock.getReturnCode()).thenReturn(returnCode);
     connectionService.removeDoctors(removeDoctorDto);
-    verify(exceptionService, times(2)).createExceptionLog(gmcId, exceptionMessage, admin);
+    verify(bulkInsertRepository)
+        .insertAll(eq(ExceptionLog.class), insertedExceptionLogsCaptor.capture());
+    List<ExceptionLog> exceptionLogs = insertedExceptionLogsCaptor.getValue();
+    assertEquals(2, exceptionLogs.size());
+    assertEquals(gmcId, exceptionLogs.get(0).getGmcId());
+    assertEquals(exceptionMessage, exceptionLogs.get(0).getErrorMessage());
+    assertEquals(admin, exceptionLogs.get(0).getAdmin());
+    assertNotNull(exceptionLogs.get(0).getTimestamp());
     verify(applicationEventPublisher, never())
         .publishEvent(any(ConnectionChangedApplicationEvent.class));
   }
@@ -298,18 +437,20 @@ class ConnectionServiceTest {
         .previousDesignatedBodyCode(previousDesignatedBodyCode)
         .newDesignatedBodyCode(newDesignatedBodyCode).eventDateTime(requestTime).updatedBy(admin)
         .build();
-    when(repository.save(any(ConnectionLog.class))).thenReturn(ConnectionLog.builder()
+    final var savedLog = ConnectionLog.builder()
         .id(connectionId)
         .gmcId(gmcId)
         .newDesignatedBodyCode(newDesignatedBodyCode)
         .previousDesignatedBodyCode(previousDesignatedBodyCode)
         .updatedBy(admin)
         .requestTime(requestTime)
-        .build());
+        .build();
+    when(repository.save(any(ConnectionLog.class))).thenReturn(savedLog);
 
     connectionService.recordConnectionLog(connectionLogDto);
 
     verify(repository).save(connectionLogArgCaptor.capture());
+    verify(latestConnectionLogRepository).upsertLatest(List.of(savedLog));
     verify(applicationEventPublisher).publishEvent(connectionChangedEventCaptor.capture());
 
     ConnectionLog result = connectionLogArgCaptor.getValue();
@@ -327,31 +468,28 @@ class ConnectionServiceTest {
   }
 
   @Test
-  void shouldSendAllPagesAndSyncEndMessage() {
+  void shouldSendAllChunksAndSyncEndMessage() {
     // given
-    int pageSize = 2;
-    int totalLogs = 3;
-    ConnectionLog log1 = new ConnectionLog();
-    ConnectionLog log2 = new ConnectionLog();
-    ConnectionLog log3 = new ConnectionLog();
-
-    Page<ConnectionLog> page0 = new PageImpl<>(List.of(log1, log2),
-        org.springframework.data.domain.PageRequest.of(0, pageSize), totalLogs);
-    Page<ConnectionLog> page1 = new PageImpl<>(List.of(log3),
-        org.springframework.data.domain.PageRequest.of(1, pageSize), totalLogs);
-
-    when(connectionLogCustomRepository.getLatestLogsWithPaging(0, pageSize)).thenReturn(page0);
-    when(connectionLogCustomRepository.getLatestLogsWithPaging(1, pageSize)).thenReturn(page1);
+    int batchSize = 2;
+    List<ConnectionLog> chunk0 = List.of(new ConnectionLog(), new ConnectionLog());
+    List<ConnectionLog> chunk1 = List.of(new ConnectionLog());
+
+    when(connectionLogCustomRepository.streamLatestLogs(eq(batchSize), any()))
+        .thenAnswer(invocation -> {
+          Consumer<List<ConnectionLog>> chunkConsumer = invocation.getArgument(1);
+          chunkConsumer.accept(chunk0);
+          chunkConsumer.accept(chunk1);
+          return 3L;
+        });
 
     // when
-    connectionService.sendConnectionLogsForSync(pageSize);
+    connectionService.sendConnectionLogsForSync(batchSize);
 
     // then
-    verify(connectionLogCustomRepository).getLatestLogsWithPaging(0, pageSize);
-    verify(connectionLogCustomRepository).getLatestLogsWithPaging(1, pageSize);
+    verify(connectionLogCustomRepository).streamLatestLogs(eq(batchSize), any());
 
-    verify(connectionLogMapper).toDtoList(page0.toList());
-    verify(connectionLogMapper).toDtoList(page1.toList());
+    verify(connectionLogMapper).toDtoList(chunk0);
+    verify(connectionLogMapper).toDtoList(chunk1);
 
     verify(rabbitTemplate, times(3)).convertAndSend(anyString(), anyString(),
         indexSyncMessageCaptor.capture());
@@ -364,6 +502,44 @@ class ConnectionServiceTest {
     assertTrue(sentMessages.get(2).getPayload().isEmpty());
   }
 
+  @Test
+  void shouldSendLatestConnectionLogsWhenEnabled() {
+    // given
+    setField(connectionService, "latestConnectionLogsEnabled", true);
+    List<ConnectionLog> chunk = List.of(new ConnectionLog());
+    when(latestConnectionLogRepository.streamAll(eq(2), any())).thenAnswer(invocation -> {
+      Consumer<List<ConnectionLog>> chunkConsumer = invocation.getArgument(1);
+      chunkConsumer.accept(chunk);
+      return 1L;
+    });
+
+    // when
+    connectionService.sendConnectionLogsForSync(2);
+
+    // then
+    verify(connectionLogCustomRepository, never()).streamLatestLogs(anyInt(), any());
+    verify(connectionLogMapper).toDtoList(chunk);
+    verify(rabbitTemplate, times(2)).convertAndSend(anyString(), anyString(),
+        indexSyncMessageCaptor.capture());
+    assertFalse(indexSyncMessageCaptor.getAllValues().get(0).getSyncEnd());
+    assertTrue(indexSyncMessageCaptor.getAllValues().get(1).getSyncEnd());
+  }
+
+  @Test
+  void shouldSendOnlySyncEndMessageWhenNoLogsToSync() {
+    // given
+    when(connectionLogCustomRepository.streamLatestLogs(eq(2), any())).thenReturn(0L);
+
+    // when
+    connectionService.sendConnectionLogsForSync(2);
+
+    // then
+    verify(rabbitTemplate).convertAndSend(anyString(), anyString(),
+        indexSyncMessageCaptor.capture());
+    assertTrue(indexSyncMessageCaptor.getValue().getSyncEnd());
+    verify(connectionLogMapper, never()).toDtoList(any());
+  }
+
   @Test
   void shouldUpdateConnectionOnGmc100Response() {
     final var addDoctorDto = UpdateConnectionDto.builder()
@@ -386,16 +562,20 @@ class ConnectionServiceTest {
 
     connectionService.addDoctors(addDoctorDto);
 
-    verify(repository, times(2)).save(connectionRequestLogArgumentCaptor.capture());
-    verify(rabbitTemplate, times(1)).convertAndSend(eq("esExchange"),
-        eq("routingKey"), connectionMessageArgCaptor.capture());
-    verify(exceptionService, times(1)).createExceptionLog(
-        gmcId, DOCTOR_ALREADY_ASSOCIATED.getMessage(), admin
-    );
+    verify(bulkInsertRepository)
+        .insertAll(eq(ConnectionLog.class), insertedConnectionLogsCaptor.capture());
+    verify(connectionMessagePublisher, times(1)).publish(connectionMessageArgCaptor.capture());
+    verify(bulkInsertRepository)
+        .insertAll(eq(ExceptionLog.class), insertedExceptionLogsCaptor.capture());
+    assertEquals(1, insertedExceptionLogsCaptor.getValue().size());
+    assertEquals(DOCTOR_ALREADY_ASSOCIATED.getMessage(),
+        insertedExceptionLogsCaptor.getValue().get(0).getErrorMessage());
     verify(applicationEventPublisher, times(1)).publishEvent(
         any(ConnectionChangedApplicationEvent.class));
 
-    List<ConnectionRequestLog> connectionLogs = connectionRequestLogArgumentCaptor.getAllValues();
+    List<ConnectionRequestLog> connectionLogs = insertedConnectionLogsCaptor.getValue().stream()
+        .map(ConnectionRequestLog.class::cast).collect(Collectors.toList());
+    assertEquals(2, connectionLogs.size());
 
     assertEquals(gmcId, connectionLogs.get(1).getGmcId());
     assertEquals(designatedBodyCode, connectionLogs.get(1).getNewDesignatedBodyCode());
@@ -421,6 +601,151 @@ class ConnectionServiceTest {
     assertNotNull(connectionMessage1.getGmcLastUpdatedDateTime());
   }
 
+  @Test
+  void shouldSubmitEachDoctorToGmcRequestExecutor() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(buildDoctorsList())
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(gmcConnectionResponseDtoMock);
+    when(gmcConnectionResponseDtoMock.getReturnCode()).thenReturn(returnCode);
+
+    UpdateConnectionResponseDto response = connectionService.addDoctors(addDoctorDto);
+
+    verify(gmcRequestExecutor, times(2)).execute(any(Runnable.class));
+    assertEquals(GmcResponseCode.SUCCESS.getMessage(), response.getMessage());
+  }
+
+  @Test
+  void shouldNotifyListenerForEachProcessedDoctor() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(buildDoctorsList())
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(gmcConnectionResponseDtoMock);
+    when(gmcConnectionResponseDtoMock.getReturnCode()).thenReturn(returnCode);
+
+    final List<ConnectionRequestLog> processed = new ArrayList<>();
+    connectionService.addDoctors(addDoctorDto, processed::add);
+
+    assertEquals(2, processed.size());
+    assertEquals(gmcId, processed.get(0).getGmcId());
+    assertEquals(returnCode, processed.get(0).getResponseCode());
+  }
+
+  @Test
+  void shouldReturnFailureMessageWhenOneOfManyDoctorsFails() {
+    final var otherGmcId = faker.number().digits(7);
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(List.of(DoctorInfoDto.builder().gmcId(gmcId).build(),
+            DoctorInfoDto.builder().gmcId(otherGmcId).build()))
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(GmcConnectionResponseDto.builder().returnCode(returnCode).build());
+    when(gmcClientService.tryAddDoctor(otherGmcId, changeReason, designatedBodyCode))
+        .thenReturn(GmcConnectionResponseDto.builder().returnCode("90").build());
+
+    UpdateConnectionResponseDto response = connectionService.addDoctors(addDoctorDto);
+
+    assertEquals("Some changes have failed with GMC. Please check the failed GMC updates list",
+        response.getMessage());
+  }
+
+  @Test
+  void shouldRethrowWhenGmcCallFails() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(buildDoctorsList())
+        .admin(admin)
+        .build();
+
+    doThrow(new IllegalArgumentException("GMC failure")).when(gmcClientService)
+        .tryAddDoctor(gmcId, changeReason, designatedBodyCode);
+
+    assertThrows(IllegalArgumentException.class, () -> connectionService.addDoctors(addDoctorDto));
+    verify(bulkInsertRepository, never()).insertAll(any(), any());
+  }
+
+  @Test
+  void shouldRecordFailedUpdateWhenGmcUnavailable() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(List.of(DoctorInfoDto.builder().gmcId(gmcId).build()))
+        .admin(admin)
+        .build();
+
+    doThrow(new GmcUnavailableException("GMC circuit breaker is open", null))
+        .when(gmcClientService).tryAddDoctor(gmcId, changeReason, designatedBodyCode);
+
+    UpdateConnectionResponseDto response = connectionService.addDoctors(addDoctorDto);
+
+    assertEquals(GmcResponseCode.GMC_UNAVAILABLE.getMessage(), response.getMessage());
+    verify(bulkInsertRepository)
+        .insertAll(eq(ExceptionLog.class), insertedExceptionLogsCaptor.capture());
+    assertEquals(GmcResponseCode.GMC_UNAVAILABLE.getMessage(),
+        insertedExceptionLogsCaptor.getValue().get(0).getErrorMessage());
+    verify(bulkInsertRepository, never()).insertAll(eq(ConnectionLog.class), any());
+    verify(connectionMessagePublisher, never()).publish(any(ConnectionMessage.class));
+  }
+
+  @Test
+  void shouldRecordFailedUpdateWhenGmcCallTimesOut() {
+    final var otherGmcId = faker.number().digits(7);
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(List.of(DoctorInfoDto.builder().gmcId(gmcId).build(),
+            DoctorInfoDto.builder().gmcId(otherGmcId).build()))
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenReturn(GmcConnectionResponseDto.builder().returnCode(returnCode).build());
+    when(gmcClientService.tryAddDoctor(otherGmcId, changeReason, designatedBodyCode))
+        .thenThrow(new WebServiceIOException("I/O error: Read timed out",
+            new SocketTimeoutException("Read timed out")));
+
+    UpdateConnectionResponseDto response = connectionService.addDoctors(addDoctorDto);
+
+    assertEquals("Some changes have failed with GMC. Please check the failed GMC updates list",
+        response.getMessage());
+    verify(bulkInsertRepository)
+        .insertAll(eq(ExceptionLog.class), insertedExceptionLogsCaptor.capture());
+    assertEquals(otherGmcId, insertedExceptionLogsCaptor.getValue().get(0).getGmcId());
+    assertEquals(GmcResponseCode.GMC_TIMEOUT.getMessage(),
+        insertedExceptionLogsCaptor.getValue().get(0).getErrorMessage());
+  }
+
+  @Test
+  void shouldRethrowGmcIoErrorsOtherThanTimeouts() {
+    final var addDoctorDto = UpdateConnectionDto.builder()
+        .changeReason(changeReason)
+        .designatedBodyCode(designatedBodyCode)
+        .doctors(List.of(DoctorInfoDto.builder().gmcId(gmcId).build()))
+        .admin(admin)
+        .build();
+
+    when(gmcClientService.tryAddDoctor(gmcId, changeReason, designatedBodyCode))
+        .thenThrow(new WebServiceIOException("I/O error: Connection reset",
+            new SocketException("Connection reset")));
+
+    assertThrows(WebServiceIOException.class, () -> connectionService.addDoctors(addDoctorDto));
+  }
+
   private ConnectionRequestLog prepareConnectionAdd() {
     return ConnectionRequestLog.builder()
         .id(connectionId)
@@ -0,0 +1,211 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import com.github.javafaker.Faker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.TotalHits.Relation;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancyInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
+import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
+import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.mapper.HiddenDiscrepancyInfoMapper;
+
+@ExtendWith(MockitoExtension.class)
+class DashboardElasticSearchServiceTest {
+
+  private final Faker faker = new Faker();
+  @Spy
+  ElasticsearchMultiSearch elasticsearchMultiSearch =
+      new ElasticsearchMultiSearch(mock(ElasticsearchRestTemplate.class));
+  @Mock
+  ConnectedElasticSearchService connectedElasticSearchService;
+  @Mock
+  DiscrepanciesElasticSearchService discrepanciesElasticSearchService;
+  @Mock
+  ConnectionInfoMapper connectionInfoMapper;
+  @Mock
+  HiddenDiscrepancyInfoMapper hiddenDiscrepancyInfoMapper;
+  @Spy
+  SearchResultCache searchResultCache =
+      new SearchResultCache(new SimpleMeterRegistry(), false, 0, 0);
+  @InjectMocks
+  DashboardElasticSearchService dashboardElasticSearchService;
+
+  private String searchQuery;
+  private List<String> dbcs;
+  private List<String> tisDbcs;
+  private String programmeName;
+  private Pageable pageable;
+
+  /**
+   * Set up data for testing.
+   */
+  @BeforeEach
+  void setup() {
+    searchQuery = faker.name().lastName().toLowerCase();
+    dbcs = List.of("1-1RSSPZ7", "1-1RSSQ1B");
+    tisDbcs = List.of("1-1RSSPZ7");
+    programmeName = faker.lorem().characters(20);
+    pageable = PageRequest.of(0, 20);
+
+    when(connectedElasticSearchService.buildConnectedQuery(searchQuery, dbcs, programmeName,
+        null, null, null, null, null, null, null)).thenReturn(boolQuery());
+    when(discrepanciesElasticSearchService.buildDiscrepanciesQuery(searchQuery, dbcs, tisDbcs,
+        programmeName, null, null, null, null, null, null, null)).thenReturn(boolQuery());
+    when(discrepanciesElasticSearchService.buildHiddenDiscrepanciesQuery(searchQuery, dbcs,
+        programmeName)).thenReturn(boolQuery());
+    doReturn(IndexCoordinates.of("current_connections")).when(elasticsearchMultiSearch)
+        .getIndexCoordinatesFor(CurrentConnectionsView.class);
+  }
+
+  @Test
+  void shouldLoadAllTabsWithOneMultiSearch() throws Exception {
+    final var connected = response(1, 1);
+    final var discrepancies = response(2, 25);
+    final var hidden = response(1, 1);
+    doReturn(new MultiSearchResponse.Item[]{new MultiSearchResponse.Item(connected, null),
+        new MultiSearchResponse.Item(discrepancies, null),
+        new MultiSearchResponse.Item(hidden, null)})
+        .when(elasticsearchMultiSearch).search(anyList());
+    final var connectedView = CurrentConnectionsView.builder().build();
+    final var discrepancyView = MasterDoctorView.builder().gmcReferenceNumber("1").build();
+    final var masterView = MasterDoctorView.builder().build();
+    doReturn(List.of(connectedView)).when(elasticsearchMultiSearch)
+        .read(connected, CurrentConnectionsView.class);
+    doReturn(List.of(discrepancyView, discrepancyView)).when(elasticsearchMultiSearch)
+        .read(discrepancies, MasterDoctorView.class);
+    doReturn(List.of(masterView)).when(elasticsearchMultiSearch)
+        .read(hidden, MasterDoctorView.class);
+    when(connectionInfoMapper.currentConnectionsToConnectionInfoDtos(List.of(connectedView)))
+        .thenReturn(List.of(new ConnectionInfoDto()));
+    when(connectionInfoMapper.masterToDtos(List.of(discrepancyView, discrepancyView)))
+        .thenReturn(List.of(new ConnectionInfoDto(), new ConnectionInfoDto()));
+    when(hiddenDiscrepancyInfoMapper.toHiddenDiscrepancyInfoDtoList(List.of(masterView)))
+        .thenReturn(List.of(new HiddenDiscrepancyInfoDto()));
+
+    final var result = dashboardElasticSearchService.searchForDashboard(searchQuery, dbcs,
+        tisDbcs, programmeName, null, null, null, null, null, null, null, pageable);
+
+    assertThat(result.getConnected().getConnections(), hasSize(1));
+    assertThat(result.getConnected().getTotalResults(), is(1L));
+    assertThat(result.getConnected().isHasNextPage(), is(false));
+    assertThat(result.getDiscrepancies().getConnections(), hasSize(2));
+    assertThat(result.getDiscrepancies().getTotalResults(), is(25L));
+    assertThat(result.getDiscrepancies().getTotalPages(), is(2L));
+    assertThat(result.getDiscrepancies().isHasNextPage(), is(true));
+    assertThat(result.getHiddenDiscrepancies().getHiddenDiscrepancies(), hasSize(1));
+    assertThat(result.getHiddenDiscrepancies().getTotalResults(), is(1L));
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<SearchRequest>> requestsCaptor = ArgumentCaptor.forClass(List.class);
+    verify(elasticsearchMultiSearch).search(requestsCaptor.capture());
+    final var requests = requestsCaptor.getValue();
+    assertThat(requests, hasSize(3));
+    assertThat(requests.get(0).indices(), arrayContaining("current_connections"));
+    assertThat(requests.get(0).source().fetchSource(), nullValue());
+    assertThat(requests.get(1).indices(), arrayContaining("discrepancies"));
+    assertThat(requests.get(1).source().fetchSource(), nullValue());
+    assertThat(requests.get(2).indices(), arrayContaining("discrepancies"));
+    assertThat(requests.get(2).source().fetchSource().includes(),
+        is(DiscrepanciesElasticSearchService.HIDDEN_DISCREPANCY_SOURCE_FIELDS));
+  }
+
+  @Test
+  void shouldLimitTotalHitsTrackedWhenCountFree() throws Exception {
+    setField(dashboardElasticSearchService, "countFreeEnabled", true);
+    setField(dashboardElasticSearchService, "trackTotalHitsUpTo", 500);
+    doReturn(new MultiSearchResponse.Item[]{
+        new MultiSearchResponse.Item(null, new RuntimeException("Elasticsearch failure"))})
+        .when(elasticsearchMultiSearch).search(anyList());
+
+    assertThrows(ConnectionQueryException.class, () -> dashboardElasticSearchService
+        .searchForDashboard(searchQuery, dbcs, tisDbcs, programmeName, null, null, null, null,
+            null, null, null, pageable));
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<SearchRequest>> requestsCaptor = ArgumentCaptor.forClass(List.class);
+    verify(elasticsearchMultiSearch).search(requestsCaptor.capture());
+    for (SearchRequest request : requestsCaptor.getValue()) {
+      assertThat(request.source().trackTotalHitsUpTo(), is(500));
+    }
+  }
+
+  @Test
+  void shouldThrowConnectionQueryExceptionWhenOneSearchFails() {
+    doReturn(new MultiSearchResponse.Item[]{
+        new MultiSearchResponse.Item(mock(SearchResponse.class), null),
+        new MultiSearchResponse.Item(null, new RuntimeException("Elasticsearch failure")),
+        new MultiSearchResponse.Item(mock(SearchResponse.class), null)})
+        .when(elasticsearchMultiSearch).search(anyList());
+
+    assertThrows(ConnectionQueryException.class, () -> dashboardElasticSearchService
+        .searchForDashboard(searchQuery, dbcs, tisDbcs, programmeName, null, null, null, null,
+            null, null, null, pageable));
+  }
+
+  private static SearchResponse response(int pageHits, long totalHits) {
+    final var response = mock(SearchResponse.class);
+    final var hits = new SearchHit[pageHits];
+    for (int i = 0; i < pageHits; i++) {
+      hits[i] = new SearchHit(i);
+    }
+    when(response.getHits())
+        .thenReturn(new SearchHits(hits, new TotalHits(totalHits, Relation.EQUAL_TO), 1.0f));
+    return response;
+  }
+}
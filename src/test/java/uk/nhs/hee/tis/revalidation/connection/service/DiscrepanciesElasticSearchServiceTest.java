@@ -23,6 +23,7 @@ package uk.nhs.hee.tis.revalidation.connection.service;
 
 import static java.time.LocalDate.now;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.not;
@@ -31,14 +32,20 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import com.github.javafaker.Faker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -46,9 +53,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
@@ -57,12 +66,14 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.Query;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.DiscrepancyFacetsDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancyInfoDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancySummaryDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
 import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
 import uk.nhs.hee.tis.revalidation.connection.mapper.HiddenDiscrepancyInfoMapper;
+import uk.nhs.hee.tis.revalidation.connection.service.ElasticsearchCursorSearch.CursorPage;
 
 @ExtendWith(MockitoExtension.class)
 class DiscrepanciesElasticSearchServiceTest {
@@ -74,6 +85,11 @@ class DiscrepanciesElasticSearchServiceTest {
   ConnectionInfoMapper connectionInfoMapper;
   @Mock
   HiddenDiscrepancyInfoMapper hiddenDiscrepancyInfoMapper;
+  @Mock
+  ElasticsearchCursorSearch elasticsearchCursorSearch;
+  @Spy
+  SearchResultCache searchResultCache =
+      new SearchResultCache(new SimpleMeterRegistry(), false, 0, 0);
   @InjectMocks
   DiscrepanciesElasticSearchService discrepanciesElasticSearchService;
   private String gmcRef;
@@ -180,6 +196,8 @@ class DiscrepanciesElasticSearchServiceTest {
         .search(queryCaptor.capture(), eq(MasterDoctorView.class),
             any(IndexCoordinates.class));
 
+    assertThat(queryCaptor.getValue().getSourceFilter(), Matchers.nullValue());
+
     QueryBuilder qb = queryCaptor.getValue().getQuery();
     String queryString = qb.toString();
 
@@ -195,6 +213,34 @@ class DiscrepanciesElasticSearchServiceTest {
     assertThat(queryString, containsString("2024-12-29T23:59:59.000"));
   }
 
+  @Test
+  void shouldSearchAutocompleteFieldsWhenAutocompleteEnabled() throws Exception {
+    setField(discrepanciesElasticSearchService, "autocompleteEnabled", true);
+
+    @SuppressWarnings("unchecked")
+    SearchHits<MasterDoctorView> hits =
+        (SearchHits<MasterDoctorView>) mock(SearchHits.class);
+    when(hits.getSearchHits()).thenReturn(List.of());
+    when(elasticsearchOperations.search((Query) any(), eq(MasterDoctorView.class),
+        any(IndexCoordinates.class)))
+        .thenReturn(hits);
+
+    discrepanciesElasticSearchService.searchForDiscrepanciesPageWithFilters(searchQuery, dbcs,
+        tisDbcs, programmeName, null, null, null, null, null, null, null, pageable);
+
+    ArgumentCaptor<NativeSearchQuery> queryCaptor =
+        ArgumentCaptor.forClass(NativeSearchQuery.class);
+    verify(elasticsearchOperations)
+        .search(queryCaptor.capture(), eq(MasterDoctorView.class),
+            any(IndexCoordinates.class));
+    String queryString = queryCaptor.getValue().getQuery().toString();
+
+    assertThat(queryString, containsString("doctorFirstName.autocomplete"));
+    assertThat(queryString, containsString("doctorLastName.autocomplete"));
+    assertThat(queryString, containsString("gmcReferenceNumber.autocomplete"));
+    assertThat(queryString, not(containsString("wildcard")));
+  }
+
   @Test
   void shouldSearchForPageWithNoDatesProvidedAndReturnDiscrepanciesSummary()
       throws Exception {
@@ -394,6 +440,10 @@ class DiscrepanciesElasticSearchServiceTest {
         .search(queryCaptor.capture(), eq(MasterDoctorView.class),
             any(IndexCoordinates.class));
 
+    assertThat(queryCaptor.getValue().getSourceFilter().getIncludes(),
+        arrayContainingInAnyOrder(
+            DiscrepanciesElasticSearchService.HIDDEN_DISCREPANCY_SOURCE_FIELDS));
+
     QueryBuilder qb = queryCaptor.getValue().getQuery();
     String queryString = qb.toString();
 
@@ -406,4 +456,95 @@ class DiscrepanciesElasticSearchServiceTest {
     assertThat(queryString.replaceAll("\\s+", ""),
         containsString("[\"1-1RSSPZ7\",\"1-1RSSQ1B\"]"));
   }
+
+  @Test
+  void shouldCountDiscrepanciesUnderEachFilterValue() throws Exception {
+    setField(discrepanciesElasticSearchService, "facetsSize", 25);
+    final var aggregations = new Aggregations(List.of(
+        facet(DiscrepanciesElasticSearchService.PROGRAMME_NAME_FACET, programmeName, 3L),
+        facet(DiscrepanciesElasticSearchService.DESIGNATED_BODY_FACET, designatedBody1, 2L),
+        facet(DiscrepanciesElasticSearchService.TCS_DESIGNATED_BODY_FACET, designatedBody2, 1L),
+        facet(DiscrepanciesElasticSearchService.UPDATED_BY_FACET, upddatedBy, 3L),
+        facet(DiscrepanciesElasticSearchService.MEMBERSHIP_END_MONTH_FACET, "2024-12", 3L)));
+
+    @SuppressWarnings("unchecked")
+    SearchHits<MasterDoctorView> hits =
+        (SearchHits<MasterDoctorView>) mock(SearchHits.class);
+    when(hits.getTotalHits()).thenReturn(3L);
+    when(hits.getAggregations()).thenReturn(aggregations);
+    when(elasticsearchOperations.search((Query) any(), eq(MasterDoctorView.class),
+        any(IndexCoordinates.class)))
+        .thenReturn(hits);
+
+    DiscrepancyFacetsDto result = discrepanciesElasticSearchService.getDiscrepancyFacets(
+        searchQuery, dbcs, tisDbcs, programmeName, membershipFrom, membershipTo, null, null,
+        null, null, null);
+
+    assertThat(result.getTotalResults(), Matchers.is(3L));
+    assertThat(result.getProgrammeName(), Matchers.is(Map.of(programmeName, 3L)));
+    assertThat(result.getDesignatedBody(), Matchers.is(Map.of(designatedBody1, 2L)));
+    assertThat(result.getTcsDesignatedBody(), Matchers.is(Map.of(designatedBody2, 1L)));
+    assertThat(result.getUpdatedBy(), Matchers.is(Map.of(upddatedBy, 3L)));
+    assertThat(result.getMembershipEndMonth(), Matchers.is(Map.of("2024-12", 3L)));
+
+    ArgumentCaptor<NativeSearchQuery> queryCaptor =
+        ArgumentCaptor.forClass(NativeSearchQuery.class);
+    verify(elasticsearchOperations)
+        .search(queryCaptor.capture(), eq(MasterDoctorView.class),
+            any(IndexCoordinates.class));
+    NativeSearchQuery query = queryCaptor.getValue();
+
+    assertThat(query.getMaxResults(), Matchers.is(0));
+    assertThat(query.getAggregations(), hasSize(5));
+    String aggregationsString = query.getAggregations().toString();
+    assertThat(aggregationsString, containsString("programmeName.keyword"));
+    assertThat(aggregationsString, containsString("\"size\" : 25"));
+    assertThat(aggregationsString, containsString("1M"));
+    String queryString = query.getQuery().toString();
+    assertThat(queryString, containsString("membershipEndDate"));
+    assertThat(queryString,
+        containsString("hiddenDiscrepancies.hiddenForDesignatedBodyCode.keyword"));
+  }
+
+  @Test
+  void shouldThrowConnectionQueryExceptionWhenFacetSearchFails() {
+    when(elasticsearchOperations.search((Query) any(), eq(MasterDoctorView.class),
+        any(IndexCoordinates.class)))
+        .thenThrow(new RuntimeException("Elasticsearch failure"));
+
+    assertThrows(ConnectionQueryException.class, () -> discrepanciesElasticSearchService
+        .getDiscrepancyFacets(searchQuery, dbcs, tisDbcs, programmeName, null, null, null, null,
+            null, null, null));
+  }
+
+  private static Terms facet(String name, String key, long count) {
+    Terms.Bucket bucket = mock(Terms.Bucket.class);
+    when(bucket.getKeyAsString()).thenReturn(key);
+    when(bucket.getDocCount()).thenReturn(count);
+    Terms terms = mock(Terms.class);
+    when(terms.getName()).thenReturn(name);
+    doReturn(List.of(bucket)).when(terms).getBuckets();
+    return terms;
+  }
+
+  @Test
+  void shouldSearchForDiscrepanciesAfterCursorAndReturnNextCursor() throws Exception {
+    final var sort = Sort.by(Sort.Direction.DESC, "gmcReferenceNumber");
+    when(elasticsearchCursorSearch.search(any(QueryBuilder.class), eq(sort), eq(20), eq(""),
+        eq(MasterDoctorView.class), any(IndexCoordinates.class)))
+        .thenReturn(new CursorPage<>(List.of(discrepanciesView), 1L, null));
+    when(connectionInfoMapper.masterToDtos(List.of(discrepanciesView)))
+        .thenReturn(List.of(new ConnectionInfoDto()));
+
+    ConnectionSummaryDto result = discrepanciesElasticSearchService
+        .searchForDiscrepanciesPageWithCursor(
+            searchQuery, dbcs, tisDbcs, programmeName, null, null, null, null, null, null,
+            updatedBy, sort, 20, "");
+
+    assertThat(result.getTotalResults(), Matchers.is(1L));
+    assertThat(result.getTotalPages(), Matchers.is(1L));
+    assertThat(result.getConnections(), hasSize(1));
+    assertThat(result.getNextCursor(), Matchers.nullValue());
+    assertThat(result.isHasNextPage(), Matchers.is(false));
+  }
 }
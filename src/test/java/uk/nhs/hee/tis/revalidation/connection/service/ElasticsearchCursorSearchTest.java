@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.TotalHits.Relation;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
+import uk.nhs.hee.tis.revalidation.connection.service.util.SearchAfterCursor;
+
+@ExtendWith(MockitoExtension.class)
+class ElasticsearchCursorSearchTest {
+
+  private static final IndexCoordinates INDEX = IndexCoordinates.of("current_connections");
+  private static final Sort SORT = Sort.by(Sort.Direction.DESC, "gmcReferenceNumber");
+
+  @Mock
+  private ElasticsearchRestTemplate elasticsearchRestTemplate;
+
+  @Mock
+  private ElasticsearchConverter elasticsearchConverter;
+
+  @InjectMocks
+  private ElasticsearchCursorSearch elasticsearchCursorSearch;
+
+  @Test
+  void shouldSortOnTiebreakerAfterRequestedSort() {
+    final var request = elasticsearchCursorSearch.buildRequest(matchAllQuery(), SORT, 20, "",
+        INDEX);
+
+    final var sorts = request.source().sorts();
+    assertEquals(2, sorts.size());
+    assertEquals("gmcReferenceNumber", ((FieldSortBuilder) sorts.get(0)).getFieldName());
+    assertEquals(SortOrder.DESC, sorts.get(0).order());
+    assertEquals("_id", ((FieldSortBuilder) sorts.get(1)).getFieldName());
+    assertEquals(20, request.source().size());
+    assertNull(request.source().searchAfter());
+    assertArrayEquals(new String[]{"current_connections"}, request.indices());
+  }
+
+  @Test
+  void shouldTrackAllTotalHitsWhenNotCountFree() {
+    final var request = elasticsearchCursorSearch.buildRequest(matchAllQuery(), SORT, 20, "",
+        INDEX);
+
+    // trackTotalHits(true) counts every hit
+    assertEquals(Integer.valueOf(Integer.MAX_VALUE), request.source().trackTotalHitsUpTo());
+  }
+
+  @Test
+  void shouldLimitTotalHitsWhenCountFree() {
+    setField(elasticsearchCursorSearch, "countFreeEnabled", true);
+    setField(elasticsearchCursorSearch, "trackTotalHitsUpTo", 10_000);
+
+    final var request = elasticsearchCursorSearch.buildRequest(matchAllQuery(), SORT, 20, "",
+        INDEX);
+
+    assertEquals(Integer.valueOf(10_000), request.source().trackTotalHitsUpTo());
+  }
+
+  @Test
+  void shouldSearchAfterSortValuesInCursor() {
+    final Object[] sortValues = {"1234567", "id1"};
+
+    final var request = elasticsearchCursorSearch.buildRequest(matchAllQuery(), SORT, 20,
+        SearchAfterCursor.encode(sortValues), INDEX);
+
+    assertArrayEquals(sortValues, request.source().searchAfter());
+  }
+
+  @Test
+  void shouldReturnCursorOfLastHitWhenPageIsFull() {
+    final var view1 = CurrentConnectionsView.builder().id("id1").build();
+    final var view2 = CurrentConnectionsView.builder().id("id2").build();
+    givenHits(hit("id1", "111"), hit("id2", "222"));
+    when(elasticsearchConverter.read(eq(CurrentConnectionsView.class), any(Document.class)))
+        .thenReturn(view1, view2);
+
+    final var page = elasticsearchCursorSearch.search(matchAllQuery(), SORT, 2, "",
+        CurrentConnectionsView.class, INDEX);
+
+    assertEquals(List.of(view1, view2), page.getContent());
+    assertEquals(5, page.getTotalHits());
+    assertArrayEquals(new Object[]{"222", "id2"},
+        SearchAfterCursor.decode(page.getNextCursor()));
+  }
+
+  @Test
+  void shouldNotReturnCursorOnLastPage() {
+    givenHits(hit("id1", "111"));
+    when(elasticsearchConverter.read(eq(CurrentConnectionsView.class), any(Document.class)))
+        .thenReturn(CurrentConnectionsView.builder().id("id1").build());
+
+    final var page = elasticsearchCursorSearch.search(matchAllQuery(), SORT, 2, "",
+        CurrentConnectionsView.class, INDEX);
+
+    assertEquals(1, page.getContent().size());
+    assertNull(page.getNextCursor());
+  }
+
+  private void givenHits(SearchHit... hits) {
+    final var response = mock(SearchResponse.class);
+    when(response.getHits())
+        .thenReturn(new SearchHits(hits, new TotalHits(5, Relation.EQUAL_TO), 1.0f));
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(response);
+    when(elasticsearchRestTemplate.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+  }
+
+  private static SearchHit hit(String id, String gmcReferenceNumber) {
+    final var hit = new SearchHit(0, id, null, Map.of(), Map.of());
+    hit.sourceRef(new BytesArray("{\"gmcReferenceNumber\":\"" + gmcReferenceNumber + "\"}"));
+    hit.sortValues(new Object[]{gmcReferenceNumber, id},
+        new DocValueFormat[]{DocValueFormat.RAW, DocValueFormat.RAW});
+    return hit;
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.TotalHits.Relation;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import uk.nhs.hee.tis.revalidation.connection.entity.CurrentConnectionsView;
+
+@ExtendWith(MockitoExtension.class)
+class ElasticsearchMultiSearchTest {
+
+  private static final IndexCoordinates INDEX = IndexCoordinates.of("current_connections");
+  private static final Sort SORT = Sort.by(Sort.Direction.DESC, "gmcReferenceNumber");
+
+  @Mock
+  private ElasticsearchRestTemplate elasticsearchRestTemplate;
+
+  @Mock
+  private ElasticsearchConverter elasticsearchConverter;
+
+  @InjectMocks
+  private ElasticsearchMultiSearch elasticsearchMultiSearch;
+
+  @Test
+  void shouldRequestPageInSortOrder() {
+    final var request = elasticsearchMultiSearch.buildRequest(matchAllQuery(),
+        PageRequest.of(2, 20, SORT), null, INDEX);
+
+    final var sorts = request.source().sorts();
+    assertEquals(1, sorts.size());
+    assertEquals("gmcReferenceNumber", ((FieldSortBuilder) sorts.get(0)).getFieldName());
+    assertEquals(SortOrder.DESC, sorts.get(0).order());
+    assertEquals(40, request.source().from());
+    assertEquals(20, request.source().size());
+    assertNull(request.source().fetchSource());
+    assertArrayEquals(new String[]{"current_connections"}, request.indices());
+  }
+
+  @Test
+  void shouldFetchOnlyIncludedSourceFields() {
+    final String[] includes = {"gmcReferenceNumber", "doctorLastName"};
+
+    final var request = elasticsearchMultiSearch.buildRequest(matchAllQuery(),
+        PageRequest.of(0, 20, SORT), includes, INDEX);
+
+    assertArrayEquals(includes, request.source().fetchSource().includes());
+  }
+
+  @Test
+  void shouldReturnResponsesInRequestOrder() {
+    final var first = mock(SearchResponse.class);
+    final var second = mock(SearchResponse.class);
+    final var response = new MultiSearchResponse(new MultiSearchResponse.Item[]{
+        new MultiSearchResponse.Item(first, null),
+        new MultiSearchResponse.Item(second, null)}, 1L);
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(response);
+
+    final var items = elasticsearchMultiSearch.search(List.of(new SearchRequest(),
+        new SearchRequest()));
+
+    assertEquals(2, items.length);
+    assertEquals(first, items[0].getResponse());
+    assertEquals(second, items[1].getResponse());
+  }
+
+  @Test
+  void shouldReadHitsAsDocuments() {
+    final var view = CurrentConnectionsView.builder().id("id1").build();
+    final var hit = new SearchHit(0, "id1", null, Map.of(), Map.of());
+    hit.sourceRef(new BytesArray("{\"gmcReferenceNumber\":\"111\"}"));
+    final var response = mock(SearchResponse.class);
+    when(response.getHits()).thenReturn(
+        new SearchHits(new SearchHit[]{hit}, new TotalHits(1, Relation.EQUAL_TO), 1.0f));
+    when(elasticsearchRestTemplate.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+    when(elasticsearchConverter.read(eq(CurrentConnectionsView.class), any(Document.class)))
+        .thenReturn(view);
+
+    final var content = elasticsearchMultiSearch.read(response, CurrentConnectionsView.class);
+
+    assertEquals(List.of(view), content);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionRequestType;
+import uk.nhs.hee.tis.revalidation.connection.exception.GmcUnavailableException;
+
+class GmcCallGuardTest {
+
+  private static final int INITIAL_LIMIT = 10;
+
+  private CircuitBreaker circuitBreaker;
+  private RateLimiter rateLimiter;
+  private Bulkhead addBulkhead;
+  private Bulkhead removeBulkhead;
+  private GmcCallGuard gmcCallGuard;
+
+  @BeforeEach
+  void setUp() {
+    circuitBreaker = CircuitBreaker.ofDefaults("gmc");
+    rateLimiter = RateLimiter.of("gmc", RateLimiterConfig.custom()
+        .limitForPeriod(INITIAL_LIMIT)
+        .limitRefreshPeriod(Duration.ofSeconds(1))
+        .timeoutDuration(Duration.ZERO)
+        .build());
+    final var bulkheadConfig = BulkheadConfig.custom().maxConcurrentCalls(1)
+        .maxWaitDuration(Duration.ZERO).build();
+    addBulkhead = Bulkhead.of("gmc-add", bulkheadConfig);
+    removeBulkhead = Bulkhead.of("gmc-remove", bulkheadConfig);
+    gmcCallGuard = new GmcCallGuard(circuitBreaker, rateLimiter, addBulkhead, removeBulkhead,
+        50, 1, 20);
+  }
+
+  @Test
+  void shouldReturnGmcResponse() {
+    assertThat(gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response"),
+        is("response"));
+  }
+
+  @Test
+  void shouldFailFastWhenCircuitBreakerIsOpen() {
+    circuitBreaker.transitionToOpenState();
+
+    assertThrows(GmcUnavailableException.class,
+        () -> gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response"));
+  }
+
+  @Test
+  void shouldNotChangeRateLimitWhenCircuitBreakerIsOpen() {
+    circuitBreaker.transitionToOpenState();
+
+    assertThrows(GmcUnavailableException.class,
+        () -> gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response"));
+
+    assertThat(gmcCallGuard.getCurrentLimit(), is(INITIAL_LIMIT));
+  }
+
+  @Test
+  void shouldNotRecordRateLimitedCallsAsCircuitBreakerFailures() {
+    rateLimiter.drainPermissions();
+
+    assertThrows(GmcUnavailableException.class,
+        () -> gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response"));
+
+    assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls(), is(0));
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls(), is(0));
+  }
+
+  @Test
+  void shouldRejectWhenBulkheadIsFull() {
+    addBulkhead.tryAcquirePermission();
+
+    assertThrows(GmcUnavailableException.class,
+        () -> gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response"));
+  }
+
+  @Test
+  void shouldKeepRemoveTrafficSeparateFromAddTraffic() {
+    addBulkhead.tryAcquirePermission();
+
+    assertThat(gmcCallGuard.execute(ConnectionRequestType.REMOVE, () -> "response"),
+        is("response"));
+  }
+
+  @Test
+  void shouldRejectWhenRateLimitReached() {
+    rateLimiter.drainPermissions();
+
+    assertThrows(GmcUnavailableException.class,
+        () -> gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response"));
+  }
+
+  @Test
+  void shouldReduceRateLimitWhenGmcIsSlow() {
+    for (int i = 0; i < 3; i++) {
+      gmcCallGuard.execute(ConnectionRequestType.ADD, () -> {
+        sleep(200);
+        return "response";
+      });
+    }
+
+    assertThat(gmcCallGuard.getCurrentLimit(), lessThan(INITIAL_LIMIT));
+    assertThat(rateLimiter.getRateLimiterConfig().getLimitForPeriod(),
+        is(gmcCallGuard.getCurrentLimit()));
+  }
+
+  @Test
+  void shouldRaiseRateLimitWhenGmcIsFast() {
+    gmcCallGuard.execute(ConnectionRequestType.ADD, () -> "response");
+
+    assertThat(gmcCallGuard.getCurrentLimit(), is(INITIAL_LIMIT + 1));
+  }
+
+  @Test
+  void shouldNotChangeRateLimitWhenGmcCallFails() {
+    assertThrows(IllegalStateException.class,
+        () -> gmcCallGuard.execute(ConnectionRequestType.ADD, () -> {
+          throw new IllegalStateException("connection refused");
+        }));
+
+    assertThat(gmcCallGuard.getCurrentLimit(), is(INITIAL_LIMIT));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -29,15 +29,16 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 import com.github.javafaker.Faker;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.ratelimiter.RateLimiter;
 import java.time.LocalDate;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.ws.client.core.WebServiceTemplate;
 import org.springframework.ws.soap.client.core.SoapActionCallback;
 import uk.nhs.hee.tis.gmc.client.generated.TryAddDoctor;
@@ -69,7 +70,6 @@ class GmcClientServiceTest {
   @Mock
   private TryRemoveDoctorResponseCT tryRemoveDoctorResponseCT;
 
-  @InjectMocks
   private GmcClientService gmcClientService;
 
   private String changeReason;
@@ -97,10 +97,11 @@ class GmcClientServiceTest {
     final var soapAction = faker.internet().url();
     final var userName = faker.name().username();
     final var password = faker.random().hex();
-    ReflectionTestUtils.setField(gmcClientService, "gmcConnectUrl", gmcUrl);
-    ReflectionTestUtils.setField(gmcClientService, "gmcUserName", userName);
-    ReflectionTestUtils.setField(gmcClientService, "gmcPassword", password);
-    ReflectionTestUtils.setField(gmcClientService, "gmcSoapBaseAction", soapAction);
+    final var gmcCallGuard = new GmcCallGuard(CircuitBreaker.ofDefaults("gmc"),
+        RateLimiter.ofDefaults("gmc"), Bulkhead.ofDefaults("gmc-add"),
+        Bulkhead.ofDefaults("gmc-remove"), 1000, 1, 50);
+    gmcClientService = new GmcClientService(webServiceTemplate, gmcCallGuard, gmcUrl, soapAction,
+        userName, password);
   }
 
   @Test
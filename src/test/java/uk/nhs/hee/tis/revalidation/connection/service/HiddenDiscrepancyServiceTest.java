@@ -30,6 +30,7 @@ import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -38,6 +39,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome.EXISTING;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome.FAILED;
+import static uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome.INSERTED;
 
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -52,6 +56,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
@@ -68,6 +75,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -76,9 +84,15 @@ import uk.nhs.hee.tis.revalidation.connection.dto.HiddenDiscrepancyDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyDto;
 import uk.nhs.hee.tis.revalidation.connection.dto.HideDiscrepancyResponseDto;
 import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
+import uk.nhs.hee.tis.revalidation.connection.entity.OutboxMessage;
+import uk.nhs.hee.tis.revalidation.connection.event.HiddenDiscrepanciesChangedApplicationEvent;
 import uk.nhs.hee.tis.revalidation.connection.mapper.HiddenDiscrepancyMapper;
 import uk.nhs.hee.tis.revalidation.connection.mapper.HideDiscrepancyMapper;
+import uk.nhs.hee.tis.revalidation.connection.message.OutboxWriter;
+import uk.nhs.hee.tis.revalidation.connection.message.payloads.HiddenDiscrepanciesChangedMessage;
 import uk.nhs.hee.tis.revalidation.connection.message.payloads.IndexSyncMessage;
+import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyCustomRepository.UpsertOutcome;
 import uk.nhs.hee.tis.revalidation.connection.repository.HiddenDiscrepancyRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -91,6 +105,7 @@ class HiddenDiscrepancyServiceTest {
   private static final LocalDate HIDDEN_UNTIL = LocalDate.of(2027, Month.DECEMBER, 31);
   private static final String EXCHANGE = "exchange";
   private static final String ES_SYNC_DATA_ROUTING_KEY = "esSyncDataRoutingKey";
+  private static final int EXPIRY_BATCH_SIZE = 500;
   private static final String GMC_ID_1 = "GMC1";
   private static final String GMC_ID_2 = "GMC2";
   private static final String GMC_ID_3 = "GMC3";
@@ -104,26 +119,34 @@ class HiddenDiscrepancyServiceTest {
   @Captor
   ArgumentCaptor<HiddenDiscrepancy> deleteCaptor;
   @Captor
-  ArgumentCaptor<List<String>> gmcIdsCaptor;
-  @Captor
   ArgumentCaptor<IndexSyncMessage<List<HiddenDiscrepancy>>> syncMessageCaptor;
+  @Captor
+  ArgumentCaptor<HiddenDiscrepanciesChangedApplicationEvent> changedEventCaptor;
   @Mock
   private HiddenDiscrepancyRepository hiddenDiscrepancyRepository;
   @Mock
+  private HiddenDiscrepancyCustomRepository hiddenDiscrepancyCustomRepository;
+  @Mock
   private HideDiscrepancyMapper hideDiscrepancyMapper;
   @Mock
   private HiddenDiscrepancyMapper hiddenDiscrepancyMapper;
   @Mock
   private RabbitTemplate rabbitTemplate;
+  @Mock
+  private ApplicationEventPublisher applicationEventPublisher;
+  @Mock
+  private OutboxWriter outboxWriter;
   private HiddenDiscrepancyService service;
 
   @BeforeEach
   void setup() {
     Clock fixedClock = Clock.fixed(Instant.parse("2026-06-05T00:00:00Z"), ZoneOffset.UTC);
-    service = new HiddenDiscrepancyService(hiddenDiscrepancyRepository, hideDiscrepancyMapper,
-        rabbitTemplate, hiddenDiscrepancyMapper, fixedClock);
+    service = new HiddenDiscrepancyService(hiddenDiscrepancyRepository,
+        hiddenDiscrepancyCustomRepository, hideDiscrepancyMapper, rabbitTemplate, hiddenDiscrepancyMapper, fixedClock,
+        applicationEventPublisher, outboxWriter);
     setField(service, "exchange", EXCHANGE);
     setField(service, "esSyncDataRoutingKey", ES_SYNC_DATA_ROUTING_KEY);
+    setField(service, "expiryBatchSize", EXPIRY_BATCH_SIZE);
 
     hd1 = HiddenDiscrepancy.builder()
         .gmcId(GMC_ID_1)
@@ -236,7 +259,7 @@ class HiddenDiscrepancyServiceTest {
   }
 
   @Test
-  void shouldNotSaveAndShouldReturnExistingHiddenWhenAllRequestedAreAlreadyHidden() {
+  void shouldReturnExistingHiddenWhenAllRequestedAreAlreadyHidden() {
     HideDiscrepancyDto dto = HideDiscrepancyDto.builder()
         .adminDesignatedBodyCodes(List.of(ADMIN_DBC_1))
         .hiddenBy(HIDDEN_BY)
@@ -244,9 +267,8 @@ class HiddenDiscrepancyServiceTest {
         .doctors(List.of(doc(GMC_ID_1, ADMIN_DBC_1, null), doc(GMC_ID_2, ADMIN_DBC_1, null)))
         .build();
 
-    when(hiddenDiscrepancyRepository
-        .findByGmcIdInAndHiddenForDesignatedBodyCodeIn(anyList(), anyList()))
-        .thenReturn(List.of(entity(GMC_ID_1), entity(GMC_ID_2)));
+    mockMapperToReturnRealEntity();
+    givenOutcomes(Map.of(GMC_ID_1, EXISTING, GMC_ID_2, EXISTING));
 
     HideDiscrepancyResponseDto response = service.hideDiscrepancies(dto);
 
@@ -272,12 +294,13 @@ class HiddenDiscrepancyServiceTest {
     assertListContainsExactlyIgnoringOrder(
         item2.getFailedDbcCodes() == null ? List.of() : item2.getFailedDbcCodes(), List.of());
 
-    verify(hiddenDiscrepancyRepository, never()).saveAll(anyList());
-    verifyNoInteractions(hideDiscrepancyMapper);
+    verify(hiddenDiscrepancyCustomRepository).insertAbsent(anyList());
+    verifyNoInteractions(hiddenDiscrepancyRepository);
+    verifyNoInteractions(applicationEventPublisher);
   }
 
   @Test
-  void shouldSaveOnlyNewGmcIdsAndReturnSuccessfulAndExistingListsWhenSomeAreNew() {
+  void shouldReturnSuccessfulAndExistingListsWhenSomeAreNew() {
     final HideDiscrepancyDto dto = HideDiscrepancyDto.builder()
         .adminDesignatedBodyCodes(List.of(ADMIN_DBC_1))
         .hiddenBy(HIDDEN_BY)
@@ -287,13 +310,8 @@ class HiddenDiscrepancyServiceTest {
             doc(GMC_ID_3, ADMIN_DBC_1, null)))
         .build();
 
-    when(hiddenDiscrepancyRepository
-        .findByGmcIdInAndHiddenForDesignatedBodyCodeIn(anyList(), anyList()))
-        .thenReturn(List.of(entity(GMC_ID_1)));
-    when(hiddenDiscrepancyRepository.saveAll(anyList()))
-        .thenReturn(List.of(entity(GMC_ID_2), entity(GMC_ID_3)));
-
     mockMapperToReturnRealEntity();
+    givenOutcomes(Map.of(GMC_ID_1, EXISTING, GMC_ID_2, INSERTED, GMC_ID_3, INSERTED));
 
     HideDiscrepancyResponseDto response = service.hideDiscrepancies(dto);
 
@@ -314,21 +332,24 @@ class HiddenDiscrepancyServiceTest {
     assertListContainsExactlyIgnoringOrder(it2.getSuccessfulDbcCodes(), List.of(ADMIN_DBC_1));
     assertListContainsExactlyIgnoringOrder(it3.getSuccessfulDbcCodes(), List.of(ADMIN_DBC_1));
 
-    verify(hiddenDiscrepancyRepository).saveAll(saveCaptor.capture());
+    // one bulk write of every requested pair, without looking up existing ones first
+    verify(hiddenDiscrepancyCustomRepository).insertAbsent(saveCaptor.capture());
     List<HiddenDiscrepancy> saved = saveCaptor.getValue();
-    assertSavedEntities(saved, Set.of(GMC_ID_2, GMC_ID_3), dto);
+    assertSavedEntities(saved, Set.of(GMC_ID_1, GMC_ID_2, GMC_ID_3), dto);
+    verifyNoInteractions(hiddenDiscrepancyRepository);
 
-    // mapper should be called only for new ids
-    verify(hideDiscrepancyMapper, never()).toEntity(eq(dto), eq(GMC_ID_1),
-        any(LocalDateTime.class), anyString(), anyString(), anyString());
+    verify(hideDiscrepancyMapper).toEntity(eq(dto), eq(GMC_ID_1), any(LocalDateTime.class),
+        eq(ADMIN_DBC_1), eq(ADMIN_DBC_1), eq(null));
     verify(hideDiscrepancyMapper).toEntity(eq(dto), eq(GMC_ID_2), any(LocalDateTime.class),
         eq(ADMIN_DBC_1), eq(ADMIN_DBC_1), eq(null));
     verify(hideDiscrepancyMapper).toEntity(eq(dto), eq(GMC_ID_3), any(LocalDateTime.class),
         eq(ADMIN_DBC_1), eq(ADMIN_DBC_1), eq(null));
+    verify(applicationEventPublisher).publishEvent(changedEventCaptor.capture());
+    assertEquals(Set.of(GMC_ID_2, GMC_ID_3), changedEventCaptor.getValue().getGmcIds());
   }
 
   @Test
-  void shouldReturnFailedListWhenDbDoesNotReturnAllAsHiddenAfterSaveAttempt() {
+  void shouldReturnFailedListWhenBulkWriteFailsForSomeItems() {
     final HideDiscrepancyDto dto = HideDiscrepancyDto.builder()
         .adminDesignatedBodyCodes(List.of(ADMIN_DBC_1))
         .hiddenBy(HIDDEN_BY)
@@ -337,13 +358,8 @@ class HiddenDiscrepancyServiceTest {
             doc(GMC_ID_3, ADMIN_DBC_1, null)))
         .build();
 
-    when(hiddenDiscrepancyRepository
-        .findByGmcIdInAndHiddenForDesignatedBodyCodeIn(anyList(), anyList()))
-        .thenReturn(List.of());
-    when(hiddenDiscrepancyRepository.saveAll(anyList()))
-        .thenReturn(List.of(entity(GMC_ID_1), entity(GMC_ID_2)));
-
     mockMapperToReturnRealEntity();
+    givenOutcomes(Map.of(GMC_ID_1, INSERTED, GMC_ID_2, INSERTED, GMC_ID_3, FAILED));
 
     HideDiscrepancyResponseDto response = service.hideDiscrepancies(dto);
 
@@ -372,14 +388,8 @@ class HiddenDiscrepancyServiceTest {
             doc(GMC_ID_2, ADMIN_DBC_1, null)))
         .build();
 
-    when(hiddenDiscrepancyRepository
-        .findByGmcIdInAndHiddenForDesignatedBodyCodeIn(anyList(), anyList()))
-        .thenReturn(List.of());
-
-    when(hiddenDiscrepancyRepository.saveAll(anyList()))
-        .thenReturn(List.of(entity(GMC_ID_1), entity(GMC_ID_2)));
-
     mockMapperToReturnRealEntity();
+    givenOutcomes(Map.of(GMC_ID_1, INSERTED, GMC_ID_2, INSERTED));
 
     HideDiscrepancyResponseDto response = service.hideDiscrepancies(dto);
 
@@ -397,13 +407,7 @@ class HiddenDiscrepancyServiceTest {
     assertListContainsExactlyIgnoringOrder(
         b2.getFailedDbcCodes() == null ? List.of() : b2.getFailedDbcCodes(), List.of());
 
-    verify(hiddenDiscrepancyRepository)
-        .findByGmcIdInAndHiddenForDesignatedBodyCodeIn(gmcIdsCaptor.capture(),
-            eq(List.of(ADMIN_DBC_1)));
-    List<String> requestedGmcsAtFirstQuery = gmcIdsCaptor.getValue();
-    assertListContainsExactlyIgnoringOrder(requestedGmcsAtFirstQuery, List.of(GMC_ID_1, GMC_ID_2));
-
-    verify(hiddenDiscrepancyRepository).saveAll(saveCaptor.capture());
+    verify(hiddenDiscrepancyCustomRepository).insertAbsent(saveCaptor.capture());
     assertSavedEntities(saveCaptor.getValue(), Set.of(GMC_ID_1, GMC_ID_2), dto);
 
     verify(hideDiscrepancyMapper, times(1)).toEntity(eq(dto), eq(GMC_ID_1),
@@ -423,16 +427,11 @@ class HiddenDiscrepancyServiceTest {
         .doctors(List.of(doc(GMC_ID_1, ADMIN_DBC_1, ADMIN_DBC_2), doc(GMC_ID_2, ADMIN_DBC_1, null)))
         .build();
 
-    // none exist beforehand
-    when(hiddenDiscrepancyRepository.findByGmcIdInAndHiddenForDesignatedBodyCodeIn(anyList(),
-        anyList()))
-        .thenReturn(List.of());
-
     // mapper should produce real entities for each toSave
     mockMapperToReturnRealEntity();
 
-    // make saveAll return the passed list (simulate successful save)
-    when(hiddenDiscrepancyRepository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+    // none exist beforehand, so every pair is inserted
+    givenOutcomes(Map.of(GMC_ID_1, INSERTED, GMC_ID_2, INSERTED));
 
     HideDiscrepancyResponseDto response = service.hideDiscrepancies(dto);
 
@@ -475,26 +474,59 @@ class HiddenDiscrepancyServiceTest {
   @Test
   void shouldRemoveExpiredHiddenDiscrepanciesWhenExpiredRecordsExist() {
     LocalDate expectedDate = LocalDate.of(2026, Month.JUNE, 5);
-    when(hiddenDiscrepancyRepository.deleteByHiddenUntilDateLessThan(expectedDate))
-        .thenReturn(2L);
+    givenExpiredBatches(expectedDate, Set.of(GMC_ID_1, GMC_ID_2));
+    when(hiddenDiscrepancyCustomRepository.deleteExpired(Set.of(GMC_ID_1, GMC_ID_2),
+        expectedDate)).thenReturn(2L);
 
     service.removeExpiredHiddenDiscrepancies();
 
-    verify(hiddenDiscrepancyRepository).deleteByHiddenUntilDateLessThan(expectedDate);
+    verify(applicationEventPublisher).publishEvent(changedEventCaptor.capture());
+    assertEquals(Set.of(GMC_ID_1, GMC_ID_2), changedEventCaptor.getValue().getGmcIds());
     assertThat(logAppender.list)
         .anyMatch(event -> event.getFormattedMessage()
             .contains("Removed 2 expired hidden discrepancies"));
   }
 
   @Test
-  void shouldNotFailWhenNoExpiredHiddenDiscrepanciesExist() {
+  void shouldPublishChangeForEachBatchOfExpiredHiddenDiscrepancies() {
     LocalDate expectedDate = LocalDate.of(2026, Month.JUNE, 5);
-    when(hiddenDiscrepancyRepository.deleteByHiddenUntilDateLessThan(expectedDate))
+    givenExpiredBatches(expectedDate, Set.of(GMC_ID_1, GMC_ID_2), Set.of(GMC_ID_3));
+    when(hiddenDiscrepancyCustomRepository.deleteExpired(Set.of(GMC_ID_1, GMC_ID_2),
+        expectedDate)).thenReturn(3L);
+    when(hiddenDiscrepancyCustomRepository.deleteExpired(Set.of(GMC_ID_3), expectedDate))
+        .thenReturn(1L);
+
+    service.removeExpiredHiddenDiscrepancies();
+
+    verify(applicationEventPublisher, times(2)).publishEvent(changedEventCaptor.capture());
+    assertEquals(Set.of(GMC_ID_1, GMC_ID_2), changedEventCaptor.getAllValues().get(0).getGmcIds());
+    assertEquals(Set.of(GMC_ID_3), changedEventCaptor.getAllValues().get(1).getGmcIds());
+    assertThat(logAppender.list)
+        .anyMatch(event -> event.getFormattedMessage()
+            .contains("Removed 4 expired hidden discrepancies"));
+  }
+
+  @Test
+  void shouldNotPublishChangeWhenBatchWasAlreadyRemoved() {
+    LocalDate expectedDate = LocalDate.of(2026, Month.JUNE, 5);
+    givenExpiredBatches(expectedDate, Set.of(GMC_ID_1));
+    when(hiddenDiscrepancyCustomRepository.deleteExpired(Set.of(GMC_ID_1), expectedDate))
         .thenReturn(0L);
 
     service.removeExpiredHiddenDiscrepancies();
 
-    verify(hiddenDiscrepancyRepository).deleteByHiddenUntilDateLessThan(expectedDate);
+    verifyNoInteractions(applicationEventPublisher);
+  }
+
+  @Test
+  void shouldNotFailWhenNoExpiredHiddenDiscrepanciesExist() {
+    LocalDate expectedDate = LocalDate.of(2026, Month.JUNE, 5);
+    givenExpiredBatches(expectedDate);
+
+    service.removeExpiredHiddenDiscrepancies();
+
+    verify(hiddenDiscrepancyCustomRepository, never()).deleteExpired(any(), any());
+    verifyNoInteractions(applicationEventPublisher);
     assertThat(logAppender.list)
         .anyMatch(event -> event.getFormattedMessage()
             .contains("No expired hidden discrepancies found for removal"));
@@ -599,6 +631,8 @@ class HiddenDiscrepancyServiceTest {
     assertThat(result.getGmcId()).isEqualTo(GMC_ID_1);
     assertThat(result.getHiddenForDesignatedBodyCode()).isEqualTo(ADMIN_DBC_1);
     assertThat(result.getId()).isEqualTo(hiddenDiscrepancyId);
+    verify(applicationEventPublisher).publishEvent(changedEventCaptor.capture());
+    assertEquals(Set.of(GMC_ID_1), changedEventCaptor.getValue().getGmcIds());
   }
 
   @Test
@@ -679,15 +713,24 @@ class HiddenDiscrepancyServiceTest {
     return d;
   }
 
-  /**
-   * Simple entity builder for repository return values (only gmcId is relevant for service logic).
-   *
-   * @param gmcId The GMC Number for the returned object
-   * @return The HiddenDiscrepancy
-   */
-  private HiddenDiscrepancy entity(String gmcId) {
-    return HiddenDiscrepancy.builder().gmcId(gmcId).hiddenForDesignatedBodyCode(ADMIN_DBC_1)
-        .build();
+  // Answer the bulk write with the outcome for the gmcId of each hidden discrepancy
+  @SafeVarargs
+  private void givenExpiredBatches(LocalDate date, Set<String>... batches) {
+    doAnswer(inv -> {
+      Consumer<Set<String>> batchConsumer = inv.getArgument(2);
+      Stream.of(batches).forEach(batchConsumer);
+      return null;
+    }).when(hiddenDiscrepancyCustomRepository)
+        .forEachExpiredGmcIdBatch(eq(date), eq(EXPIRY_BATCH_SIZE), any());
+  }
+
+  private void givenOutcomes(Map<String, UpsertOutcome> outcomesByGmcId) {
+    when(hiddenDiscrepancyCustomRepository.insertAbsent(anyList())).thenAnswer(inv -> {
+      List<HiddenDiscrepancy> toSave = inv.getArgument(0);
+      return toSave.stream()
+          .map(hd -> outcomesByGmcId.get(hd.getGmcId()))
+          .collect(Collectors.toList());
+    });
   }
 
   // Mock mapper to return a real entity based on the input dto, gmcId and supplied dbc
@@ -773,6 +816,59 @@ class HiddenDiscrepancyServiceTest {
     service.showAllHiddenDiscrepanciesForGmcId(GMC_ID_1);
 
     verify(hiddenDiscrepancyRepository).deleteByGmcId(GMC_ID_1);
+    verify(applicationEventPublisher).publishEvent(changedEventCaptor.capture());
+    assertEquals(Set.of(GMC_ID_1), changedEventCaptor.getValue().getGmcIds());
+  }
+
+  @Test
+  void shouldWriteChangedMessageToOutboxWhenEnabled() {
+    setField(service, "outboxEnabled", true);
+    setField(service, "changedRoutingKey", "changedRoutingKey");
+    OutboxMessage outboxMessage = OutboxMessage.builder().id("message1").build();
+    when(outboxWriter.writeWithMessages(any(), any())).thenAnswer(invocation -> {
+      Supplier<?> writes = invocation.getArgument(0);
+      Function<Object, List<OutboxMessage>> messages = invocation.getArgument(1);
+      Object result = writes.get();
+      assertEquals(List.of(outboxMessage), messages.apply(result));
+      return result;
+    });
+    when(outboxWriter.create(eq("changedRoutingKey"), any(HiddenDiscrepanciesChangedMessage.class)))
+        .thenReturn(outboxMessage);
+
+    service.showAllHiddenDiscrepanciesForGmcId(GMC_ID_1);
+
+    verify(hiddenDiscrepancyRepository).deleteByGmcId(GMC_ID_1);
+    verifyNoInteractions(applicationEventPublisher);
+    ArgumentCaptor<HiddenDiscrepanciesChangedMessage> messageCaptor =
+        ArgumentCaptor.forClass(HiddenDiscrepanciesChangedMessage.class);
+    verify(outboxWriter).create(eq("changedRoutingKey"), messageCaptor.capture());
+    assertEquals(List.of(GMC_ID_1), messageCaptor.getValue().getGmcIds());
+  }
+
+  @Test
+  void shouldReportEachHiddenDbcOnceWhenOutboxRetriesTheWrites() {
+    setField(service, "outboxEnabled", true);
+    final HideDiscrepancyDto dto = HideDiscrepancyDto.builder()
+        .adminDesignatedBodyCodes(List.of(ADMIN_DBC_1))
+        .hiddenBy(HIDDEN_BY)
+        .reason(REASON)
+        .hiddenUntilDate(HIDDEN_UNTIL)
+        .doctors(List.of(doc(GMC_ID_1, ADMIN_DBC_1, null)))
+        .build();
+    mockMapperToReturnRealEntity();
+    givenOutcomes(Map.of(GMC_ID_1, INSERTED));
+    // the first commit fails after the writes, so the outbox runs them again
+    when(outboxWriter.writeWithMessages(any(), any())).thenAnswer(invocation -> {
+      Supplier<?> writes = invocation.getArgument(0);
+      writes.get();
+      return writes.get();
+    });
+
+    HideDiscrepancyResponseDto response = service.hideDiscrepancies(dto);
+
+    verify(hiddenDiscrepancyCustomRepository, times(2)).insertAbsent(anyList());
+    assertEquals(1, response.getResults().size());
+    assertEquals(List.of(ADMIN_DBC_1), response.getResults().get(0).getSuccessfulDbcCodes());
   }
 
   @ParameterizedTest
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class LatestConnectionLogCronServiceTest {
+
+  private static final int BATCH_SIZE = 500;
+
+  @Mock
+  private LatestConnectionLogService latestConnectionLogService;
+
+  private LatestConnectionLogCronService service;
+
+  @BeforeEach
+  void setUp() {
+    service = new LatestConnectionLogCronService(latestConnectionLogService, BATCH_SIZE, true);
+  }
+
+  @Test
+  void shouldBackfillLatestConnectionLogs() {
+    service.backfillLatestConnectionLogs();
+
+    verify(latestConnectionLogService).backfill(BATCH_SIZE);
+  }
+
+  @Test
+  void shouldCheckLatestConnectionLogsWithRepair() {
+    service.checkLatestConnectionLogs();
+
+    verify(latestConnectionLogService).checkConsistency(BATCH_SIZE, true);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.nhs.hee.tis.revalidation.connection.entity.ConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.entity.LatestConnectionLog;
+import uk.nhs.hee.tis.revalidation.connection.repository.ConnectionLogCustomRepository;
+import uk.nhs.hee.tis.revalidation.connection.repository.LatestConnectionLogRepository;
+
+@ExtendWith(MockitoExtension.class)
+class LatestConnectionLogServiceTest {
+
+  private static final int BATCH_SIZE = 10;
+  private static final LocalDateTime REQUEST_TIME = LocalDateTime.of(2026, 1, 1, 9, 0);
+
+  @Mock
+  private ConnectionLogCustomRepository connectionLogCustomRepository;
+
+  @Mock
+  private LatestConnectionLogRepository latestConnectionLogRepository;
+
+  private LatestConnectionLogService service;
+
+  private ConnectionLog upToDate;
+  private ConnectionLog outOfDate;
+  private ConnectionLog missing;
+
+  @BeforeEach
+  void setUp() {
+    service = new LatestConnectionLogService(connectionLogCustomRepository,
+        latestConnectionLogRepository);
+
+    upToDate = ConnectionLog.builder().gmcId("1").newDesignatedBodyCode("DBC1")
+        .requestTime(REQUEST_TIME).build();
+    outOfDate = ConnectionLog.builder().gmcId("2").newDesignatedBodyCode("DBC2")
+        .requestTime(REQUEST_TIME).build();
+    missing = ConnectionLog.builder().gmcId("3").newDesignatedBodyCode("DBC3")
+        .requestTime(REQUEST_TIME).build();
+  }
+
+  @Test
+  void shouldBackfillLatestLogsFromAggregation() {
+    when(connectionLogCustomRepository.streamLatestLogs(eq(BATCH_SIZE), any()))
+        .thenAnswer(invocation -> {
+          Consumer<List<ConnectionLog>> chunkConsumer = invocation.getArgument(1);
+          chunkConsumer.accept(List.of(upToDate, missing));
+          return 2L;
+        });
+
+    assertEquals(2, service.backfill(BATCH_SIZE));
+
+    verify(latestConnectionLogRepository).upsertLatest(List.of(upToDate, missing));
+  }
+
+  @Test
+  void shouldReportAndRepairInconsistentLatestLogs() {
+    givenRecordedLatestLogs();
+
+    final var report = service.checkConsistency(BATCH_SIZE, true);
+
+    assertFalse(report.isConsistent());
+    assertEquals(3, report.getExpected());
+    assertEquals(2, report.getRecorded());
+    assertEquals(1, report.getMissing());
+    assertEquals(1, report.getOutOfDate());
+    verify(latestConnectionLogRepository).upsertLatest(List.of(outOfDate, missing));
+  }
+
+  @Test
+  void shouldNotRepairWhenRepairDisabled() {
+    givenRecordedLatestLogs();
+
+    service.checkConsistency(BATCH_SIZE, false);
+
+    verify(latestConnectionLogRepository, never()).upsertLatest(anyList());
+  }
+
+  @Test
+  void shouldReportConsistentLatestLogs() {
+    when(connectionLogCustomRepository.streamLatestLogs(eq(BATCH_SIZE), any()))
+        .thenAnswer(invocation -> {
+          Consumer<List<ConnectionLog>> chunkConsumer = invocation.getArgument(1);
+          chunkConsumer.accept(List.of(upToDate));
+          return 1L;
+        });
+    when(latestConnectionLogRepository.findAllById(List.of("1"))).thenReturn(List.of(
+        LatestConnectionLog.builder().gmcId("1").newDesignatedBodyCode("DBC1")
+            .requestTime(REQUEST_TIME).build()));
+    when(latestConnectionLogRepository.count()).thenReturn(1L);
+
+    assertTrue(service.checkConsistency(BATCH_SIZE, true).isConsistent());
+    verify(latestConnectionLogRepository, never()).upsertLatest(anyList());
+  }
+
+  private void givenRecordedLatestLogs() {
+    when(connectionLogCustomRepository.streamLatestLogs(eq(BATCH_SIZE), any()))
+        .thenAnswer(invocation -> {
+          Consumer<List<ConnectionLog>> chunkConsumer = invocation.getArgument(1);
+          chunkConsumer.accept(List.of(upToDate, outOfDate, missing));
+          return 3L;
+        });
+    when(latestConnectionLogRepository.findAllById(List.of("1", "2", "3"))).thenReturn(List.of(
+        LatestConnectionLog.builder().gmcId("1").newDesignatedBodyCode("DBC1")
+            .requestTime(REQUEST_TIME).build(),
+        LatestConnectionLog.builder().gmcId("2").newDesignatedBodyCode("DBC1")
+            .requestTime(REQUEST_TIME.minusDays(1)).build()));
+    when(latestConnectionLogRepository.count()).thenReturn(2L);
+  }
+}
@@ -22,21 +22,49 @@
 package uk.nhs.hee.tis.revalidation.connection.service;
 
 import static java.time.LocalDate.now;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import com.github.javafaker.Faker;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.rest.RestStatus;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
 import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.entity.HiddenDiscrepancy;
 import uk.nhs.hee.tis.revalidation.connection.entity.MasterDoctorView;
 import uk.nhs.hee.tis.revalidation.connection.mapper.ConnectionInfoMapper;
 import uk.nhs.hee.tis.revalidation.connection.repository.MasterElasticSearchRepository;
@@ -49,6 +77,10 @@ class MasterElasticSearchServiceTest {
   MasterElasticSearchRepository masterElasticSearchRepository;
   @Mock
   ConnectionInfoMapper connectionInfoMapper;
+  @Mock
+  ElasticsearchRestTemplate elasticsearchRestTemplate;
+  @Mock
+  ElasticsearchConverter elasticsearchConverter;
   @InjectMocks
   MasterElasticSearchService masterElasticSearchService;
   private String gmcRef1;
@@ -117,4 +149,353 @@ class MasterElasticSearchServiceTest {
     masterElasticSearchService.updateMasterIndex(connectionInfoDto);
     verify(masterElasticSearchRepository).save(currentDoctorView);
   }
+
+  @Test
+  void shouldWriteOverExistingRecordsAndInsertNewOnesInOneBulkRequest() {
+    final var newDoctorView = MasterDoctorView.builder()
+        .gmcReferenceNumber(faker.number().digits(7))
+        .build();
+    final var existingView = MasterDoctorView.builder()
+        .id("existing1")
+        .tcsPersonId(111L)
+        .gmcReferenceNumber(gmcRef1)
+        .build();
+    final var otherPersonView = MasterDoctorView.builder()
+        .id("existing2")
+        .tcsPersonId(222L)
+        .gmcReferenceNumber(gmcRef1)
+        .build();
+    givenIndex();
+
+    final var bulkRequest = masterElasticSearchService.buildBulkRequest(
+        List.of(currentDoctorView, newDoctorView), List.of(existingView, otherPersonView));
+
+    assertThat(bulkRequest.getRefreshPolicy(), is(RefreshPolicy.NONE));
+    assertThat(bulkRequest.requests(), hasSize(2));
+    final var update = (IndexRequest) bulkRequest.requests().get(0);
+    assertThat(update.index(), is("masterdoctorindex"));
+    assertThat(update.id(), is("existing1"));
+    final var insert = (IndexRequest) bulkRequest.requests().get(1);
+    assertThat(insert.id(), nullValue());
+  }
+
+  @Test
+  void shouldReportFailedItemsOfBulkUpsert() {
+    setField(masterElasticSearchService, "bulkUpsertBatchSize", 500);
+    when(connectionInfoMapper.dtoToMaster(connectionInfoDto)).thenReturn(currentDoctorView);
+    givenIndex();
+
+    @SuppressWarnings("unchecked")
+    SearchHits<MasterDoctorView> hits = (SearchHits<MasterDoctorView>) mock(SearchHits.class);
+    when(hits.getSearchHits()).thenReturn(List.of());
+    when(elasticsearchRestTemplate.search(any(Query.class), eq(MasterDoctorView.class),
+        any(IndexCoordinates.class))).thenReturn(hits);
+
+    final var failedItem = mock(BulkItemResponse.class);
+    when(failedItem.isFailed()).thenReturn(true);
+    when(failedItem.getItemId()).thenReturn(0);
+    when(failedItem.getFailureMessage()).thenReturn("mapper_parsing_exception");
+    final var bulkResponse = mock(BulkResponse.class);
+    when(bulkResponse.getItems()).thenReturn(new BulkItemResponse[]{failedItem});
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(bulkResponse);
+
+    final var result = masterElasticSearchService.updateMasterIndex(List.of(connectionInfoDto));
+
+    assertThat(result.getWritten(), is(0));
+    assertThat(result.getFailures(), hasSize(1));
+    assertThat(result.getFailures().get(0).getGmcReferenceNumber(), is(gmcRef1));
+    assertThat(result.getFailures().get(0).getTcsPersonId(), is(111L));
+    assertThat(result.getFailures().get(0).getMessage(), is("mapper_parsing_exception"));
+  }
+
+  @Test
+  void shouldCountWrittenItemsOfBulkUpsert() {
+    setField(masterElasticSearchService, "bulkUpsertBatchSize", 500);
+    when(connectionInfoMapper.dtoToMaster(connectionInfoDto)).thenReturn(currentDoctorView);
+    givenIndex();
+
+    @SuppressWarnings("unchecked")
+    SearchHit<MasterDoctorView> hit = (SearchHit<MasterDoctorView>) mock(SearchHit.class);
+    when(hit.getContent()).thenReturn(MasterDoctorView.builder()
+        .id("existing1").tcsPersonId(111L).gmcReferenceNumber(gmcRef1).build());
+    @SuppressWarnings("unchecked")
+    SearchHits<MasterDoctorView> hits = (SearchHits<MasterDoctorView>) mock(SearchHits.class);
+    when(hits.getSearchHits()).thenReturn(List.of(hit));
+    when(elasticsearchRestTemplate.search(any(Query.class), eq(MasterDoctorView.class),
+        any(IndexCoordinates.class))).thenReturn(hits);
+
+    final var writtenItem = mock(BulkItemResponse.class);
+    when(writtenItem.isFailed()).thenReturn(false);
+    final var bulkResponse = mock(BulkResponse.class);
+    when(bulkResponse.getItems()).thenReturn(new BulkItemResponse[]{writtenItem});
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(bulkResponse);
+
+    final var result = masterElasticSearchService.updateMasterIndex(List.of(connectionInfoDto));
+
+    assertThat(result.getWritten(), is(1));
+    assertThat(result.getFailures(), hasSize(0));
+  }
+
+  @Test
+  void shouldWriteOnlyTheLastUpdateOfEachDoctor() {
+    final var first = ConnectionInfoDto.builder().gmcReferenceNumber(gmcRef1).tcsPersonId(111L)
+        .designatedBody(designatedBody1).build();
+    final var personOnly = ConnectionInfoDto.builder().tcsPersonId(222L).build();
+    final var last = ConnectionInfoDto.builder().gmcReferenceNumber(gmcRef1).tcsPersonId(111L)
+        .designatedBody(designatedBody2).build();
+    final var personOnlyAgain = ConnectionInfoDto.builder().tcsPersonId(222L).build();
+    final var noKey = ConnectionInfoDto.builder().build();
+
+    final var latest = MasterElasticSearchService.latestUpdatePerDoctor(
+        List.of(first, personOnly, last, noKey, personOnlyAgain));
+
+    assertThat(latest, hasSize(3));
+    assertThat(latest.get(0), sameInstance(noKey));
+    assertThat(latest.get(1), sameInstance(last));
+    assertThat(latest.get(2), sameInstance(personOnlyAgain));
+  }
+
+  @Test
+  void shouldDeriveDocumentIdFromGmcNumberOnly() {
+    assertThat(MasterElasticSearchService.documentId("1234567"), is("gmc:1234567"));
+    assertThat(MasterElasticSearchService.documentId(""), nullValue());
+    assertThat(MasterElasticSearchService.documentId(null), nullValue());
+  }
+
+  @Test
+  void shouldSaveToDeterministicIdWithoutLookup() {
+    setField(masterElasticSearchService, "deterministicIdsEnabled", true);
+    when(connectionInfoMapper.dtoToMaster(connectionInfoDto)).thenReturn(currentDoctorView);
+
+    masterElasticSearchService.updateMasterIndex(connectionInfoDto);
+
+    assertThat(currentDoctorView.getId(), is("gmc:" + gmcRef1));
+    verify(masterElasticSearchRepository).save(currentDoctorView);
+    verify(masterElasticSearchRepository, never())
+        .findByGmcReferenceNumberAndTcsPersonId(any(), any());
+  }
+
+  @Test
+  void shouldBulkUpsertToDeterministicIdsWithoutLookup() {
+    setField(masterElasticSearchService, "bulkUpsertBatchSize", 500);
+    setField(masterElasticSearchService, "deterministicIdsEnabled", true);
+    when(connectionInfoMapper.dtoToMaster(connectionInfoDto)).thenReturn(currentDoctorView);
+    givenIndex();
+
+    final var writtenItem = mock(BulkItemResponse.class);
+    when(writtenItem.isFailed()).thenReturn(false);
+    final var bulkResponse = mock(BulkResponse.class);
+    when(bulkResponse.getItems()).thenReturn(new BulkItemResponse[]{writtenItem});
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(bulkResponse);
+
+    final var result = masterElasticSearchService.updateMasterIndex(List.of(connectionInfoDto));
+
+    assertThat(result.getWritten(), is(1));
+    verify(elasticsearchRestTemplate, never()).search(any(Query.class),
+        eq(MasterDoctorView.class), any(IndexCoordinates.class));
+
+    final var bulkRequest = masterElasticSearchService.buildBulkRequest(
+        List.of(currentDoctorView), List.of());
+    assertThat(bulkRequest.requests().get(0).id(), is("gmc:" + gmcRef1));
+  }
+
+  @Test
+  void shouldLookUpRecordsWithoutGmcNumberWhenDeterministicIdsEnabled() {
+    setField(masterElasticSearchService, "deterministicIdsEnabled", true);
+    currentDoctorView.setGmcReferenceNumber(null);
+    final var existing = MasterDoctorView.builder().id("legacy").tcsPersonId(111L).build();
+    when(connectionInfoMapper.dtoToMaster(connectionInfoDto)).thenReturn(currentDoctorView);
+    when(masterElasticSearchRepository.findByTcsPersonId(111L)).thenReturn(List.of(existing));
+
+    masterElasticSearchService.updateMasterIndex(connectionInfoDto);
+
+    assertThat(currentDoctorView.getId(), is("legacy"));
+    verify(masterElasticSearchRepository).save(currentDoctorView);
+  }
+
+  @Test
+  void shouldRekeyAndRemoveDuplicatesOfEachDoctor() {
+    givenIndex();
+    final var rekeyedDoctor = MasterDoctorView.builder()
+        .id("gmc:1234567").gmcReferenceNumber("1234567").tcsPersonId(111L).build();
+    final var duplicateOfRekeyed = MasterDoctorView.builder()
+        .id("legacy1").gmcReferenceNumber("1234567").build();
+    final var latestLegacy = MasterDoctorView.builder()
+        .id("legacy2").gmcReferenceNumber("7654321").tcsPersonId(222L).build();
+    final var olderLegacy = MasterDoctorView.builder()
+        .id("legacy3").gmcReferenceNumber("7654321").build();
+    final var noGmcNumber = MasterDoctorView.builder().id("legacy4").tcsPersonId(333L).build();
+    final var hits = givenScroll(List.of(duplicateOfRekeyed, rekeyedDoctor, latestLegacy,
+        olderLegacy, noGmcNumber));
+    final var rekeyResponse = bulkResponse(
+        bulkItem(DocWriteRequest.OpType.DELETE, null, false),
+        bulkItem(DocWriteRequest.OpType.CREATE, "gmc:7654321", false));
+    final var deleteResponse = bulkResponse(
+        bulkItem(null, "legacy2", false),
+        bulkItem(null, "legacy3", false));
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(rekeyResponse, deleteResponse);
+
+    final var result = masterElasticSearchService.rekeyMasterIndex(500);
+
+    assertThat(result.getScanned(), is(5));
+    assertThat(result.getRekeyed(), is(1));
+    assertThat(result.getDuplicatesRemoved(), is(2));
+    assertThat(latestLegacy.getId(), is("gmc:7654321"));
+    verify(elasticsearchConverter).mapObject(latestLegacy);
+    verify(elasticsearchRestTemplate, times(2)).execute(any());
+    verify(hits).close();
+  }
+
+  @Test
+  void shouldKeepOldRecordsWhenRekeyedRecordIsNotWritten() {
+    givenIndex();
+    final var legacy = MasterDoctorView.builder()
+        .id("legacy1").gmcReferenceNumber("7654321").tcsPersonId(222L).build();
+    givenScroll(List.of(legacy));
+    final var rekeyResponse = bulkResponse(
+        bulkItem(null, null, true));
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(rekeyResponse);
+
+    final var result = masterElasticSearchService.rekeyMasterIndex(500);
+
+    assertThat(result.getRekeyed(), is(0));
+    assertThat(result.getDuplicatesRemoved(), is(0));
+    // no second request deleting the old record
+    verify(elasticsearchRestTemplate, times(1)).execute(any());
+  }
+
+  @Test
+  void shouldOnlyCreateRekeyedRecord() {
+    when(elasticsearchRestTemplate.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+    final var legacy = MasterDoctorView.builder()
+        .id("gmc:7654321").gmcReferenceNumber("7654321").build();
+    when(elasticsearchConverter.mapObject(legacy)).thenReturn(Document.create());
+
+    final var request = masterElasticSearchService.buildRekeyCreate("masterdoctorindex", legacy);
+
+    assertThat(request.id(), is("gmc:7654321"));
+    assertThat(request.opType(), is(DocWriteRequest.OpType.CREATE));
+  }
+
+  @Test
+  void shouldDeleteOldRecordsWhenRecordWasCreatedAtNewIdSinceScroll() {
+    givenIndex();
+    final var latestLegacy = MasterDoctorView.builder()
+        .id("legacy1").gmcReferenceNumber("7654321").tcsPersonId(222L).build();
+    final var olderLegacy = MasterDoctorView.builder()
+        .id("legacy2").gmcReferenceNumber("7654321").build();
+    givenScroll(List.of(latestLegacy, olderLegacy));
+    final var conflict = bulkItem(DocWriteRequest.OpType.CREATE, "gmc:7654321", true);
+    final var failure = mock(BulkItemResponse.Failure.class);
+    when(failure.getStatus()).thenReturn(RestStatus.CONFLICT);
+    when(conflict.getFailure()).thenReturn(failure);
+    final var deleteResponse = bulkResponse(
+        bulkItem(null, "legacy1", false),
+        bulkItem(null, "legacy2", false));
+    when(elasticsearchRestTemplate.execute(any()))
+        .thenReturn(bulkResponse(conflict), deleteResponse);
+
+    final var result = masterElasticSearchService.rekeyMasterIndex(500);
+
+    assertThat(result.getRekeyed(), is(0));
+    assertThat(result.getDuplicatesRemoved(), is(2));
+    verify(elasticsearchRestTemplate, times(2)).execute(any());
+  }
+
+  @Test
+  void shouldReplaceHiddenDiscrepanciesOfTheChangedDoctorsOnly() {
+    when(elasticsearchRestTemplate.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+    when(elasticsearchRestTemplate.getIndexCoordinatesFor(MasterDoctorView.class))
+        .thenReturn(IndexCoordinates.of("masterdoctorindex"));
+    when(elasticsearchConverter.mapObject(any(HiddenDiscrepancy.class))).thenAnswer(invocation -> {
+      HiddenDiscrepancy hiddenDiscrepancy = invocation.getArgument(0);
+      Document document = Document.create();
+      document.put("gmcId", hiddenDiscrepancy.getGmcId());
+      document.put("hiddenForDesignatedBodyCode",
+          hiddenDiscrepancy.getHiddenForDesignatedBodyCode());
+      return document;
+    });
+    final var hiddenDiscrepancy = HiddenDiscrepancy.builder()
+        .gmcId(gmcRef1).hiddenForDesignatedBodyCode(designatedBody1).build();
+    final var gmcRef2 = faker.number().digits(7);
+
+    final var request = masterElasticSearchService.buildHiddenDiscrepanciesUpdate(
+        List.of(gmcRef1, gmcRef2), Map.of(gmcRef1, List.of(hiddenDiscrepancy), gmcRef2, List.of()));
+
+    assertThat(request.indices(), is(new String[]{"masterdoctorindex"}));
+    assertThat(request.isRefresh(), is(false));
+    assertThat(request.isAbortOnVersionConflict(), is(false));
+    @SuppressWarnings("unchecked")
+    final var params = (Map<String, List<Map<String, Object>>>) request.getScript().getParams()
+        .get("hiddenDiscrepancies");
+    assertThat(params.get(gmcRef1), hasSize(1));
+    assertThat(params.get(gmcRef1).get(0).get("hiddenForDesignatedBodyCode"),
+        is(designatedBody1));
+    assertThat(params.get(gmcRef2), hasSize(0));
+  }
+
+  @Test
+  void shouldUpdateHiddenDiscrepanciesInBatches() {
+    setField(masterElasticSearchService, "bulkUpsertBatchSize", 1);
+    when(elasticsearchRestTemplate.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+    when(elasticsearchRestTemplate.getIndexCoordinatesFor(MasterDoctorView.class))
+        .thenReturn(IndexCoordinates.of("masterdoctorindex"));
+    final var response = mock(BulkByScrollResponse.class);
+    when(response.getUpdated()).thenReturn(1L);
+    when(elasticsearchRestTemplate.execute(any())).thenReturn(response);
+
+    final var updated = masterElasticSearchService.updateHiddenDiscrepancies(
+        Map.of(gmcRef1, List.of(), faker.number().digits(7), List.of()));
+
+    assertThat(updated, is(2L));
+  }
+
+  private static BulkResponse bulkResponse(BulkItemResponse... items) {
+    final var bulkResponse = mock(BulkResponse.class);
+    when(bulkResponse.getItems()).thenReturn(items);
+    return bulkResponse;
+  }
+
+  private static BulkItemResponse bulkItem(DocWriteRequest.OpType opType, String id,
+      boolean failed) {
+    final var item = mock(BulkItemResponse.class);
+    when(item.isFailed()).thenReturn(failed);
+    if (opType != null) {
+      when(item.getOpType()).thenReturn(opType);
+    }
+    if (id != null) {
+      when(item.getId()).thenReturn(id);
+    }
+    return item;
+  }
+
+  @SuppressWarnings("unchecked")
+  private SearchHitsIterator<MasterDoctorView> givenScroll(List<MasterDoctorView> views) {
+    final var hits = (SearchHitsIterator<MasterDoctorView>) mock(SearchHitsIterator.class);
+    final List<SearchHit<MasterDoctorView>> scrolled = new ArrayList<>();
+    for (MasterDoctorView view : views) {
+      final var hit = (SearchHit<MasterDoctorView>) mock(SearchHit.class);
+      when(hit.getContent()).thenReturn(view);
+      scrolled.add(hit);
+    }
+    final var iterator = scrolled.iterator();
+    when(hits.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+    when(hits.next()).thenAnswer(invocation -> iterator.next());
+    when(elasticsearchRestTemplate.searchForStream(any(Query.class), eq(MasterDoctorView.class),
+        any(IndexCoordinates.class))).thenReturn(hits);
+    return hits;
+  }
+
+  private void givenIndex() {
+    when(elasticsearchRestTemplate.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+    when(elasticsearchRestTemplate.getIndexCoordinatesFor(MasterDoctorView.class))
+        .thenReturn(IndexCoordinates.of("masterdoctorindex"));
+    when(elasticsearchConverter.mapObject(any(MasterDoctorView.class))).thenAnswer(invocation -> {
+      MasterDoctorView view = invocation.getArgument(0);
+      Document document = Document.create();
+      document.put("gmcReferenceNumber", view.getGmcReferenceNumber());
+      document.put("tcsPersonId", view.getTcsPersonId());
+      return document;
+    });
+  }
 }
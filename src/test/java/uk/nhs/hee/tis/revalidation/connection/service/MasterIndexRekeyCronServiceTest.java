@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.nhs.hee.tis.revalidation.connection.service.MasterElasticSearchService.RekeyResult;
+
+@ExtendWith(MockitoExtension.class)
+class MasterIndexRekeyCronServiceTest {
+
+  private static final int BATCH_SIZE = 500;
+
+  @Mock
+  private MasterElasticSearchService masterElasticSearchService;
+
+  private MasterIndexRekeyCronService service;
+
+  @BeforeEach
+  void setUp() {
+    service = new MasterIndexRekeyCronService(masterElasticSearchService, BATCH_SIZE);
+  }
+
+  @Test
+  void shouldRekeyMasterIndex() {
+    when(masterElasticSearchService.rekeyMasterIndex(BATCH_SIZE)).thenReturn(new RekeyResult());
+
+    service.rekeyMasterIndex();
+
+    verify(masterElasticSearchService).rekeyMasterIndex(BATCH_SIZE);
+  }
+}
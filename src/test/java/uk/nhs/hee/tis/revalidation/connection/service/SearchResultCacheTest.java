@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionInfoDto;
+import uk.nhs.hee.tis.revalidation.connection.dto.ConnectionSummaryDto;
+import uk.nhs.hee.tis.revalidation.connection.exception.ConnectionQueryException;
+
+class SearchResultCacheTest {
+
+  private static final List<Object> KEY =
+      SearchResultCache.key("connected", "smith", List.of("1-AIIDR8"), PageRequest.of(0, 20));
+
+  private SimpleMeterRegistry meterRegistry;
+  private SearchResultCache cache;
+  private AtomicInteger searches;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    cache = new SearchResultCache(meterRegistry, true, 60_000, 1_000);
+    searches = new AtomicInteger();
+  }
+
+  @Test
+  void shouldReturnCachedResultForSameKey() throws ConnectionQueryException {
+    ConnectionSummaryDto first = cache.get(KEY, this::search);
+    ConnectionSummaryDto second = cache.get(KEY, this::search);
+
+    assertThat(second, sameInstance(first));
+    assertThat(searches.get(), is(1));
+  }
+
+  @Test
+  void shouldRunSearchForDifferentPage() throws ConnectionQueryException {
+    ConnectionSummaryDto first = cache.get(KEY, this::search);
+    ConnectionSummaryDto second = cache.get(
+        SearchResultCache.key("connected", "smith", List.of("1-AIIDR8"), PageRequest.of(1, 20)),
+        this::search);
+
+    assertThat(second, not(sameInstance(first)));
+    assertThat(searches.get(), is(2));
+  }
+
+  @Test
+  void shouldRunSearchAgainAfterInvalidation() throws ConnectionQueryException {
+    cache.get(KEY, this::search);
+    cache.invalidateAll();
+    cache.get(KEY, this::search);
+
+    assertThat(searches.get(), is(2));
+  }
+
+  @Test
+  void shouldAlwaysRunSearchWhenDisabled() throws ConnectionQueryException {
+    cache = new SearchResultCache(meterRegistry, false, 60_000, 1_000);
+
+    cache.get(KEY, this::search);
+    cache.get(KEY, this::search);
+
+    assertThat(searches.get(), is(2));
+  }
+
+  @Test
+  void shouldNotCacheFailedSearch() throws ConnectionQueryException {
+    assertThrows(ConnectionQueryException.class, () -> cache.get(KEY, () -> {
+      searches.incrementAndGet();
+      throw new ConnectionQueryException("current connections", "smith",
+          new RuntimeException("timed out"));
+    }));
+    cache.get(KEY, this::search);
+
+    assertThat(searches.get(), is(2));
+  }
+
+  @Test
+  void shouldNormaliseKeyParameters() {
+    LocalDate date = LocalDate.of(2024, 1, 1);
+    List<Object> key = SearchResultCache.key("discrepancies", " smith ", List.of("B", "A", "A"),
+        "", date, null);
+    List<Object> equivalent = SearchResultCache.key("discrepancies", "smith", List.of("A", "B"),
+        null, date, null);
+
+    assertThat(key, is(equivalent));
+  }
+
+  @Test
+  void shouldRecordHitAndMissMetrics() throws ConnectionQueryException {
+    cache.get(KEY, this::search);
+    cache.get(KEY, this::search);
+    cache.get(KEY, this::search);
+
+    assertThat(meterRegistry.get("cache.gets").tag("cache", SearchResultCache.CACHE_NAME)
+        .tag("result", "hit").functionCounter().count(), is(2.0));
+    assertThat(meterRegistry.get("cache.gets").tag("cache", SearchResultCache.CACHE_NAME)
+        .tag("result", "miss").functionCounter().count(), is(1.0));
+  }
+
+  private ConnectionSummaryDto search() {
+    searches.incrementAndGet();
+    return ConnectionSummaryDto.builder()
+        .totalResults(1)
+        .connections(List.of(new ConnectionInfoDto()))
+        .build();
+  }
+}
@@ -24,11 +24,24 @@ package uk.nhs.hee.tis.revalidation.connection.service.util;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
+import java.util.Collections;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.WildcardQueryBuilder;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import uk.nhs.hee.tis.revalidation.connection.service.util.EsQueryUtils.DateRangeQueryType;
 
 class QueryUtilsTest {
@@ -116,4 +129,88 @@ class QueryUtilsTest {
 
     assertThat(result, is("2026-01-01T23:59:59.000"));
   }
+
+  @Test
+  void shouldBuildWildcardDoctorSearchQueryWhenAutocompleteDisabled() {
+    BoolQueryBuilder query = EsQueryUtils.buildDoctorSearchQuery("smi", false,
+        "doctorFirstName", "doctorLastName");
+
+    assertThat(query.should().size(), is(2));
+    assertThat(query.minimumShouldMatch(), is("1"));
+    WildcardQueryBuilder firstName = (WildcardQueryBuilder) query.should().get(0);
+    assertThat(firstName.fieldName(), is("doctorFirstName"));
+    assertThat(firstName.value(), is("smi*"));
+  }
+
+  @Test
+  void shouldBuildAutocompleteDoctorSearchQueryWhenAutocompleteEnabled() {
+    BoolQueryBuilder query = EsQueryUtils.buildDoctorSearchQuery("smi", true,
+        "doctorFirstName", "doctorLastName");
+
+    assertThat(query.should().size(), is(2));
+    assertThat(query.minimumShouldMatch(), is("1"));
+    assertThat(query.should().get(1), instanceOf(MatchQueryBuilder.class));
+    MatchQueryBuilder lastName = (MatchQueryBuilder) query.should().get(1);
+    assertThat(lastName.fieldName(), is("doctorLastName.autocomplete"));
+    assertThat(lastName.value(), is("smi"));
+    assertThat(lastName.operator(), is(Operator.AND));
+    assertThat(query.toString(), not(containsString("wildcard")));
+  }
+
+  @Test
+  void shouldLimitTotalHitsWhenCountFree() {
+    NativeSearchQuery query = new NativeSearchQuery(boolQuery());
+
+    EsQueryUtils.limitTotalHits(query, true, 10_000);
+
+    assertThat(query.getTrackTotalHitsUpTo(), is(10_000));
+  }
+
+  @Test
+  void shouldNotLimitTotalHitsWhenNotCountFree() {
+    NativeSearchQuery query = new NativeSearchQuery(boolQuery());
+
+    EsQueryUtils.limitTotalHits(query, false, 10_000);
+
+    assertThat(query.getTrackTotalHitsUpTo(), is((Integer) null));
+  }
+
+  @Test
+  void shouldHaveNextPageWhenExactTotalIsAfterPage() {
+    SearchHits<Object> hits = searchHits(20, 45, TotalHitsRelation.EQUAL_TO);
+
+    assertThat(EsQueryUtils.hasNextPage(PageRequest.of(1, 20), hits), is(true));
+  }
+
+  @Test
+  void shouldNotHaveNextPageWhenExactTotalIsReached() {
+    SearchHits<Object> hits = searchHits(20, 40, TotalHitsRelation.EQUAL_TO);
+
+    assertThat(EsQueryUtils.hasNextPage(PageRequest.of(1, 20), hits), is(false));
+  }
+
+  @Test
+  void shouldHaveNextPageWhenLowerBoundTotalIsReachedWithFullPage() {
+    SearchHits<Object> hits = searchHits(20, 10_000, TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO);
+
+    assertThat(EsQueryUtils.hasNextPage(PageRequest.of(499, 20), hits), is(true));
+  }
+
+  @Test
+  void shouldNotHaveNextPageWhenLowerBoundPageIsNotFull() {
+    SearchHits<Object> hits = searchHits(5, 0, TotalHitsRelation.OFF);
+
+    assertThat(EsQueryUtils.hasNextPage(PageRequest.of(0, 20), hits), is(false));
+  }
+
+  @SuppressWarnings("unchecked")
+  private SearchHits<Object> searchHits(int pageHits, long totalHits,
+      TotalHitsRelation relation) {
+    SearchHits<Object> hits = mock(SearchHits.class);
+    when(hits.getSearchHits())
+        .thenReturn(Collections.nCopies(pageHits, (SearchHit<Object>) mock(SearchHit.class)));
+    when(hits.getTotalHits()).thenReturn(totalHits);
+    when(hits.getTotalHitsRelation()).thenReturn(relation);
+    return hits;
+  }
 }
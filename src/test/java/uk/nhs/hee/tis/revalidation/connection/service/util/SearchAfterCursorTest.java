@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2021 Crown Copyright (Health Education England)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package uk.nhs.hee.tis.revalidation.connection.service.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SearchAfterCursorTest {
+
+  @Test
+  void shouldDecodeEncodedSortValues() {
+    Object[] sortValues = {"1234567", 1700000000000L, "abc"};
+
+    String cursor = SearchAfterCursor.encode(sortValues);
+
+    assertArrayEquals(sortValues, SearchAfterCursor.decode(cursor));
+  }
+
+  @Test
+  void shouldRejectCursorWhichIsNotBase64() {
+    assertThrows(IllegalArgumentException.class, () -> SearchAfterCursor.decode("not a cursor!"));
+  }
+
+  @Test
+  void shouldRejectCursorWhichIsNotSortValues() {
+    assertThrows(IllegalArgumentException.class, () -> SearchAfterCursor.decode("e30"));
+  }
+
+  @Test
+  void shouldOnlyAcceptEncodedCursorsAsValid() {
+    assertTrue(SearchAfterCursor.isValid(SearchAfterCursor.encode(new Object[]{"1234567"})));
+    assertFalse(SearchAfterCursor.isValid("not a cursor!"));
+    assertFalse(SearchAfterCursor.isValid("e30"));
+  }
+}